@@ -0,0 +1,863 @@
+// benchmarks/backend.bench.js
+// End-to-end load test of the whole backend. It seeds a throwaway database on
+// the MongoDB in BENCH_MONGO_URI (default: a local mongod), and
+// runs the real server.js as a child process with the mock Gemini, toxicity,
+// Cal.com and SMS providers. Then it drives one workload at a time against a
+// fresh server: /chat, mood tracking, therapist search, the feed and Socket.io
+// chat rooms. Each scenario reports throughput, latency percentiles and the
+// server's memory and event loop delay (read from /metrics) as JSON, which
+// can be saved and compared with a run on another commit.
+// Usage: node benchmarks/backend.bench.js [scenarios] [seconds] [--out file] [--compare file] [--fail-on-regression]
+//   e.g. node benchmarks/backend.bench.js all 15 --out before.json
+//        node benchmarks/backend.bench.js chat,feed 15 --compare before.json
+// The database is dropped when the run ends. Without a MongoDB to hand, set
+// BENCH_MONGO_URI=memory and install mongodb-memory-server for the run:
+//   npm install --no-save mongodb-memory-server
+const fs = require('fs');
+const os = require('os');
+const http = require('http');
+const path = require('path');
+const { fork, execFileSync } = require('child_process');
+const { performance } = require('perf_hooks');
+const seedrandom = require('seedrandom');
+const jwt = require('jsonwebtoken');
+const { MongoClient, ObjectId } = require('mongodb');
+const { startMockCalCom } = require('../scripts/mockCalCom');
+
+const BACKEND_DIR = path.join(__dirname, '..');
+const PORT = parseInt(process.env.BENCH_PORT, 10) || 5097;
+const CONCURRENCY = parseInt(process.env.BENCH_CONCURRENCY, 10) || 32;
+const WARMUP_SECONDS = process.env.BENCH_WARMUP_SECONDS != null ? parseFloat(process.env.BENCH_WARMUP_SECONDS) : 3;
+const SOCKET_CLIENTS = parseInt(process.env.BENCH_SOCKET_CLIENTS, 10) || 200;
+const SOCKET_GROUPS = parseInt(process.env.BENCH_SOCKET_GROUPS, 10) || 20;
+const SENDERS_PER_GROUP = parseInt(process.env.BENCH_SENDERS_PER_GROUP, 10) || 2;
+const REGRESSION_PCT = parseFloat(process.env.BENCH_REGRESSION_PCT) || 10;
+const STARTUP_TIMEOUT_MS = 120000;
+// Signs the socket clients' login tokens; passed to the server as JWT_SECRET
+const JWT_SECRET = 'mindbridge-bench-secret';
+const METRICS_INTERVAL_MS = 500;
+const DEFAULT_MONGO_URI = 'mongodb://127.0.0.1:27017';
+const MONGO_CONNECT_TIMEOUT_MS = 5000;
+
+// Provider latencies, fixed so runs are comparable
+const PROVIDERS = {
+  geminiFirstTokenMs: parseInt(process.env.MOCK_GEMINI_FIRST_TOKEN_MS, 10) || 300,
+  geminiChunkDelayMs: parseInt(process.env.MOCK_GEMINI_CHUNK_DELAY_MS, 10) || 40,
+  toxicityLatencyMs: parseInt(process.env.MOCK_TOXICITY_LATENCY_MS, 10) || 20,
+  calComLatencyMs: parseInt(process.env.MOCK_CAL_LATENCY_MS, 10) || 100,
+  smsLatencyMs: parseInt(process.env.SMS_SIM_LATENCY_MS, 10) || 150
+};
+
+// Seed data sizes
+const THERAPISTS = 2000;
+const FEED_ITEMS = 300;
+const MOOD_USERS = 200;
+const MOOD_HISTORY_DAYS = 30;
+
+const FIRST_NAMES = ['Nimali', 'Kasun', 'Sarah', 'David', 'Amaya', 'Ruwan', 'Emily', 'James', 'Priya', 'Tharindu', 'Olivia', 'Michael', 'Dilini', 'Chen', 'Fatima', 'Lucas'];
+const LAST_NAMES = ['Perera', 'Silva', 'Fernando', 'Johnson', 'Jayasinghe', 'Smith', 'Wickramasinghe', 'Brown', 'Bandara', 'Garcia', 'Dissanayake', 'Wilson'];
+const SPECIALTIES = ['Anxiety and Stress', 'Depression', 'Trauma and PTSD', 'Couples Therapy', 'Grief Counseling', 'Addiction Recovery', 'Child and Adolescent', 'Cognitive Behavioral Therapy', 'Sleep Disorders', 'Eating Disorders'];
+const SEARCH_KEYWORDS = ['anxiety', 'depression', 'trauma', 'couples', 'grief', 'sleep', 'silva', 'perera', 'sarah', 'cognitive', 'stress', 'child'];
+const FEED_CATEGORIES = ['Sleep', 'Meditation', 'Yoga'];
+const MOODS = ['Happy', 'Sad', 'Calm', 'Angry', 'Relaxed'];
+const CHAT_PROMPTS = [
+  'I have been feeling anxious about my exams',
+  'I cannot sleep at night and I feel tired all day',
+  'How can I manage stress at work?',
+  'I feel lonely since I moved to a new city',
+  'What are some breathing exercises for panic?',
+  'I argued with my family and I feel bad about it',
+  'How do I stay motivated when I feel low?',
+  'Can you suggest a short meditation for the morning?',
+  'I feel overwhelmed by everything I have to do',
+  'How can I be kinder to myself?'
+];
+
+const sleep = (ms) => new Promise((resolve) => setTimeout(resolve, ms));
+// Socket client i is signed in as this user, with a fixed ID so tokens can be made without a lookup
+const benchUserId = (i) => new ObjectId(String(i).padStart(24, '0'));
+const pick = (rng, items) => items[Math.floor(rng() * items.length)];
+
+function percentile(sorted, p) {
+  if (sorted.length === 0) {
+    return 0;
+  }
+  return +sorted[Math.min(sorted.length - 1, Math.floor((p / 100) * sorted.length))].toFixed(2);
+}
+
+function summarize(samples) {
+  const sorted = [...samples].sort((a, b) => a - b);
+  const mean = sorted.length > 0 ? sorted.reduce((sum, value) => sum + value, 0) / sorted.length : 0;
+  return {
+    mean: +mean.toFixed(2),
+    p50: percentile(sorted, 50),
+    p90: percentile(sorted, 90),
+    p99: percentile(sorted, 99),
+    max: percentile(sorted, 100)
+  };
+}
+
+/**
+ * MongoDB for the run: the one in BENCH_MONGO_URI (a local mongod by default),
+ * or an in-memory server when BENCH_MONGO_URI is 'memory'
+ * @returns {Promise<Object>} { uri, kind, stop }
+ */
+async function startMongo() {
+  const uri = process.env.BENCH_MONGO_URI || DEFAULT_MONGO_URI;
+  if (uri !== 'memory') {
+    return { uri, kind: 'external', stop: async () => {} };
+  }
+
+  let MongoMemoryServer;
+  try {
+    ({ MongoMemoryServer } = require('mongodb-memory-server'));
+  } catch (error) {
+    throw new Error('BENCH_MONGO_URI=memory needs mongodb-memory-server (npm install --no-save mongodb-memory-server)');
+  }
+  const mongod = await MongoMemoryServer.create();
+  return { uri: mongod.getUri(), kind: 'memory', stop: () => mongod.stop() };
+}
+
+/**
+ * Fill the benchmark database. The same seed gives the same data every run.
+ * @param {Object} db - MongoDB database
+ */
+async function seed(db) {
+  const rng = seedrandom('mindbridge-bench');
+  const now = Date.now();
+  const day = 24 * 60 * 60 * 1000;
+
+  const therapists = Array.from({ length: THERAPISTS }, (_, i) => {
+    const isPopular = i % 20 === 0;
+    return {
+      name: `Dr. ${pick(rng, FIRST_NAMES)} ${pick(rng, LAST_NAMES)}`,
+      specialty: pick(rng, SPECIALTIES),
+      rating: +(3 + rng() * 2).toFixed(1),
+      totalReviews: Math.floor(rng() * 300),
+      description: 'Licensed counselor helping clients build coping skills and resilience.',
+      experience: 1 + Math.floor(rng() * 25),
+      clientsHelped: Math.floor(rng() * 1000),
+      imageUrl: '',
+      isPopular,
+      isAvailable: true,
+      ...(isPopular ? { calComUserId: 1000 + i, calComEventTypeId: 2000 + i } : {})
+    };
+  });
+
+  const feeds = Array.from({ length: FEED_ITEMS }, (_, i) => ({
+    title: `Guided session ${i + 1}`,
+    author: pick(rng, FIRST_NAMES),
+    category: pick(rng, FEED_CATEGORIES),
+    duration: `${5 + Math.floor(rng() * 55)} min`,
+    description: 'A calming session to help you relax, breathe and reset. '.repeat(3),
+    image: `https://images.example.com/feed/${i}.jpg`,
+    url: `https://youtu.be/bench${i}`,
+    createdAt: new Date(now - i * 60 * 60 * 1000)
+  }));
+
+  // Socket clients sign in with a token for one of these users
+  const users = Array.from({ length: SOCKET_CLIENTS }, (_, i) => ({
+    _id: benchUserId(i),
+    userId: `user_bench_${i}`,
+    name: `bench-user-${i}`,
+    email: `bench-user-${i}@example.com`,
+    password: 'not-used-by-the-benchmark',
+    createdAt: new Date(now)
+  }));
+
+  // Every socket client belongs to its group, so joinGroup and newMessage pass the membership check
+  const groups = Array.from({ length: SOCKET_GROUPS }, (_, g) => {
+    const membersList = [];
+    for (let i = g; i < SOCKET_CLIENTS; i += SOCKET_GROUPS) {
+      membersList.push(`bench-user-${i}`);
+    }
+    return {
+      _id: `bench-group-${g}`,
+      name: `Bench group ${g}`,
+      description: 'Benchmark chat group',
+      membersList,
+      memberCount: membersList.length,
+      maxMembers: membersList.length,
+      createdAt: new Date(now)
+    };
+  });
+
+  const moods = [];
+  for (let u = 0; u < MOOD_USERS; u++) {
+    for (let d = 1; d <= MOOD_HISTORY_DAYS; d++) {
+      if (rng() < 0.3) {
+        continue;
+      }
+      const mood = pick(rng, MOODS);
+      const date = new Date(now - d * day);
+      moods.push({
+        userId: `bench-mood-${u}`,
+        mood,
+        moodValue: { Happy: 3, Sad: 1, Calm: 2, Angry: 4, Relaxed: 5 }[mood],
+        date,
+        notes: '',
+        createdAt: date,
+        updatedAt: date
+      });
+    }
+  }
+
+  await Promise.all([
+    db.collection('therapists').insertMany(therapists),
+    db.collection('feeds').insertMany(feeds),
+    db.collection('users').insertMany(users),
+    db.collection('chatGroups').insertMany(groups),
+    db.collection('moods').insertMany(moods)
+  ]);
+
+  return { therapists: therapists.length, feeds: feeds.length, users: users.length, chatGroups: groups.length, moods: moods.length };
+}
+
+function request(agent, options) {
+  return new Promise((resolve, reject) => {
+    const payload = options.body ? JSON.stringify(options.body) : null;
+    const headers = { ...(options.headers || {}) };
+    if (payload) {
+      headers['Content-Type'] = 'application/json';
+      headers['Content-Length'] = Buffer.byteLength(payload);
+    }
+
+    const req = http.request({
+      host: '127.0.0.1',
+      port: PORT,
+      method: options.method || 'GET',
+      path: options.path,
+      agent,
+      headers
+    }, (res) => {
+      const chunks = options.readBody ? [] : null;
+      let bytes = 0;
+      res.on('data', (chunk) => {
+        bytes += chunk.length;
+        if (chunks) {
+          chunks.push(chunk);
+        }
+      });
+      res.on('end', () => resolve({
+        status: res.statusCode,
+        headers: res.headers,
+        bytes,
+        body: chunks ? Buffer.concat(chunks).toString('utf8') : null
+      }));
+    });
+    req.on('error', reject);
+    req.end(payload);
+  });
+}
+
+/**
+ * Start server.js against the benchmark database and wait until every
+ * startup step has finished
+ * @returns {Promise<Object>} { child, startup, stop }
+ */
+async function startServer(env) {
+  const startedAt = performance.now();
+  const child = fork(path.join(BACKEND_DIR, 'server.js'), [], {
+    cwd: BACKEND_DIR,
+    env: { ...process.env, ...env },
+    stdio: ['ignore', 'ignore', 'pipe', 'ipc']
+  });
+
+  // Kept for the error message if the server doesn't come up
+  const stderr = [];
+  child.stderr.on('data', (chunk) => {
+    stderr.push(chunk.toString());
+    if (stderr.length > 50) {
+      stderr.shift();
+    }
+  });
+  let exited = null;
+  child.on('exit', (code) => { exited = code; });
+
+  const agent = new http.Agent({ keepAlive: false });
+  let report = null;
+  while (performance.now() - startedAt < STARTUP_TIMEOUT_MS) {
+    if (exited !== null) {
+      throw new Error(`server.js exited with code ${exited}:\n${stderr.join('')}`);
+    }
+    try {
+      const res = await request(agent, { path: '/health/ready', readBody: true });
+      report = JSON.parse(res.body);
+      const settled = Object.values(report.subsystems || {})
+        .every(step => step.status !== 'pending' && step.status !== 'starting');
+      if (report.ready && settled) {
+        break;
+      }
+    } catch (error) {
+      // Not listening yet
+    }
+    await sleep(100);
+  }
+
+  if (!report || !report.ready) {
+    child.kill();
+    throw new Error(`server.js wasn't ready after ${STARTUP_TIMEOUT_MS}ms:\n${stderr.join('')}`);
+  }
+
+  return {
+    child,
+    startup: {
+      readyMs: Math.round(performance.now() - startedAt),
+      listeningAtMs: report.listeningAtMs,
+      subsystems: Object.fromEntries(Object.entries(report.subsystems)
+        .map(([name, step]) => [name, { status: step.status, durationMs: step.durationMs }]))
+    },
+    stop: () => new Promise((resolve) => {
+      if (exited !== null) {
+        return resolve();
+      }
+      child.once('exit', resolve);
+      child.kill('SIGINT');
+      setTimeout(() => child.kill('SIGKILL'), 5000).unref();
+    })
+  };
+}
+
+/**
+ * Read memory and event loop delay from the server's /metrics. Each scrape
+ * starts a new event loop window, so polling gives the worst delay per interval.
+ */
+async function scrapeServer(agent) {
+  const res = await request(agent, { path: '/metrics', readBody: true });
+  const value = (name, label) => {
+    const match = res.body.match(new RegExp(`^mindbridge_${name}\\{${label}\\} ([0-9.e+-]+)$`, 'm'));
+    return match ? Number(match[1]) : 0;
+  };
+  return {
+    rssMb: +(value('process_heap_bytes', 'type="rss"') / 1048576).toFixed(1),
+    heapUsedMb: +(value('process_heap_bytes', 'type="heap_used"') / 1048576).toFixed(1),
+    eventLoopP99Ms: +(value('event_loop_lag_seconds', 'quantile="0.99"') * 1000).toFixed(2),
+    eventLoopMaxMs: +(value('event_loop_lag_seconds', 'quantile="1"') * 1000).toFixed(2)
+  };
+}
+
+/**
+ * Poll the server while a scenario runs
+ * @returns {Object} { stop } resolving to start, peak and end values
+ */
+function sampleServer(agent, start) {
+  const peak = { ...start };
+  let last = start;
+  let running = true;
+
+  const loop = (async () => {
+    while (running) {
+      await sleep(METRICS_INTERVAL_MS);
+      try {
+        last = await scrapeServer(agent);
+        for (const key of Object.keys(peak)) {
+          peak[key] = Math.max(peak[key], last[key]);
+        }
+      } catch (error) {
+        // The server is busy or going away; the next sample will tell
+      }
+    }
+  })();
+
+  return {
+    stop: async () => {
+      running = false;
+      await loop;
+      return {
+        rssMb: { start: start.rssMb, peak: peak.rssMb, end: last.rssMb },
+        heapUsedMb: { start: start.heapUsedMb, peak: peak.heapUsedMb, end: last.heapUsedMb },
+        eventLoopP99Ms: peak.eventLoopP99Ms,
+        eventLoopMaxMs: peak.eventLoopMaxMs
+      };
+    }
+  };
+}
+
+/**
+ * Closed-loop HTTP load: each of `concurrency` workers sends its next request
+ * as soon as the previous one completes. The first WARMUP_SECONDS aren't recorded.
+ * @param {Function} next - (worker, state, rng) returning { label, method, path, body, headers, after }
+ */
+async function runHttpScenario(name, next, { seconds, concurrency }) {
+  const agent = new http.Agent({ keepAlive: true, maxSockets: concurrency });
+  const metricsAgent = new http.Agent({ keepAlive: true, maxSockets: 1 });
+  const latencies = [];
+  const byLabel = new Map();
+  const statuses = {};
+  let recording = false;
+  let running = true;
+  let errors = 0;
+  let bytes = 0;
+
+  const worker = async (index) => {
+    const rng = seedrandom(`${name}-${index}`);
+    const state = {};
+    while (running) {
+      const op = next(index, state, rng);
+      const startedAt = performance.now();
+      let status;
+      try {
+        const res = await request(agent, op);
+        status = res.status;
+        if (op.after) {
+          op.after(res);
+        }
+        if (recording) {
+          bytes += res.bytes;
+        }
+      } catch (error) {
+        status = 'error';
+        await sleep(10);
+      }
+
+      if (!recording) {
+        continue;
+      }
+      const elapsed = performance.now() - startedAt;
+      statuses[status] = (statuses[status] || 0) + 1;
+      if (status === 'error' || status >= 400) {
+        errors++;
+        continue;
+      }
+      latencies.push(elapsed);
+      if (!byLabel.has(op.label)) {
+        byLabel.set(op.label, []);
+      }
+      byLabel.get(op.label).push(elapsed);
+    }
+  };
+
+  const workers = Array.from({ length: concurrency }, (_, i) => worker(i));
+  await sleep(WARMUP_SECONDS * 1000);
+
+  const sampler = sampleServer(metricsAgent, await scrapeServer(metricsAgent));
+  recording = true;
+  const startedAt = performance.now();
+  await sleep(seconds * 1000);
+  recording = false;
+  const elapsedSeconds = (performance.now() - startedAt) / 1000;
+  const server = await sampler.stop();
+  running = false;
+  await Promise.all(workers);
+  agent.destroy();
+  metricsAgent.destroy();
+
+  const requests = latencies.length + errors;
+  return {
+    name,
+    seconds: +elapsedSeconds.toFixed(2),
+    concurrency,
+    requests,
+    errors,
+    statuses,
+    throughputPerSec: +(latencies.length / elapsedSeconds).toFixed(1),
+    transferredMb: +(bytes / 1048576).toFixed(2),
+    latencyMs: summarize(latencies),
+    operations: Object.fromEntries(Array.from(byLabel, ([label, samples]) => [label, {
+      requests: samples.length,
+      ...summarize(samples)
+    }])),
+    server
+  };
+}
+
+// POST /chat; most prompts repeat (reply cache hits), some are new
+function chatWorkload(worker, state, rng) {
+  state.count = (state.count || 0) + 1;
+  const unique = rng() < 0.2;
+  return {
+    label: unique ? 'unique' : 'repeated',
+    method: 'POST',
+    path: '/chat',
+    body: {
+      message: unique ? `${pick(rng, CHAT_PROMPTS)} (${worker}-${state.count})` : pick(rng, CHAT_PROMPTS),
+      userId: `bench-chat-${worker}`
+    }
+  };
+}
+
+// Mood tracker: reading the charts, saving and syncing moods
+function moodWorkload(worker, state, rng) {
+  const userId = `bench-mood-${Math.floor(rng() * MOOD_USERS)}`;
+  const roll = rng();
+
+  if (roll < 0.3) {
+    return { label: 'weekly', path: `/api/moods/weekly?userId=${userId}` };
+  }
+  if (roll < 0.5) {
+    return { label: 'summary', path: `/api/moods/summary?userId=${userId}` };
+  }
+  if (roll < 0.6) {
+    return { label: 'today', path: `/api/moods/today?userId=${userId}` };
+  }
+  if (roll < 0.7) {
+    return { label: 'add', method: 'POST', path: '/api/moods', body: { userId, mood: pick(rng, MOODS) } };
+  }
+  if (roll < 0.75) {
+    return { label: 'update', method: 'PUT', path: '/api/moods/today', body: { userId, mood: pick(rng, MOODS) } };
+  }
+
+  // An offline device (on UTC) catching up on a few days
+  const now = Date.now();
+  const entries = Array.from({ length: 1 + Math.floor(rng() * 3) }, (_, i) => {
+    const date = new Date(now - i * 24 * 60 * 60 * 1000).toISOString();
+    return {
+      day: date.substring(0, 10),
+      mood: pick(rng, MOODS),
+      date,
+      updatedAt: new Date(now - Math.floor(rng() * 60000)).toISOString()
+    };
+  });
+  return { label: 'sync', method: 'POST', path: '/api/moods/sync', body: { userId, entries, tzOffset: 0 } };
+}
+
+// Therapist search, with some misspelled and two-word queries, and the popular list
+function therapistWorkload(worker, state, rng) {
+  if (rng() < 0.1) {
+    return { label: 'popular', path: '/api/therapists/popular' };
+  }
+
+  let keyword = pick(rng, SEARCH_KEYWORDS);
+  const roll = rng();
+  if (roll < 0.15) {
+    // Swap two letters
+    const i = 1 + Math.floor(rng() * (keyword.length - 2));
+    keyword = keyword.slice(0, i) + keyword[i + 1] + keyword[i] + keyword.slice(i + 2);
+  } else if (roll < 0.3) {
+    keyword = `${keyword} ${pick(rng, SEARCH_KEYWORDS)}`;
+  }
+  return { label: 'search', path: `/api/therapists/search?keyword=${encodeURIComponent(keyword)}&limit=20` };
+}
+
+// Feed: first pages revalidated with the stored ETag, scrolling on to later pages
+function feedWorkload(worker, state, rng) {
+  state.etags = state.etags || new Map();
+  const headers = { 'Accept-Encoding': 'gzip, br' };
+
+  let label;
+  let requestPath;
+  if (state.nextCursor && rng() < 0.3) {
+    label = 'next-page';
+    requestPath = `/api/feed?limit=20&cursor=${state.nextCursor}`;
+  } else {
+    const category = rng() < 0.4 ? 'All' : pick(rng, FEED_CATEGORIES);
+    requestPath = `/api/feed?limit=20&category=${category}`;
+    const etag = state.etags.get(requestPath);
+    label = etag ? 'revalidate' : 'first-page';
+    if (etag) {
+      headers['If-None-Match'] = etag;
+    }
+  }
+
+  return {
+    label,
+    path: requestPath,
+    headers,
+    after: (res) => {
+      if (res.headers.etag) {
+        state.etags.set(requestPath, res.headers.etag);
+      }
+      state.nextCursor = res.headers['x-next-cursor'] || null;
+    }
+  };
+}
+
+/**
+ * Socket.io chat rooms over raw Engine.IO v4 websockets, which keeps the load
+ * generator cheap. Senders send their next message as soon as their previous
+ * one comes back; every member of the group receives each message.
+ */
+async function runSocketScenario(name, { seconds }) {
+  // Use the ws package that socket.io itself depends on
+  const WebSocket = require(require.resolve('ws', { paths: [path.dirname(require.resolve('engine.io'))] }));
+  const metricsAgent = new http.Agent({ keepAlive: true, maxSockets: 1 });
+
+  const roundTrips = [];
+  const deliveries = [];
+  let recording = false;
+  let running = false;
+  let connected = 0;
+  let sent = 0;
+  let received = 0;
+  let errors = 0;
+  const sockets = [];
+
+  const send = (ws, groupId) => {
+    if (recording) {
+      sent++;
+    }
+    ws.send('42' + JSON.stringify(['newMessage', {
+      groupId,
+      message: `Keep going, you are doing better than you think #${performance.now().toFixed(3)}`
+    }]));
+  };
+
+  const allConnected = new Promise((resolve, reject) => {
+    for (let i = 0; i < SOCKET_CLIENTS; i++) {
+      const groupId = `bench-group-${i % SOCKET_GROUPS}`;
+      const username = `bench-user-${i}`;
+      // The server takes the username from the login token, as for the app
+      const token = jwt.sign({ userId: benchUserId(i) }, JWT_SECRET, { expiresIn: '1h' });
+      const isSender = Math.floor(i / SOCKET_GROUPS) < SENDERS_PER_GROUP;
+      // Delivery latency is sampled from a tenth of the receivers
+      const sampleDelivery = i % 10 === 0;
+      const ws = new WebSocket(`ws://127.0.0.1:${PORT}/socket.io/?EIO=4&transport=websocket`);
+      sockets.push(ws);
+
+      ws.on('message', (data) => {
+        const frame = data.toString();
+
+        if (frame === '2') {
+          ws.send('3'); // Engine.IO ping
+        } else if (frame.startsWith('0')) {
+          ws.send('40' + JSON.stringify({ token })); // Connect with the handshake auth
+        } else if (frame.startsWith('40')) {
+          ws.send('42' + JSON.stringify(['joinGroup', groupId]));
+          if (++connected === SOCKET_CLIENTS) {
+            resolve();
+          }
+        } else if (frame.startsWith('42["receiveMessage"')) {
+          const [, message] = JSON.parse(frame.slice(2));
+          const sentAt = Number(String(message.message).split('#')[1]);
+          const latency = performance.now() - sentAt;
+          if (recording) {
+            received++;
+            if (message.sender === username) {
+              roundTrips.push(latency);
+            } else if (sampleDelivery) {
+              deliveries.push(latency);
+            }
+          }
+          if (running && isSender && message.sender === username) {
+            send(ws, groupId);
+          }
+        } else if (frame.startsWith('42["messageError"') || frame.startsWith('44')) {
+          errors++;
+          if (running && isSender) {
+            setTimeout(() => send(ws, groupId), 50);
+          }
+        }
+      });
+
+      ws.on('error', reject);
+    }
+  });
+
+  await allConnected;
+  // Let the joinGroup membership checks finish before the first message
+  await sleep(1000);
+
+  running = true;
+  sockets.forEach((ws, i) => {
+    if (Math.floor(i / SOCKET_GROUPS) < SENDERS_PER_GROUP) {
+      send(ws, `bench-group-${i % SOCKET_GROUPS}`);
+    }
+  });
+  await sleep(WARMUP_SECONDS * 1000);
+
+  const sampler = sampleServer(metricsAgent, await scrapeServer(metricsAgent));
+  errors = 0;
+  recording = true;
+  const startedAt = performance.now();
+  await sleep(seconds * 1000);
+  recording = false;
+  const elapsedSeconds = (performance.now() - startedAt) / 1000;
+  const server = await sampler.stop();
+  running = false;
+
+  sockets.forEach(ws => ws.close());
+  metricsAgent.destroy();
+
+  return {
+    name,
+    seconds: +elapsedSeconds.toFixed(2),
+    clients: SOCKET_CLIENTS,
+    groups: SOCKET_GROUPS,
+    senders: SOCKET_GROUPS * SENDERS_PER_GROUP,
+    requests: sent,
+    errors,
+    throughputPerSec: +(sent / elapsedSeconds).toFixed(1),
+    deliveredPerSec: +(received / elapsedSeconds).toFixed(1),
+    // Sender round trip: newMessage until the sender gets its own receiveMessage
+    latencyMs: summarize(roundTrips),
+    operations: {
+      delivery: { requests: deliveries.length, ...summarize(deliveries) }
+    },
+    server
+  };
+}
+
+const SCENARIOS = {
+  chat: (options) => runHttpScenario('chat', chatWorkload, options),
+  moods: (options) => runHttpScenario('moods', moodWorkload, options),
+  therapists: (options) => runHttpScenario('therapists', therapistWorkload, options),
+  feed: (options) => runHttpScenario('feed', feedWorkload, options),
+  sockets: (options) => runSocketScenario('sockets', options)
+};
+
+function gitInfo() {
+  try {
+    const run = (...args) => execFileSync('git', args, { cwd: BACKEND_DIR, encoding: 'utf8', stdio: ['ignore', 'pipe', 'ignore'] }).trim();
+    return { commit: run('rev-parse', 'HEAD'), dirty: run('status', '--porcelain', '--', '.') !== '' };
+  } catch (error) {
+    return { commit: null, dirty: null };
+  }
+}
+
+const change = (before, after) => (before > 0 ? +(((after - before) / before) * 100).toFixed(1) : null);
+
+/**
+ * Compare this run with a saved one. Lower throughput or higher p99 latency
+ * by more than REGRESSION_PCT counts as a regression.
+ */
+function compareRuns(baseline, current) {
+  const rows = [];
+  for (const result of current.scenarios) {
+    const before = baseline.scenarios.find(scenario => scenario.name === result.name);
+    if (!before) {
+      continue;
+    }
+    const row = {
+      name: result.name,
+      throughputPerSec: [before.throughputPerSec, result.throughputPerSec, change(before.throughputPerSec, result.throughputPerSec)],
+      p99Ms: [before.latencyMs.p99, result.latencyMs.p99, change(before.latencyMs.p99, result.latencyMs.p99)],
+      peakRssMb: [before.server.rssMb.peak, result.server.rssMb.peak, change(before.server.rssMb.peak, result.server.rssMb.peak)]
+    };
+    row.regression = (row.throughputPerSec[2] !== null && row.throughputPerSec[2] < -REGRESSION_PCT) ||
+      (row.p99Ms[2] !== null && row.p99Ms[2] > REGRESSION_PCT);
+    rows.push(row);
+  }
+  return { baseline: { commit: baseline.meta.commit, date: baseline.meta.date }, thresholdPct: REGRESSION_PCT, rows };
+}
+
+function printComparison(comparison) {
+  const format = ([before, after, pct]) => `${before} -> ${after} (${pct === null ? 'n/a' : `${pct > 0 ? '+' : ''}${pct}%`})`;
+  console.error(`\nCompared with ${comparison.baseline.commit || 'unknown commit'} (${comparison.baseline.date}):`);
+  for (const row of comparison.rows) {
+    console.error(`  ${row.name.padEnd(11)} throughput ${format(row.throughputPerSec)}/s, p99 ${format(row.p99Ms)}ms, peak RSS ${format(row.peakRssMb)}MB${row.regression ? '  REGRESSION' : ''}`);
+  }
+}
+
+async function main() {
+  const args = process.argv.slice(2);
+  const flag = (name) => {
+    const index = args.indexOf(name);
+    return index === -1 ? null : args.splice(index, 2)[1];
+  };
+  const outFile = flag('--out');
+  const compareFile = flag('--compare');
+  const failOnRegression = args.includes('--fail-on-regression');
+  const positional = args.filter(arg => !arg.startsWith('--'));
+
+  const names = !positional[0] || positional[0] === 'all' ? Object.keys(SCENARIOS) : positional[0].split(',');
+  const unknown = names.filter(name => !SCENARIOS[name]);
+  if (unknown.length > 0) {
+    throw new Error(`Unknown scenarios: ${unknown.join(', ')} (available: ${Object.keys(SCENARIOS).join(', ')})`);
+  }
+  const seconds = parseFloat(positional[1]) || 15;
+
+  const mongo = await startMongo();
+  const dbName = `mindbridge_bench_${process.pid}`;
+  const client = await MongoClient.connect(mongo.uri, { serverSelectionTimeoutMS: MONGO_CONNECT_TIMEOUT_MS }).catch((error) => {
+    throw new Error(`Cannot reach MongoDB at ${mongo.uri} (${error.message}). Start a mongod, or set BENCH_MONGO_URI`);
+  });
+  const calCom = await startMockCalCom({ port: 0, latencyMs: PROVIDERS.calComLatencyMs });
+  const servers = [];
+
+  try {
+    const seeded = await seed(client.db(dbName));
+    console.error(`Seeded ${dbName} on ${mongo.kind} MongoDB: ${JSON.stringify(seeded)}`);
+
+    const serverEnv = {
+      PORT: String(PORT),
+      MONGO_URI: mongo.uri,
+      DB_NAME: dbName,
+      MONGOOSE_DB_NAME: dbName,
+      JWT_SECRET,
+      NODE_ENV: 'production',
+      LOG_LEVEL: 'warn',
+      USE_MOCK_GEMINI: 'true',
+      MOCK_GEMINI_FIRST_TOKEN_MS: String(PROVIDERS.geminiFirstTokenMs),
+      MOCK_GEMINI_CHUNK_DELAY_MS: String(PROVIDERS.geminiChunkDelayMs),
+      USE_MOCK_TOXICITY: 'true',
+      MOCK_TOXICITY_LATENCY_MS: String(PROVIDERS.toxicityLatencyMs),
+      CAL_COM_BASE_URL: calCom.url,
+      CAL_COM_API_KEY: 'bench',
+      USE_MOCK_CAL_DATA: 'false',
+      SMS_SIM_LATENCY_MS: String(PROVIDERS.smsLatencyMs),
+      SMS_SIM_FAILURE_RATE: '0'
+    };
+
+    const scenarios = [];
+    for (const name of names) {
+      // A fresh server per scenario, so caches and memory don't carry over
+      const server = await startServer(serverEnv);
+      servers.push(server);
+      console.error(`${name}: server ready in ${server.startup.readyMs}ms, running for ${seconds}s...`);
+
+      const result = await SCENARIOS[name]({ seconds, concurrency: CONCURRENCY });
+      result.startup = server.startup;
+      scenarios.push(result);
+      await server.stop();
+
+      console.error(`${name}: ${result.throughputPerSec}/s, p50 ${result.latencyMs.p50}ms, p99 ${result.latencyMs.p99}ms, ` +
+        `${result.errors} errors, peak RSS ${result.server.rssMb.peak}MB, event loop p99 ${result.server.eventLoopP99Ms}ms`);
+    }
+
+    const run = {
+      benchmark: 'backend',
+      meta: {
+        ...gitInfo(),
+        date: new Date().toISOString(),
+        node: process.version,
+        platform: `${os.platform()} ${os.arch()}`,
+        cpus: os.cpus().length,
+        cpuModel: os.cpus()[0] && os.cpus()[0].model,
+        totalMemMb: Math.round(os.totalmem() / 1048576),
+        mongo: mongo.kind,
+        options: {
+          seconds,
+          warmupSeconds: WARMUP_SECONDS,
+          concurrency: CONCURRENCY,
+          socketClients: SOCKET_CLIENTS,
+          socketGroups: SOCKET_GROUPS,
+          sendersPerGroup: SENDERS_PER_GROUP
+        },
+        providers: PROVIDERS,
+        seeded,
+        calComCalls: { ...calCom.stats }
+      },
+      scenarios
+    };
+
+    let regressions = 0;
+    if (compareFile) {
+      run.comparison = compareRuns(JSON.parse(fs.readFileSync(compareFile, 'utf8')), run);
+      printComparison(run.comparison);
+      regressions = run.comparison.rows.filter(row => row.regression).length;
+    }
+
+    const output = JSON.stringify(run, null, 2);
+    if (outFile) {
+      fs.writeFileSync(outFile, output + '\n');
+      console.error(`Results written to ${outFile}`);
+    } else {
+      console.log(output);
+    }
+
+    return failOnRegression && regressions > 0 ? 1 : 0;
+  } finally {
+    await Promise.all(servers.map(server => server.stop()));
+    await client.db(dbName).dropDatabase().catch(() => {});
+    await client.close();
+    await calCom.close();
+    await mongo.stop();
+  }
+}
+
+main()
+  .then((code) => process.exit(code))
+  .catch((error) => {
+    console.error('Benchmark failed:', error);
+    process.exit(1);
+  });
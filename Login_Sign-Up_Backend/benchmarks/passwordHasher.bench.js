@@ -0,0 +1,174 @@
+// benchmarks/passwordHasher.bench.js
+// Login spike benchmark. For each bcrypt pool size it starts a server running
+// the real /api/auth/login handler (users are kept in memory instead of
+// MongoDB), drives concurrent logins against it, and meanwhile measures the
+// latency of an unrelated endpoint and the server's event loop delay.
+// Pool size 0 hashes on the main thread, the way logins worked before.
+// Usage: node benchmarks/passwordHasher.bench.js [poolSizes] [concurrency] [seconds]
+//   e.g. node benchmarks/passwordHasher.bench.js 0,2,4 32 10
+const http = require('http');
+const { fork } = require('child_process');
+
+const PORT = parseInt(process.env.BENCH_PORT, 10) || 5098;
+const USERS = 50;
+const PROBE_INTERVAL_MS = 20;
+
+/**
+ * Server process: the auth router with an in-memory user lookup, plus an
+ * endpoint that does no password work at all
+ */
+async function runServer() {
+  // Keep the login handler's logging out of the measurements
+  console.log = () => {};
+
+  const bcrypt = require('bcryptjs');
+  const userModel = require('../models/user');
+  const users = new Map();
+  const hash = await bcrypt.hash('correct horse battery staple', 10);
+  for (let i = 0; i < USERS; i++) {
+    users.set(`user${i}@example.com`, { _id: `id${i}`, userId: `user_${i}`, name: `User ${i}`, email: `user${i}@example.com`, password: hash });
+  }
+  // The controller picks up the model functions when it's required
+  userModel.findUserByEmail = async (email) => users.get(email) || null;
+
+  const express = require('express');
+  const authRoutes = require('../routes/authRoutes');
+  const { passwordHasher } = require('../services/passwordHasher');
+  const { startEventLoopMonitor, eventLoopLag } = require('../services/eventLoopLag');
+
+  const app = express();
+  app.use(express.json());
+  app.use('/api/auth', authRoutes);
+  app.get('/ping', (req, res) => res.json({ ok: true }));
+  app.get('/stats', (req, res) => res.json({
+    passwordHasher: passwordHasher.getMetrics(),
+    eventLoopLag: eventLoopLag({ reset: req.query.reset === 'true' })
+  }));
+
+  startEventLoopMonitor(1);
+  app.listen(PORT, () => process.send({ type: 'listening' }));
+}
+
+function request(agent, method, path, body) {
+  return new Promise((resolve, reject) => {
+    const payload = body ? JSON.stringify(body) : null;
+    const req = http.request({
+      host: '127.0.0.1',
+      port: PORT,
+      method,
+      path,
+      agent,
+      headers: payload ? { 'Content-Type': 'application/json', 'Content-Length': Buffer.byteLength(payload) } : {}
+    }, (res) => {
+      let data = '';
+      res.on('data', chunk => { data += chunk; });
+      res.on('end', () => resolve({ status: res.statusCode, body: data }));
+    });
+    req.on('error', reject);
+    req.end(payload);
+  });
+}
+
+function percentile(sorted, p) {
+  if (sorted.length === 0) {
+    return 0;
+  }
+  return +sorted[Math.min(sorted.length - 1, Math.floor((p / 100) * sorted.length))].toFixed(2);
+}
+
+async function runScenario(poolSize, concurrency, seconds) {
+  const server = fork(__filename, [], {
+    env: { ...process.env, BENCH_ROLE: 'server', BCRYPT_POOL_SIZE: String(poolSize) }
+  });
+  await new Promise(resolve => server.on('message', message => message.type === 'listening' && resolve()));
+
+  const agent = new http.Agent({ keepAlive: true, maxSockets: concurrency + 1 });
+  const loginLatencies = [];
+  const probeLatencies = [];
+  const statuses = {};
+  let running = true;
+
+  // Warm up the pool and reset the lag window before measuring
+  await request(agent, 'POST', '/api/auth/login', { email: 'user0@example.com', password: 'correct horse battery staple' });
+  await request(agent, 'GET', '/stats?reset=true');
+
+  const loginLoop = async (index) => {
+    while (running) {
+      const startedAt = performance.now();
+      const { status } = await request(agent, 'POST', '/api/auth/login', {
+        email: `user${index % USERS}@example.com`,
+        // Every fourth attempt uses a wrong password, which costs the same bcrypt work
+        password: index % 4 === 0 ? 'wrong password' : 'correct horse battery staple'
+      });
+      statuses[status] = (statuses[status] || 0) + 1;
+      if (status !== 503) {
+        loginLatencies.push(performance.now() - startedAt);
+      }
+      index += concurrency;
+    }
+  };
+
+  const probeLoop = async () => {
+    while (running) {
+      const startedAt = performance.now();
+      await request(agent, 'GET', '/ping');
+      probeLatencies.push(performance.now() - startedAt);
+      await new Promise(resolve => setTimeout(resolve, PROBE_INTERVAL_MS));
+    }
+  };
+
+  const loops = [probeLoop(), ...Array.from({ length: concurrency }, (_, i) => loginLoop(i))];
+  await new Promise(resolve => setTimeout(resolve, seconds * 1000));
+  running = false;
+  await Promise.all(loops);
+
+  const stats = JSON.parse((await request(agent, 'GET', '/stats')).body);
+  agent.destroy();
+  server.kill();
+
+  loginLatencies.sort((a, b) => a - b);
+  probeLatencies.sort((a, b) => a - b);
+
+  return {
+    poolSize,
+    concurrency,
+    seconds,
+    loginsPerSec: Math.round(loginLatencies.length / seconds),
+    loginStatuses: statuses,
+    loginP50Ms: percentile(loginLatencies, 50),
+    loginP99Ms: percentile(loginLatencies, 99),
+    unrelatedP50Ms: percentile(probeLatencies, 50),
+    unrelatedP99Ms: percentile(probeLatencies, 99),
+    unrelatedMaxMs: percentile(probeLatencies, 100),
+    eventLoopLag: stats.eventLoopLag,
+    passwordHasher: stats.passwordHasher
+  };
+}
+
+async function main() {
+  const poolSizes = (process.argv[2] || '0,2,4').split(',').map(Number);
+  const concurrency = parseInt(process.argv[3], 10) || 32;
+  const seconds = parseInt(process.argv[4], 10) || 10;
+
+  const results = [];
+  for (const poolSize of poolSizes) {
+    const result = await runScenario(poolSize, concurrency, seconds);
+    console.error(`pool size ${poolSize}: ${result.loginsPerSec} logins/sec, unrelated p99 ${result.unrelatedP99Ms}ms, event loop p99 ${result.eventLoopLag.p99}ms`);
+    results.push(result);
+  }
+
+  console.log(JSON.stringify({ benchmark: 'password-hasher', node: process.version, results }, null, 2));
+  process.exit(0);
+}
+
+if (process.env.BENCH_ROLE === 'server') {
+  runServer().catch((error) => {
+    console.error('Benchmark server failed:', error);
+    process.exit(1);
+  });
+} else {
+  main().catch((error) => {
+    console.error('Benchmark failed:', error);
+    process.exit(1);
+  });
+}
@@ -0,0 +1,348 @@
+// benchmarks/socketFanout.bench.js
+// Load test for community chat fan-out across cluster workers. For each worker
+// count it starts a cluster of minimal chat servers (the same joinGroup /
+// newMessage / broker adapter path as server.js, without MongoDB), connects
+// websocket clients that are spread across the workers, and measures how many
+// messages per second are delivered to group members.
+// Usage: node benchmarks/socketFanout.bench.js [workerCounts] [clients] [seconds]
+//   e.g. node benchmarks/socketFanout.bench.js 1,2,4 400 10
+// With BENCH_MODE=relay it measures only the cross-worker hop: each worker
+// publishes chat broadcasts on an IpcBroker and the primary relays them, with
+// no Socket.io or websockets involved.
+// Usage: BENCH_MODE=relay node benchmarks/socketFanout.bench.js [workerCounts] [messagesPerWorker]
+const cluster = require('cluster');
+const http = require('http');
+const path = require('path');
+const { fork } = require('child_process');
+const { performance } = require('perf_hooks');
+
+const PORT = parseInt(process.env.BENCH_PORT, 10) || 5099;
+const GROUPS = parseInt(process.env.BENCH_GROUPS, 10) || 20;
+const SENDERS_PER_GROUP = parseInt(process.env.BENCH_SENDERS_PER_GROUP, 10) || 2;
+const LOAD_PROCESSES = parseInt(process.env.BENCH_LOAD_PROCESSES, 10) || 4;
+const RELAY_CHANNEL = 'bench#broadcast';
+// Messages each relay worker publishes per event loop turn
+const RELAY_BATCH = 500;
+
+/**
+ * Chat server running in each cluster worker
+ */
+function runServer() {
+  const socketIo = require('socket.io');
+  const { IpcBroker, createBrokerAdapter } = require('../services/socketBroker');
+
+  const server = http.createServer();
+  const io = socketIo(server, { transports: ['websocket'] });
+  io.adapter(createBrokerAdapter(new IpcBroker()));
+
+  const counters = new Map();
+
+  io.on('connection', (socket) => {
+    socket.on('joinGroup', (groupId) => {
+      socket.join(groupId);
+    });
+
+    socket.on('newMessage', (messageData) => {
+      // Stand-in for the IPC sequencer; the fan-out cost is what is measured here
+      const seq = (counters.get(messageData.groupId) || 0) + 1;
+      counters.set(messageData.groupId, seq);
+
+      io.to(messageData.groupId).emit('receiveMessage', {
+        groupId: messageData.groupId,
+        seq,
+        message: messageData.message,
+        sender: messageData.sender,
+        isAnonymous: false,
+        timestamp: new Date()
+      });
+    });
+  });
+
+  server.listen(PORT);
+}
+
+/**
+ * Load generator: opens raw Engine.IO v4 websocket connections so the client
+ * side stays cheap. Each sender sends its next message as soon as its previous
+ * one comes back, so the offered load follows what the servers can deliver.
+ */
+function runLoad() {
+  // Use the ws package that socket.io itself depends on
+  const WebSocket = require(require.resolve('ws', { paths: [path.dirname(require.resolve('engine.io'))] }));
+  const { clients, offset, seconds } = JSON.parse(process.env.BENCH_LOAD);
+
+  let received = 0;
+  let sent = 0;
+  let connected = 0;
+  let running = false;
+  const connections = [];
+
+  const send = (ws, groupId, sender) => {
+    sent++;
+    ws.send('42' + JSON.stringify(['newMessage', {
+      groupId,
+      sender,
+      message: 'Keep going, you are doing better than you think'
+    }]));
+  };
+
+  for (let i = 0; i < clients; i++) {
+    const index = offset + i;
+    const groupId = `bench-group-${index % GROUPS}`;
+    const sender = `bench-user-${index}`;
+    const isSender = Math.floor(index / GROUPS) < SENDERS_PER_GROUP;
+    const ws = new WebSocket(`ws://127.0.0.1:${PORT}/socket.io/?EIO=4&transport=websocket`);
+    connections.push({ ws, groupId, sender, isSender });
+
+    ws.on('message', (data) => {
+      const frame = data.toString();
+
+      if (frame === '2') {
+        ws.send('3'); // Engine.IO ping
+      } else if (frame.startsWith('0')) {
+        ws.send('40'); // Connect to the default namespace
+      } else if (frame.startsWith('40')) {
+        ws.send('42' + JSON.stringify(['joinGroup', groupId]));
+        connected++;
+        if (connected === clients) {
+          process.send({ type: 'connected' });
+        }
+      } else if (frame.startsWith('42') && running) {
+        received++;
+        if (isSender && frame.includes(`"sender":"${sender}"`)) {
+          send(ws, groupId, sender);
+        }
+      }
+    });
+
+    ws.on('error', (error) => {
+      console.error(`Client ${index} error:`, error.message);
+    });
+  }
+
+  process.on('message', (command) => {
+    if (command.type !== 'start') {
+      return;
+    }
+
+    running = true;
+    for (const connection of connections) {
+      if (connection.isSender) {
+        send(connection.ws, connection.groupId, connection.sender);
+      }
+    }
+
+    setTimeout(() => {
+      running = false;
+      process.send({ type: 'result', sent, received });
+      connections.forEach(connection => connection.ws.terminate());
+      process.exit(0);
+    }, seconds * 1000);
+  });
+}
+
+/**
+ * Relay worker: publishes its share of broadcasts on an IpcBroker and reports
+ * once it has received every worker's broadcasts, its own included
+ */
+function runRelay() {
+  const { IpcBroker } = require('../services/socketBroker');
+  const { workers, messages } = JSON.parse(process.env.BENCH_RELAY);
+  const broker = new IpcBroker();
+  const expected = workers * messages;
+  let received = 0;
+
+  broker.subscribe(RELAY_CHANNEL, () => {
+    received++;
+    if (received === expected) {
+      process.send({ type: 'relayDone' });
+    }
+  });
+
+  process.on('message', (command) => {
+    if (command.type !== 'start') {
+      return;
+    }
+
+    let sent = 0;
+    const sendBatch = () => {
+      for (let i = 0; i < RELAY_BATCH && sent < messages; i++, sent++) {
+        broker.publish(RELAY_CHANNEL, {
+          groupId: `bench-group-${sent % GROUPS}`,
+          seq: sent,
+          message: 'Keep going, you are doing better than you think',
+          sender: `bench-user-${cluster.worker.id}`,
+          isAnonymous: false,
+          timestamp: new Date()
+        });
+      }
+      if (sent < messages) {
+        setImmediate(sendBatch);
+      }
+    };
+    sendBatch();
+  });
+
+  process.send({ type: 'ready' });
+}
+
+function waitForMessage(worker, type) {
+  return new Promise((resolve) => {
+    const onMessage = (message) => {
+      if (message && message.type === type) {
+        worker.off('message', onMessage);
+        resolve();
+      }
+    };
+    worker.on('message', onMessage);
+  });
+}
+
+async function runRelayScenario(workers, messages) {
+  const forked = [];
+  for (let i = 0; i < workers; i++) {
+    forked.push(cluster.fork({ BENCH_ROLE: 'relay', BENCH_RELAY: JSON.stringify({ workers, messages }) }));
+  }
+  await Promise.all(forked.map(worker => waitForMessage(worker, 'ready')));
+
+  const done = Promise.all(forked.map(worker => waitForMessage(worker, 'relayDone')));
+  const start = performance.now();
+  forked.forEach(worker => worker.send({ type: 'start' }));
+  await done;
+  const seconds = (performance.now() - start) / 1000;
+
+  await stopWorkers();
+
+  return {
+    workers,
+    messagesPerWorker: messages,
+    seconds: +seconds.toFixed(2),
+    messagesPublishedPerSec: Math.round((workers * messages) / seconds),
+    messagesDeliveredPerSec: Math.round((workers * workers * messages) / seconds)
+  };
+}
+
+/**
+ * Start a cluster with the given number of workers and wait until all listen
+ */
+function startWorkers(count) {
+  return new Promise((resolve) => {
+    let listening = 0;
+    const onListening = () => {
+      listening++;
+      if (listening === count) {
+        cluster.off('listening', onListening);
+        resolve();
+      }
+    };
+    cluster.on('listening', onListening);
+
+    for (let i = 0; i < count; i++) {
+      cluster.fork({ BENCH_ROLE: 'server' });
+    }
+  });
+}
+
+function stopWorkers() {
+  return new Promise((resolve) => {
+    const workers = Object.values(cluster.workers);
+    if (workers.length === 0) {
+      return resolve();
+    }
+
+    let exited = 0;
+    workers.forEach((worker) => {
+      worker.once('exit', () => {
+        exited++;
+        if (exited === workers.length) {
+          resolve();
+        }
+      });
+      worker.kill();
+    });
+  });
+}
+
+async function runScenario(workers, totalClients, seconds) {
+  await startWorkers(workers);
+
+  const perProcess = Math.ceil(totalClients / LOAD_PROCESSES);
+  const loaders = [];
+  for (let offset = 0; offset < totalClients; offset += perProcess) {
+    loaders.push(fork(__filename, [], {
+      env: {
+        ...process.env,
+        BENCH_ROLE: 'load',
+        BENCH_LOAD: JSON.stringify({ clients: Math.min(perProcess, totalClients - offset), offset, seconds })
+      }
+    }));
+  }
+
+  await Promise.all(loaders.map(loader => new Promise(resolve => {
+    loader.on('message', message => message.type === 'connected' && resolve());
+  })));
+
+  const results = loaders.map(loader => new Promise(resolve => {
+    loader.on('message', message => message.type === 'result' && resolve(message));
+  }));
+  loaders.forEach(loader => loader.send({ type: 'start' }));
+
+  const totals = (await Promise.all(results)).reduce((sum, result) => ({
+    sent: sum.sent + result.sent,
+    received: sum.received + result.received
+  }), { sent: 0, received: 0 });
+
+  await stopWorkers();
+
+  return {
+    workers,
+    clients: totalClients,
+    groups: GROUPS,
+    sendersPerGroup: SENDERS_PER_GROUP,
+    seconds,
+    messagesSentPerSec: Math.round(totals.sent / seconds),
+    messagesDeliveredPerSec: Math.round(totals.received / seconds)
+  };
+}
+
+async function main() {
+  const relayOnly = process.env.BENCH_MODE === 'relay';
+  const workerCounts = (process.argv[2] || '1,2,4').split(',').map(Number);
+  const clients = parseInt(process.argv[3], 10) || 400;
+  const seconds = parseInt(process.argv[4], 10) || 10;
+  const relayMessages = parseInt(process.argv[3], 10) || 100000;
+
+  const { relayBrokerMessages } = require('../services/socketBroker');
+  cluster.setupPrimary({ exec: __filename });
+  relayBrokerMessages(cluster);
+
+  const results = [];
+  for (const workers of workerCounts) {
+    const result = relayOnly
+      ? await runRelayScenario(workers, relayMessages)
+      : await runScenario(workers, clients, seconds);
+    console.error(`${workers} worker(s): ${result.messagesDeliveredPerSec} messages delivered/sec`);
+    results.push(result);
+  }
+
+  const baseline = results[0].messagesDeliveredPerSec;
+  results.forEach((result) => {
+    result.speedupVsFirst = baseline > 0 ? +(result.messagesDeliveredPerSec / baseline).toFixed(2) : null;
+  });
+
+  console.log(JSON.stringify({ benchmark: relayOnly ? 'socket-fanout-relay' : 'socket-fanout', node: process.version, results }, null, 2));
+  process.exit(0);
+}
+
+if (process.env.BENCH_ROLE === 'server') {
+  runServer();
+} else if (process.env.BENCH_ROLE === 'load') {
+  runLoad();
+} else if (process.env.BENCH_ROLE === 'relay') {
+  runRelay();
+} else {
+  main().catch((error) => {
+    console.error('Benchmark failed:', error);
+    process.exit(1);
+  });
+}
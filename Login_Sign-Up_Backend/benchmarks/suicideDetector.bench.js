@@ -0,0 +1,181 @@
+// benchmarks/suicideDetector.bench.js
+// Compares the compiled suicide detector against the previous per-phrase
+// includes loop plus six regexes, and times loading the patterns from a
+// synthetic dataset: the previous readFile + split, the streaming build, and
+// the snapshot.
+// Usage: node benchmarks/suicideDetector.bench.js [iterations] [datasetRows]
+const fs = require('fs');
+const os = require('os');
+const path = require('path');
+const { performance } = require('perf_hooks');
+const { SuicideDetector, BASE_SUICIDE_INDICATORS } = require('../services/suicideDetector');
+
+const iterations = parseInt(process.argv[2], 10) || 50000;
+const datasetRows = parseInt(process.argv[3], 10) || 100000;
+
+// Previous implementation, kept here as the baseline
+function legacyDetectSuicidalContent(text) {
+  if (!text) return { isSuicidal: false };
+
+  const textLower = text.toLowerCase();
+
+  for (const phrase of BASE_SUICIDE_INDICATORS) {
+    if (textLower.includes(phrase)) {
+      return { isSuicidal: true, matchedPhrase: phrase };
+    }
+  }
+
+  const suicidePatterns = [
+    /i (?:want|need|wish) to d[ie]{2}/i,
+    /(?:kill(?:ing)? myself|end(?:ing)? (?:my life|it all))/i,
+    /(?:don'?t|do not) want to (?:live|be here|exist)/i,
+    /(?:hate|tired of) (?:my )?life/i,
+    /(?:put (?:myself|me) to rest)/i,
+    /(?:no reason to (?:live|be here|continue))/i
+  ];
+
+  for (const pattern of suicidePatterns) {
+    if (pattern.test(textLower)) {
+      return { isSuicidal: true, matchedPattern: pattern.toString() };
+    }
+  }
+
+  return { isSuicidal: false };
+}
+
+async function legacyLoad(datasetPath) {
+  const data = await fs.promises.readFile(datasetPath, 'utf8');
+  const [header, ...records] = data.split('\n');
+  const columns = header.split(',').map(col => col.trim().toLowerCase());
+  const tweetIndex = columns.indexOf('tweet');
+  const suicideIndex = columns.indexOf('suicide');
+  return records
+    .filter(record => record.trim())
+    .map(record => {
+      const fields = record.split(',');
+      return { Tweet: fields[tweetIndex]?.trim() || '', Suicide: fields[suicideIndex]?.trim() || '' };
+    });
+}
+
+// Chatbot messages: mostly everyday ones, a few that must be caught
+const everyday = [
+  'I had a rough day at work and could use some tips to unwind tonight.',
+  'How do I stop overthinking every conversation I have with my friends?',
+  'My exams are next week and I feel anxious, can you help me make a study plan?',
+  'I have been sleeping badly lately, what are some good habits before bed?',
+  'Thanks, the breathing exercise you suggested yesterday really helped.'
+];
+const concerning = [
+  'Honestly I just want to die, nothing is getting better.',
+  'There is no reason to live anymore and I am so tired.'
+];
+
+function buildMessages(length) {
+  const messages = [];
+  for (let i = 0; i < 100; i++) {
+    let message = '';
+    let j = i;
+    while (message.length < length) {
+      message += everyday[j++ % everyday.length] + ' ';
+    }
+    if (i % 20 === 0) {
+      message += concerning[i % concerning.length];
+    }
+    messages.push(message.trim());
+  }
+  return messages;
+}
+
+function time(fn, messages) {
+  // Warm up the JIT before measuring
+  for (let i = 0; i < 1000; i++) fn(messages[i % messages.length]);
+
+  const startedAt = performance.now();
+  for (let i = 0; i < iterations; i++) fn(messages[i % messages.length]);
+  const elapsed = performance.now() - startedAt;
+
+  return { opsPerSec: Math.round(iterations / (elapsed / 1000)), usPerOp: +((elapsed * 1000) / iterations).toFixed(2) };
+}
+
+function writeDataset(filePath, rows) {
+  const lines = ['Tweet,Suicide'];
+  for (let i = 0; i < rows; i++) {
+    const flagged = i % 3 === 0;
+    const tweet = flagged
+      ? `"feeling empty, i want to die some days (${i})"`
+      : `"went for a walk, saw friends, feeling ok (${i})"`;
+    lines.push(`${tweet},${flagged ? 'Potential Suicide post' : 'Not Suicide post'}`);
+  }
+  fs.writeFileSync(filePath, lines.join('\n'));
+}
+
+async function main() {
+  const detector = new SuicideDetector();
+  const scenarios = [
+    { name: 'short (70 chars)', length: 70 },
+    { name: 'typical (300 chars)', length: 300 },
+    { name: 'long (2000 chars)', length: 2000 }
+  ];
+
+  const detection = [];
+  for (const scenario of scenarios) {
+    const messages = buildMessages(scenario.length);
+
+    // Sanity check: both implementations must agree on what is flagged
+    for (const message of messages) {
+      if (legacyDetectSuicidalContent(message).isSuicidal !== detector.detect(message).isSuicidal) {
+        throw new Error(`Implementations disagree on: ${message}`);
+      }
+    }
+
+    detection.push({
+      scenario: scenario.name,
+      legacy: time(legacyDetectSuicidalContent, messages),
+      compiled: time(text => detector.detect(text), messages)
+    });
+  }
+
+  // Loading: the CSV is written to a temporary directory and removed afterwards
+  const dir = fs.mkdtempSync(path.join(os.tmpdir(), 'suicide-bench-'));
+  const datasetPath = path.join(dir, 'dataset.csv');
+  const snapshotPath = path.join(dir, 'patterns.snapshot');
+  writeDataset(datasetPath, datasetRows);
+
+  const heapBefore = process.memoryUsage().heapUsed;
+  let startedAt = performance.now();
+  const legacyRows = await legacyLoad(datasetPath);
+  const legacyMs = performance.now() - startedAt;
+  const legacyHeapMb = (process.memoryUsage().heapUsed - heapBefore) / 1048576;
+
+  const streaming = new SuicideDetector({ datasetPath, snapshotPath });
+  startedAt = performance.now();
+  await streaming.load();
+  const streamingMs = performance.now() - startedAt;
+
+  const fromSnapshot = new SuicideDetector({ datasetPath, snapshotPath });
+  startedAt = performance.now();
+  await fromSnapshot.load();
+  const snapshotMs = performance.now() - startedAt;
+
+  fs.rmSync(dir, { recursive: true, force: true });
+
+  console.log(JSON.stringify({
+    benchmark: 'suicideDetector',
+    iterations,
+    detection,
+    loading: {
+      datasetRows,
+      legacyReadFileMs: +legacyMs.toFixed(1),
+      legacyRowsKept: legacyRows.length,
+      legacyHeapMb: +legacyHeapMb.toFixed(1),
+      streamingBuildMs: +streamingMs.toFixed(1),
+      snapshotLoadMs: +snapshotMs.toFixed(1),
+      snapshotSource: fromSnapshot.source
+    }
+  }, null, 2));
+}
+
+main().catch((error) => {
+  console.error('Benchmark failed:', error);
+  process.exit(1);
+});
@@ -0,0 +1,97 @@
+// benchmarks/toxicFilter.bench.js
+// Compares the compiled toxic word matcher against the previous per-word RegExp scan.
+// Usage: node benchmarks/toxicFilter.bench.js [iterations]
+const { performance } = require('perf_hooks');
+const { containsToxicWord, censorToxicWords, toxicWords } = require('../middleware/toxicFilter');
+
+const iterations = parseInt(process.argv[2], 10) || 20000;
+
+// Previous implementation, kept here as the baseline
+function escapeWord(word) {
+  return word.replace(/[-\/\\^$*+?.()|[\]{}]/g, '\\$&');
+}
+
+function legacyContainsToxicWord(message) {
+  if (!message) return { containsToxicWord: false };
+  const lowercaseMessage = message.toLowerCase();
+  for (const word of toxicWords) {
+    const wordPattern = new RegExp('\\b' + escapeWord(word) + '\\b', 'i');
+    if (wordPattern.test(lowercaseMessage)) {
+      return { containsToxicWord: true, toxicWord: word };
+    }
+  }
+  return { containsToxicWord: false, toxicWord: '' };
+}
+
+function legacyCensorToxicWords(message) {
+  if (!message) return '';
+  let censoredMessage = message;
+  for (const word of toxicWords) {
+    const wordPattern = new RegExp('\\b' + escapeWord(word) + '\\b', 'i');
+    if (wordPattern.test(censoredMessage.toLowerCase())) {
+      censoredMessage = censoredMessage.replace(new RegExp(wordPattern, 'gi'), '*'.repeat(word.length));
+    }
+  }
+  return censoredMessage;
+}
+
+// Realistic community chat messages: short replies, typical posts and long venting posts
+const cleanSentences = [
+  'Thanks everyone for the support today, it really helped me get through the afternoon.',
+  'I tried the breathing exercise from the meditation feed and I feel a lot calmer now.',
+  'Does anyone have tips for sleeping better when your mind keeps racing at night?',
+  'Work has been overwhelming this week but I am trying to take small breaks.',
+  'Glad to hear you are doing better, keep going!'
+];
+
+function buildMessage(targetLength, toxic) {
+  let message = '';
+  let i = 0;
+  while (message.length < targetLength) {
+    message += cleanSentences[i++ % cleanSentences.length] + ' ';
+  }
+  if (toxic) {
+    message += 'This is such a stupid situation, what the hell.';
+  }
+  return message.trim();
+}
+
+const scenarios = [
+  { name: 'short (40 chars)', length: 40 },
+  { name: 'typical (200 chars)', length: 200 },
+  { name: 'long (2000 chars)', length: 2000 }
+];
+
+function time(fn, messages) {
+  // Warm up the JIT before measuring
+  for (let i = 0; i < 1000; i++) fn(messages[i % messages.length]);
+
+  const startedAt = performance.now();
+  for (let i = 0; i < iterations; i++) fn(messages[i % messages.length]);
+  const elapsed = performance.now() - startedAt;
+
+  return { opsPerSec: Math.round(iterations / (elapsed / 1000)), usPerOp: +((elapsed * 1000) / iterations).toFixed(2) };
+}
+
+const results = [];
+
+for (const scenario of scenarios) {
+  const messages = [buildMessage(scenario.length, false), buildMessage(scenario.length, true)];
+
+  // Sanity check: both implementations must agree on what is toxic
+  for (const message of messages) {
+    if (legacyContainsToxicWord(message).containsToxicWord !== containsToxicWord(message).containsToxicWord) {
+      throw new Error(`Implementations disagree on: ${message}`);
+    }
+  }
+
+  results.push({
+    scenario: scenario.name,
+    containsLegacy: time(legacyContainsToxicWord, messages),
+    containsCompiled: time(containsToxicWord, messages),
+    censorLegacy: time(legacyCensorToxicWords, messages),
+    censorCompiled: time(censorToxicWords, messages)
+  });
+}
+
+console.log(JSON.stringify({ benchmark: 'toxicFilter', iterations, results }, null, 2));
@@ -0,0 +1,62 @@
+// cluster.js - Runs the MindBridge server on several worker processes sharing one port
+// Usage: CLUSTER_WORKERS=4 node cluster.js
+require('dotenv').config();
+const cluster = require('cluster');
+const os = require('os');
+const path = require('path');
+const { relayBrokerMessages } = require('./services/socketBroker');
+const { createSeqAllocator, serveIpcSequencer, servePeerSync } = require('./services/chatWriteBehind');
+const { connectToMongoDB } = require('./db');
+
+const workerCount = parseInt(process.env.CLUSTER_WORKERS, 10) || os.availableParallelism();
+let shuttingDown = false;
+
+cluster.setupPrimary({
+  exec: path.join(__dirname, 'server.js')
+});
+
+// Workers talk to each other through the primary: Socket.io room broadcasts
+// are relayed to every other worker, chat sequence ids are handed out here, and
+// chat reads can ask every worker to persist its buffer for a group
+relayBrokerMessages(cluster);
+
+// The primary reserves sequence ids from the persisted counter, connecting on first use
+const collection = (name) => async () => (await connectToMongoDB()).collection(name);
+const sequencer = createSeqAllocator({
+  getCollection: collection('chatMessages'),
+  getCounters: collection('chatSequences')
+});
+serveIpcSequencer(sequencer, cluster);
+servePeerSync(sequencer, cluster);
+
+console.log(`MindBridge primary ${process.pid} starting ${workerCount} workers`);
+for (let i = 0; i < workerCount; i++) {
+  cluster.fork();
+}
+
+// Replace workers that crash
+cluster.on('exit', (worker, code, signal) => {
+  if (shuttingDown) {
+    if (Object.keys(cluster.workers).length === 0) {
+      console.log('All workers stopped. Exiting primary.');
+      process.exit(0);
+    }
+    return;
+  }
+
+  console.warn(`Worker ${worker.id} exited (${signal || code}), starting a replacement`);
+  cluster.fork();
+});
+
+// Ctrl+C reaches every process in the group, so workers shut themselves down;
+// SIGTERM only reaches the primary and has to be passed on
+process.on('SIGINT', () => {
+  shuttingDown = true;
+});
+
+process.on('SIGTERM', () => {
+  shuttingDown = true;
+  for (const worker of Object.values(cluster.workers)) {
+    worker.process.kill('SIGINT');
+  }
+});
@@ -1,19 +1,10 @@
-const mongoose = require("mongoose");
-const dotenv = require("dotenv");
-
-dotenv.config(); // Load environment variables
+const { connectWithMongoose } = require("../db");
 
+// The feed models use the default Mongoose connection, which db.js opens once
+// for the whole server; this reuses it instead of calling mongoose.connect again
 const connectDB = async () => {
-  try {
-    await mongoose.connect(process.env.MONGO_URI, {
-      useNewUrlParser: true,
-      useUnifiedTopology: true,
-    });
-    console.log("✅ MongoDB Connected");
-  } catch (error) {
-    console.error("❌ MongoDB Connection Error:", error);
-    process.exit(1);
-  }
+  await connectWithMongoose();
+  console.log("✅ MongoDB Connected");
 };
 
 module.exports = connectDB;
\ No newline at end of file
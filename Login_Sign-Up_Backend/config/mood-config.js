@@ -17,5 +17,19 @@ module.exports = {
       defaultPageSize: 10,
       maxPageSize: 50,
       moodHistoryDays: 30  // Number of days to keep mood history
+    },
+    
+    // Offline sync settings - the app sends queued mood changes in one request
+    sync: {
+      maxBatchSize: 100,      // Entries accepted per sync request
+      maxClockSkewMs: 5 * 60 * 1000, // How far ahead of the server a client's updatedAt may be
+      rebuildThreshold: 10,   // Above this many changes, rebuild the rollup once instead of per entry
+      maxTzOffsetMinutes: 14 * 60 // Largest UTC offset a client may send
+    },
+    
+    // Rollup document settings - keeps each user's summary a fixed size
+    rollup: {
+      daysKept: 35,   // Daily entries kept in the rollup (covers the history window and weekly view)
+      weeksKept: 12   // Weekly aggregates kept in the rollup
     }
   };
\ No newline at end of file
@@ -5,7 +5,66 @@ const { connectWithMongoose, getMongoose } = require('../db');
 let moodDBConnected = false;
 
 /**
- * Connect to MongoDB for the mood tracker using your .env configuration
+ * Make sure the moods collection and its indexes exist
+ * @returns {Promise<void>}
+ */
+const ensureMoodCollection = async () => {
+  const mongoose = getMongoose();
+  
+  // Only ask for the one collection we care about
+  const existing = await mongoose.connection.db
+    .listCollections({ name: 'moods' }, { nameOnly: true })
+    .toArray();
+  
+  if (existing.length > 0) {
+    console.log('Moods collection already exists');
+    return;
+  }
+  
+  // Create moods collection if it doesn't exist
+  console.log('Creating moods collection...');
+  try {
+    await mongoose.connection.db.createCollection('moods');
+    console.log('Moods collection created successfully');
+  } catch (collError) {
+    // In case of error - try a different approach
+    console.error('Error creating collection directly:', collError.message);
+    
+    // Sometimes Atlas has permission issues with createCollection command
+    // Try creating it by inserting a document
+    try {
+      await mongoose.connection.db.collection('moods').insertOne({
+        _test: true,
+        createdAt: new Date()
+      });
+      console.log('Moods collection created via insertion');
+      
+      // Clean up test document
+      await mongoose.connection.db.collection('moods').deleteOne({ _test: true });
+    } catch (insertError) {
+      console.error('Failed to create collection via insertion:', insertError.message);
+      throw insertError;
+    }
+  }
+  
+  // Create indexes for better performance
+  try {
+    await mongoose.connection.db.collection('moods').createIndexes([
+      { key: { userId: 1 } },
+      { key: { date: -1 } },
+      { key: { userId: 1, date: -1 } }
+    ]);
+    console.log('Indexes created for moods collection');
+  } catch (indexError) {
+    console.warn('Could not create indexes:', indexError.message);
+    // Continue anyway, indexes can be created later
+  }
+};
+
+/**
+ * Connect to MongoDB for the mood tracker using your .env configuration.
+ * Resolves once the shared connection is up; the moods collection is set up
+ * in the background, since inserting into a missing collection creates it.
  * @returns {Promise<object>} Mongoose connection
  */
 const connectMoodDB = async () => {
@@ -15,71 +74,15 @@ const connectMoodDB = async () => {
     // Connect using the centralized connection
     const connection = await connectWithMongoose();
     
-    // Once connected, ensure the moods collection exists
-    const mongoose = getMongoose();
-    const dbName = process.env.DB_NAME || 'myapp';
-    
-    console.log(`Using database for mood tracker: ${dbName}`);
-    
-    // Get existing collections
-    const collections = await mongoose.connection.db.listCollections().toArray();
-    const collectionNames = collections.map(c => c.name);
-    
-    console.log('Checking for moods collection among existing collections:', collectionNames.join(', '));
+    console.log(`Using database for mood tracker: ${getMongoose().connection.name}`);
     
-    // Create moods collection if it doesn't exist
-    if (!collectionNames.includes('moods')) {
-      console.log('Creating moods collection...');
-      try {
-        await mongoose.connection.db.createCollection('moods');
-        console.log('Moods collection created successfully');
-      } catch (collError) {
-        // In case of error - try a different approach
-        console.error('Error creating collection directly:', collError.message);
-        
-        // Sometimes Atlas has permission issues with createCollection command
-        // Try creating it by inserting a document
-        try {
-          await mongoose.connection.db.collection('moods').insertOne({
-            _test: true,
-            createdAt: new Date()
-          });
-          console.log('Moods collection created via insertion');
-          
-          // Clean up test document
-          await mongoose.connection.db.collection('moods').deleteOne({ _test: true });
-        } catch (insertError) {
-          console.error('Failed to create collection via insertion:', insertError.message);
-          throw insertError;
-        }
-      }
-      
-      // Create indexes for better performance
-      try {
-        await mongoose.connection.db.collection('moods').createIndex({ userId: 1 });
-        await mongoose.connection.db.collection('moods').createIndex({ date: -1 });
-        await mongoose.connection.db.collection('moods').createIndex({ userId: 1, date: -1 });
-        console.log('Indexes created for moods collection');
-      } catch (indexError) {
-        console.warn('Could not create indexes:', indexError.message);
-        // Continue anyway, indexes can be created later
-      }
-    } else {
-      console.log('Moods collection already exists');
-    }
+    // Set connection flag
+    moodDBConnected = true;
+    console.log('Mood tracker database initialized successfully');
     
-    // Verify we can access the moods collection
-    try {
-      const count = await mongoose.connection.db.collection('moods').countDocuments();
-      console.log(`Found ${count} existing mood documents`);
-      
-      // Set connection flag
-      moodDBConnected = true;
-      console.log('Mood tracker database initialized successfully');
-    } catch (countError) {
-      console.error('Error counting mood documents:', countError);
-      throw countError;
-    }
+    ensureMoodCollection().catch((error) => {
+      console.error('Error setting up the moods collection:', error.message);
+    });
     
     return connection;
   } catch (error) {
@@ -106,6 +109,7 @@ const resetMoodDBConnection = () => {
 
 module.exports = {
   connectMoodDB,
+  ensureMoodCollection,
   isMoodDBConnected,
   resetMoodDBConnection
 };
\ No newline at end of file
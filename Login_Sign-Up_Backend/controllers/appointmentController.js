@@ -214,7 +214,7 @@ exports.cancelAppointment = async (req, res) => {
     
     // Cancel in Cal.com
     try {
-      await calComApi.cancelBooking(appointment.calComBookingId);
+      await calComApi.cancelBooking(appointment.calComBookingId, appointment.appointmentTime);
       console.log('Appointment cancelled in Cal.com');
     } catch (calError) {
       console.error('Cal.com cancellation error:', calError);
@@ -275,7 +275,7 @@ exports.rescheduleAppointment = async (req, res) => {
     
     // Reschedule in Cal.com
     try {
-      await calComApi.rescheduleBooking(appointment.calComBookingId, newStartTime);
+      await calComApi.rescheduleBooking(appointment.calComBookingId, newStartTime, appointment.appointmentTime);
       console.log('Appointment rescheduled in Cal.com');
     } catch (calError) {
       console.error('Cal.com rescheduling error:', calError);
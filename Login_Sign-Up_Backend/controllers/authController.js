@@ -5,14 +5,25 @@ const {
   verifyPassword,
   generateUserId
 } = require('../models/user');
+const { PasswordHasherBusyError } = require('../services/passwordHasher');
+const { logger } = require('../services/logger');
+
+// Password hashing is at capacity; ask the client to retry instead of queueing forever
+function sendBusy(res, error) {
+  res.set('Retry-After', String(error.retryAfterSeconds));
+  return res.status(503).json({
+    success: false,
+    msg: 'Server is busy, please try again shortly'
+  });
+}
 
 // Signup Function
 exports.signup = async (req, res) => {
   try {
     const { name, email, password, phone, emergencyContact } = req.body;
     
-    // Log raw incoming data
-    console.log("Raw signup data received:", req.body);
+    // Log raw incoming data, without the password
+    logger.debug("Raw signup data received:", { ...req.body, password: password ? '[redacted]' : password });
     
     // Validate input
     if (!name || !email || !password) {
@@ -40,12 +51,12 @@ exports.signup = async (req, res) => {
       emergencyContacts: []
     };
     
-    console.log("Phone value received:", phone);
+    logger.debug("Phone value received:", phone);
     
     // Handle emergency contact information - support both string and object formats
     if (emergencyContact) {
       // Log the emergency contact data received
-      console.log("Emergency contact received:", typeof emergencyContact, emergencyContact);
+      logger.debug("Emergency contact received:", typeof emergencyContact, emergencyContact);
       
       // Handle different formats of emergency contact data
       if (typeof emergencyContact === 'string' && emergencyContact.trim() !== '') {
@@ -58,7 +69,7 @@ exports.signup = async (req, res) => {
         };
         
         userData.emergencyContacts.push(formattedContact);
-        console.log("Added emergency contact from string:", formattedContact);
+        logger.debug("Added emergency contact from string:", formattedContact);
       } 
       else if (typeof emergencyContact === 'object' && emergencyContact !== null && emergencyContact.phone) {
         // If it's already an object with a phone property
@@ -70,12 +81,12 @@ exports.signup = async (req, res) => {
         };
         
         userData.emergencyContacts.push(formattedContact);
-        console.log("Added emergency contact from object:", formattedContact);
+        logger.debug("Added emergency contact from object:", formattedContact);
       }
     }
     
     // Log the final user data being created
-    console.log("Creating user with data:", {
+    logger.debug("Creating user with data:", {
       userId: userData.userId,
       name: userData.name,
       email: userData.email,
@@ -86,7 +97,7 @@ exports.signup = async (req, res) => {
     // Create user in database with all fields
     const newUser = await createUser(userData);
     
-    console.log("User registered successfully:", {
+    logger.debug("User registered successfully:", {
       id: newUser._id,
       userId: newUser.userId,
       name: newUser.name,
@@ -114,6 +125,10 @@ exports.signup = async (req, res) => {
   } catch (error) {
     console.error("Signup error:", error);
     
+    if (error instanceof PasswordHasherBusyError) {
+      return sendBusy(res, error);
+    }
+    
     // Handle duplicate email error
     if (error.message === 'User already exists') {
       return res.status(400).json({
@@ -152,12 +167,12 @@ exports.login = async (req, res) => {
       });
     }
     
-    console.log("Login attempt:", email);
+    logger.debug("Login attempt:", email);
     
     // Find user by email
     const user = await findUserByEmail(email);
     if (!user) {
-      console.log("User not found:", email);
+      logger.debug("User not found:", email);
       return res.status(401).json({
         success: false,
         msg: 'Invalid credentials'
@@ -167,24 +182,24 @@ exports.login = async (req, res) => {
     // Verify password
     const isMatch = await verifyPassword(user, password);
     if (!isMatch) {
-      console.log("Password mismatch for:", email);
+      logger.debug("Password mismatch for:", email);
       return res.status(401).json({
         success: false,
         msg: 'Invalid credentials'
       });
     }
     
-    console.log("Login successful for:", email);
+    logger.debug("Login successful for:", email);
     
     // Generate a consistent userId if it doesn't exist
     if (!user.userId) {
       user.userId = generateUserId(email);
-      console.log(`Generated missing userId ${user.userId} for user ${email}`);
+      logger.debug(`Generated missing userId ${user.userId} for user ${email}`);
       // Note: In a real implementation, you would save this back to the database
     }
     
     // Log user data for debugging
-    console.log("User profile data:", {
+    logger.debug("User profile data:", {
       name: user.name,
       userId: user.userId,
       profile: user.profile || {},
@@ -221,6 +236,11 @@ exports.login = async (req, res) => {
     
   } catch (error) {
     console.error("Login error:", error);
+    
+    if (error instanceof PasswordHasherBusyError) {
+      return sendBusy(res, error);
+    }
+    
     res.status(500).json({
       success: false,
       msg: 'Server error during login',
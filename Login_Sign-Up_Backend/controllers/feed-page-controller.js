@@ -1,11 +1,81 @@
 const Feed = require("../models/feed-page-model");
+const { FeedCache } = require("../services/feedCache");
+const {
+  InvalidCursorError,
+  encodeCursor,
+  decodeCursor,
+  keysetFilter,
+  parseLimit,
+} = require("../services/pagination");
 
-// ✅ Fetch all feed items
+// Page sizes for the feed list
+const FEED_PAGE_SIZE = 50;
+const MAX_FEED_PAGE_SIZE = 100;
+
+/**
+ * Read one page of the feed, newest first
+ * @param {Object} filter - Category filter ({} for all)
+ * @param {Object|null} cursor - Decoded cursor of the last item already seen
+ * @param {number} limit - Page size
+ * @returns {Promise<Object>} Cache entry for the page
+ */
+const loadFeedPage = async (filter, cursor, limit) => {
+  // One extra item tells whether there is a next page
+  const items = await Feed.find({ ...filter, ...keysetFilter(cursor, "createdAt", -1) })
+    .select("-__v")
+    .sort({ createdAt: -1, _id: -1 })
+    .limit(limit + 1)
+    .lean();
+
+  const hasMore = items.length > limit;
+  const page = hasMore ? items.slice(0, limit) : items;
+  return FeedCache.toEntry(page, {
+    nextCursor: hasMore ? encodeCursor(page[page.length - 1], "createdAt") : null,
+  });
+};
+
+// ✅ Fetch feed items, a page at a time (?limit=, ?cursor=, ?category=)
 const getFeeds = async (req, res) => {
   try {
-    const feeds = await Feed.find();
-    res.json(feeds);
+    const limit = parseLimit(req.query.limit, FEED_PAGE_SIZE, MAX_FEED_PAGE_SIZE);
+    const cursor = decodeCursor(req.query.cursor);
+    const category = typeof req.query.category === "string" && req.query.category !== "All"
+      ? req.query.category
+      : null;
+    const filter = category ? { category } : {};
+
+    const feedCache = req.app.get("feedCache");
+    const key = JSON.stringify([category, req.query.cursor || null, limit]);
+    const page = feedCache
+      ? await feedCache.get(key, () => loadFeedPage(filter, cursor, limit))
+      : await loadFeedPage(filter, cursor, limit);
+
+    // The body stays a plain array; the next page is linked through a header
+    if (page.nextCursor) {
+      res.set("X-Next-Cursor", page.nextCursor);
+    }
+    res.set({
+      ETag: page.etag,
+      "Cache-Control": "no-cache",
+      Vary: "Accept-Encoding",
+    });
+
+    // If-None-Match still matching: nothing to send
+    if (req.fresh) {
+      return res.status(304).end();
+    }
+
+    const { body, encoding } = feedCache
+      ? await feedCache.encode(page, req.get("Accept-Encoding"))
+      : { body: page.body, encoding: null };
+    if (encoding) {
+      res.set("Content-Encoding", encoding);
+    }
+    res.type("application/json").send(body);
   } catch (error) {
+    if (error instanceof InvalidCursorError) {
+      return res.status(400).json({ message: error.message });
+    }
     res.status(500).json({ message: error.message });
   }
 };
@@ -13,7 +83,7 @@ const getFeeds = async (req, res) => {
 // ✅ Fetch a single feed item by ID
 const getFeedById = async (req, res) => {
   try {
-    const feed = await Feed.findById(req.params.id);
+    const feed = await Feed.findById(req.params.id).select("-__v").lean();
     if (!feed) {
       return res.status(404).json({ message: "Feed not found" });
     }
@@ -26,7 +96,7 @@ const getFeedById = async (req, res) => {
 // ✅ Add a new feed item
 const addFeed = async (req, res) => {
   const { title, author, category, duration, description, image, url } = req.body;
-  
+
   try {
     const newFeed = new Feed({
       title,
@@ -37,8 +107,15 @@ const addFeed = async (req, res) => {
       image,
       url,
     });
-    
+
     const savedFeed = await newFeed.save();
+
+    // Cached pages no longer match the feed
+    const feedCache = req.app.get("feedCache");
+    if (feedCache) {
+      feedCache.invalidate();
+    }
+
     res.status(201).json(savedFeed);
   } catch (error) {
     res.status(500).json({ message: error.message });
@@ -1,11 +1,11 @@
 // controllers/moodController.js
 const Mood = require('../models/mood-model');
+const MoodRollup = require('../models/mood-rollup-model');
+const moodConfig = require('../config/mood-config');
 const { getMongoose } = require('../db');
 const mongoose = getMongoose();
 const { connectMoodDB } = require('../config/mood-db');
-
-// Map of days in the week for formatting
-const DAYS_OF_WEEK = ["Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"];
+const { logger } = require('../services/logger');
 
 // Helper function to ensure database connection
 const ensureConnection = async () => {
@@ -33,6 +33,75 @@ const getDayBoundaries = (date) => {
   return { startOfDay, endOfDay };
 };
 
+// Day keys the app sends, 'YYYY-MM-DD'
+const DAY_KEY_PATTERN = /^\d{4}-\d{2}-\d{2}$/;
+
+// Helper function to read the app's UTC offset in minutes east of UTC (as
+// Dart's timeZoneOffset), or null when it sent none or an invalid one
+const parseTzOffset = (value) => {
+  const offset = Number(value);
+  if (value == null || value === '' || !Number.isInteger(offset) ||
+      Math.abs(offset) > moodConfig.sync.maxTzOffsetMinutes) {
+    return null;
+  }
+  return offset;
+};
+
+// Helper function to get the calendar day a mood belongs to: the device's day
+// stored with it, else its date at the app's offset, else the server's day
+const dayOf = (mood, tzOffset) => {
+  if (mood.day) {
+    return mood.day;
+  }
+  return tzOffset === null ? MoodRollup.dayKey(mood.date) : MoodRollup.localDayKey(mood.date, tzOffset);
+};
+
+// Helper function to get the time range of a calendar day at the app's offset
+const getDayRange = (day, tzOffset) => {
+  if (tzOffset === null) {
+    const { startOfDay, endOfDay } = getDayBoundaries(MoodRollup.parseDayKey(day));
+    return { $gte: startOfDay, $lte: endOfDay };
+  }
+  
+  const start = Date.parse(`${day}T00:00:00Z`) - tzOffset * 60000;
+  return { $gte: new Date(start), $lte: new Date(start + 24 * 60 * 60 * 1000 - 1) };
+};
+
+// Helper function to keep the user's rollup in step with a mood write.
+// A failed rollup update shouldn't fail the save, so the rollup is dropped
+// and rebuilt from raw moods on the next read instead.
+const updateRollup = async (savedMood) => {
+  try {
+    await MoodRollup.recordMood(savedMood);
+  } catch (rollupError) {
+    console.error('Error updating mood rollup, it will be rebuilt on next read:', rollupError.message);
+    await MoodRollup.deleteOne({ userId: savedMood.userId }).catch(() => {});
+  }
+};
+
+// Helper function to apply a batch of mood writes to the user's rollup. Small
+// batches go through recordMood one day at a time; a long offline stretch is
+// cheaper as one rebuild.
+const updateRollupBatch = async (userId, changes, { rebuild = false } = {}) => {
+  if (changes.length === 0) {
+    return;
+  }
+  
+  if (!rebuild && changes.length <= moodConfig.sync.rebuildThreshold) {
+    for (const { mood } of changes) {
+      await updateRollup(mood);
+    }
+    return;
+  }
+  
+  try {
+    await MoodRollup.rebuildForUser(userId);
+  } catch (rollupError) {
+    console.error('Error rebuilding mood rollup, it will be rebuilt on next read:', rollupError.message);
+    await MoodRollup.deleteOne({ userId }).catch(() => {});
+  }
+};
+
 // Controller object with methods for handling mood-related operations
 const moodController = {
   // Get weekly mood data for a user
@@ -47,60 +116,10 @@ const moodController = {
       // Ensure connection before proceeding
       await ensureConnection();
       
-      // Calculate the start of the week (7 days ago)
-      const weekStart = new Date();
-      weekStart.setDate(weekStart.getDate() - 7);
-      weekStart.setHours(0, 0, 0, 0);
-      
-      console.log(`Fetching moods since ${weekStart} for user ${userId}`);
-      console.log('Mongoose connection state:', mongoose.connection.readyState);
-      
-      // Find moods for the current week
-      let moods;
-      try {
-        moods = await Mood.find({
-          userId,
-          date: { $gte: weekStart }
-        }).sort({ date: -1 }).lean();
-      } catch (findError) {
-        console.error('Error finding moods:', findError);
-        throw new Error(`Database query failed: ${findError.message}`);
-      }
-      
-      console.log(`Found ${moods.length} mood entries for the week`);
-      if (moods.length > 0) {
-        console.log('Sample mood entry:', JSON.stringify(moods[0]));
-      } else {
-        console.log('No mood entries found for this week');
-      }
-      
-      // Initialize weekly structure with zeros
-      const weeklyMoods = {
-        "Mon": 0, "Tue": 0, "Wed": 0, 
-        "Thu": 0, "Fri": 0, "Sat": 0, "Sun": 0
-      };
-      
-      // Use a Map to track the latest mood for each day
-      const dailyMoods = new Map();
-      
-      // Process found moods - group by day of week
-      moods.forEach(mood => {
-        const date = new Date(mood.date);
-        const dayOfWeek = DAYS_OF_WEEK[date.getDay()];
-        console.log(`Processing mood: ${mood.mood} (${mood.moodValue}) for ${dayOfWeek}`);
-        
-        // Only keep the first (most recent) mood for each day
-        if (!dailyMoods.has(dayOfWeek)) {
-          dailyMoods.set(dayOfWeek, mood.moodValue);
-        }
-      });
-      
-      // Update our result with found moods
-      dailyMoods.forEach((value, key) => {
-        weeklyMoods[key] = value;
-      });
+      // Served from the user's rollup document instead of scanning raw moods
+      const rollup = await MoodRollup.getForUser(userId);
+      const weeklyMoods = MoodRollup.toWeekly(rollup);
       
-      console.log('Returning weekly moods:', weeklyMoods);
       res.json(weeklyMoods);
     } catch (error) {
       console.error('Error fetching weekly moods:', error);
@@ -116,7 +135,7 @@ const moodController = {
     try {
       const { userId, mood, notes } = req.body;
       
-      console.log('Processing mood save request:', { 
+      logger.debug('Processing mood save request:', { 
         userId, 
         mood, 
         notes: notes ? notes.substring(0, 20) + (notes.length > 20 ? '...' : '') : 'none'
@@ -148,7 +167,7 @@ const moodController = {
       }).sort({ date: -1 });
       
       if (existingMood) {
-        console.log(`User already has a mood (${existingMood.mood}) for today.`);
+        logger.debug(`User already has a mood (${existingMood.mood}) for today.`);
         
         // Return the existing mood without creating a new one
         return res.status(200).json({
@@ -159,7 +178,7 @@ const moodController = {
         });
       }
       
-      console.log(`Creating new mood entry with value: ${Mood.MOOD_VALUES[mood]}`);
+      logger.debug(`Creating new mood entry with value: ${Mood.MOOD_VALUES[mood]}`);
       
       // Create mood document
       const newMood = new Mood({
@@ -170,7 +189,7 @@ const moodController = {
         notes: notes || ""
       });
       
-      console.log('Saving mood to database...');
+      logger.debug('Saving mood to database...');
       
       // Save to database
       const savedMood = await newMood.save();
@@ -179,7 +198,9 @@ const moodController = {
         throw new Error('Failed to persist mood to database - save operation did not return a valid document');
       }
       
-      console.log('Mood saved successfully with ID:', savedMood._id);
+      logger.debug('Mood saved successfully with ID:', savedMood._id);
+      
+      await updateRollup(savedMood);
       
       // Verify the save by fetching the mood we just created
       try {
@@ -195,13 +216,13 @@ const moodController = {
           });
           
           if (searchResult && searchResult.length > 0) {
-            console.log('Alternative verification successful - found mood:', searchResult[0]._id);
+            logger.debug('Alternative verification successful - found mood:', searchResult[0]._id);
           } else {
             console.error('Verification failed - mood not found in database after save');
             throw new Error('Verification failed - mood not found in database after save');
           }
         } else {
-          console.log('Verified mood in database with ID:', verifiedMood._id);
+          logger.debug('Verified mood in database with ID:', verifiedMood._id);
         }
       } catch (verifyError) {
         console.warn('Verification lookup failed, but save appeared successful:', verifyError.message);
@@ -305,6 +326,7 @@ const moodController = {
         existingMood.updatedAt = new Date();
         
         const updatedMood = await existingMood.save();
+        await updateRollup(updatedMood);
         
         return res.json({
           success: true,
@@ -322,6 +344,7 @@ const moodController = {
         });
         
         const savedMood = await newMood.save();
+        await updateRollup(savedMood);
         
         return res.status(201).json({
           success: true,
@@ -338,6 +361,199 @@ const moodController = {
     }
   },
   
+  // Apply a batch of mood changes the app queued while offline. Each entry is
+  // the user's mood for one day, with the time it was changed on the device;
+  // the latest change for a day wins. When the server already has a newer one,
+  // it is kept and returned under conflicts for the app to adopt.
+  // Days are the device's calendar days: each entry carries its day key, and
+  // tzOffset (minutes east of UTC) places moods saved without one.
+  syncMoods: async (req, res) => {
+    try {
+      const { userId, entries } = req.body;
+      const { maxBatchSize, maxClockSkewMs } = moodConfig.sync;
+      const tzOffset = parseTzOffset(req.body.tzOffset);
+      
+      if (!userId || !Array.isArray(entries)) {
+        return res.status(400).json({ error: "userId and entries are required" });
+      }
+      
+      if (entries.length > maxBatchSize) {
+        return res.status(413).json({ 
+          error: `At most ${maxBatchSize} entries can be synced at once`,
+          maxBatchSize
+        });
+      }
+      
+      // Validate each entry and keep the latest change per day
+      const now = Date.now();
+      const rejected = [];
+      const byDay = new Map();
+      
+      entries.forEach((entry, index) => {
+        const date = new Date(entry && entry.date);
+        const updatedAt = new Date(entry && (entry.updatedAt || entry.date));
+        
+        if (!entry || !Mood.MOOD_VALUES[entry.mood]) {
+          rejected.push({ index, error: "Invalid mood" });
+          return;
+        }
+        if (isNaN(date.getTime()) || isNaN(updatedAt.getTime()) || date.getTime() > now + maxClockSkewMs) {
+          rejected.push({ index, error: "Invalid date" });
+          return;
+        }
+        
+        // The day may differ from the date's UTC day by the device's offset, but not more
+        const day = DAY_KEY_PATTERN.test(entry.day) ? entry.day : dayOf({ date }, tzOffset);
+        const dayNoon = Date.parse(`${day}T12:00:00Z`);
+        if (isNaN(dayNoon) || new Date(dayNoon).toISOString().substring(0, 10) !== day ||
+            Math.abs(dayNoon - date.getTime()) > 36 * 60 * 60 * 1000) {
+          rejected.push({ index, error: "Invalid day" });
+          return;
+        }
+        
+        const change = {
+          day,
+          date,
+          mood: entry.mood,
+          notes: typeof entry.notes === 'string' ? entry.notes : undefined,
+          // A device clock running fast shouldn't win every later conflict
+          updatedAt: new Date(Math.min(updatedAt.getTime(), now))
+        };
+        
+        const current = byDay.get(change.day);
+        if (!current || current.updatedAt <= change.updatedAt) {
+          byDay.set(change.day, change);
+        }
+      });
+      
+      const changes = Array.from(byDay.values());
+      
+      // Ensure connection before proceeding
+      await ensureConnection();
+      
+      // One read for the existing moods of every day in the batch
+      const existingByDay = new Map();
+      if (changes.length > 0) {
+        // Moods saved before days were sent are found by time instead
+        const existing = await Mood.find({
+          userId,
+          $or: changes.flatMap(({ day }) => [
+            { day },
+            { day: { $exists: false }, date: getDayRange(day, tzOffset) }
+          ])
+        }).sort({ date: -1 }).lean();
+        
+        // The latest mood of a day is the one that counts, as in addMood
+        for (const mood of existing) {
+          const day = dayOf(mood, tzOffset);
+          if (!existingByDay.has(day)) {
+            existingByDay.set(day, { ...mood, day });
+          }
+        }
+      }
+      
+      const operations = [];
+      const applied = [];
+      const conflicts = [];
+      const rollupChanges = [];
+      
+      for (const change of changes) {
+        const existing = existingByDay.get(change.day);
+        
+        if (!existing) {
+          const mood = {
+            _id: new mongoose.Types.ObjectId(),
+            userId,
+            mood: change.mood,
+            moodValue: Mood.MOOD_VALUES[change.mood],
+            date: change.date,
+            day: change.day,
+            notes: change.notes || "",
+            createdAt: new Date(now),
+            updatedAt: change.updatedAt
+          };
+          operations.push({ insertOne: { document: mood } });
+          applied.push(mood);
+          rollupChanges.push({ mood });
+        } else if (existing.updatedAt > change.updatedAt) {
+          conflicts.push(existing);
+        } else if (existing.mood === change.mood && (change.notes === undefined || change.notes === existing.notes)) {
+          // Already up to date
+          applied.push(existing);
+        } else {
+          const set = {
+            mood: change.mood,
+            moodValue: Mood.MOOD_VALUES[change.mood],
+            day: change.day,
+            updatedAt: change.updatedAt
+          };
+          if (change.notes !== undefined) {
+            set.notes = change.notes;
+          }
+          
+          // Only if nobody changed the day since it was read
+          operations.push({
+            updateOne: {
+              filter: { _id: existing._id, updatedAt: existing.updatedAt || null },
+              update: { $set: set }
+            }
+          });
+          const mood = { ...existing, ...set };
+          applied.push(mood);
+          rollupChanges.push({ mood });
+        }
+      }
+      
+      // Every insert and update in one round trip; updatedAt is the device's change time
+      let lostUpdates = 0;
+      if (operations.length > 0) {
+        const result = await Mood.bulkWrite(operations, { ordered: false, timestamps: false });
+        lostUpdates = operations.filter(op => op.updateOne).length - result.matchedCount;
+      }
+      
+      if (lostUpdates > 0) {
+        // Another request changed some of these days in between; its change stands
+        const updatedIds = operations.filter(op => op.updateOne).map(op => op.updateOne.filter._id);
+        const current = await Mood.find({ _id: { $in: updatedIds } }).lean();
+        const currentById = new Map(current.map(mood => [String(mood._id), mood]));
+        
+        for (let i = applied.length - 1; i >= 0; i--) {
+          const latest = currentById.get(String(applied[i]._id));
+          if (latest && latest.updatedAt.getTime() !== applied[i].updatedAt.getTime()) {
+            applied.splice(i, 1);
+            conflicts.push({ ...latest, day: dayOf(latest, tzOffset) });
+          }
+        }
+      }
+      
+      // The incremental rollup update assumes no other write in between
+      await updateRollupBatch(userId, rollupChanges, { rebuild: lostUpdates > 0 });
+      
+      logger.debug(`Synced moods for user ${userId}: ${applied.length} applied, ${conflicts.length} conflicts, ${rejected.length} rejected`);
+      
+      // The refreshed summary saves the app a second request for its charts.
+      // Its weekly view and today are counted from the device's today.
+      const rollup = await MoodRollup.getForUser(userId);
+      const today = tzOffset === null
+        ? new Date()
+        : MoodRollup.parseDayKey(MoodRollup.localDayKey(new Date(), tzOffset));
+      
+      res.json({
+        success: true,
+        applied,
+        conflicts,
+        rejected,
+        summary: MoodRollup.toSummary(rollup, today)
+      });
+    } catch (error) {
+      console.error('Error syncing moods:', error);
+      res.status(500).json({ 
+        error: 'Failed to sync mood data', 
+        message: error.message 
+      });
+    }
+  },
+  
   // Clear all mood entries for a user
   clearMoods: async (req, res) => {
     try {
@@ -352,6 +568,7 @@ const moodController = {
       
       // Delete all mood entries for the user
       const result = await Mood.deleteMany({ userId });
+      await MoodRollup.deleteOne({ userId });
       
       console.log(`Deleted ${result.deletedCount} mood entries for user ${userId}`);
       
@@ -373,8 +590,9 @@ const moodController = {
   getMoodHistory: async (req, res) => {
     try {
       const { userId } = req.query;
-      const page = parseInt(req.query.page) || 1;
-      const limit = parseInt(req.query.limit) || 10;
+      const { defaultPageSize, maxPageSize } = moodConfig.api;
+      const page = Math.max(1, parseInt(req.query.page) || 1);
+      const limit = Math.min(Math.max(1, parseInt(req.query.limit) || defaultPageSize), maxPageSize);
       const skip = (page - 1) * limit;
       
       if (!userId) {
@@ -384,15 +602,17 @@ const moodController = {
       // Ensure connection before proceeding
       await ensureConnection();
       
-      // Get paginated mood entries
-      const moods = await Mood.find({ userId })
-        .sort({ date: -1 })
-        .skip(skip)
-        .limit(limit)
-        .lean();
+      // Get paginated mood entries, and the total count from the rollup instead of countDocuments
+      const [moods, rollup] = await Promise.all([
+        Mood.find({ userId })
+          .sort({ date: -1 })
+          .skip(skip)
+          .limit(limit)
+          .lean(),
+        MoodRollup.getForUser(userId)
+      ]);
       
-      // Get total count for pagination
-      const total = await Mood.countDocuments({ userId });
+      const total = (rollup.totals && rollup.totals.entries) || 0;
       
       res.json({
         success: true,
@@ -413,6 +633,34 @@ const moodController = {
     }
   },
   
+  // Get the mood dashboard summary (weekly view, recent days, weekly averages and totals)
+  getMoodSummary: async (req, res) => {
+    try {
+      const { userId } = req.query;
+      
+      if (!userId) {
+        return res.status(400).json({ error: "userId is required" });
+      }
+      
+      // Ensure connection before proceeding
+      await ensureConnection();
+      
+      // One small document per user, whatever the length of their history
+      const rollup = await MoodRollup.getForUser(userId);
+      
+      res.json({
+        success: true,
+        data: MoodRollup.toSummary(rollup)
+      });
+    } catch (error) {
+      console.error('Error fetching mood summary:', error);
+      res.status(500).json({ 
+        error: 'Failed to fetch mood summary', 
+        message: error.message 
+      });
+    }
+  },
+  
   // Debug endpoint to check database connection
   debugConnection: async (req, res) => {
     try {
@@ -2,28 +2,45 @@
 const mongoose = require('mongoose');
 const { MongoClient, ObjectId } = require('mongodb');
 require('dotenv').config();
+const { monitorMongoClient } = require('./services/metrics');
+
+// Command timings for /metrics; set MONGO_MONITOR_COMMANDS=false to turn them off
+const monitorCommands = process.env.MONGO_MONITOR_COMMANDS !== 'false';
 
 // Connection state tracking
 let mongoClient = null;
 let nativeDb = null;
 let isMongooseConnected = false;
 let connectionPromise = null;
+let mongooseConnectionPromise = null;
 
 /**
- * Connect to MongoDB using Mongoose (for schema-based models)
+ * Connect to MongoDB using Mongoose (for schema-based models). Concurrent
+ * callers (feed, mood tracker, startup) share a single connection attempt.
  * @returns {Promise<mongoose.Connection>} Mongoose connection
  */
-async function connectWithMongoose() {
+function connectWithMongoose() {
+  // If already connected, return existing connection
+  if (mongoose.connection.readyState === 1) {
+    return Promise.resolve(mongoose.connection);
+  }
+  
+  if (!mongooseConnectionPromise) {
+    mongooseConnectionPromise = openMongooseConnection().catch((error) => {
+      mongooseConnectionPromise = null;
+      throw error;
+    });
+  }
+  return mongooseConnectionPromise;
+}
+
+async function openMongooseConnection() {
   try {
-    // If already connected, return existing connection
-    if (mongoose.connection.readyState === 1) {
-      console.log('Reusing existing Mongoose connection');
-      return mongoose.connection;
-    }
-    
     // Get MongoDB URI from environment variables - specifically using your .env variables
     const mongoUri = process.env.MONGO_URI;
-    const dbName = process.env.DB_NAME || 'myapp';
+    // The Mongoose models (feeds, moods) have always lived in the database
+    // named in MONGO_URI (or "test"), not in DB_NAME; MONGOOSE_DB_NAME overrides it
+    const dbName = process.env.MONGOOSE_DB_NAME;
     
     if (!mongoUri) {
       throw new Error('MONGO_URI environment variable is not defined - check your .env file');
@@ -32,7 +49,7 @@ async function connectWithMongoose() {
     // Log sanitized connection URI (hide credentials)
     const sanitizedUri = mongoUri.replace(/mongodb(\+srv)?:\/\/([^:]+):([^@]+)@/, 'mongodb$1://**:**@');
     console.log(`Connecting to MongoDB with URI: ${sanitizedUri}`);
-    console.log(`Using database: ${dbName}`);
+    console.log(`Using database: ${dbName || 'default from MONGO_URI'}`);
     
     // Connection options for Mongoose
     const options = {
@@ -40,12 +57,16 @@ async function connectWithMongoose() {
       useUnifiedTopology: true,
       serverSelectionTimeoutMS: 10000,
       socketTimeoutMS: 45000,
-      dbName: dbName // Explicitly set database name
+      ...(dbName && { dbName }),
+      monitorCommands
     };
     
     // Connect with Mongoose
     await mongoose.connect(mongoUri, options);
     console.log('MongoDB connection established successfully with Mongoose');
+    if (monitorCommands) {
+      monitorMongoClient(mongoose.connection.getClient(), 'mongoose');
+    }
     isMongooseConnected = true;
     
     // Set up event handlers for connection
@@ -64,10 +85,6 @@ async function connectWithMongoose() {
       isMongooseConnected = true;
     });
     
-    // List all collections to verify connection
-    const collections = await mongoose.connection.db.listCollections().toArray();
-    console.log('Available collections:', collections.map(c => c.name).join(', ') || 'No collections found');
-    
     // Return the connection
     return mongoose.connection;
   } catch (error) {
@@ -113,8 +130,12 @@ async function connectToMongoDB() {
         useUnifiedTopology: true,
         connectTimeoutMS: 5000,
         serverSelectionTimeoutMS: 5000,
-        maxPoolSize: 10
+        maxPoolSize: 10,
+        monitorCommands
       });
+      if (monitorCommands) {
+        monitorMongoClient(mongoClient, 'native');
+      }
       
       // Connect to MongoDB
       await mongoClient.connect();
@@ -149,9 +170,8 @@ async function connectToMongoDB() {
  * Set up handlers for connection events
  */
 function setupConnectionHandlers() {
-  // Handle process termination gracefully
-  process.on('SIGINT', closeConnections);
-  process.on('SIGTERM', closeConnections);
+  // No signal handlers here: the server closes connections itself on shutdown,
+  // after buffered writes are flushed (see closeConnections)
 
   // Handle potential connection timeout
   if (mongoClient) {
@@ -243,6 +263,7 @@ async function closeConnections() {
     nativeDb = null;
     isMongooseConnected = false;
     connectionPromise = null;
+    mongooseConnectionPromise = null;
 
     // Optional: process.exit(0) if this is used on server shutdown
     // process.exit(0);
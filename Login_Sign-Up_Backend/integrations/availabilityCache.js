@@ -0,0 +1,261 @@
+// integrations/availabilityCache.js - Coalescing, stale-while-revalidate cache of Cal.com availability
+const crypto = require('crypto');
+
+const INVALIDATION_CHANNEL = 'calcom#availability';
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_FRESH_MS = parseInt(process.env.CAL_COM_SLOTS_FRESH_MS, 10) || 60 * 1000;
+const DEFAULT_STALE_MS = parseInt(process.env.CAL_COM_SLOTS_STALE_MS, 10) || 15 * 60 * 1000;
+const DEFAULT_SLOW_MS = parseInt(process.env.CAL_COM_SLOW_MS, 10) || 1500;
+const DEFAULT_MAX_ENTRIES = parseInt(process.env.CAL_COM_SLOTS_MAX_ENTRIES, 10) || 5000;
+
+/**
+ * Calendar date a slot query or booking time falls on
+ * @param {string|Date} date - 'YYYY-MM-DD' or anything Date can parse
+ * @returns {string|null} 'YYYY-MM-DD', or null for an invalid date
+ */
+function dateKey(date) {
+  if (typeof date === 'string' && /^\d{4}-\d{2}-\d{2}/.test(date)) {
+    return date.substring(0, 10);
+  }
+  const parsed = new Date(date);
+  return isNaN(parsed) ? null : parsed.toISOString().substring(0, 10);
+}
+
+// Neighbouring calendar day of a 'YYYY-MM-DD' key
+function shiftDay(key, days) {
+  const date = new Date(`${key}T00:00:00Z`);
+  date.setUTCDate(date.getUTCDate() + days);
+  return date.toISOString().substring(0, 10);
+}
+
+/**
+ * Caches available slots per (Cal.com user, event type, date) so concurrent
+ * booking screens for the same therapist share one upstream call.
+ *
+ * - A fresh entry is served as is.
+ * - A stale entry triggers a refresh; if Cal.com answers within slowMs the
+ *   new slots are returned, otherwise (or if it fails) the stale ones are.
+ * - A miss waits for Cal.com. Concurrent misses share one request.
+ *
+ * Only successful upstream responses are cached; callers apply their own
+ * fallback when a miss fails.
+ */
+class AvailabilityCache {
+  /**
+   * @param {Object} options
+   * @param {Function} options.fetchSlots - (userId, eventTypeId, date) => Promise<slots>; throws on failure
+   * @param {Object} [options.broker] - Broker used to pass invalidations to other processes
+   * @param {number} [options.freshMs] - How long slots are served without asking Cal.com
+   * @param {number} [options.staleMs] - How long past that stale slots may still be served
+   * @param {number} [options.slowMs] - How long a refresh may take before stale slots are served
+   * @param {number} [options.maxEntries] - Least recently used entries are evicted past this size
+   */
+  constructor(options) {
+    this.fetchSlots = options.fetchSlots;
+    this.broker = null;
+    this.freshMs = options.freshMs || DEFAULT_FRESH_MS;
+    this.staleMs = options.staleMs || DEFAULT_STALE_MS;
+    this.slowMs = options.slowMs || DEFAULT_SLOW_MS;
+    this.maxEntries = options.maxEntries || DEFAULT_MAX_ENTRIES;
+    this.cacheId = crypto.randomUUID();
+
+    this.entries = new Map();
+    this.pending = new Map();
+    this.stats = {
+      hits: 0, staleHits: 0, misses: 0, coalesced: 0, upstreamCalls: 0, upstreamErrors: 0,
+      invalidations: 0, evictions: 0
+    };
+
+    if (options.broker) {
+      this.attachBroker(options.broker);
+    }
+  }
+
+  /**
+   * Share invalidations with the other processes through a broker
+   * @param {Object} broker - Broker with publish and subscribe
+   */
+  attachBroker(broker) {
+    this.broker = broker;
+    this.unsubscribe = broker.subscribe(INVALIDATION_CHANNEL, (message) => {
+      if (message.cacheId !== this.cacheId) {
+        this._invalidate(message.eventTypeId, message.dates);
+      }
+    });
+  }
+
+  _key(userId, eventTypeId, date) {
+    return `${userId}|${eventTypeId}|${date}`;
+  }
+
+  _store(key, entry) {
+    // Re-inserting keeps the Map in least-recently-used order
+    this.entries.delete(key);
+    this.entries.set(key, entry);
+
+    if (this.entries.size > this.maxEntries) {
+      this.entries.delete(this.entries.keys().next().value);
+      this.stats.evictions++;
+    }
+  }
+
+  /**
+   * Fetch slots from Cal.com, sharing the request with concurrent callers
+   * @returns {Promise<Array>} Slots
+   */
+  _load(key, userId, eventTypeId, date) {
+    if (this.pending.has(key)) {
+      this.stats.coalesced++;
+      return this.pending.get(key);
+    }
+
+    this.stats.upstreamCalls++;
+    const load = Promise.resolve()
+      .then(() => this.fetchSlots(userId, eventTypeId, date))
+      .then((slots) => {
+        // A booking that invalidated this key during the request wins
+        if (this.pending.get(key) === load) {
+          this.pending.delete(key);
+          const now = Date.now();
+          this._store(key, {
+            userId,
+            eventTypeId: String(eventTypeId),
+            date: key.split('|')[2],
+            slots,
+            freshUntil: now + this.freshMs,
+            staleUntil: now + this.freshMs + this.staleMs
+          });
+        }
+        return slots;
+      }, (error) => {
+        this.stats.upstreamErrors++;
+        if (this.pending.get(key) === load) {
+          this.pending.delete(key);
+        }
+        throw error;
+      });
+
+    this.pending.set(key, load);
+    return load;
+  }
+
+  /**
+   * Available slots for a therapist's event type on a date
+   * @param {string} userId - Cal.com user ID
+   * @param {string} eventTypeId - Cal.com event type ID
+   * @param {string} date - Requested date
+   * @returns {Promise<Array>} Slots; treat as read-only, they are shared
+   */
+  async get(userId, eventTypeId, date) {
+    const day = dateKey(date) || String(date);
+    const key = this._key(userId, eventTypeId, day);
+    const entry = this.entries.get(key);
+    const now = Date.now();
+
+    if (entry && now < entry.freshUntil) {
+      this.stats.hits++;
+      this._store(key, entry);
+      return entry.slots;
+    }
+
+    if (entry && now < entry.staleUntil) {
+      const refresh = this._load(key, userId, eventTypeId, date);
+      let timer;
+      const slow = new Promise((resolve) => {
+        timer = setTimeout(resolve, this.slowMs, null);
+      });
+
+      try {
+        const slots = await Promise.race([refresh, slow]);
+        if (slots) {
+          return slots;
+        }
+      } catch (error) {
+        console.warn(`Cal.com refresh failed, serving cached slots for ${day}:`, error.message);
+      } finally {
+        clearTimeout(timer);
+      }
+
+      // The refresh keeps going and updates the entry when it finishes
+      refresh.catch(() => {});
+      this.stats.staleHits++;
+      return entry.slots;
+    }
+
+    this.stats.misses++;
+    return this._load(key, userId, eventTypeId, date);
+  }
+
+  _invalidate(eventTypeId, dates) {
+    const days = new Set(dates);
+    let removed = 0;
+
+    for (const [key, entry] of this.entries) {
+      if ((eventTypeId == null || entry.eventTypeId === eventTypeId) && days.has(entry.date)) {
+        this.entries.delete(key);
+        removed++;
+      }
+    }
+    for (const key of this.pending.keys()) {
+      const [, pendingEventType, pendingDate] = key.split('|');
+      if ((eventTypeId == null || pendingEventType === eventTypeId) && days.has(pendingDate)) {
+        this.pending.delete(key);
+      }
+    }
+
+    this.stats.invalidations += removed;
+    return removed;
+  }
+
+  /**
+   * Drop cached slots affected by a booking change, here and in other processes.
+   * The neighbouring days are dropped too, since a booking time in UTC may fall
+   * on another calendar day for the person booking.
+   * @param {Object} change
+   * @param {string} [change.eventTypeId] - Event type booked; all event types when omitted
+   * @param {Array<string|Date>} change.times - Booking times or dates that changed
+   * @returns {number} Entries removed from this process
+   */
+  invalidate({ eventTypeId = null, times }) {
+    const dates = [];
+    for (const time of times || []) {
+      const day = time && dateKey(time);
+      if (day) {
+        dates.push(shiftDay(day, -1), day, shiftDay(day, 1));
+      }
+    }
+
+    if (dates.length === 0) {
+      return 0;
+    }
+
+    const type = eventTypeId == null ? null : String(eventTypeId);
+    if (this.broker) {
+      this.broker.publish(INVALIDATION_CHANNEL, { cacheId: this.cacheId, eventTypeId: type, dates });
+    }
+    return this._invalidate(type, dates);
+  }
+
+  /**
+   * Cache size and hit statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    const lookups = this.stats.hits + this.stats.staleHits + this.stats.misses;
+    return {
+      entries: this.entries.size,
+      maxEntries: this.maxEntries,
+      pending: this.pending.size,
+      freshMs: this.freshMs,
+      staleMs: this.staleMs,
+      ...this.stats,
+      hitRate: lookups > 0 ? +((this.stats.hits + this.stats.staleHits) / lookups).toFixed(3) : 0
+    };
+  }
+}
+
+module.exports = {
+  AvailabilityCache,
+  dateKey
+};
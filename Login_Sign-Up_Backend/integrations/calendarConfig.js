@@ -1,5 +1,7 @@
 const axios = require('axios');
 require('dotenv').config();
+const { AvailabilityCache } = require('./availabilityCache');
+const { externalCallDuration } = require('../services/metrics');
 
 // Get API key and base URL from environment variables
 const apiKey = process.env.CAL_COM_API_KEY;
@@ -20,6 +22,54 @@ const calComApi = axios.create({
   timeout: 15000 // 15 second timeout (increased from 10 seconds)
 });
 
+// Time every Cal.com call for /metrics, labelled by method and resource (not IDs)
+const observeCalCom = (config, outcome) => {
+  if (!config || !config.startedAt) {
+    return;
+  }
+  const resource = String(config.url || '').split('/').filter(Boolean)[0] || 'root';
+  externalCallDuration.observe(
+    { service: 'calcom', operation: `${String(config.method).toUpperCase()} ${resource}`, outcome },
+    (Date.now() - config.startedAt) / 1000
+  );
+};
+
+calComApi.interceptors.request.use((config) => {
+  config.startedAt = Date.now();
+  return config;
+});
+calComApi.interceptors.response.use((response) => {
+  observeCalCom(response.config, 'ok');
+  return response;
+}, (error) => {
+  observeCalCom(error.config, 'error');
+  return Promise.reject(error);
+});
+
+// Fetch available slots straight from Cal.com. Errors are thrown so the
+// cache never stores a fallback.
+const fetchAvailability = async (calComUserId, calComEventTypeId, date) => {
+  const response = await calComApi.get(`/availability/${calComEventTypeId}`, {
+    params: {
+      userId: calComUserId,
+      dateFrom: date,
+      dateTo: date,
+    }
+  });
+  return response.data;
+};
+
+// Slots shared across requests for the same therapist, event type and date
+const availabilityCache = new AvailabilityCache({ fetchSlots: fetchAvailability });
+
+// Drop cached slots for the days a booking change touches
+const invalidateAvailability = (calComEventTypeId, ...times) => {
+  const removed = availabilityCache.invalidate({ eventTypeId: calComEventTypeId, times });
+  if (removed > 0) {
+    console.log(`Invalidated ${removed} cached availability entries`);
+  }
+};
+
 // Get available time slots for a specific therapist
 const getAvailableTimeSlots = async (calComUserId, calComEventTypeId, date) => {
   try {
@@ -42,23 +92,18 @@ const getAvailableTimeSlots = async (calComUserId, calComEventTypeId, date) => {
       return generateMockTimeSlots(date);
     }
     
-    const response = await calComApi.get(`/availability/${calComEventTypeId}`, {
-      params: {
-        userId: calComUserId,
-        dateFrom: date,
-        dateTo: date,
-      }
-    });
+    // Served from the cache when possible; concurrent misses share one Cal.com call
+    const slots = await availabilityCache.get(calComUserId, calComEventTypeId, date);
     
-    console.log(`Cal.com returned ${response.data.length || 0} available slots`);
+    console.log(`Cal.com returned ${(slots && slots.length) || 0} available slots`);
     
     // If no slots returned, generate mock slots
-    if (!response.data || response.data.length === 0) {
+    if (!slots || slots.length === 0) {
       console.log('No slots returned from Cal.com, generating mock slots');
       return generateMockTimeSlots(date);
     }
     
-    return response.data;
+    return slots;
   } catch (error) {
     handleApiError('fetching Cal.com availability', error);
     // Return mock data as fallback if API call fails
@@ -110,10 +155,16 @@ const createBooking = async (calComEventTypeId, bookingData) => {
     // Make the actual API call
     const response = await calComApi.post(`/bookings/${calComEventTypeId}`, sanitizedBookingData);
     console.log(`Cal.com booking created with ID: ${response.data.id || 'unknown'}`);
+    invalidateAvailability(calComEventTypeId, sanitizedBookingData.startTime);
     return response.data;
   } catch (error) {
     handleApiError('creating Cal.com booking', error);
     
+    // The booking may have gone through before the error (e.g. a timeout)
+    if (calComEventTypeId && bookingData && bookingData.startTime) {
+      invalidateAvailability(calComEventTypeId, bookingData.startTime);
+    }
+    
     // Properly log the full error and booking data for debugging
     console.error('Detailed error info:', {
       message: error.message,
@@ -133,8 +184,9 @@ const createBooking = async (calComEventTypeId, bookingData) => {
   }
 };
 
-// Reschedule a booking
-const rescheduleBooking = async (bookingId, newTime) => {
+// Reschedule a booking. previousTime is the current start time, used to
+// refresh the cached slots of the day being freed.
+const rescheduleBooking = async (bookingId, newTime, previousTime) => {
   try {
     // Validate booking ID and new time
     if (!bookingId) {
@@ -161,9 +213,12 @@ const rescheduleBooking = async (bookingId, newTime) => {
       startTime: newTime
     });
     console.log(`Cal.com booking rescheduled successfully`);
+    // The booking's event type isn't known here, so every event type on those days is refreshed
+    invalidateAvailability(null, newTime, previousTime);
     return response.data;
   } catch (error) {
     handleApiError('rescheduling Cal.com booking', error);
+    invalidateAvailability(null, newTime, previousTime);
     // Return mock response as fallback
     return {
       id: bookingId,
@@ -174,8 +229,9 @@ const rescheduleBooking = async (bookingId, newTime) => {
   }
 };
 
-// Cancel a booking
-const cancelBooking = async (bookingId) => {
+// Cancel a booking. startTime is the booking's start time, used to refresh
+// the cached slots of that day.
+const cancelBooking = async (bookingId, startTime) => {
   try {
     // Validate booking ID
     if (!bookingId) {
@@ -195,9 +251,11 @@ const cancelBooking = async (bookingId) => {
     
     const response = await calComApi.delete(`/bookings/${bookingId}`);
     console.log(`Cal.com booking cancelled successfully`);
+    invalidateAvailability(null, startTime);
     return response.data;
   } catch (error) {
     handleApiError('cancelling Cal.com booking', error);
+    invalidateAvailability(null, startTime);
     // Return mock response as fallback
     return {
       id: bookingId,
@@ -344,7 +402,13 @@ const forceMockMode = (enable = true) => {
   console.log(`Mock mode ${enable ? 'enabled' : 'disabled'}`);
 };
 
+// Whether availability comes from Cal.com rather than generated mock slots
+const isLiveMode = () =>
+  Boolean(apiKey) && process.env.NODE_ENV !== 'development' && process.env.USE_MOCK_CAL_DATA !== 'true';
+
 module.exports = {
+  availabilityCache,
+  isLiveMode,
   getAvailableTimeSlots,
   createBooking,
   rescheduleBooking,
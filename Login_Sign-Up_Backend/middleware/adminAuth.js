@@ -0,0 +1,27 @@
+// middleware/adminAuth.js - Guard for operational endpoints using a shared admin API key
+const crypto = require('crypto');
+
+/**
+ * Only let requests through that send the ADMIN_API_KEY in the x-admin-key
+ * header. The admin endpoints are disabled while no key is configured.
+ */
+function requireAdminKey(req, res, next) {
+  const adminKey = process.env.ADMIN_API_KEY;
+  if (!adminKey) {
+    return res.status(503).json({ error: 'Admin API is disabled. Set ADMIN_API_KEY to enable it.' });
+  }
+
+  const provided = Buffer.from(String(req.get('x-admin-key') || ''));
+  const expected = Buffer.from(adminKey);
+
+  // Constant-time comparison so the key can't be guessed from response timings
+  if (provided.length !== expected.length || !crypto.timingSafeEqual(provided, expected)) {
+    return res.status(401).json({ error: 'Invalid admin key' });
+  }
+
+  next();
+}
+
+module.exports = {
+  requireAdminKey
+};
@@ -1,7 +1,8 @@
 // Middleware for filtering toxic words
+const fs = require('fs');
 
 // Import or define toxic words list - matches the frontend list
-const toxicWords = [
+const defaultToxicWords = [
     'stupid', 'idiot', 'dumb', 'fool', 'moron', 'jerk', 'hate', 'loser', 'trash', 
     'garbage', 'worthless', 'damn', 'hell', 'crap', 'wtf', 'shut up', 'screw you', 
     'go to hell', 'fuck', 'shit', 'asshole', 'bitch', 'bastard', 'dick', 'retard', 
@@ -12,6 +13,225 @@ const toxicWords = [
     'kill yourself', 'kys', 'die'
   ];
   
+  /**
+   * Check whether a UTF-16 code unit is a regex "word" character ([A-Za-z0-9_])
+   * @param {number} code - Character code
+   * @returns {boolean} True for word characters
+   */
+  function isWordChar(code) {
+    return (code >= 48 && code <= 57) ||  // 0-9
+      (code >= 65 && code <= 90) ||       // A-Z
+      (code >= 97 && code <= 122) ||      // a-z
+      code === 95;                        // _
+  }
+  
+  /**
+   * Lowercase a single non-ASCII character
+   * @param {string} text - Source text
+   * @param {number} index - Position in the text
+   * @returns {string} The lowercased character
+   */
+  function lowerCharAt(text, index) {
+    // Only accept lowercase mappings that keep a one-to-one character offset
+    const lower = text[index].toLowerCase();
+    return lower.length === 1 ? lower : text[index];
+  }
+  
+  /**
+   * Build an Aho-Corasick automaton for the given words. Matching is
+   * case-insensitive and respects the same word boundaries as /\bword\b/.
+   * @param {string[]} words - Words or phrases to match
+   * @returns {Object} Compiled matcher with the source words
+   */
+  function compileToxicMatcher(words) {
+    // Node 0 is the root; each node keeps its transitions, failure link and output words
+    const nodes = [{ next: new Map(), fail: 0, outputs: [] }];
+    const cleanWords = [];
+    
+    for (const rawWord of words) {
+      const word = typeof rawWord === 'string' ? rawWord.trim().toLowerCase() : '';
+      if (!word || cleanWords.includes(word)) {
+        continue;
+      }
+      cleanWords.push(word);
+      
+      let state = 0;
+      for (const char of word) {
+        let nextState = nodes[state].next.get(char);
+        if (nextState === undefined) {
+          nextState = nodes.length;
+          nodes.push({ next: new Map(), fail: 0, outputs: [] });
+          nodes[state].next.set(char, nextState);
+        }
+        state = nextState;
+      }
+      
+      nodes[state].outputs.push({
+        word,
+        length: word.length,
+        startsWithWordChar: isWordChar(word.charCodeAt(0)),
+        endsWithWordChar: isWordChar(word.charCodeAt(word.length - 1))
+      });
+    }
+    
+    // Breadth-first pass to wire up failure links and merge output lists
+    const queue = [];
+    for (const child of nodes[0].next.values()) {
+      queue.push(child);
+    }
+    
+    for (let i = 0; i < queue.length; i++) {
+      const state = queue[i];
+      
+      for (const [char, child] of nodes[state].next) {
+        let fallback = nodes[state].fail;
+        while (fallback !== 0 && !nodes[fallback].next.has(char)) {
+          fallback = nodes[fallback].fail;
+        }
+        
+        const target = nodes[fallback].next.get(char);
+        nodes[child].fail = target !== undefined && target !== child ? target : 0;
+        nodes[child].outputs = nodes[child].outputs.concat(nodes[nodes[child].fail].outputs);
+        queue.push(child);
+      }
+    }
+    
+    // Flatten the ASCII transitions (including uppercase letters and failure
+    // links) into a lookup table so the common case is one array read per character
+    const asciiTable = new Int32Array(nodes.length * 128);
+    const hasOutput = new Uint8Array(nodes.length);
+    
+    for (const state of [0, ...queue]) {
+      hasOutput[state] = nodes[state].outputs.length > 0 ? 1 : 0;
+      
+      for (let code = 0; code < 128; code++) {
+        const lowerCode = code >= 65 && code <= 90 ? code + 32 : code;
+        const target = nodes[state].next.get(String.fromCharCode(lowerCode));
+        
+        if (target !== undefined) {
+          asciiTable[state * 128 + code] = target;
+        } else if (state !== 0) {
+          asciiTable[state * 128 + code] = asciiTable[nodes[state].fail * 128 + code];
+        }
+      }
+    }
+    
+    return { nodes, asciiTable, hasOutput, words: cleanWords };
+  }
+  
+  /**
+   * Scan a message once and report every toxic word hit
+   * @param {Object} matcher - Matcher built by compileToxicMatcher
+   * @param {string} message - The message to scan
+   * @param {boolean} stopAtFirst - Return as soon as one hit is found
+   * @returns {Array<Object>} Hits as { word, start, end } in message order
+   */
+  function findMatches(matcher, message, stopAtFirst) {
+    const { nodes, asciiTable, hasOutput } = matcher;
+    const hits = [];
+    let state = 0;
+    
+    for (let i = 0; i < message.length; i++) {
+      const code = message.charCodeAt(i);
+      
+      if (code < 128) {
+        state = asciiTable[state * 128 + code];
+      } else {
+        const char = lowerCharAt(message, i);
+        while (state !== 0 && !nodes[state].next.has(char)) {
+          state = nodes[state].fail;
+        }
+        state = nodes[state].next.get(char) || 0;
+      }
+      
+      if (hasOutput[state] === 0) {
+        continue;
+      }
+      
+      const outputs = nodes[state].outputs;
+      for (let j = 0; j < outputs.length; j++) {
+        const output = outputs[j];
+        const start = i - output.length + 1;
+        const end = i + 1;
+        
+        // Same semantics as \b on both sides of the word
+        const before = start > 0 && isWordChar(message.charCodeAt(start - 1));
+        const after = end < message.length && isWordChar(message.charCodeAt(end));
+        if (before === output.startsWithWordChar || after === output.endsWithWordChar) {
+          continue;
+        }
+        
+        hits.push({ word: output.word, start, end });
+        if (stopAtFirst) {
+          return hits;
+        }
+      }
+    }
+    
+    return hits;
+  }
+  
+  // Active word list and matcher - swapped atomically on reload
+  let toxicWords = defaultToxicWords.slice();
+  let toxicMatcher = compileToxicMatcher(toxicWords);
+  let watchedWordsFile = null;
+  
+  /**
+   * Replace the active toxic word list without restarting the server
+   * @param {string[]} words - New list of words or phrases
+   * @returns {number} Number of words in the active list
+   */
+  function setToxicWords(words) {
+    if (!Array.isArray(words) || words.length === 0) {
+      throw new Error('Toxic word list must be a non-empty array');
+    }
+    
+    const matcher = compileToxicMatcher(words);
+    toxicWords = matcher.words;
+    toxicMatcher = matcher;
+    
+    return toxicWords.length;
+  }
+  
+  /**
+   * Load the toxic word list from a JSON file containing an array of strings
+   * @param {string} filePath - Path to the JSON file
+   * @returns {number} Number of words in the active list
+   */
+  function loadToxicWordsFromFile(filePath) {
+    const words = JSON.parse(fs.readFileSync(filePath, 'utf8'));
+    return setToxicWords(words);
+  }
+  
+  /**
+   * Load the word list from a file and reload it whenever the file changes
+   * @param {string} filePath - Path to the JSON file
+   */
+  function watchToxicWordsFile(filePath) {
+    if (watchedWordsFile) {
+      fs.unwatchFile(watchedWordsFile);
+    }
+    watchedWordsFile = filePath;
+    
+    try {
+      console.log(`Loaded ${loadToxicWordsFromFile(filePath)} toxic words from ${filePath}`);
+    } catch (error) {
+      console.error(`Could not load toxic words from ${filePath}, keeping current list:`, error.message);
+    }
+    
+    fs.watchFile(filePath, { interval: 2000 }, (current, previous) => {
+      if (current.mtimeMs === previous.mtimeMs) {
+        return;
+      }
+      
+      try {
+        console.log(`Reloaded ${loadToxicWordsFromFile(filePath)} toxic words from ${filePath}`);
+      } catch (error) {
+        console.error(`Could not reload toxic words from ${filePath}, keeping current list:`, error.message);
+      }
+    });
+  }
+  
   /**
    * Check if a message contains toxic words
    * @param {string} message - The message to check
@@ -20,18 +240,13 @@ const toxicWords = [
   function containsToxicWord(message) {
     if (!message) return { containsToxicWord: false };
     
-    const lowercaseMessage = message.toLowerCase();
+    const [hit] = findMatches(toxicMatcher, message, true);
     
-    for (const word of toxicWords) {
-      // Check if the message contains the toxic word as a whole word
-      const wordPattern = new RegExp('\\b' + word.replace(/[-\/\\^$*+?.()|[\]{}]/g, '\\$&') + '\\b', 'i');
-      
-      if (wordPattern.test(lowercaseMessage)) {
-        return {
-          containsToxicWord: true,
-          toxicWord: word,
-        };
-      }
+    if (hit) {
+      return {
+        containsToxicWord: true,
+        toxicWord: hit.word,
+      };
     }
     
     return {
@@ -48,22 +263,26 @@ const toxicWords = [
   function censorToxicWords(message) {
     if (!message) return '';
     
-    let censoredMessage = message;
+    const hits = findMatches(toxicMatcher, message, false);
+    if (hits.length === 0) {
+      return message;
+    }
     
-    for (const word of toxicWords) {
-      const wordPattern = new RegExp('\\b' + word.replace(/[-\/\\^$*+?.()|[\]{}]/g, '\\$&') + '\\b', 'i');
-      
-      if (wordPattern.test(censoredMessage.toLowerCase())) {
-        // Replace the toxic word with asterisks, preserving the original length
-        const replacement = '*'.repeat(word.length);
-        censoredMessage = censoredMessage.replace(
-          new RegExp(wordPattern, 'gi'),
-          replacement
-        );
+    // Replace every matched character with an asterisk, preserving the original length
+    let censoredMessage = '';
+    let position = 0;
+    
+    for (const hit of hits) {
+      const start = Math.max(hit.start, position);
+      if (hit.end <= start) {
+        continue;
       }
+      
+      censoredMessage += message.slice(position, start) + '*'.repeat(hit.end - start);
+      position = hit.end;
     }
     
-    return censoredMessage;
+    return censoredMessage + message.slice(position);
   }
   
   /**
@@ -117,5 +336,11 @@ const toxicWords = [
     toxicFilterCensor,
     containsToxicWord,
     censorToxicWords,
-    toxicWords
+    compileToxicMatcher,
+    setToxicWords,
+    loadToxicWordsFromFile,
+    watchToxicWordsFile,
+    get toxicWords() {
+      return toxicWords;
+    }
   };
\ No newline at end of file
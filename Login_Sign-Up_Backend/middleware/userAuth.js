@@ -0,0 +1,93 @@
+// middleware/userAuth.js - Identify the signed-in user from the token issued at login
+const jwt = require('jsonwebtoken');
+const { findUserById } = require('../models/user');
+
+/**
+ * Look up the user a login token belongs to
+ * @param {string} token - JWT from /api/auth/login
+ * @returns {Promise<Object|null>} { id, userId, username }, or null when the token is missing, invalid or expired
+ */
+async function resolveUser(token) {
+  if (!token) {
+    return null;
+  }
+
+  let payload;
+  try {
+    // Same secret the login handler signs with
+    payload = jwt.verify(token, process.env.JWT_SECRET || 'your_jwt_secret');
+  } catch (error) {
+    return null;
+  }
+
+  const user = payload && payload.userId ? await findUserById(String(payload.userId)) : null;
+  if (!user) {
+    return null;
+  }
+
+  // Chat identifies people by their display name, as the app does
+  return {
+    id: String(user._id),
+    userId: user.userId || payload.consistentId,
+    username: user.name
+  };
+}
+
+/**
+ * Token from an "Authorization: Bearer <token>" header
+ * @param {Object} req - Express request object
+ * @returns {string|null} The token, if any
+ */
+function bearerToken(req) {
+  const match = /^Bearer\s+(.+)$/i.exec(req.get('authorization') || '');
+  return match ? match[1].trim() : null;
+}
+
+/**
+ * Only let requests through that carry a valid login token. The user is
+ * available as req.user afterwards.
+ */
+async function requireUser(req, res, next) {
+  try {
+    const user = await resolveUser(bearerToken(req));
+    if (!user) {
+      return res.status(401).json({ message: 'Please log in again' });
+    }
+
+    req.user = user;
+    next();
+  } catch (error) {
+    next(error);
+  }
+}
+
+/**
+ * Socket.io middleware tying a socket to the user whose login token is in
+ * the handshake (auth: { token }). Sockets without a token can still use
+ * the chatbot but fail every group membership check.
+ */
+async function authenticateSocket(socket, next) {
+  const token = socket.handshake.auth && socket.handshake.auth.token;
+  if (!token) {
+    return next();
+  }
+
+  try {
+    const user = await resolveUser(token);
+    if (!user) {
+      return next(new Error('Please log in again'));
+    }
+
+    socket.data.user = user;
+    socket.data.username = user.username;
+    next();
+  } catch (error) {
+    next(error);
+  }
+}
+
+module.exports = {
+  resolveUser,
+  requireUser,
+  authenticateSocket
+};
@@ -0,0 +1,187 @@
+// models/chatGroup.js - Chat Group Model Functions
+const { ObjectId } = require('mongodb');
+const { getDB } = require('../db');
+
+const DEFAULT_MAX_MEMBERS = 10;
+
+const chatGroupsCollection = () => getDB().collection('chatGroups');
+
+/**
+ * Filter that matches a group whether its _id is stored as an ObjectId or a string
+ * @param {string} groupId - Group ID from the request
+ * @returns {Object} Query filter on _id
+ */
+function groupIdFilter(groupId) {
+  const id = String(groupId);
+  if (ObjectId.isValid(id) && id.length === 24) {
+    return { _id: { $in: [new ObjectId(id), id] } };
+  }
+  return { _id: id };
+}
+
+/**
+ * Shape a group for API responses. memberCount and maxMembers are the source
+ * of truth; the "3/10" members label is derived for the app.
+ * @param {Object} group - Group document
+ * @returns {Object} Group with the members label
+ */
+function formatGroup(group) {
+  if (!group) {
+    return group;
+  }
+
+  const memberCount = group.memberCount || 0;
+  const maxMembers = group.maxMembers || DEFAULT_MAX_MEMBERS;
+  return {
+    ...group,
+    memberCount,
+    maxMembers,
+    members: `${memberCount}/${maxMembers}`
+  };
+}
+
+/**
+ * Find a group by ID in one query
+ * @param {string} groupId - Group ID
+ * @param {Object} [options] - Driver options such as projection
+ * @returns {Promise<Object|null>} The group document
+ */
+async function findGroup(groupId, options = {}) {
+  return chatGroupsCollection().findOne(groupIdFilter(groupId), options);
+}
+
+/**
+ * Create a new chat group
+ * @param {Object} groupData - name, description and optional maxMembers
+ * @returns {Promise<Object>} The created group
+ */
+async function createGroup(groupData) {
+  const newGroup = {
+    name: groupData.name,
+    description: groupData.description || '',
+    memberCount: 0,
+    maxMembers: groupData.maxMembers || DEFAULT_MAX_MEMBERS,
+    membersList: [],
+    createdAt: new Date()
+  };
+
+  const result = await chatGroupsCollection().insertOne(newGroup);
+  return { ...newGroup, _id: result.insertedId };
+}
+
+/**
+ * Load the membership fields of a group, used to explain why a conditional
+ * update matched nothing
+ * @param {string} groupId - Group ID
+ * @returns {Promise<Object|null>} Group with membersList, memberCount and maxMembers
+ */
+async function findMembership(groupId) {
+  return findGroup(groupId, { projection: { membersList: 1, memberCount: 1, maxMembers: 1 } });
+}
+
+/**
+ * Add a user to a group in a single conditional update. The filter only
+ * matches while the user is not a member and the group has room, so
+ * concurrent joins can't go over the cap.
+ * @param {string} groupId - Group ID
+ * @param {string} username - User joining the group
+ * @returns {Promise<Object>} { group } on success, otherwise { error } with
+ *   'not_found', 'already_member' or 'full'
+ */
+async function addMember(groupId, username) {
+  const group = await chatGroupsCollection().findOneAndUpdate(
+    {
+      ...groupIdFilter(groupId),
+      membersList: { $ne: username },
+      $expr: { $lt: [{ $ifNull: ['$memberCount', 0] }, { $ifNull: ['$maxMembers', DEFAULT_MAX_MEMBERS] }] }
+    },
+    {
+      $addToSet: { membersList: username },
+      $inc: { memberCount: 1 }
+    },
+    { returnDocument: 'after' }
+  );
+
+  if (group) {
+    return { group };
+  }
+
+  // Only the failure path pays for a second query
+  const current = await findMembership(groupId);
+  if (!current) {
+    return { error: 'not_found' };
+  }
+  if ((current.membersList || []).includes(username)) {
+    return { error: 'already_member' };
+  }
+  return { error: 'full', maxMembers: current.maxMembers || DEFAULT_MAX_MEMBERS };
+}
+
+/**
+ * Remove a user from a group in a single conditional update
+ * @param {string} groupId - Group ID
+ * @param {string} username - User leaving the group
+ * @returns {Promise<Object>} { group } on success, otherwise { error } with
+ *   'not_found' or 'not_member'
+ */
+async function removeMember(groupId, username) {
+  const group = await chatGroupsCollection().findOneAndUpdate(
+    { ...groupIdFilter(groupId), membersList: username },
+    {
+      $pull: { membersList: username },
+      $inc: { memberCount: -1 }
+    },
+    { returnDocument: 'after' }
+  );
+
+  if (group) {
+    return { group };
+  }
+
+  const current = await findMembership(groupId);
+  return { error: current ? 'not_member' : 'not_found' };
+}
+
+/**
+ * Convert groups that still only have the "3/10" members string to numeric
+ * counters. Safe to run on every startup.
+ * @returns {Promise<number>} Number of groups converted
+ */
+async function migrateMemberCounters() {
+  const legacyGroups = await chatGroupsCollection()
+    .find({ memberCount: { $exists: false } }, { projection: { members: 1, membersList: 1 } })
+    .toArray();
+
+  if (legacyGroups.length === 0) {
+    return 0;
+  }
+
+  const result = await chatGroupsCollection().bulkWrite(legacyGroups.map((group) => {
+    const [, max] = String(group.members || '').split('/').map(Number);
+    return {
+      updateOne: {
+        filter: { _id: group._id, memberCount: { $exists: false } },
+        update: {
+          $set: {
+            memberCount: (group.membersList || []).length,
+            maxMembers: max || DEFAULT_MAX_MEMBERS
+          },
+          $unset: { members: '' }
+        }
+      }
+    };
+  }), { ordered: false });
+
+  return result.modifiedCount;
+}
+
+module.exports = {
+  DEFAULT_MAX_MEMBERS,
+  groupIdFilter,
+  formatGroup,
+  findGroup,
+  createGroup,
+  addMember,
+  removeMember,
+  migrateMemberCounters
+};
@@ -0,0 +1,252 @@
+// models/crisisEvent.js - Crisis Event Model Functions (outbox for emergency contact notifications)
+const crypto = require('crypto');
+const { ObjectId } = require('mongodb');
+const { getDB } = require('../db');
+
+const crisisEventsCollection = () => getDB().collection('crisisEvents');
+
+// Event status while notifications are outstanding, and once they are finished
+const PENDING_STATUSES = ['pending', 'retrying'];
+const FINAL_STATUSES = ['contact_reached', 'notification_failed'];
+
+// Crisis services used when the user has no emergency contacts of their own
+const DEFAULT_CRISIS_CONTACTS = [
+  {
+    name: "National Crisis Hotline",
+    phone: "988",
+    relationship: "Crisis Service",
+    isPrimary: true
+  },
+  {
+    name: "Crisis Text Line",
+    phone: "741741",
+    relationship: "Crisis Service",
+    isPrimary: false
+  },
+  {
+    name: "National Suicide Prevention Lifeline",
+    phone: "1-800-273-8255",
+    relationship: "Crisis Service",
+    isPrimary: false
+  }
+];
+
+/**
+ * Contacts to alert for a user: their emergency contacts with a phone number,
+ * else their own profile phone, else the default crisis services
+ * @param {Object|null} user - User document
+ * @returns {Array<Object>} Contacts with name, phone, relationship and isPrimary
+ */
+function contactsForUser(user) {
+  const validContacts = ((user && user.emergencyContacts) || []).filter(contact =>
+    contact && contact.phone && contact.phone.trim() !== ''
+  );
+
+  if (validContacts.length > 0) {
+    return validContacts;
+  }
+
+  if (user && user.profile && user.profile.phone && user.name) {
+    return [{
+      name: `${user.name} (Self)`,
+      phone: user.profile.phone,
+      relationship: "Self",
+      isPrimary: true
+    }];
+  }
+
+  return DEFAULT_CRISIS_CONTACTS;
+}
+
+/**
+ * Stable key for one notification, passed to the SMS provider so a retried
+ * send after a timeout can't alert the same contact twice
+ * @param {ObjectId} eventId - Crisis event ID
+ * @param {string} phone - Contact phone number
+ * @returns {string} Idempotency key
+ */
+function notificationKey(eventId, phone) {
+  const digest = crypto.createHash('sha256').update(`${eventId}:${phone}`).digest('hex');
+  return `crisis_${digest.substring(0, 32)}`;
+}
+
+/**
+ * Record a crisis in the outbox. Contacts are looked up and notified by the
+ * outbox worker, so this is a single insert on the request path.
+ * @param {string} userId - User in crisis
+ * @param {Object} [options]
+ * @param {string} [options.idempotencyKey] - Client key; repeating it returns the existing event
+ * @returns {Promise<Object>} The crisis event
+ */
+async function createCrisisEvent(userId, options = {}) {
+  const now = new Date();
+  const event = {
+    userId,
+    status: 'pending',
+    timestamp: now,
+    nextAttemptAt: now,
+    attempts: 0,
+    notifications: null,
+    leaseOwner: null,
+    leaseExpiresAt: null,
+    updatedAt: now
+  };
+
+  if (options.idempotencyKey) {
+    event.idempotencyKey = String(options.idempotencyKey);
+  }
+
+  try {
+    const result = await crisisEventsCollection().insertOne(event);
+    return { ...event, _id: result.insertedId };
+  } catch (error) {
+    // The same request was already recorded
+    if (error.code === 11000 && event.idempotencyKey) {
+      return crisisEventsCollection().findOne({ idempotencyKey: event.idempotencyKey });
+    }
+    throw error;
+  }
+}
+
+/**
+ * Token that lets the app poll the status of one crisis event. It is derived
+ * from the event ID, so a retried request gets the same token back.
+ * @param {ObjectId|string} eventId - Crisis event ID
+ * @returns {string} Status token
+ */
+function statusToken(eventId) {
+  return crypto
+    .createHmac('sha256', process.env.JWT_SECRET || 'your_jwt_secret')
+    .update(`crisis-status:${eventId}`)
+    .digest('base64url');
+}
+
+/**
+ * Check a status token against an event ID in constant time
+ * @param {string} eventId - Crisis event ID
+ * @param {string} token - Token sent by the client
+ * @returns {boolean} Whether the token belongs to the event
+ */
+function verifyStatusToken(eventId, token) {
+  const provided = Buffer.from(String(token || ''));
+  const expected = Buffer.from(statusToken(eventId));
+  return provided.length === expected.length && crypto.timingSafeEqual(provided, expected);
+}
+
+/**
+ * Find a crisis event by ID
+ * @param {string} eventId - Crisis event ID
+ * @returns {Promise<Object|null>} The crisis event
+ */
+async function findCrisisEvent(eventId) {
+  if (!ObjectId.isValid(eventId)) {
+    return null;
+  }
+  return crisisEventsCollection().findOne({ _id: new ObjectId(eventId) });
+}
+
+/**
+ * Lease the next event that is due. An event leased by a worker that died is
+ * picked up again once its lease expires.
+ * @param {string} owner - Worker ID
+ * @param {number} leaseMs - Lease duration
+ * @returns {Promise<Object|null>} The leased event
+ */
+async function claimDueEvent(owner, leaseMs) {
+  const now = new Date();
+  return crisisEventsCollection().findOneAndUpdate(
+    {
+      $or: [
+        { status: { $in: PENDING_STATUSES }, nextAttemptAt: { $lte: now } },
+        { status: 'sending', leaseExpiresAt: { $lte: now } }
+      ]
+    },
+    {
+      $set: {
+        status: 'sending',
+        leaseOwner: owner,
+        leaseExpiresAt: new Date(now.getTime() + leaseMs),
+        updatedAt: now
+      },
+      $inc: { attempts: 1 }
+    },
+    { sort: { nextAttemptAt: 1 }, returnDocument: 'after' }
+  );
+}
+
+/**
+ * Save the outcome of an attempt and release the lease. Matches on the lease
+ * owner so a worker whose lease expired can't overwrite a newer attempt.
+ * @param {ObjectId} eventId - Crisis event ID
+ * @param {string} owner - Worker ID that holds the lease
+ * @param {Object} fields - Fields to set (status, notifications, nextAttemptAt, ...)
+ * @returns {Promise<boolean>} False when the lease had been lost
+ */
+async function completeAttempt(eventId, owner, fields) {
+  const result = await crisisEventsCollection().updateOne(
+    { _id: eventId, leaseOwner: owner },
+    {
+      $set: {
+        ...fields,
+        leaseOwner: null,
+        leaseExpiresAt: null,
+        updatedAt: new Date()
+      }
+    }
+  );
+  return result.matchedCount > 0;
+}
+
+/**
+ * Shape a crisis event for the status endpoint. Phone numbers are left out.
+ * @param {Object} event - Crisis event document
+ * @returns {Object} Event status with per-contact results
+ */
+function formatCrisisEvent(event) {
+  const notifications = event.notifications || [];
+  return {
+    id: event._id,
+    status: event.status,
+    createdAt: event.timestamp,
+    updatedAt: event.updatedAt,
+    attempts: event.attempts || 0,
+    nextAttemptAt: PENDING_STATUSES.includes(event.status) ? event.nextAttemptAt : null,
+    notified: notifications.filter(n => n.status === 'sent').length,
+    failed: notifications.filter(n => n.status === 'failed').length,
+    contacts: notifications.map(n => ({
+      contact: n.contact,
+      relationship: n.relationship,
+      status: n.status,
+      attempts: n.attempts,
+      sentAt: n.sentAt || null,
+      error: n.status === 'sent' ? undefined : n.lastError || undefined
+    }))
+  };
+}
+
+/**
+ * Indexes used by the outbox worker and idempotent inserts
+ * @returns {Promise<void>}
+ */
+async function ensureCrisisEventIndexes() {
+  await crisisEventsCollection().createIndex({ status: 1, nextAttemptAt: 1 });
+  await crisisEventsCollection().createIndex(
+    { idempotencyKey: 1 },
+    { unique: true, partialFilterExpression: { idempotencyKey: { $type: 'string' } } }
+  );
+}
+
+module.exports = {
+  PENDING_STATUSES,
+  FINAL_STATUSES,
+  contactsForUser,
+  notificationKey,
+  createCrisisEvent,
+  statusToken,
+  verifyStatusToken,
+  findCrisisEvent,
+  claimDueEvent,
+  completeAttempt,
+  formatCrisisEvent,
+  ensureCrisisEventIndexes
+};
@@ -11,4 +11,8 @@ const FeedSchema = new mongoose.Schema({
   createdAt: { type: Date, default: Date.now },
 });
 
+// The feed is listed newest first, optionally within one category
+FeedSchema.index({ createdAt: -1, _id: -1 });
+FeedSchema.index({ category: 1, createdAt: -1, _id: -1 });
+
 module.exports = mongoose.model("Feed", FeedSchema);
\ No newline at end of file
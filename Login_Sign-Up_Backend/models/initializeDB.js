@@ -1,4 +1,6 @@
 const { getDB } = require('../db');
+const { migrateMemberCounters } = require('./chatGroup');
+const { ensureCrisisEventIndexes } = require('./crisisEvent');
 
 /**
  * Initialize the database with required collections and indexes for chat functionality
@@ -33,6 +35,12 @@ async function initializeChatCollections() {
       console.log('Created indexes for chatMessages collection');
     }
     
+    // Used by reconnecting clients to resume a group from a sequence number
+    await db.collection('chatMessages').createIndex({ groupId: 1, seq: 1 });
+    
+    // Keyset pagination of group history and incremental sync on (timestamp, _id)
+    await db.collection('chatMessages').createIndex({ groupId: 1, timestamp: 1, _id: 1 });
+    
     return true;
   } catch (error) {
     console.error('Error initializing chat collections:', error);
@@ -51,6 +59,15 @@ async function initializeDatabase() {
     // Initialize collections (creates them if they don't exist)
     await initializeChatCollections();
     
+    // Convert groups created with the old "3/10" members string to numeric counters
+    const migratedGroups = await migrateMemberCounters();
+    if (migratedGroups > 0) {
+      console.log(`Converted ${migratedGroups} chat groups to numeric member counters`);
+    }
+    
+    // Outbox indexes for crisis notifications
+    await ensureCrisisEventIndexes();
+    
     // Check if we need to create default chat groups
     const db = getDB();
     const existingGroups = await db.collection('chatGroups').countDocuments({});
@@ -62,35 +79,40 @@ async function initializeDatabase() {
       const defaultGroups = [
         {
           name: 'Mind Haven',
-          members: '0/10',
+          memberCount: 0,
+          maxMembers: 10,
           description: 'A peaceful space for mindfulness and mental wellness. Share experiences and support on your journey to peace.',
           membersList: [],
           createdAt: new Date()
         },
         {
           name: 'Brighter Days',
-          members: '0/10',
+          memberCount: 0,
+          maxMembers: 10,
           description: 'Focus on positivity and hope. Share uplifting stories and encouragement for brighter days ahead.',
           membersList: [],
           createdAt: new Date()
         },
         {
           name: 'Safe Space Chat',
-          members: '0/10',
+          memberCount: 0,
+          maxMembers: 10,
           description: 'A judgment-free zone where you can express yourself openly. Support and understanding for all.',
           membersList: [],
           createdAt: new Date()
         },
         {
           name: 'Soulful Support',
-          members: '0/10',
+          memberCount: 0,
+          maxMembers: 10,
           description: 'Deep conversations about life challenges and growth. Connect with others on a meaningful level.',
           membersList: [],
           createdAt: new Date()
         },
         {
           name: 'Rise Together',
-          members: '0/10',
+          memberCount: 0,
+          maxMembers: 10,
           description: 'Community for motivation and overcoming obstacles. Share victories and encourage each other to rise.',
           membersList: [],
           createdAt: new Date()
@@ -31,6 +31,11 @@ const moodSchema = new mongoose.Schema({
   notes: {
     type: String,
     default: ""
+  },
+  // Calendar day on the user's device ('YYYY-MM-DD'), set by the app's sync.
+  // Moods without it are bucketed in the server's time zone.
+  day: {
+    type: String
   }
 }, {
   timestamps: true,  // Adds createdAt and updatedAt timestamps
@@ -55,8 +60,8 @@ moodSchema.statics.verifyConnection = async function() {
     // Try a lightweight find operation
     await this.findOne().exec();
     
-    // Try to count documents
-    const count = await this.countDocuments();
+    // Collection metadata count; a full count would scan every mood entry
+    const count = await this.estimatedDocumentCount();
     console.log(`Mood model connection verified - found ${count} documents`);
     
     return true;
@@ -0,0 +1,427 @@
+// models/mood-rollup-model.js
+const { getMongoose } = require('../db');
+const mongoose = getMongoose();
+const Mood = require('./mood-model');
+const moodConfig = require('../config/mood-config');
+
+const DAYS_OF_WEEK = ["Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"];
+const DUPLICATE_KEY_ERROR = 11000;
+// Conditional day updates that lose to a concurrent write are retried this often
+const MAX_RECORD_ATTEMPTS = 5;
+
+// Latest mood recorded for a calendar day
+const dayEntrySchema = new mongoose.Schema({
+  mood: String,
+  moodValue: Number,
+  moodId: mongoose.Schema.Types.ObjectId,
+  entries: Number,      // Raw mood documents on the day
+  updatedAt: Date
+}, { _id: false });
+
+// Days tracked and the sum of their mood values for a Monday-based week
+const weekEntrySchema = new mongoose.Schema({
+  count: Number,
+  sum: Number
+}, { _id: false });
+
+// One small document per user, kept up to date on every mood write so the
+// dashboard never has to scan raw mood entries. Daily and weekly entries are
+// pruned to a fixed window, so the document size doesn't grow with history.
+const moodRollupSchema = new mongoose.Schema({
+  userId: {
+    type: String,
+    required: true,
+    unique: true
+  },
+  // Keyed by local date, 'YYYY-MM-DD'
+  days: {
+    type: Map,
+    of: dayEntrySchema
+  },
+  // Keyed by the local date of the week's Monday
+  weeks: {
+    type: Map,
+    of: weekEntrySchema
+  },
+  totals: {
+    entries: Number,    // Raw mood documents
+    days: Number,       // Days with at least one mood
+    sum: Number,        // Sum of each day's latest mood value
+    byMood: {
+      type: Map,
+      of: Number
+    },
+    firstDate: Date,
+    lastDate: Date
+  },
+  rebuiltAt: Date
+}, {
+  timestamps: true,
+  collection: 'moodRollups'
+});
+
+/**
+ * Local calendar date key for a date
+ * @param {Date} date - The date
+ * @returns {string} 'YYYY-MM-DD'
+ */
+function dayKey(date) {
+  const d = new Date(date);
+  const month = String(d.getMonth() + 1).padStart(2, '0');
+  const day = String(d.getDate()).padStart(2, '0');
+  return `${d.getFullYear()}-${month}-${day}`;
+}
+
+/**
+ * Calendar date key for a date at a fixed UTC offset
+ * @param {Date} date - The date
+ * @param {number} tzOffset - Minutes east of UTC
+ * @returns {string} 'YYYY-MM-DD'
+ */
+function localDayKey(date, tzOffset) {
+  return new Date(new Date(date).getTime() + tzOffset * 60000).toISOString().substring(0, 10);
+}
+
+/**
+ * Key of the Monday-based week a date falls in
+ * @param {Date} date - The date
+ * @returns {string} Day key of that week's Monday
+ */
+function weekKey(date) {
+  const d = new Date(date);
+  const daysSinceMonday = (d.getDay() + 6) % 7;
+  return dayKey(new Date(d.getFullYear(), d.getMonth(), d.getDate() - daysSinceMonday));
+}
+
+/**
+ * Parse a day key back into a local date
+ * @param {string} key - 'YYYY-MM-DD'
+ * @returns {Date} Local midnight of that day
+ */
+function parseDayKey(key) {
+  const [year, month, day] = key.split('-').map(Number);
+  return new Date(year, month - 1, day);
+}
+
+/**
+ * Oldest day and week keys that are still kept
+ * @param {Date} now - Current time
+ * @returns {Object} { day, week }
+ */
+function retentionCutoffs(now = new Date()) {
+  const { daysKept, weeksKept } = moodConfig.rollup;
+  return {
+    day: dayKey(new Date(now.getFullYear(), now.getMonth(), now.getDate() - (daysKept - 1))),
+    week: weekKey(new Date(now.getFullYear(), now.getMonth(), now.getDate() - (weeksKept - 1) * 7))
+  };
+}
+
+// Helper to read a Map field from either a lean document or a rebuilt object
+function entriesOf(field) {
+  if (!field) {
+    return [];
+  }
+  return field instanceof Map ? Array.from(field.entries()) : Object.entries(field);
+}
+
+/**
+ * A day's latest mood and entry count, recomputed from the raw mood documents.
+ * Moods saved without a device day are placed by the server's time zone, as
+ * in rebuildForUser.
+ * @param {string} userId - User ID
+ * @param {string} day - 'YYYY-MM-DD'
+ * @returns {Promise<Object|null>} { mood, moodValue, moodId, entries, firstDate, lastDate }
+ */
+async function loadDay(userId, day) {
+  const start = parseDayKey(day);
+  const end = new Date(start.getFullYear(), start.getMonth(), start.getDate() + 1);
+
+  const [row] = await Mood.aggregate([
+    { $match: { userId, $or: [{ day }, { day: null, date: { $gte: start, $lt: end } }] } },
+    { $sort: { date: 1 } },
+    {
+      $group: {
+        _id: null,
+        mood: { $last: '$mood' },
+        moodValue: { $last: '$moodValue' },
+        moodId: { $last: '$_id' },
+        entries: { $sum: 1 },
+        firstDate: { $min: '$date' },
+        lastDate: { $max: '$date' }
+      }
+    }
+  ]);
+  return row || null;
+}
+
+/**
+ * Bring one day of the user's rollup in line with the raw moods after a write.
+ * The day is recomputed from its mood documents and the totals move by the
+ * difference from the day entry that was read, in an update that only applies
+ * if that entry is unchanged. Concurrent saves for the same day therefore
+ * can't count it twice: the loser re-reads and applies what is left. Falls
+ * back to a rebuild when there is no rollup yet, or the day is outside the
+ * kept window or predates per-day entry counts.
+ * @param {Object} savedMood - The mood document that was written
+ * @returns {Promise<void>}
+ */
+moodRollupSchema.statics.recordMood = async function(savedMood) {
+  const { userId, date } = savedMood;
+  // The device's day when the app sent one, else the server's
+  const day = savedMood.day || dayKey(date);
+  const week = weekKey(parseDayKey(day));
+
+  if (day < retentionCutoffs().day) {
+    await this.rebuildForUser(userId);
+    return;
+  }
+
+  for (let attempt = 0; attempt < MAX_RECORD_ATTEMPTS; attempt++) {
+    const rollup = await this.findOne({ userId }, { [`days.${day}`]: 1 }).lean();
+    const before = rollup && rollup.days ? rollup.days[day] : null;
+    if (!rollup || (before && before.entries == null)) {
+      // The raw mood is already saved, so a rebuild includes it
+      await this.rebuildForUser(userId);
+      return;
+    }
+
+    const current = await loadDay(userId, day);
+    if (!current) {
+      await this.rebuildForUser(userId);
+      return;
+    }
+
+    const inc = {};
+    if (before) {
+      inc['totals.entries'] = current.entries - before.entries;
+      inc['totals.sum'] = current.moodValue - before.moodValue;
+      inc[`weeks.${week}.sum`] = current.moodValue - before.moodValue;
+      if (before.mood !== current.mood) {
+        inc[`totals.byMood.${before.mood}`] = -1;
+        inc[`totals.byMood.${current.mood}`] = 1;
+      }
+    } else {
+      inc['totals.entries'] = current.entries;
+      inc['totals.days'] = 1;
+      inc['totals.sum'] = current.moodValue;
+      inc[`totals.byMood.${current.mood}`] = 1;
+      inc[`weeks.${week}.count`] = 1;
+      inc[`weeks.${week}.sum`] = current.moodValue;
+    }
+
+    // Only if the day entry is still the one the difference was taken from
+    const filter = { userId };
+    if (before) {
+      filter[`days.${day}.moodId`] = before.moodId;
+      filter[`days.${day}.mood`] = before.mood;
+      filter[`days.${day}.moodValue`] = before.moodValue;
+      filter[`days.${day}.entries`] = before.entries;
+    } else {
+      filter[`days.${day}`] = { $exists: false };
+    }
+
+    const result = await this.updateOne(filter, {
+      $set: {
+        [`days.${day}`]: {
+          mood: current.mood,
+          moodValue: current.moodValue,
+          moodId: current.moodId,
+          entries: current.entries,
+          updatedAt: new Date()
+        }
+      },
+      $inc: inc,
+      $min: { 'totals.firstDate': current.firstDate },
+      $max: { 'totals.lastDate': current.lastDate }
+    });
+
+    if (result.matchedCount > 0) {
+      return;
+    }
+  }
+
+  // Still losing to other writes; recompute everything instead
+  await this.rebuildForUser(userId);
+};
+
+/**
+ * Recompute a user's rollup from their raw mood documents. Used for users
+ * without a rollup (lazily on first read, or by the backfill script).
+ * @param {string} userId - User ID
+ * @returns {Promise<Object>} The rebuilt rollup as a plain object
+ */
+moodRollupSchema.statics.rebuildForUser = async function(userId) {
+  const timezone = Intl.DateTimeFormat().resolvedOptions().timeZone;
+  const cutoffs = retentionCutoffs();
+
+  // One row per calendar day (the device's when known), keeping that day's latest mood
+  const perDay = await Mood.aggregate([
+    { $match: { userId } },
+    { $sort: { date: 1 } },
+    {
+      $group: {
+        _id: { $ifNull: ['$day', { $dateToString: { format: '%Y-%m-%d', date: '$date', timezone } }] },
+        mood: { $last: '$mood' },
+        moodValue: { $last: '$moodValue' },
+        moodId: { $last: '$_id' },
+        entries: { $sum: 1 },
+        firstDate: { $min: '$date' },
+        lastDate: { $max: '$date' }
+      }
+    },
+    { $sort: { _id: 1 } }
+  ]);
+
+  const rollup = {
+    userId,
+    days: {},
+    weeks: {},
+    totals: { entries: 0, days: 0, sum: 0, byMood: {}, firstDate: null, lastDate: null },
+    rebuiltAt: new Date()
+  };
+
+  for (const row of perDay) {
+    const { totals } = rollup;
+    totals.entries += row.entries;
+    totals.days++;
+    totals.sum += row.moodValue;
+    totals.byMood[row.mood] = (totals.byMood[row.mood] || 0) + 1;
+    totals.firstDate = totals.firstDate || row.firstDate;
+    totals.lastDate = row.lastDate;
+
+    if (row._id >= cutoffs.day) {
+      rollup.days[row._id] = {
+        mood: row.mood,
+        moodValue: row.moodValue,
+        moodId: row.moodId,
+        entries: row.entries,
+        updatedAt: row.lastDate
+      };
+    }
+
+    const week = weekKey(parseDayKey(row._id));
+    if (week >= cutoffs.week) {
+      rollup.weeks[week] = rollup.weeks[week] || { count: 0, sum: 0 };
+      rollup.weeks[week].count++;
+      rollup.weeks[week].sum += row.moodValue;
+    }
+  }
+
+  try {
+    await this.replaceOne({ userId }, rollup, { upsert: true });
+  } catch (error) {
+    // Two first writes for the same user can race on the unique index; the other one won
+    if (error.code !== DUPLICATE_KEY_ERROR) {
+      throw error;
+    }
+    await this.replaceOne({ userId }, rollup);
+  }
+
+  return rollup;
+};
+
+/**
+ * Load a user's rollup, building it on first use and dropping entries that
+ * have aged out of the retention window
+ * @param {string} userId - User ID
+ * @returns {Promise<Object>} Rollup as a plain object
+ */
+moodRollupSchema.statics.getForUser = async function(userId) {
+  const rollup = await this.findOne({ userId }).lean();
+  if (!rollup) {
+    return this.rebuildForUser(userId);
+  }
+
+  const cutoffs = retentionCutoffs();
+  const unset = {};
+  for (const [key] of entriesOf(rollup.days)) {
+    if (key < cutoffs.day) {
+      unset[`days.${key}`] = '';
+      delete rollup.days[key];
+    }
+  }
+  for (const [key] of entriesOf(rollup.weeks)) {
+    if (key < cutoffs.week) {
+      unset[`weeks.${key}`] = '';
+      delete rollup.weeks[key];
+    }
+  }
+
+  // At most once a day per user; the response doesn't need to wait for it
+  if (Object.keys(unset).length > 0) {
+    this.updateOne({ userId }, { $unset: unset }).catch((error) => {
+      console.error(`Failed to prune mood rollup for user ${userId}:`, error.message);
+    });
+  }
+
+  return rollup;
+};
+
+/**
+ * Mood value for each of the last seven days, keyed by weekday
+ * @param {Object} rollup - Rollup from getForUser
+ * @param {Date} [now] - Current time
+ * @returns {Object} { Mon: 3, Tue: 0, ... }
+ */
+moodRollupSchema.statics.toWeekly = function(rollup, now = new Date()) {
+  const weeklyMoods = {
+    "Mon": 0, "Tue": 0, "Wed": 0,
+    "Thu": 0, "Fri": 0, "Sat": 0, "Sun": 0
+  };
+  const days = rollup.days || {};
+
+  for (let i = 0; i < 7; i++) {
+    const date = new Date(now.getFullYear(), now.getMonth(), now.getDate() - i);
+    const entry = days[dayKey(date)];
+    weeklyMoods[DAYS_OF_WEEK[date.getDay()]] = entry ? entry.moodValue : 0;
+  }
+
+  return weeklyMoods;
+};
+
+/**
+ * Everything the mood dashboard shows, from the rollup alone
+ * @param {Object} rollup - Rollup from getForUser
+ * @param {Date} [now] - Current time
+ * @returns {Object} weekly, daily, weekly averages and totals
+ */
+moodRollupSchema.statics.toSummary = function(rollup, now = new Date()) {
+  const totals = rollup.totals || {};
+
+  const daily = entriesOf(rollup.days)
+    .sort(([a], [b]) => (a < b ? -1 : 1))
+    .map(([date, entry]) => ({ date, mood: entry.mood, moodValue: entry.moodValue }));
+
+  const weeks = entriesOf(rollup.weeks)
+    .sort(([a], [b]) => (a < b ? -1 : 1))
+    .map(([weekStart, entry]) => ({
+      weekStart,
+      daysTracked: entry.count,
+      average: entry.count > 0 ? +(entry.sum / entry.count).toFixed(2) : 0
+    }));
+
+  return {
+    weekly: this.toWeekly(rollup, now),
+    today: (rollup.days || {})[dayKey(now)] || null,
+    daily,
+    weeks,
+    totals: {
+      entries: totals.entries || 0,
+      daysTracked: totals.days || 0,
+      average: totals.days > 0 ? +(totals.sum / totals.days).toFixed(2) : 0,
+      byMood: Object.fromEntries(entriesOf(totals.byMood).filter(([, count]) => count > 0)),
+      firstDate: totals.firstDate || null,
+      lastDate: totals.lastDate || null
+    }
+  };
+};
+
+moodRollupSchema.statics.dayKey = dayKey;
+moodRollupSchema.statics.localDayKey = localDayKey;
+moodRollupSchema.statics.parseDayKey = parseDayKey;
+moodRollupSchema.statics.weekKey = weekKey;
+
+// Reuse the model if it was already compiled
+const MoodRollup = mongoose.models.MoodRollup || mongoose.model('MoodRollup', moodRollupSchema);
+
+module.exports = MoodRollup;
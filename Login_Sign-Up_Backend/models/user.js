@@ -1,6 +1,7 @@
 // models/User.js - User Model Functions
 const { getDB, ObjectId } = require('../db');
-const bcrypt = require('bcryptjs');
+const { passwordHasher } = require('../services/passwordHasher');
+const { logger } = require('../services/logger');
 const crypto = require('crypto');
 
 const usersCollection = () => getDB().collection('users');
@@ -15,7 +16,7 @@ async function createUser(userData) {
   const { email, password, name } = userData;
   
   // Log the complete incoming userData for debugging
-  console.log("FULL USER DATA RECEIVED:", JSON.stringify(userData, null, 2));
+  logger.debug("FULL USER DATA RECEIVED:", JSON.stringify({ ...userData, password: '[redacted]' }, null, 2));
   
   // Check if user already exists
   const existingUser = await usersCollection().findOne({ email });
@@ -23,9 +24,8 @@ async function createUser(userData) {
     throw new Error('User already exists');
   }
   
-  // Hash password
-  const salt = await bcrypt.genSalt(10);
-  const hashedPassword = await bcrypt.hash(password, salt);
+  // Hash password off the main thread
+  const hashedPassword = await passwordHasher.hash(password);
   
   // Generate a consistent userId based on email
   const userId = userData.userId || generateUserId(email);
@@ -65,11 +65,11 @@ async function createUser(userData) {
   if (userData.profile && userData.profile.phone) {
     // If phone is in profile object
     newUser.profile.phone = userData.profile.phone;
-    console.log("Setting phone from profile:", userData.profile.phone);
+    logger.debug("Setting phone from profile:", userData.profile.phone);
   } else if (userData.phone) {
     // If phone is direct property
     newUser.profile.phone = userData.phone;
-    console.log("Setting phone from direct property:", userData.phone);
+    logger.debug("Setting phone from direct property:", userData.phone);
   }
   
   // Set organization and location
@@ -86,7 +86,7 @@ async function createUser(userData) {
   if (userData.emergencyContacts && Array.isArray(userData.emergencyContacts) && userData.emergencyContacts.length > 0) {
     // If emergencyContacts is already an array, use it
     newUser.emergencyContacts = userData.emergencyContacts;
-    console.log("Using provided emergencyContacts array:", userData.emergencyContacts);
+    logger.debug("Using provided emergencyContacts array:", userData.emergencyContacts);
   } else if (userData.emergencyContact) {
     // Handle single emergencyContact (could be string or object)
     if (typeof userData.emergencyContact === 'string' && userData.emergencyContact.trim() !== '') {
@@ -97,7 +97,7 @@ async function createUser(userData) {
         relationship: "Not specified",
         isPrimary: true
       });
-      console.log("Added emergency contact from string:", userData.emergencyContact);
+      logger.debug("Added emergency contact from string:", userData.emergencyContact);
     } else if (typeof userData.emergencyContact === 'object' && userData.emergencyContact !== null) {
       // If it's an object with phone property
       if (userData.emergencyContact.phone) {
@@ -107,13 +107,13 @@ async function createUser(userData) {
           relationship: userData.emergencyContact.relationship || "Not specified",
           isPrimary: true
         });
-        console.log("Added emergency contact from object:", userData.emergencyContact);
+        logger.debug("Added emergency contact from object:", userData.emergencyContact);
       }
     }
   }
   
   // Log final structure before saving
-  console.log("FINAL USER TO BE SAVED:", {
+  logger.debug("FINAL USER TO BE SAVED:", {
     userId: newUser.userId,
     name: newUser.name,
     email: newUser.email,
@@ -126,7 +126,7 @@ async function createUser(userData) {
   
   // Verify the saved user by retrieving it
   const savedUser = await usersCollection().findOne({ _id: result.insertedId });
-  console.log("VERIFIED SAVED USER:", {
+  logger.debug("VERIFIED SAVED USER:", {
     userId: savedUser.userId,
     name: savedUser.name,
     profile: savedUser.profile,
@@ -159,7 +159,7 @@ async function findUserByEmail(email) {
 }
 
 async function verifyPassword(user, password) {
-  return bcrypt.compare(password, user.password);
+  return passwordHasher.compare(password, user.password);
 }
 
 async function updateUser(userId, updateData) {
@@ -261,8 +261,7 @@ async function updatePhone(userId, phone) {
 
 async function changePassword(userId, newPassword) {
   // Hash the new password
-  const salt = await bcrypt.genSalt(10);
-  const hashedPassword = await bcrypt.hash(newPassword, salt);
+  const hashedPassword = await passwordHasher.hash(newPassword);
   
   // Update password and set last changed date
   const updateFields = {
@@ -321,8 +320,7 @@ async function resetPasswordWithToken(token, newPassword) {
   }
   
   // Hash new password
-  const salt = await bcrypt.genSalt(10);
-  const hashedPassword = await bcrypt.hash(newPassword, salt);
+  const hashedPassword = await passwordHasher.hash(newPassword);
   
   // Update user
   await updateUser(user._id, {
@@ -2,44 +2,51 @@ const express = require('express');
 const router = express.Router();
 const { ObjectId } = require('mongodb');
 const { getDB } = require('../db');
+const { findGroup, createGroup, addMember, removeMember, formatGroup } = require('../models/chatGroup');
+const { parseLimit, streamJsonArray, sendStreamError } = require('../services/pagination');
+const { requireUser } = require('../middleware/userAuth');
 
-// Get all chat groups
+// Page sizes for the group list
+const GROUP_PAGE_SIZE = 100;
+const MAX_GROUP_PAGE_SIZE = 500;
+
+// Get chat groups, ordered by id. Pass ?after=<last group id> for the next
+// page; a page shorter than the limit is the last one.
 router.get('/', async (req, res) => {
   try {
     const db = getDB();
-    const groups = await db.collection('chatGroups').find({}).toArray();
+    const limit = parseLimit(req.query.limit, GROUP_PAGE_SIZE, MAX_GROUP_PAGE_SIZE);
+    const { after } = req.query;
+    
+    const query = {};
+    if (after) {
+      query._id = { $gt: ObjectId.isValid(after) && after.length === 24 ? new ObjectId(after) : after };
+    }
     
-    res.status(200).json(groups);
+    const groups = db.collection('chatGroups')
+      .find(query)
+      .sort({ _id: 1 })
+      .limit(limit)
+      .map(formatGroup);
+    
+    await streamJsonArray(res, groups);
   } catch (error) {
     console.error('Error getting chat groups:', error);
-    res.status(500).json({ message: 'Failed to fetch chat groups', error: error.message });
+    sendStreamError(res, error, 'Failed to fetch chat groups');
   }
 });
 
 // Get a specific chat group
 router.get('/:id', async (req, res) => {
   try {
-    const db = getDB();
-    const groupId = req.params.id;
-    
-    // Try to get the group, whether it's stored with ObjectId or as string id
-    let group;
-    
-    // First try getting it as ObjectId if valid format
-    if (ObjectId.isValid(groupId)) {
-      group = await db.collection('chatGroups').findOne({ _id: new ObjectId(groupId) });
-    }
-    
-    // If not found, try as string id
-    if (!group) {
-      group = await db.collection('chatGroups').findOne({ _id: groupId });
-    }
+    // Matches the group whether it's stored with an ObjectId or a string id
+    const group = await findGroup(req.params.id);
     
     if (!group) {
       return res.status(404).json({ message: 'Chat group not found' });
     }
     
-    res.status(200).json(group);
+    res.status(200).json(formatGroup(group));
   } catch (error) {
     console.error('Error getting chat group:', error);
     res.status(500).json({ message: 'Failed to fetch chat group', error: error.message });
@@ -49,103 +56,57 @@ router.get('/:id', async (req, res) => {
 // Create a new chat group
 router.post('/', async (req, res) => {
   try {
-    const db = getDB();
     const { name, description } = req.body;
     
     if (!name) {
       return res.status(400).json({ message: 'Group name is required' });
     }
     
-    const newGroup = {
-      name,
-      description: description || '',
-      members: '0/10', // Initial member count with maximum
-      membersList: [],
-      createdAt: new Date()
-    };
-    
-    const result = await db.collection('chatGroups').insertOne(newGroup);
+    const createdGroup = await createGroup({ name, description });
     
-    // Get the created group with ID
-    const createdGroup = {
-      ...newGroup,
-      _id: result.insertedId
-    };
+    const membershipCache = req.app.get('membershipCache');
+    if (membershipCache) {
+      membershipCache.update(createdGroup);
+    }
     
-    res.status(201).json(createdGroup);
+    res.status(201).json(formatGroup(createdGroup));
   } catch (error) {
     console.error('Error creating chat group:', error);
     res.status(500).json({ message: 'Failed to create chat group', error: error.message });
   }
 });
 
-// Join a chat group
-router.post('/:id/join', async (req, res) => {
+// Join a chat group, as the signed-in user. Members are recorded under the
+// same name the socket and message routes take from the login token.
+router.post('/:id/join', requireUser, async (req, res) => {
   try {
-    const db = getDB();
     const groupId = req.params.id;
-    const { username } = req.body;
+    const { username } = req.user;
     
-    if (!username) {
-      return res.status(400).json({ message: 'Username is required' });
-    }
-    
-    // Get the current group, handle both ObjectId and string ID formats
-    let group;
+    // Single conditional update: only matches if the user isn't a member and there's room
+    const result = await addMember(groupId, username);
     
-    // First try getting it as ObjectId if valid format
-    if (ObjectId.isValid(groupId)) {
-      group = await db.collection('chatGroups').findOne({ _id: new ObjectId(groupId) });
+    if (result.error === 'not_found') {
+      return res.status(404).json({ message: 'Chat group not found' });
     }
-    
-    // If not found, try as string id
-    if (!group) {
-      group = await db.collection('chatGroups').findOne({ _id: groupId });
+    if (result.error === 'already_member') {
+      return res.status(400).json({ message: 'User is already a member of this group' });
     }
-    
-    if (!group) {
-      return res.status(404).json({ message: 'Chat group not found' });
+    if (result.error === 'full') {
+      return res.status(400).json({ message: `This group is full! Max ${result.maxMembers} members.` });
     }
     
-    // Parse the current member count
-    const [currentMembers, maxMembers] = group.members.split('/').map(Number);
+    const updatedGroup = formatGroup(result.group);
     
-    // Check if the group is full
-    if (currentMembers >= maxMembers) {
-      return res.status(400).json({ message: 'This group is full! Max 10 members.' });
+    const membershipCache = req.app.get('membershipCache');
+    if (membershipCache) {
+      membershipCache.update(result.group);
     }
     
-    // Check if the user is already a member
-    if (group.membersList.includes(username)) {
-      return res.status(400).json({ message: 'User is already a member of this group' });
-    }
-    
-    // Add the user to the group
-    const updatedMembersList = [...group.membersList, username];
-    const updatedMembers = `${currentMembers + 1}/${maxMembers}`;
-    
-    // Update the group
-    const groupIdQuery = ObjectId.isValid(group._id) ? 
-      { _id: new ObjectId(group._id) } : 
-      { _id: group._id };
-      
-    await db.collection('chatGroups').updateOne(
-      groupIdQuery,
-      { 
-        $set: { 
-          members: updatedMembers,
-          membersList: updatedMembersList 
-        } 
-      }
-    );
-    
-    // Get the updated group
-    const updatedGroup = await db.collection('chatGroups').findOne(groupIdQuery);
-    
     // Notify all connected clients about the new member
     const io = req.app.get('io');
     if (io) {
-      io.to(groupId).emit('memberJoined', { groupId, username, memberCount: updatedMembers });
+      io.to(groupId).emit('memberJoined', { groupId, username, memberCount: updatedGroup.members });
     }
     
     res.status(200).json(updatedGroup);
@@ -155,68 +116,32 @@ router.post('/:id/join', async (req, res) => {
   }
 });
 
-// Leave a chat group
-router.post('/:id/leave', async (req, res) => {
+// Leave a chat group, as the signed-in user
+router.post('/:id/leave', requireUser, async (req, res) => {
   try {
-    const db = getDB();
     const groupId = req.params.id;
-    const { username } = req.body;
-    
-    if (!username) {
-      return res.status(400).json({ message: 'Username is required' });
-    }
+    const { username } = req.user;
     
-    // Get the current group, handle both ObjectId and string ID formats
-    let group;
+    const result = await removeMember(groupId, username);
     
-    // First try getting it as ObjectId if valid format
-    if (ObjectId.isValid(groupId)) {
-      group = await db.collection('chatGroups').findOne({ _id: new ObjectId(groupId) });
-    }
-    
-    // If not found, try as string id
-    if (!group) {
-      group = await db.collection('chatGroups').findOne({ _id: groupId });
-    }
-    
-    if (!group) {
+    if (result.error === 'not_found') {
       return res.status(404).json({ message: 'Chat group not found' });
     }
-    
-    // Parse the current member count
-    const [currentMembers, maxMembers] = group.members.split('/').map(Number);
-    
-    // Check if the user is a member
-    if (!group.membersList.includes(username)) {
+    if (result.error === 'not_member') {
       return res.status(400).json({ message: 'User is not a member of this group' });
     }
     
-    // Remove the user from the group
-    const updatedMembersList = group.membersList.filter(member => member !== username);
-    const updatedMembers = `${Math.max(0, currentMembers - 1)}/${maxMembers}`;
-    
-    // Update the group
-    const groupIdQuery = ObjectId.isValid(group._id) ? 
-      { _id: new ObjectId(group._id) } : 
-      { _id: group._id };
-      
-    await db.collection('chatGroups').updateOne(
-      groupIdQuery,
-      { 
-        $set: { 
-          members: updatedMembers,
-          membersList: updatedMembersList 
-        } 
-      }
-    );
-    
-    // Get the updated group
-    const updatedGroup = await db.collection('chatGroups').findOne(groupIdQuery);
+    const updatedGroup = formatGroup(result.group);
+    
+    const membershipCache = req.app.get('membershipCache');
+    if (membershipCache) {
+      membershipCache.update(result.group);
+    }
     
     // Notify all connected clients about the member leaving
     const io = req.app.get('io');
     if (io) {
-      io.to(groupId).emit('memberLeft', { groupId, username, memberCount: updatedMembers });
+      io.to(groupId).emit('memberLeft', { groupId, username, memberCount: updatedGroup.members });
     }
     
     res.status(200).json(updatedGroup);
@@ -1,246 +1,219 @@
 const express = require('express');
 const router = express.Router();
-const { ObjectId } = require('mongodb');
 const { getDB } = require('../db');
+const { toxicFilter, containsToxicWord } = require('../middleware/toxicFilter');
+const { requireUser } = require('../middleware/userAuth');
+const {
+  encodeCursor,
+  decodeCursor,
+  keysetFilter,
+  compareKeys,
+  parseLimit,
+  streamJsonPage,
+  sendStreamError
+} = require('../services/pagination');
 
-// Get all chat groups
-router.get('/', async (req, res) => {
-  try {
-    const db = getDB();
-    const groups = await db.collection('chatGroups').find({}).toArray();
-    
-    res.status(200).json(groups);
-  } catch (error) {
-    console.error('Error getting chat groups:', error);
-    res.status(500).json({ message: 'Failed to fetch chat groups', error: error.message });
-  }
-});
+// Page sizes for message history and incremental sync
+const HISTORY_PAGE_SIZE = 50;
+const MAX_HISTORY_PAGE_SIZE = 200;
+const SYNC_PAGE_SIZE = 200;
+const MAX_SYNC_PAGE_SIZE = 500;
 
-// Get a specific chat group
-router.get('/:id', async (req, res) => {
-  try {
-    const db = getDB();
-    const groupId = req.params.id;
-    
-    // Try to get the group, whether it's stored with ObjectId or as string id
-    let group;
-    
-    // First try getting it as ObjectId if valid format
-    if (ObjectId.isValid(groupId)) {
-      group = await db.collection('chatGroups').findOne({ _id: new ObjectId(groupId) });
+// Messages are ordered by (timestamp, _id), backed by the
+// { groupId: 1, timestamp: 1, _id: 1 } index created in initializeDB
+const SORT_FIELD = 'timestamp';
+
+/**
+ * Merge a sorted database cursor with messages that are still in the
+ * write-behind buffer, skipping buffered messages that were persisted meanwhile
+ * @param {AsyncIterable<Object>} persisted - Sorted persisted messages
+ * @param {Array<Object>} buffered - Buffered messages, sorted the same way
+ * @param {Function} compare - Sort comparator
+ */
+async function* mergeWithBuffered(persisted, buffered, compare) {
+  const seen = new Set();
+  let index = 0;
+
+  for await (const doc of persisted) {
+    while (index < buffered.length && compare(buffered[index], doc) < 0) {
+      const message = buffered[index++];
+      if (!seen.has(String(message._id))) {
+        seen.add(String(message._id));
+        yield message;
+      }
     }
-    
-    // If not found, try as string id
-    if (!group) {
-      group = await db.collection('chatGroups').findOne({ _id: groupId });
+
+    if (!seen.has(String(doc._id))) {
+      seen.add(String(doc._id));
+      yield doc;
     }
-    
-    if (!group) {
-      return res.status(404).json({ message: 'Chat group not found' });
+  }
+
+  for (; index < buffered.length; index++) {
+    if (!seen.has(String(buffered[index]._id))) {
+      yield buffered[index];
     }
-    
-    res.status(200).json(group);
-  } catch (error) {
-    console.error('Error getting chat group:', error);
-    res.status(500).json({ message: 'Failed to fetch chat group', error: error.message });
   }
+}
+
+/**
+ * In cluster mode, have the other workers persist what they buffered for a
+ * group, so the database plus this worker's buffer is complete
+ * @param {Object} req - Express request object
+ * @param {string} groupId - Chat group ID
+ */
+async function syncPeers(req, groupId) {
+  const chatWriteBehind = req.app.get('chatWriteBehind');
+  if (chatWriteBehind) {
+    await chatWriteBehind.syncPeers(groupId);
+  }
+}
+
+/**
+ * Buffered messages for a group on one side of a cursor
+ * @param {Object} req - Express request object
+ * @param {string} groupId - Chat group ID
+ * @param {Object|null} cursor - Decoded cursor
+ * @param {number} direction - 1 for messages after the cursor (ascending), -1 for before (descending)
+ * @returns {Array<Object>} Buffered messages in the requested order
+ */
+function getBufferedMessages(req, groupId, cursor, direction) {
+  const chatWriteBehind = req.app.get('chatWriteBehind');
+  if (!chatWriteBehind) {
+    return [];
+  }
+
+  const position = cursor && { [SORT_FIELD]: cursor.value, _id: cursor.id };
+  return chatWriteBehind.getBuffered(groupId)
+    .filter(message => !position || compareKeys(message, position, SORT_FIELD) * direction > 0)
+    .sort((a, b) => compareKeys(a, b, SORT_FIELD) * direction);
+}
+
+// Check a message for toxic words before sending
+router.post('/check-toxic', (req, res) => {
+  const toxicCheck = containsToxicWord(req.body.message);
+
+  res.status(200).json({
+    toxic: toxicCheck.containsToxicWord,
+    toxicWord: toxicCheck.toxicWord || ''
+  });
 });
 
-// Create a new chat group
-router.post('/', async (req, res) => {
+/**
+ * Only members of a group may read or post to it - the same rule the socket
+ * handler applies. Runs after requireUser.
+ */
+async function requireMember(req, res, next) {
   try {
-    const db = getDB();
-    const { name, description } = req.body;
-    
-    if (!name) {
-      return res.status(400).json({ message: 'Group name is required' });
+    const membershipCache = req.app.get('membershipCache');
+    if (!await membershipCache.isMember(req.params.groupId, req.user.username)) {
+      return res.status(403).json({ message: 'You are not a member of this group' });
     }
-    
-    const newGroup = {
-      name,
-      description: description || '',
-      members: '0/10', // Initial member count with maximum
-      membersList: [],
-      createdAt: new Date()
-    };
-    
-    const result = await db.collection('chatGroups').insertOne(newGroup);
-    
-    // Get the created group with ID
-    const createdGroup = {
-      ...newGroup,
-      _id: result.insertedId
-    };
-    
-    res.status(201).json(createdGroup);
+    next();
   } catch (error) {
-    console.error('Error creating chat group:', error);
-    res.status(500).json({ message: 'Failed to create chat group', error: error.message });
+    console.error('Error checking group membership:', error);
+    res.status(500).json({ message: 'Failed to check group membership', error: error.message });
   }
-});
+}
 
-// Join a chat group
-router.post('/:id/join', async (req, res) => {
+// Get a page of messages for a group, newest first.
+// Pass ?before=<nextCursor> to load older messages. The first page also
+// returns a syncCursor for fetching newer messages from /since.
+router.get('/group/:groupId', requireUser, requireMember, async (req, res) => {
   try {
     const db = getDB();
-    const groupId = req.params.id;
-    const { username } = req.body;
-    
-    if (!username) {
-      return res.status(400).json({ message: 'Username is required' });
-    }
-    
-    // Get the current group, handle both ObjectId and string ID formats
-    let group;
-    
-    // First try getting it as ObjectId if valid format
-    if (ObjectId.isValid(groupId)) {
-      group = await db.collection('chatGroups').findOne({ _id: new ObjectId(groupId) });
-    }
-    
-    // If not found, try as string id
-    if (!group) {
-      group = await db.collection('chatGroups').findOne({ _id: groupId });
-    }
-    
-    if (!group) {
-      return res.status(404).json({ message: 'Chat group not found' });
-    }
-    
-    // Parse the current member count
-    const [currentMembers, maxMembers] = group.members.split('/').map(Number);
-    
-    // Check if the group is full
-    if (currentMembers >= maxMembers) {
-      return res.status(400).json({ message: 'This group is full! Max 10 members.' });
-    }
-    
-    // Check if the user is already a member
-    if (group.membersList.includes(username)) {
-      return res.status(400).json({ message: 'User is already a member of this group' });
-    }
-    
-    // Add the user to the group
-    const updatedMembersList = [...group.membersList, username];
-    const updatedMembers = `${currentMembers + 1}/${maxMembers}`;
-    
-    // Update the group
-    const groupIdQuery = ObjectId.isValid(group._id) ? 
-      { _id: new ObjectId(group._id) } : 
-      { _id: group._id };
-      
-    await db.collection('chatGroups').updateOne(
-      groupIdQuery,
-      { 
-        $set: { 
-          members: updatedMembers,
-          membersList: updatedMembersList 
-        } 
-      }
-    );
-    
-    // Get the updated group
-    const updatedGroup = await db.collection('chatGroups').findOne(groupIdQuery);
-    
-    // Notify all connected clients about the new member
-    const io = req.app.get('io');
-    if (io) {
-      io.to(groupId).emit('memberJoined', { groupId, username, memberCount: updatedMembers });
+    const { groupId } = req.params;
+    const limit = parseLimit(req.query.limit, HISTORY_PAGE_SIZE, MAX_HISTORY_PAGE_SIZE);
+    const before = decodeCursor(req.query.before);
+
+    // The first page hands out the sync cursor, so it must include other workers' buffers
+    if (!before) {
+      await syncPeers(req, groupId);
     }
-    
-    res.status(200).json(updatedGroup);
+
+    // Snapshot the buffer first so nothing is missed while it is being flushed
+    const buffered = getBufferedMessages(req, groupId, before, -1);
+
+    const persisted = db.collection('chatMessages')
+      .find({ groupId, ...keysetFilter(before, SORT_FIELD, -1) })
+      .sort({ [SORT_FIELD]: -1, _id: -1 })
+      .limit(limit + 1);
+
+    await streamJsonPage(res, mergeWithBuffered(persisted, buffered, (a, b) => compareKeys(b, a, SORT_FIELD)), {
+      limit,
+      key: 'messages',
+      fields: (page) => ({
+        nextCursor: page.hasMore ? encodeCursor(page.last, SORT_FIELD) : null,
+        hasMore: page.hasMore,
+        syncCursor: before ? null : encodeCursor(page.first, SORT_FIELD)
+      })
+    });
   } catch (error) {
-    console.error('Error joining chat group:', error);
-    res.status(500).json({ message: 'Failed to join chat group', error: error.message });
+    console.error('Error getting chat messages:', error);
+    sendStreamError(res, error, 'Failed to fetch messages');
   }
 });
 
-// Leave a chat group
-router.post('/:id/leave', async (req, res) => {
+// Get messages newer than a cursor, oldest first (incremental sync).
+// Keep calling with the returned cursor while hasMore is true.
+router.get('/group/:groupId/since', requireUser, requireMember, async (req, res) => {
   try {
     const db = getDB();
-    const groupId = req.params.id;
-    const { username } = req.body;
-    
-    if (!username) {
-      return res.status(400).json({ message: 'Username is required' });
-    }
-    
-    // Get the current group, handle both ObjectId and string ID formats
-    let group;
-    
-    // First try getting it as ObjectId if valid format
-    if (ObjectId.isValid(groupId)) {
-      group = await db.collection('chatGroups').findOne({ _id: new ObjectId(groupId) });
-    }
-    
-    // If not found, try as string id
-    if (!group) {
-      group = await db.collection('chatGroups').findOne({ _id: groupId });
-    }
-    
-    if (!group) {
-      return res.status(404).json({ message: 'Chat group not found' });
-    }
-    
-    // Parse the current member count
-    const [currentMembers, maxMembers] = group.members.split('/').map(Number);
-    
-    // Check if the user is a member
-    if (!group.membersList.includes(username)) {
-      return res.status(400).json({ message: 'User is not a member of this group' });
-    }
-    
-    // Remove the user from the group
-    const updatedMembersList = group.membersList.filter(member => member !== username);
-    const updatedMembers = `${Math.max(0, currentMembers - 1)}/${maxMembers}`;
-    
-    // Update the group
-    const groupIdQuery = ObjectId.isValid(group._id) ? 
-      { _id: new ObjectId(group._id) } : 
-      { _id: group._id };
-      
-    await db.collection('chatGroups').updateOne(
-      groupIdQuery,
-      { 
-        $set: { 
-          members: updatedMembers,
-          membersList: updatedMembersList 
-        } 
-      }
-    );
-    
-    // Get the updated group
-    const updatedGroup = await db.collection('chatGroups').findOne(groupIdQuery);
-    
-    // Notify all connected clients about the member leaving
-    const io = req.app.get('io');
-    if (io) {
-      io.to(groupId).emit('memberLeft', { groupId, username, memberCount: updatedMembers });
-    }
-    
-    res.status(200).json(updatedGroup);
+    const { groupId } = req.params;
+    const limit = parseLimit(req.query.limit, SYNC_PAGE_SIZE, MAX_SYNC_PAGE_SIZE);
+    const after = decodeCursor(req.query.cursor);
+
+    await syncPeers(req, groupId);
+    const buffered = getBufferedMessages(req, groupId, after, 1);
+
+    const persisted = db.collection('chatMessages')
+      .find({ groupId, ...keysetFilter(after, SORT_FIELD, 1) })
+      .sort({ [SORT_FIELD]: 1, _id: 1 })
+      .limit(limit + 1);
+
+    await streamJsonPage(res, mergeWithBuffered(persisted, buffered, (a, b) => compareKeys(a, b, SORT_FIELD)), {
+      limit,
+      key: 'messages',
+      fields: (page) => ({
+        cursor: page.last ? encodeCursor(page.last, SORT_FIELD) : (req.query.cursor || null),
+        hasMore: page.hasMore
+      })
+    });
   } catch (error) {
-    console.error('Error leaving chat group:', error);
-    res.status(500).json({ message: 'Failed to leave chat group', error: error.message });
+    console.error('Error syncing chat messages:', error);
+    sendStreamError(res, error, 'Failed to fetch new messages');
   }
 });
 
-// Initialize chat groups (for testing)
-router.post('/initialize', async (req, res) => {
+// Send a message to a group, as the signed-in user
+router.post('/group/:groupId', requireUser, requireMember, toxicFilter, async (req, res) => {
   try {
-    const { initializeDatabase } = require('../models/initializeDB');
-    const success = await initializeDatabase();
-    
-    if (success) {
-      res.status(200).json({ message: 'Chat groups initialized successfully' });
-    } else {
-      res.status(500).json({ message: 'Failed to initialize chat groups' });
+    const { groupId } = req.params;
+    const { message, isAnonymous } = req.body;
+    const sender = req.user.username;
+
+    if (!message) {
+      return res.status(400).json({ message: 'Message is required' });
+    }
+
+    // Same path as the socket handler: sequence, buffer, then broadcast
+    const chatWriteBehind = req.app.get('chatWriteBehind');
+    const savedMessage = await chatWriteBehind.append({ groupId, message, sender, isAnonymous });
+
+    const io = req.app.get('io');
+    if (io) {
+      io.to(groupId).emit('receiveMessage', savedMessage);
     }
+
+    res.status(201).json(savedMessage);
   } catch (error) {
-    console.error('Error initializing chat groups:', error);
-    res.status(500).json({ message: 'Failed to initialize chat groups', error: error.message });
+    if (error.code === 'CHAT_BUFFER_FULL') {
+      return res.status(503).json({ message: 'The group is busy, please try again', retryable: true });
+    }
+
+    console.error('Error sending chat message:', error);
+    res.status(500).json({ message: 'Failed to send message', error: error.message });
   }
 });
 
-module.exports = router;
\ No newline at end of file
+module.exports = router;
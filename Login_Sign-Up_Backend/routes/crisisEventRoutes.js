@@ -0,0 +1,34 @@
+const express = require('express');
+const router = express.Router();
+const { findCrisisEvent, formatCrisisEvent, verifyStatusToken } = require('../models/crisisEvent');
+const { requireAdminKey } = require('../middleware/adminAuth');
+
+// Outbox worker statistics
+router.get('/metrics', requireAdminKey, (req, res) => {
+  const crisisOutbox = req.app.get('crisisOutbox');
+  res.status(200).json(crisisOutbox.getMetrics());
+});
+
+// Get the notification status of a crisis event. Needs the crisisStatusToken
+// returned with the chat reply, in the x-crisis-token header or ?token=.
+router.get('/:eventId', async (req, res) => {
+  try {
+    const token = req.get('x-crisis-token') || req.query.token;
+    if (!verifyStatusToken(req.params.eventId, token)) {
+      return res.status(401).json({ error: 'Invalid crisis status token' });
+    }
+
+    const event = await findCrisisEvent(req.params.eventId);
+
+    if (!event) {
+      return res.status(404).json({ error: 'Crisis event not found' });
+    }
+
+    res.status(200).json(formatCrisisEvent(event));
+  } catch (error) {
+    console.error('Error getting crisis event:', error);
+    res.status(500).json({ error: 'Failed to fetch crisis event' });
+  }
+});
+
+module.exports = router;
@@ -9,6 +9,9 @@ router.get('/weekly', moodController.getWeeklyMoods);
 // Add a new mood entry (will check if user already has a mood for today)
 router.post('/', moodController.addMood);
 
+// Apply a batch of mood changes queued offline (last writer wins per day)
+router.post('/sync', moodController.syncMoods);
+
 // Check if user has a mood for today
 router.get('/today', moodController.checkTodayMood);
 
@@ -21,6 +24,9 @@ router.delete('/', moodController.clearMoods);
 // Get mood history (paginated)
 router.get('/history', moodController.getMoodHistory);
 
+// Get the mood dashboard summary from the user's rollup
+router.get('/summary', moodController.getMoodSummary);
+
 // Debug route to check database connection
 router.get('/debug', moodController.debugConnection);
 
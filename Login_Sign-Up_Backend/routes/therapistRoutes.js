@@ -2,17 +2,23 @@ const express = require('express');
 const { ObjectId } = require('mongodb'); // Import ObjectId
 const router = express.Router();
 const { getDB } = require('../db'); // Ensure this is correctly imported
+const { parseLimit } = require('../services/pagination');
+const { logger } = require('../services/logger');
+
+// Page sizes for search results
+const SEARCH_PAGE_SIZE = 50;
+const MAX_SEARCH_PAGE_SIZE = 100;
 
 // GET all therapists
 router.get('/', async (req, res) => {
-  console.log('GET /api/therapists request received'); // Log the request
+  logger.debug('GET /api/therapists request received'); // Log the request
   try {
     const db = getDB(); // Get the database connection
     const therapists = await db.collection('therapists')
       .find({})
       .maxTimeMS(30000) // Increase timeout to 30 seconds
       .toArray(); // Fetch all therapists
-    console.log(`Fetched ${therapists.length} therapists`); // Log the result
+    logger.debug(`Fetched ${therapists.length} therapists`); // Log the result
     res.json(therapists); // Send the response
   } catch (error) {
     console.error('Error fetching therapists:', error); // Log the error
@@ -22,14 +28,14 @@ router.get('/', async (req, res) => {
 
 // GET popular therapists
 router.get('/popular', async (req, res) => {
-  console.log('GET /api/therapists/popular request received');
+  logger.debug('GET /api/therapists/popular request received');
   try {
     const db = getDB();
     const therapists = await db.collection('therapists')
       .find({ isPopular: true })
       .maxTimeMS(30000)
       .toArray();
-    console.log(`Fetched ${therapists.length} popular therapists`);
+    logger.debug(`Fetched ${therapists.length} popular therapists`);
     res.json(therapists);
   } catch (error) {
     console.error('Error fetching popular therapists:', error);
@@ -39,14 +45,14 @@ router.get('/popular', async (req, res) => {
 
 // GET available therapists
 router.get('/available', async (req, res) => {
-  console.log('GET /api/therapists/available request received');
+  logger.debug('GET /api/therapists/available request received');
   try {
     const db = getDB();
     const therapists = await db.collection('therapists')
       .find({ isAvailable: true })
       .maxTimeMS(30000)
       .toArray();
-    console.log(`Fetched ${therapists.length} available therapists`);
+    logger.debug(`Fetched ${therapists.length} available therapists`);
     res.json(therapists);
   } catch (error) {
     console.error('Error fetching available therapists:', error);
@@ -54,28 +60,52 @@ router.get('/available', async (req, res) => {
   }
 });
 
-// Search therapists by name or specialty
+// Search therapists by name or specialty, best matches first. Tolerates
+// typos and partial words. Page with ?limit&offset; the total number of
+// matches is in the X-Total-Count header.
 router.get('/search', async (req, res) => {
   const { keyword } = req.query;
-  console.log(`GET /api/therapists/search?keyword=${keyword} request received`);
+  logger.debug(`GET /api/therapists/search?keyword=${keyword} request received`);
   
   if (!keyword) {
     return res.status(400).json({ error: 'Keyword is required for search' });
   }
   
+  const limit = parseLimit(req.query.limit, SEARCH_PAGE_SIZE, MAX_SEARCH_PAGE_SIZE);
+  const offset = Math.max(0, parseInt(req.query.offset, 10) || 0);
+  
   try {
-    const db = getDB();
-    const therapists = await db.collection('therapists')
-      .find({
+    const searchIndex = req.app.get('therapistSearch');
+    let therapists;
+    let total;
+    
+    if (searchIndex && searchIndex.ready) {
+      ({ results: therapists, total } = searchIndex.search(keyword, { limit, offset }));
+    } else {
+      // The index is still loading; fall back to a (slow) collection scan
+      const db = getDB();
+      const pattern = String(keyword).replace(/[.*+?^${}()|[\]\\]/g, '\\$&');
+      const query = {
         $or: [
-          { name: { $regex: keyword, $options: 'i' } },
-          { specialty: { $regex: keyword, $options: 'i' } }
+          { name: { $regex: pattern, $options: 'i' } },
+          { specialty: { $regex: pattern, $options: 'i' } }
         ]
-      })
-      .maxTimeMS(30000)
-      .toArray();
+      };
+      total = await db.collection('therapists').countDocuments(query);
+      therapists = await db.collection('therapists')
+        .find(query)
+        .sort({ name: 1 })
+        .skip(offset)
+        .limit(limit)
+        .toArray();
+    }
+    
+    res.set('X-Total-Count', String(total));
+    if (offset + therapists.length < total) {
+      res.set('X-Next-Offset', String(offset + therapists.length));
+    }
     
-    console.log(`Found ${therapists.length} therapists matching "${keyword}"`);
+    logger.debug(`Found ${total} therapists matching "${keyword}"`);
     res.json(therapists);
   } catch (error) {
     console.error('Error searching therapists:', error);
@@ -86,11 +116,11 @@ router.get('/search', async (req, res) => {
 // GET a therapist by ID
 router.get('/:id', async (req, res) => {
   const therapistId = req.params.id;
-  console.log(`GET /api/therapists/${therapistId} request received`);
+  logger.debug(`GET /api/therapists/${therapistId} request received`);
   
   // Validate ObjectId format
   if (!ObjectId.isValid(therapistId)) {
-    console.log(`Invalid therapist ID format: ${therapistId}`);
+    logger.debug(`Invalid therapist ID format: ${therapistId}`);
     return res.status(400).json({ error: 'Invalid therapist ID format' });
   }
 
@@ -100,11 +130,11 @@ router.get('/:id', async (req, res) => {
       .findOne({ _id: new ObjectId(therapistId) });
     
     if (!therapist) {
-      console.log(`Therapist with ID ${therapistId} not found`);
+      logger.debug(`Therapist with ID ${therapistId} not found`);
       return res.status(404).json({ error: 'Therapist not found' });
     }
     
-    console.log(`Fetched therapist: ${therapist.name}`);
+    logger.debug(`Fetched therapist: ${therapist.name}`);
     res.json(therapist);
   } catch (error) {
     console.error('Error fetching therapist:', error);
@@ -114,7 +144,7 @@ router.get('/:id', async (req, res) => {
 
 // POST create a new therapist
 router.post('/', async (req, res) => {
-  console.log('POST /api/therapists request received');
+  logger.debug('POST /api/therapists request received');
   try {
     const db = getDB();
     
@@ -148,6 +178,12 @@ router.post('/', async (req, res) => {
     
     const result = await db.collection('therapists').insertOne(newTherapist);
     
+    // Searchable right away, without waiting for the change stream or a reload
+    const searchIndex = req.app.get('therapistSearch');
+    if (searchIndex) {
+      searchIndex.indexWrite({ ...newTherapist, _id: result.insertedId });
+    }
+    
     // Return the created therapist with its ID
     console.log(`Created new therapist: ${newTherapist.name} with ID ${result.insertedId}`);
     res.status(201).json({ 
@@ -0,0 +1,68 @@
+// scripts/backfillMoodRollups.js - Build mood rollup documents from existing mood entries
+// Usage: node scripts/backfillMoodRollups.js [--all]
+//   By default only users without a rollup are processed; --all rebuilds every user.
+require('dotenv').config();
+const { connectWithMongoose, getMongoose } = require('../db');
+
+const CONCURRENCY = parseInt(process.env.BACKFILL_CONCURRENCY, 10) || 4;
+
+async function backfill() {
+  const rebuildAll = process.argv.includes('--all');
+
+  await connectWithMongoose();
+  const Mood = require('../models/mood-model');
+  const MoodRollup = require('../models/mood-rollup-model');
+
+  const existing = rebuildAll
+    ? new Set()
+    : new Set(await MoodRollup.distinct('userId'));
+
+  const startedAt = Date.now();
+  let processed = 0;
+  let skipped = 0;
+  let failed = 0;
+  const inFlight = new Set();
+
+  // Stream user ids so memory doesn't grow with the number of users
+  const users = Mood.aggregate([{ $group: { _id: '$userId' } }]).cursor();
+
+  for await (const { _id: userId } of users) {
+    if (!userId || existing.has(userId)) {
+      skipped++;
+      continue;
+    }
+
+    const task = MoodRollup.rebuildForUser(userId)
+      .then(() => {
+        processed++;
+        if (processed % 100 === 0) {
+          console.log(`Rebuilt ${processed} mood rollups...`);
+        }
+      })
+      .catch((error) => {
+        failed++;
+        console.error(`Failed to rebuild mood rollup for user ${userId}:`, error.message);
+      })
+      .finally(() => inFlight.delete(task));
+
+    inFlight.add(task);
+    if (inFlight.size >= CONCURRENCY) {
+      await Promise.race(inFlight);
+    }
+  }
+
+  await Promise.all(inFlight);
+
+  console.log(`Mood rollup backfill finished in ${Date.now() - startedAt}ms: ${processed} rebuilt, ${skipped} skipped, ${failed} failed`);
+  return failed === 0;
+}
+
+backfill()
+  .then(async (success) => {
+    await getMongoose().connection.close();
+    process.exit(success ? 0 : 1);
+  })
+  .catch((error) => {
+    console.error('Mood rollup backfill failed:', error);
+    process.exit(1);
+  });
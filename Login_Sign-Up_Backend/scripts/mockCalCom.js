@@ -0,0 +1,129 @@
+// scripts/mockCalCom.js - Local stand-in for the Cal.com API with configurable latency and failures
+// Usage: node scripts/mockCalCom.js
+//   Then start the server with CAL_COM_BASE_URL=http://localhost:<port> and a
+//   CAL_COM_API_KEY (any value). GET /stats shows how many calls were made.
+// Environment: MOCK_CAL_PORT (5055), MOCK_CAL_LATENCY_MS (300), MOCK_CAL_FAILURE_RATE (0)
+const http = require('http');
+
+/**
+ * Start a mock Cal.com server
+ * @param {Object} [options]
+ * @param {number} [options.port] - Port to listen on (0 picks a free one)
+ * @param {number} [options.latencyMs] - Delay added to every response
+ * @param {number} [options.failureRate] - Share of requests answered with a 503, 0 to 1
+ * @returns {Promise<Object>} { url, stats, setLatency, close }
+ */
+function startMockCalCom(options = {}) {
+  let latencyMs = options.latencyMs != null ? options.latencyMs : 300;
+  const failureRate = options.failureRate || 0;
+  const bookings = new Map();
+  const stats = { requests: 0, availability: 0, bookings: 0, failures: 0 };
+
+  const json = (res, status, body) => {
+    res.writeHead(status, { 'Content-Type': 'application/json' });
+    res.end(JSON.stringify(body));
+  };
+
+  // Hourly slots from 9 to 17 UTC that aren't booked
+  const slotsFor = (eventTypeId, date) => {
+    const slots = [];
+    for (let hour = 9; hour < 17; hour++) {
+      const startTime = new Date(`${date}T${String(hour).padStart(2, '0')}:00:00.000Z`).toISOString();
+      const taken = Array.from(bookings.values()).some(booking =>
+        booking.eventTypeId === eventTypeId && booking.startTime === startTime && booking.status !== 'cancelled');
+      if (!taken) {
+        slots.push({ startTime, endTime: new Date(Date.parse(startTime) + 3600000).toISOString() });
+      }
+    }
+    return slots;
+  };
+
+  const readBody = (req) => new Promise((resolve) => {
+    let data = '';
+    req.on('data', chunk => { data += chunk; });
+    req.on('end', () => {
+      try {
+        resolve(data ? JSON.parse(data) : {});
+      } catch (error) {
+        resolve({});
+      }
+    });
+  });
+
+  const server = http.createServer(async (req, res) => {
+    const url = new URL(req.url, 'http://localhost');
+    const [resource, id] = url.pathname.split('/').filter(Boolean);
+
+    if (resource === 'stats') {
+      return json(res, 200, stats);
+    }
+
+    stats.requests++;
+    const body = await readBody(req);
+    await new Promise(resolve => setTimeout(resolve, latencyMs));
+
+    if (Math.random() < failureRate) {
+      stats.failures++;
+      return json(res, 503, { message: 'Mock Cal.com is unavailable' });
+    }
+
+    if (resource === 'me') {
+      return json(res, 200, { name: 'Mock User', email: 'mock@example.com' });
+    }
+
+    if (resource === 'availability' && req.method === 'GET') {
+      stats.availability++;
+      const date = (url.searchParams.get('dateFrom') || '').substring(0, 10);
+      return json(res, 200, slotsFor(id, date));
+    }
+
+    if (resource === 'bookings') {
+      stats.bookings++;
+      if (req.method === 'POST') {
+        const booking = { id: `mock_${bookings.size + 1}`, eventTypeId: id, ...body, status: 'confirmed' };
+        booking.startTime = new Date(booking.startTime).toISOString();
+        bookings.set(booking.id, booking);
+        return json(res, 200, booking);
+      }
+
+      const booking = bookings.get(id);
+      if (!booking) {
+        return json(res, 404, { message: 'Booking not found' });
+      }
+      if (req.method === 'PATCH') {
+        booking.startTime = new Date(body.startTime).toISOString();
+        booking.status = 'rescheduled';
+      } else if (req.method === 'DELETE') {
+        booking.status = 'cancelled';
+      }
+      return json(res, 200, booking);
+    }
+
+    json(res, 404, { message: 'Not found' });
+  });
+
+  return new Promise((resolve) => {
+    server.listen(options.port || 0, () => {
+      resolve({
+        url: `http://localhost:${server.address().port}`,
+        stats,
+        setLatency: (ms) => { latencyMs = ms; },
+        close: () => new Promise(done => server.close(done))
+      });
+    });
+  });
+}
+
+if (require.main === module) {
+  startMockCalCom({
+    port: parseInt(process.env.MOCK_CAL_PORT, 10) || 5055,
+    latencyMs: process.env.MOCK_CAL_LATENCY_MS != null ? parseInt(process.env.MOCK_CAL_LATENCY_MS, 10) : 300,
+    failureRate: parseFloat(process.env.MOCK_CAL_FAILURE_RATE) || 0
+  }).then(({ url }) => {
+    console.log(`Mock Cal.com API listening on ${url}`);
+  });
+}
+
+module.exports = {
+  startMockCalCom
+};
@@ -2,22 +2,38 @@ require('dotenv').config();
 const express = require('express');
 const cors = require('cors');
 const bodyParser = require('body-parser');
-const { GoogleGenerativeAI } = require("@google/generative-ai");
 const tf = require('@tensorflow/tfjs');
-const toxicity = require('@tensorflow-models/toxicity');
-const fs = require('fs').promises;
 const path = require('path');
-const { ObjectId } = require('mongodb');
 const mongoose = require('mongoose');
 const http = require('http');
+const cluster = require('cluster');
 const socketIo = require('socket.io');
 
 // Import MongoDB connections
-const { connectToMongoDB, getDB, connectWithMongoose, checkDatabase } = require('./db');
-const connectFeedDB = require("./config/feed-db");
-
-// Import models
-const { findUserById } = require('./models/user');
+const { connectToMongoDB, getDB, connectWithMongoose, checkDatabase, closeConnections } = require('./db');
+
+// Import services
+const { toxicityClassifier } = require('./services/toxicityClassifier');
+const { ChatWriteBehind, createIpcSequencer, createIpcPeerSync } = require('./services/chatWriteBehind');
+const { InProcessBroker, IpcBroker, createBrokerAdapter } = require('./services/socketBroker');
+const { MembershipCache } = require('./services/membershipCache');
+const geminiModel = require('./services/geminiModel');
+const { ResponseCache } = require('./services/responseCache');
+const { CrisisOutbox } = require('./services/crisisOutbox');
+const { statusToken } = require('./models/crisisEvent');
+const calendar = require('./integrations/calendarConfig');
+const { TherapistSearchIndex } = require('./services/therapistSearchIndex');
+const { FeedCache } = require('./services/feedCache');
+const { passwordHasher } = require('./services/passwordHasher');
+const { startEventLoopMonitor, eventLoopLag } = require('./services/eventLoopLag');
+const { Readiness } = require('./services/readiness');
+const { SuicideDetector } = require('./services/suicideDetector');
+const { metrics, httpMetrics, socketMetrics } = require('./services/metrics');
+const { logger } = require('./services/logger');
+
+// Import middleware
+const { requireAdminKey } = require('./middleware/adminAuth');
+const { authenticateSocket } = require('./middleware/userAuth');
 
 // Import routes
 const feedRoutes = require("./routes/feed-page-routes");
@@ -30,63 +46,167 @@ const appointmentRoutes = require('./routes/appointmentRoutes');
 // Import community chat routes
 const chatGroupRoutes = require('./routes/chatGroupRoutes');
 const chatMessageRoutes = require('./routes/chatMessageRoutes');
+const crisisEventRoutes = require('./routes/crisisEventRoutes');
 
 const app = express();
 const server = http.createServer(app);
+
+// Startup steps, reported by /health/ready
+const readiness = new Readiness();
+
+// When started by cluster.js, room broadcasts and chat sequence ids are shared
+// with the other workers through the primary process
+const isClusterWorker = cluster.isWorker;
+const broker = isClusterWorker ? new IpcBroker() : new InProcessBroker();
+
 const io = socketIo(server, {
   cors: {
     origin: '*',
     methods: ['GET', 'POST', 'PUT', 'DELETE']
-  }
+  },
+  // Without sticky sessions, long-polling requests could land on a different worker
+  transports: isClusterWorker ? ['websocket'] : ['polling', 'websocket']
 });
 
+if (isClusterWorker) {
+  io.adapter(createBrokerAdapter(broker));
+}
+
+// Per-route latency for /metrics; first, so it times the whole request
+app.use(httpMetrics());
+
 // Middleware
 app.use(cors({
   origin: '*', // Allow all origins or specify your frontend domain
   methods: ['GET', 'POST', 'PUT', 'DELETE'],
-  allowedHeaders: ['Content-Type', 'Authorization']
+  allowedHeaders: ['Content-Type', 'Authorization', 'If-None-Match', 'If-Modified-Since'],
+  exposedHeaders: ['ETag', 'Last-Modified', 'X-Next-Cursor', 'X-Next-Offset', 'X-Total-Count']
 }));
 app.use(bodyParser.json({ limit: '10mb' }));
 app.use(express.urlencoded({ extended: true }));
 
-// Make io available to routes
-app.set('io', io);
+// The server listens before the database is connected; hold requests off until it is
+app.use(readiness.gate());
+io.use(socketMetrics());
+io.use((socket, next) => {
+  if (readiness.isReady()) {
+    return next();
+  }
+  next(new Error('Server is starting, please try again shortly'));
+});
+// Group chat trusts only the user from the login token, never a name the client sends
+io.use(authenticateSocket);
 
-// Google Generative AI Setup
-const genAI = new GoogleGenerativeAI(process.env.GOOGLE_API_KEY);
-const model = genAI.getGenerativeModel({ model: "gemini-2.0-flash" });
+// Make io and the broker available to routes
+app.set('io', io);
+app.set('broker', broker);
 
-// Path to the suicidal dataset
-const datasetPath = path.join(__dirname, 'datasets', 'Suicide_Ideation_Dataset(Twitter-based).csv');
+// Hot-reload the toxic word list from a JSON file when one is configured
+if (process.env.TOXIC_WORDS_FILE) {
+  const { watchToxicWordsFile } = require('./middleware/toxicFilter');
+  watchToxicWordsFile(path.resolve(process.env.TOXIC_WORDS_FILE));
+}
 
-// In-memory storage for processed dataset
-let suicideDataset = [];
-let suicidalPatterns = [];
-let initialized = false;
+// Suicide detection patterns, compiled from the dataset and cached as a snapshot
+const suicideDetector = new SuicideDetector();
 
 // In-memory store for moods when the database is not available
 const moodEntriesStore = [];
 
+// Community chat messages are broadcast immediately and persisted in batches
+const getChatCollection = () => getDB().collection('chatMessages');
+const chatWriteBehind = new ChatWriteBehind({
+  getCollection: getChatCollection,
+  getCounters: () => getDB().collection('chatSequences'),
+  getDeadLetters: () => getDB().collection('chatMessagesDeadLetter'),
+  sequencer: isClusterWorker ? createIpcSequencer() : undefined,
+  peerSync: isClusterWorker ? createIpcPeerSync() : undefined
+});
+app.set('chatWriteBehind', chatWriteBehind);
+
+// Group members kept in memory so sockets can be authorized without a database query
+const membershipCache = new MembershipCache({ broker });
+app.set('membershipCache', membershipCache);
+
+// Chatbot replies for repeated prompts, consulted only after the safety gates
+const responseCache = new ResponseCache({
+  broker,
+  isCacheable: (reply) => reply !== geminiModel.FALLBACK_REPLY
+});
+app.set('responseCache', responseCache);
+
+// Crisis notifications are recorded in an outbox and sent in the background
+const crisisOutbox = new CrisisOutbox();
+app.set('crisisOutbox', crisisOutbox);
+
+// Bookings made through any worker drop the cached Cal.com slots everywhere
+calendar.availabilityCache.attachBroker(broker);
+
+// Therapist search is served from memory instead of regex scans
+const therapistSearch = new TherapistSearchIndex({
+  getCollection: () => getDB().collection('therapists'),
+  broker
+});
+app.set('therapistSearch', therapistSearch);
+
+// Feed pages are kept serialized and compressed; addFeed clears them in every worker
+const feedCache = new FeedCache({ broker });
+app.set('feedCache', feedCache);
+
+// Password hashing runs in worker threads; track how responsive the main thread stays
+app.set('passwordHasher', passwordHasher);
+startEventLoopMonitor();
+
+/**
+ * Check that the user behind a socket belongs to a chat group
+ * @param {Object} socket - Socket.io socket
+ * @param {string} groupId - Chat group ID
+ * @returns {Promise<boolean>} True when the user may use the group
+ */
+async function isGroupMember(socket, groupId) {
+  if (!groupId || !socket.data.username) {
+    return false;
+  }
+  return membershipCache.isMember(groupId, socket.data.username);
+}
+
+// Connections and disconnections are too frequent to log one by one
+const socketLog = logger.sampled(parseFloat(process.env.SOCKET_LOG_SAMPLE_RATE) || 0.01);
+
 // Socket.io setup for real-time chat
 io.on('connection', (socket) => {
-  console.log('New client connected', socket.id);
+  socketLog.info('New client connected', socket.id);
   
   // Handle joining a chat group
-  socket.on('joinGroup', (groupId) => {
-    socket.join(groupId);
-    console.log(`Client joined chat group: ${groupId}`);
+  socket.on('joinGroup', async (groupId) => {
+    try {
+      if (!await isGroupMember(socket, groupId)) {
+        socket.emit('messageError', { error: 'Join this group before opening its chat', groupId });
+        return;
+      }
+      
+      socket.join(groupId);
+      logger.debug(`Client joined chat group: ${groupId}`);
+    } catch (error) {
+      console.error("Error joining chat group room:", error);
+      socket.emit('messageError', { error: 'Failed to join chat group', groupId });
+    }
   });
   
   // Handle leaving a chat group
   socket.on('leaveGroup', (groupId) => {
     socket.leave(groupId);
-    console.log(`Client left chat group: ${groupId}`);
+    logger.debug(`Client left chat group: ${groupId}`);
   });
   
   // Handle new messages
   socket.on('newMessage', async (messageData) => {
     try {
-      const db = getDB();
+      // Only members of the group can post, and only as themselves
+      if (!await isGroupMember(socket, messageData.groupId)) {
+        socket.emit('messageError', { error: 'You are not a member of this group' });
+        return;
+      }
       
       // Check for toxic content
       const ToxicWordsFilter = require('./middleware/toxicFilter');
@@ -100,36 +220,60 @@ io.on('connection', (socket) => {
         return;
       }
       
-      // Store message in database
-      const message = {
+      // Assign a sequence id and queue the message for persistence
+      const message = await chatWriteBehind.append({
         groupId: messageData.groupId,
         message: messageData.message,
-        sender: messageData.sender,
-        isAnonymous: messageData.isAnonymous || false,
-        timestamp: new Date(),
-        isMe: false, // This will be set to true by the client for their own messages
-      };
-      
-      const result = await db.collection('chatMessages').insertOne(message);
-      
-      // Get the inserted message with ID
-      const insertedMessage = {
-        ...message,
-        _id: result.insertedId
-      };
+        sender: socket.data.username,
+        isAnonymous: messageData.isAnonymous
+      });
       
-      // Broadcast message to all clients in the group
-      io.to(messageData.groupId).emit('receiveMessage', insertedMessage);
+      // Broadcast message to all clients in the group without waiting for MongoDB
+      io.to(messageData.groupId).emit('receiveMessage', message);
       
-      console.log(`Message sent to group ${messageData.groupId}`);
+      logger.debug(`Message ${message.seq} sent to group ${messageData.groupId}`);
     } catch (error) {
+      if (error.code === 'CHAT_BUFFER_FULL') {
+        socket.emit('messageError', { error: 'The group is busy, please try again', retryable: true });
+        return;
+      }
+      
       console.error("Error handling new message:", error);
       socket.emit('messageError', { error: 'Failed to send message' });
     }
   });
   
+  // Send a reconnecting client everything after the last seq it saw
+  socket.on('resumeGroup', async (data) => {
+    try {
+      const groupId = data && data.groupId;
+      const sinceSeq = Number(data && data.sinceSeq) || 0;
+      
+      if (!groupId) {
+        socket.emit('messageError', { error: 'groupId is required to resume' });
+        return;
+      }
+      
+      if (!await isGroupMember(socket, groupId)) {
+        socket.emit('messageError', { error: 'You are not a member of this group' });
+        return;
+      }
+      
+      const result = await chatWriteBehind.getMessagesSince(groupId, sinceSeq);
+      socket.emit('resumeMessages', { groupId, sinceSeq, ...result });
+    } catch (error) {
+      console.error("Error resuming chat group:", error);
+      socket.emit('messageError', { error: 'Failed to load missed messages' });
+    }
+  });
+  
   // Handle typing events
   socket.on('typing', (data) => {
+    // Rooms are only joined after a membership check
+    if (!data || !socket.rooms.has(data.groupId)) {
+      return;
+    }
+    
     socket.to(data.groupId).emit('userTyping', {
       userId: data.userId,
       groupId: data.groupId,
@@ -137,105 +281,39 @@ io.on('connection', (socket) => {
     });
   });
   
-  // Handle disconnection
-  socket.on('disconnect', () => {
-    console.log('Client disconnected', socket.id);
-  });
-});
-
-// Load and process suicide dataset
-async function loadSuicideDataset() {
-  if (initialized) {
-    return true;
-  }
-  
-  try {
-    // Check if the file exists
-    if (!await fileExists(datasetPath)) {
-      console.warn("Dataset file not found at:", datasetPath);
-      console.warn("Continuing without suicide dataset...");
-      initialized = true;
-      return false;
+  // Stream a chatbot reply back to this socket only
+  socket.on('chatbotMessage', async (data) => {
+    const requestId = data && data.requestId;
+    
+    if (!data || !data.message) {
+      socket.emit('chatbotError', { requestId, error: 'Message is required' });
+      return;
     }
-
-    const data = await fs.readFile(datasetPath, 'utf8');
-    const lines = data.split('\n');
     
-    // Process header and data
-    const [header, ...records] = lines;
-    const [tweetIndex, suicideIndex] = getColumnIndexes(header);
+    const abort = new AbortController();
+    const onDisconnect = () => abort.abort();
+    socket.once('disconnect', onDisconnect);
     
-    if (tweetIndex === -1 || suicideIndex === -1) {
-      console.error("Dataset does not contain required columns (Tweet, Suicide)");
-      return false;
+    try {
+      for await (const { type, ...event } of streamChatReply(data.message.trim(), data.userId, {
+        signal: abort.signal,
+        idempotencyKey: data.idempotencyKey
+      })) {
+        socket.emit(type === 'chunk' ? 'chatbotChunk' : 'chatbotDone', { requestId, ...event });
+      }
+    } catch (error) {
+      console.error("Error streaming chatbot reply:", error);
+      socket.emit('chatbotError', { requestId, error: 'Something went wrong with processing your message. Please try again.' });
+    } finally {
+      socket.off('disconnect', onDisconnect);
     }
-
-    suicideDataset = parseDataset(records, tweetIndex, suicideIndex);
-    
-    // Extract patterns after loading dataset
-    extractSuicidePatterns();
-    initialized = true;
-    console.log(`Loaded ${suicideDataset.length} records from suicide dataset`);
-    return true;
-  } catch (error) {
-    console.error("Error loading suicide dataset:", error);
-    console.warn("Continuing without suicide dataset...");
-    initialized = true;
-    return false;
-  }
-}
-
-// Helper functions
-async function fileExists(filePath) {
-  try {
-    await fs.access(filePath);
-    return true;
-  } catch {
-    return false;
-  }
-}
-
-function getColumnIndexes(header) {
-  const headerColumns = header.split(',');
-  const tweetIndex = headerColumns.findIndex(col => col.trim().toLowerCase() === 'tweet');
-  const suicideIndex = headerColumns.findIndex(col => col.trim().toLowerCase() === 'suicide');
-  return [tweetIndex, suicideIndex];
-}
-
-function parseDataset(records, tweetIndex, suicideIndex) {
-  return records
-    .filter(record => record.trim())
-    .map(record => {
-      const columns = record.split(',');
-      return { Tweet: columns[tweetIndex]?.trim() || '', Suicide: columns[suicideIndex]?.trim() || '' };
-    });
-}
-
-// Extract suicide keywords and patterns from the dataset
-function extractSuicidePatterns() {
-  const baseIndicators = [
-    "kill myself", "suicide", "end my life", "want to die", 
-    "tired of living", "don't want to be here", "end it all",
-    "put myself to rest", "roll over and die", "hate my life",
-    "life is miserable", "hope i die"
-  ];
+  });
   
-  suicidalPatterns = [...baseIndicators];
-
-  if (suicideDataset && suicideDataset.length > 0) {
-    suicideDataset.forEach(item => {
-      if (item.Suicide.toLowerCase().includes("suicide") || item.Suicide.toLowerCase().includes("potential")) {
-        baseIndicators.forEach(indicator => {
-          if (item.Tweet.toLowerCase().includes(indicator) && !suicidalPatterns.includes(indicator)) {
-            suicidalPatterns.push(indicator);
-          }
-        });
-      }
-    });
-  }
-
-  console.log(`Using ${suicidalPatterns.length} suicide patterns for detection`);
-}
+  // Handle disconnection
+  socket.on('disconnect', () => {
+    socketLog.info('Client disconnected', socket.id);
+  });
+});
 
 // Detect harmful content
 async function detectHarmfulText(text) {
@@ -245,13 +323,11 @@ async function detectHarmfulText(text) {
   }
 
   try {
-    const toxicityModel = await toxicity.load(0.8);
-    const predictions = await toxicityModel.classify([text]);
+    // The shared classifier keeps the model loaded and batches concurrent requests
+    const toxicityCheck = await toxicityClassifier.classify(text);
     
-    for (const prediction of predictions) {
-      if (prediction.results[0].match) {
-        return { harmful: true, type: 'toxicity', category: prediction.label };
-      }
+    if (toxicityCheck.harmful) {
+      return { harmful: true, type: 'toxicity', category: toxicityCheck.category };
     }
   } catch (error) {
     console.error("Error with toxicity model:", error);
@@ -262,32 +338,7 @@ async function detectHarmfulText(text) {
 
 // Detect suicidal content in text
 function detectSuicidalContent(text) {
-  if (!text) return { isSuicidal: false };
-  
-  const textLower = text.toLowerCase();
-  
-  for (const phrase of suicidalPatterns) {
-    if (textLower.includes(phrase)) {
-      return { isSuicidal: true, matchedPhrase: phrase };
-    }
-  }
-
-  const suicidePatterns = [
-    /i (?:want|need|wish) to d[ie]{2}/i,
-    /(?:kill(?:ing)? myself|end(?:ing)? (?:my life|it all))/i,
-    /(?:don'?t|do not) want to (?:live|be here|exist)/i,
-    /(?:hate|tired of) (?:my )?life/i,
-    /(?:put (?:myself|me) to rest)/i,
-    /(?:no reason to (?:live|be here|continue))/i
-  ];
-
-  for (const pattern of suicidePatterns) {
-    if (pattern.test(textLower)) {
-      return { isSuicidal: true, matchedPattern: pattern.toString() };
-    }
-  }
-
-  return { isSuicidal: false };
+  return suicideDetector.detect(text);
 }
 
 // Response functions
@@ -300,223 +351,128 @@ function getSuicidalResponse() {
   return responses[Math.floor(Math.random() * responses.length)];
 }
 
-// Enhanced MongoDB-integrated functions for emergency contacts
-async function getEmergencyContacts(userId) {
+// Store chat message in MongoDB
+async function storeChatMessage(userId, message, reply, status) {
   try {
-    // Check if userId is in the consistent ID format
-    if (userId && typeof userId === 'string' && userId.startsWith('user_')) {
-      const db = getDB();
-      const user = await db.collection('users').findOne({ userId });
-      
-      if (user && user.emergencyContacts && user.emergencyContacts.length > 0) {
-        return user.emergencyContacts.filter(contact => 
-          contact && contact.phone && contact.phone.trim() !== ''
-        );
-      }
-    } else {
-      // Convert string ID to ObjectId if necessary
-      const id = typeof userId === 'string' ? new ObjectId(userId) : userId;
-      
-      const db = getDB();
-      const user = await db.collection('users').findOne({ _id: id });
-      
-      // Check for emergency contacts array from updated schema
-      if (user && user.emergencyContacts && user.emergencyContacts.length > 0) {
-        // Filter out any incomplete or invalid contacts
-        const validContacts = user.emergencyContacts.filter(contact => 
-          contact && contact.phone && contact.phone.trim() !== ''
-        );
-        
-        if (validContacts.length > 0) {
-          return validContacts;
-        }
-      }
-      
-      // Check phone in profile as fallback (if we have a name)
-      if (user && user.profile && user.profile.phone && user.name) {
-        return [{
-          name: `${user.name} (Self)`,
-          phone: user.profile.phone,
-          relationship: "Self",
-          isPrimary: true
-        }];
-      }
-    }
+    const db = getDB();
     
-    // Default emergency services if no contacts found
-    return [
-      { 
-        name: "National Crisis Hotline", 
-        phone: "988",
-        relationship: "Crisis Service",
-        isPrimary: true
-      },
-      { 
-        name: "Crisis Text Line", 
-        phone: "741741",
-        relationship: "Crisis Service",
-        isPrimary: false
-      },
-      {
-        name: "National Suicide Prevention Lifeline",
-        phone: "1-800-273-8255",
-        relationship: "Crisis Service",
-        isPrimary: false
-      }
-    ];
+    await db.collection('chatHistory').insertOne({
+      userId,
+      message,
+      reply,
+      status,
+      timestamp: new Date()
+    });
   } catch (error) {
-    console.error("Error getting emergency contacts:", error);
-    console.error("Error details:", error.message);
-    
-    // Return default emergency services in case of error
-    return [
-      { 
-        name: "National Crisis Hotline", 
-        phone: "988",
-        relationship: "Crisis Service", 
-        isPrimary: true
-      },
-      { 
-        name: "Crisis Text Line", 
-        phone: "741741",
-        relationship: "Crisis Service",
-        isPrimary: false
-      }
-    ];
+    console.error("Error storing chat message:", error);
   }
 }
 
-// Enhanced notifyEmergencyContacts function
-async function notifyEmergencyContacts(userId) {
-  try {
-    const emergencyContacts = await getEmergencyContacts(userId);
-    
-    // Get user info for the message
-    let userName = "A user";
-    try {
-      let user;
-      
-      // Check if userId is in the consistent ID format
-      if (userId && typeof userId === 'string' && userId.startsWith('user_')) {
-        const db = getDB();
-        user = await db.collection('users').findOne({ userId });
-      } else {
-        // Convert string ID to ObjectId if necessary
-        const id = typeof userId === 'string' ? new ObjectId(userId) : userId;
-        user = await findUserById(id);
-      }
-      
-      if (user && user.name) {
-        userName = user.name;
-      }
-    } catch (userError) {
-      console.error("Error getting user details for notification:", userError);
-    }
-    
-    // Store crisis event in MongoDB
-    try {
-      const db = getDB();
-      
-      await db.collection('crisisEvents').insertOne({
-        userId,
-        userName: userName,
-        timestamp: new Date(),
-        contactsNotified: emergencyContacts,
-        status: 'notified'
-      });
-      
-      console.log(`Crisis event logged for user: ${userId}`);
-    } catch (dbError) {
-      console.error("Error logging crisis event:", dbError);
-    }
+/**
+ * Run the safety checks and canned replies that come before the model. Shared
+ * by the regular and streaming chat routes so both apply the same gates.
+ * @param {string} sanitizedMessage - Trimmed user message
+ * @param {string} userId - User ID
+ * @param {Object} [options]
+ * @param {string} [options.idempotencyKey] - Client request key, so a retried
+ *   request doesn't alert emergency contacts twice
+ * @returns {Promise<Object|null>} { reply, status, resources?, crisisEventId?, crisisStatusToken? }
+ *   when the message is answered without the model, otherwise null
+ */
+async function screenChatMessage(sanitizedMessage, userId, options = {}) {
+  if (sanitizedMessage.length < 5) {
+    return { reply: "I need a bit more information to help you. Could you please elaborate?", status: "normal" };
+  }
+
+  const commonPhrases = ['hello', 'good morning', 'how are you', 'test', 'thanks', 'bye'];
+  if (commonPhrases.some(phrase => sanitizedMessage.toLowerCase().includes(phrase))) {
+    const reply = "Thank you for reaching out! How can I assist you today?";
+    await storeChatMessage(userId, sanitizedMessage, reply, "normal");
+    return { reply, status: "normal" };
+  }
+
+  const { harmful, type, details } = await detectHarmfulText(sanitizedMessage);
+  
+  if (!harmful) {
+    return null;
+  }
+
+  if (type === 'suicidal') {
+    logger.warn(`Suicidal content detected: "${sanitizedMessage}"`);
+    logger.warn(`Matched with: ${JSON.stringify(details)}`);
     
-    // Attempt to notify each contact
-    let notificationResults = [];
+    // Contacts are notified by the outbox worker, not while the user waits
+    const crisisEvent = await crisisOutbox.enqueue(userId, { idempotencyKey: options.idempotencyKey });
     
-    for (const contact of emergencyContacts) {
-      try {
-        // Send the actual notification
-        const result = await sendSMS(contact.phone, 
-          `URGENT: ${userName} may need immediate help. This is an automated alert from MindBridge. Please check on them right away.`
-        );
-        
-        notificationResults.push({
-          contact: contact.name,
-          phone: contact.phone,
-          success: true,
-          timestamp: new Date()
-        });
-        
-        console.log(`Crisis notification sent to ${contact.name} at ${contact.phone}`);
-      } catch (smsError) {
-        console.error(`Failed to notify contact ${contact.name}:`, smsError);
-        
-        notificationResults.push({
-          contact: contact.name,
-          phone: contact.phone,
-          success: false,
-          error: smsError.message,
-          timestamp: new Date()
-        });
-      }
-    }
-    
-    // Update the crisis event with notification results
-    try {
-      const db = getDB();
-      
-      await db.collection('crisisEvents').updateOne(
-        { userId, status: 'notified' },
-        { 
-          $set: { 
-            notificationResults,
-            status: notificationResults.some(r => r.success) ? 'contact_reached' : 'notification_failed'
-          }
-        }
-      );
-    } catch (updateError) {
-      console.error("Error updating crisis event with notification results:", updateError);
-    }
+    const reply = getSuicidalResponse();
+    await storeChatMessage(userId, sanitizedMessage, reply, "crisis");
     
     return {
-      notified: notificationResults.filter(r => r.success).length,
-      failed: notificationResults.filter(r => !r.success).length,
-      contacts: notificationResults
+      reply,
+      status: "crisis",
+      crisisEventId: crisisEvent ? crisisEvent._id : null,
+      // Needed to poll /api/crisis-events/:eventId
+      crisisStatusToken: crisisEvent ? statusToken(crisisEvent._id) : null,
+      resources: {
+        hotline: "988 or 1-800-273-8255",
+        text: "Text HOME to 741741",
+        chat: "https://suicidepreventionlifeline.org/chat/"
+      }
     };
-  } catch (error) {
-    console.error("Error in notifyEmergencyContacts:", error);
-    return { notified: 0, failed: 0, error: error.message };
   }
-}
 
-// Enhanced SMS sending function
-async function sendSMS(phone, message) {
-  // This is a placeholder function - replace with your actual SMS provider integration
-  console.log(`[SMS WOULD BE SENT] To: ${phone}, Message: ${message}`);
+  const reply = "I'm not able to respond to that type of content. How can I help you with something else?";
+  await storeChatMessage(userId, sanitizedMessage, reply, "inappropriate");
   
-  // For development/testing, just return success
-  return {
-    success: true,
-    messageId: `msg_${Date.now()}_${Math.random().toString(36).substring(2, 9)}`,
-    timestamp: new Date()
-  };
+  return { reply, status: "inappropriate" };
 }
 
-// Store chat message in MongoDB
-async function storeChatMessage(userId, message, reply, status) {
-  try {
-    const db = getDB();
-    
-    await db.collection('chatHistory').insertOne({
-      userId,
-      message,
-      reply,
-      status,
-      timestamp: new Date()
-    });
-  } catch (error) {
-    console.error("Error storing chat message:", error);
+/**
+ * Produce a chatbot reply as a sequence of events: { type: 'chunk', text } for
+ * each piece the model streams, then { type: 'done', reply, status }. Messages
+ * answered by the safety gates or the response cache produce a single done event. The finished reply
+ * is stored once; if the client goes away mid-stream, whatever it was shown is
+ * stored with the "interrupted" status.
+ * @param {string} sanitizedMessage - Trimmed user message
+ * @param {string} userId - User ID
+ * @param {Object} [options]
+ * @param {AbortSignal} [options.signal] - Aborted when the client disconnects
+ * @param {string} [options.idempotencyKey] - Client request key
+ * @returns {AsyncGenerator<Object>} Chunk events followed by a done event
+ */
+async function* streamChatReply(sanitizedMessage, userId, options = {}) {
+  const { signal, idempotencyKey } = options;
+  const screened = await screenChatMessage(sanitizedMessage, userId, { idempotencyKey });
+  if (screened) {
+    yield { type: 'done', ...screened };
+    return;
+  }
+
+  const cachedReply = responseCache.get(sanitizedMessage);
+  if (cachedReply) {
+    await storeChatMessage(userId, sanitizedMessage, cachedReply, "normal");
+    yield { type: 'done', reply: cachedReply, status: "normal" };
+    return;
+  }
+
+  let reply = '';
+  for await (const text of geminiModel.streamReply(sanitizedMessage, { signal })) {
+    reply += text;
+    yield { type: 'chunk', text };
   }
+
+  const interrupted = Boolean(signal && signal.aborted);
+  if (!reply && !interrupted) {
+    reply = geminiModel.FALLBACK_REPLY;
+  }
+  if (reply) {
+    await storeChatMessage(userId, sanitizedMessage, reply, interrupted ? "interrupted" : "normal");
+  }
+  if (!interrupted) {
+    responseCache.set(sanitizedMessage, reply);
+  }
+
+  yield { type: 'done', reply, status: "normal" };
 }
 
 // Register routes
@@ -574,11 +530,39 @@ console.log('Chat group routes registered');
 app.use('/api/chat/messages', chatMessageRoutes);
 console.log('Chat message routes registered');
 
+app.use('/api/crisis-events', crisisEventRoutes);
+console.log('Crisis event routes registered');
+
 // Health check route
 app.get("/", (req, res) => {
   res.send("MindBridge Server with Feed, Auth, Profile, Mood Tracker, Therapy Appointment, and Community Chat functionality is running!");
 });
 
+// Prometheus scrape endpoint: route, socket event, MongoDB, Gemini and Cal.com
+// latency histograms, event loop lag and memory
+app.get("/metrics", (req, res) => {
+  res.set('Content-Type', 'text/plain; version=0.0.4; charset=utf-8');
+  res.status(200).send(metrics.render());
+});
+
+// Liveness probe: the process is up and serving HTTP
+app.get("/health/live", (req, res) => {
+  res.status(200).json({
+    status: 'UP',
+    uptimeSeconds: Math.round(process.uptime()),
+    timestamp: new Date().toISOString()
+  });
+});
+
+// Readiness probe: 200 once the critical subsystems are up, 503 before; lists every subsystem
+app.get("/health/ready", (req, res) => {
+  const report = readiness.report();
+  res.status(report.ready ? 200 : 503).json({
+    ...report,
+    timestamp: new Date().toISOString()
+  });
+});
+
 // Health check route with DB status
 app.get("/health", async (req, res) => {
   try {
@@ -618,6 +602,14 @@ app.get("/health", async (req, res) => {
   }
 });
 
+// Toxicity classifier queue depth and batch statistics
+app.get("/health/toxicity", (req, res) => {
+  res.status(200).json({
+    ...toxicityClassifier.getMetrics(),
+    timestamp: new Date().toISOString()
+  });
+});
+
 // AI Chat route (no authentication)
 app.post('/chat', async (req, res) => {
   try {
@@ -629,52 +621,13 @@ app.post('/chat', async (req, res) => {
 
     const sanitizedMessage = message.trim();
 
-    if (sanitizedMessage.length < 5) {
-      return res.json({ reply: "I need a bit more information to help you. Could you please elaborate?", status: "normal" });
-    }
-
-    const commonPhrases = ['hello', 'good morning', 'how are you', 'test', 'thanks', 'bye'];
-    if (commonPhrases.some(phrase => sanitizedMessage.toLowerCase().includes(phrase))) {
-      const reply = "Thank you for reaching out! How can I assist you today?";
-      await storeChatMessage(userId, sanitizedMessage, reply, "normal");
-      return res.json({ reply, status: "normal" });
-    }
-
-    const { harmful, type, details } = await detectHarmfulText(sanitizedMessage);
-    
-    if (harmful) {
-      if (type === 'suicidal') {
-        console.log(`Suicidal content detected: "${sanitizedMessage}"`);
-        console.log(`Matched with: ${JSON.stringify(details)}`);
-        
-        await notifyEmergencyContacts(userId);
-        
-        const reply = getSuicidalResponse();
-        await storeChatMessage(userId, sanitizedMessage, reply, "crisis");
-        
-        return res.status(200).json({ 
-          reply,
-          status: "crisis",
-          resources: {
-            hotline: "988 or 1-800-273-8255",
-            text: "Text HOME to 741741",
-            chat: "https://suicidepreventionlifeline.org/chat/"
-          }
-        });
-      } else {
-        const reply = "I'm not able to respond to that type of content. How can I help you with something else?";
-        await storeChatMessage(userId, sanitizedMessage, reply, "inappropriate");
-        
-        return res.status(200).json({ 
-          reply,
-          status: "inappropriate"
-        });
-      }
+    const screened = await screenChatMessage(sanitizedMessage, userId, { idempotencyKey: req.get('Idempotency-Key') });
+    if (screened) {
+      return res.status(200).json(screened);
     }
 
-    const result = await model.generateContent(sanitizedMessage);
-    const response = await result.response;
-    const text = response.candidates[0]?.content?.parts[0]?.text || "I'm sorry, I couldn't generate a response. How else can I help you?";
+    // Identical prompts share one reply; safety checks above have already run
+    const { reply: text } = await responseCache.getOrGenerate(sanitizedMessage, () => geminiModel.generateReply(sanitizedMessage));
 
     await storeChatMessage(userId, sanitizedMessage, text, "normal");
     
@@ -685,6 +638,123 @@ app.post('/chat', async (req, res) => {
   }
 });
 
+// Streaming AI Chat route: Server-Sent Events with a "chunk" event per piece
+// of the reply and a final "done" event carrying the full reply and status
+app.post('/chat/stream', async (req, res) => {
+  const { message, userId } = req.body;
+
+  if (!message) {
+    return res.status(400).json({ error: "Message is required" });
+  }
+
+  res.set({
+    'Content-Type': 'text/event-stream',
+    'Cache-Control': 'no-cache',
+    'Connection': 'keep-alive',
+    'X-Accel-Buffering': 'no' // Stop reverse proxies from buffering the stream
+  });
+  res.flushHeaders();
+
+  // Stop generating when the app closes the connection
+  const abort = new AbortController();
+  res.on('close', () => {
+    if (!res.writableEnded) {
+      abort.abort();
+    }
+  });
+
+  const sendEvent = (event, data) => {
+    if (!res.writableEnded && !res.destroyed) {
+      res.write(`event: ${event}\ndata: ${JSON.stringify(data)}\n\n`);
+    }
+  };
+
+  try {
+    for await (const { type, ...data } of streamChatReply(message.trim(), userId, {
+      signal: abort.signal,
+      idempotencyKey: req.get('Idempotency-Key')
+    })) {
+      sendEvent(type, data);
+    }
+  } catch (error) {
+    console.error("Error streaming chat reply:", error);
+    sendEvent('error', { error: "Something went wrong with processing your message. Please try again.", status: "error" });
+  }
+
+  res.end();
+});
+
+// Password hashing pool and event loop delay; pass ?reset=true to start a new measuring window
+app.get("/health/auth", (req, res) => {
+  res.status(200).json({
+    passwordHasher: passwordHasher.getMetrics(),
+    eventLoopLag: eventLoopLag({ reset: req.query.reset === 'true' }),
+    timestamp: new Date().toISOString()
+  });
+});
+
+// Suicide detection pattern source and statistics
+app.get("/health/suicide-detector", (req, res) => {
+  res.status(200).json({
+    ...suicideDetector.getMetrics(),
+    timestamp: new Date().toISOString()
+  });
+});
+
+// Therapist search index statistics
+app.get("/health/therapist-search", (req, res) => {
+  res.status(200).json({
+    ...therapistSearch.getMetrics(),
+    timestamp: new Date().toISOString()
+  });
+});
+
+// Feed page cache statistics
+app.get("/health/feed", (req, res) => {
+  res.status(200).json({
+    ...feedCache.getMetrics(),
+    timestamp: new Date().toISOString()
+  });
+});
+
+// Cal.com availability cache statistics
+app.get("/health/availability", (req, res) => {
+  res.status(200).json({
+    liveMode: calendar.isLiveMode(),
+    ...calendar.availabilityCache.getMetrics(),
+    timestamp: new Date().toISOString()
+  });
+});
+
+// Chatbot latency, including time to first token for streamed replies
+app.get("/health/chatbot", (req, res) => {
+  res.status(200).json({
+    ...geminiModel.getMetrics(),
+    cache: responseCache.getMetrics(),
+    timestamp: new Date().toISOString()
+  });
+});
+
+// Chatbot response cache statistics
+app.get("/admin/chatbot-cache", requireAdminKey, (req, res) => {
+  res.status(200).json(responseCache.getMetrics());
+});
+
+// Invalidate one cached prompt ({ prompt } in the body or query), or the whole cache
+app.delete("/admin/chatbot-cache", requireAdminKey, (req, res) => {
+  const prompt = (req.body && req.body.prompt) || req.query.prompt;
+
+  if (prompt) {
+    const removed = responseCache.invalidate(prompt);
+    console.log(`Chatbot cache entry invalidated by admin (found: ${removed})`);
+    return res.status(200).json({ invalidated: removed ? 1 : 0 });
+  }
+
+  const removed = responseCache.clear();
+  console.log(`Chatbot cache cleared by admin (${removed} entries)`);
+  res.status(200).json({ invalidated: removed });
+});
+
 // Error handling middleware
 app.use((err, req, res, next) => {
   console.error(err.stack);
@@ -694,118 +764,143 @@ app.use((err, req, res, next) => {
   });
 });
 
-// Initialize MongoDB connections and the dataset when server starts
-// Global variable to track mood database connection state
-let moodDbConnected = false;
-
+// Start listening right away and bring the subsystems up concurrently.
+// Requests get a 503 until the main database is connected; /health/ready
+// reports each subsystem and the timing breakdown is logged once all are done.
 (async function() {
-  try {
-    console.log('Starting server initialization...');
-    
-    // 1. Connect to main MindBridge DB
-    await connectToMongoDB();
-    console.log('Main database connected successfully');
-    
-    // 2. Connect to Feed DB
-    try {
-      await connectFeedDB();
-      console.log('Feed database connected successfully');
-    } catch (feedDbError) {
-      console.error('Failed to connect to feed database:', feedDbError.message);
-      console.warn('Server will start with limited feed functionality');
+  console.log('Starting server initialization...');
+  
+  const PORT = process.env.PORT || 5001;
+  server.listen(PORT, () => {
+    readiness.markListening();
+    console.log(`MindBridge server listening on http://localhost:${PORT} (${readiness.listeningAtMs}ms after start)`);
+    if (isClusterWorker) {
+      console.log(`Cluster worker ${cluster.worker.id} (pid ${process.pid})`);
     }
+  });
+  
+  // Main MindBridge DB: everything that uses getDB() waits for it
+  const database = readiness.track('database', connectToMongoDB, { critical: true });
+  
+  // Mongoose connection, shared by the feed and mood tracker models
+  const mongooseConnection = readiness.track('mongoose', connectWithMongoose);
+  
+  const steps = [
+    database.then(() => console.log('Main database connected successfully')),
     
-    // 3. Connect to Mongoose for ORM operations
-    try {
-      await connectWithMongoose();
-      console.log('Mongoose connected successfully');
-    } catch (mongooseError) {
-      console.error('Failed to connect with Mongoose:', mongooseError.message);
-      console.warn('Server will start with limited ORM functionality');
-    }
+    mongooseConnection.then(() => console.log('Mongoose connected successfully (feed and mood tracker)')),
     
-    // 4. Connect to Mood Tracker DB
-    try {
-      const { connectMoodDB } = require('./config/mood-db');
-      await connectMoodDB();
-      moodDbConnected = true;
-      console.log('Mood tracker database connected successfully');
-      
-      // Verify connectivity by testing the Mood model
-      const Mood = require('./models/mood-model');
-      if (typeof Mood.verifyConnection === 'function') {
-        const isConnected = await Mood.verifyConnection();
+    // Mood tracker: collection setup and the model check run in the background
+    mongooseConnection
+      .then(() => readiness.track('moodTracker', async () => {
+        const { connectMoodDB } = require('./config/mood-db');
+        await connectMoodDB();
         
-        if (isConnected) {
-          console.log('Mood model connection verified successfully');
-        } else {
-          console.error('Mood model connection verification failed');
-          console.warn('Server will continue but mood tracker functionality may be limited');
-        }
-      } else {
-        // If verifyConnection method is not available, try a simpler check
-        console.log('Verifying Mood model with basic check...');
-        try {
-          const count = await Mood.countDocuments({});
-          console.log(`Found ${count} mood documents in database`);
-          console.log('Mood model basic connection check passed');
-        } catch (countError) {
-          console.error('Mood model basic connection check failed:', countError.message);
-          console.warn('Server will continue but mood tracker functionality may be limited');
-        }
-      }
-    } catch (moodDbError) {
-      console.error('Failed to connect to mood tracker database:', moodDbError.message);
-      console.warn('Server will start with limited mood tracker functionality');
-    }
+        const Mood = require('./models/mood-model');
+        Mood.verifyConnection().then((isConnected) => {
+          if (!isConnected) {
+            readiness.degrade('moodTracker', 'Mood model check failed');
+            console.warn('Server will continue but mood tracker functionality may be limited');
+          }
+        });
+      })),
     
-    // 5. Initialize chat database collections
-    try {
-      const { initializeDatabase } = require('./models/initializeDB');
-      await initializeDatabase();
-      console.log('Chat database collections initialized successfully');
-    } catch (dbInitError) {
-      console.error('Failed to initialize chat database collections:', dbInitError.message);
-      console.warn('Server will start with limited chat functionality');
-    }
+    // Chat collections, then the crisis outbox, which relies on their indexes
+    database
+      .then(() => readiness.track('chatCollections', async () => {
+        const { initializeDatabase } = require('./models/initializeDB');
+        await initializeDatabase();
+      }))
+      .catch((dbInitError) => {
+        console.error('Failed to initialize chat database collections:', dbInitError.message);
+        console.warn('Server will start with limited chat functionality');
+      })
+      .then(() => database)
+      // Start sending queued crisis notifications, including any left by a previous run
+      .then(() => readiness.track('crisisOutbox', async () => crisisOutbox.start())),
     
-    // 6. Load the suicide detection dataset
-    await loadSuicideDataset();
+    // Build the therapist search index; searches scan the collection until it's ready
+    database
+      .then(() => readiness.track('therapistSearch', () => therapistSearch.start()))
+      .then((indexed) => {
+        console.log(`Therapist search index built with ${indexed} therapists (${therapistSearch.stats.lastLoadMs}ms)`);
+      }),
     
-    // 7. Start the server
-    const PORT = process.env.PORT || 5001;
-    server.listen(PORT, () => {
-      console.log(`MindBridge server running on http://localhost:${PORT}`);
-      console.log('----------------------------------------------------');
-      console.log('Services available:');
-      console.log('- Feed API');
-      console.log('- Authentication API');
-      console.log('- User Profiles API');
-      console.log(`- Mood Tracker API (${moodDbConnected ? 'Available' : 'Limited'})`);
-      console.log('- Therapist API');
-      console.log('- Appointment API');
-      console.log('- Community Chat API');
-      console.log('- AI Chat');
-      console.log('----------------------------------------------------');
-    });
+    // Suicide detection patterns from the snapshot or the dataset; the built-in
+    // patterns are used until they're loaded, and dataset changes are picked up
+    readiness.track('suicideDataset', async () => {
+      await suicideDetector.load();
+      suicideDetector.watch();
+    }),
+    
+    // Warm up the toxicity model so the first /chat request doesn't pay for it
+    readiness.track('toxicityModel', () => toxicityClassifier.load())
+      .catch((modelError) => {
+        console.warn('The model will be loaded on the first /chat request instead');
+        throw modelError;
+      })
+  ];
+  const settled = Promise.allSettled(steps);
+  
+  try {
+    await database;
   } catch (error) {
     console.error('Critical initialization error:', error);
     console.error('Server cannot start due to critical initialization failure');
     process.exit(1);
   }
+  
+  const results = await settled;
+  results
+    .filter(result => result.status === 'rejected')
+    .forEach(result => console.error('Startup step failed:', result.reason && result.reason.message));
+  
+  const { isMoodDBConnected } = require('./config/mood-db');
+  console.log('----------------------------------------------------');
+  console.log('Services available:');
+  console.log('- Feed API');
+  console.log('- Authentication API');
+  console.log('- User Profiles API');
+  console.log(`- Mood Tracker API (${isMoodDBConnected() ? 'Available' : 'Limited'})`);
+  console.log('- Therapist API');
+  console.log('- Appointment API');
+  console.log('- Community Chat API');
+  console.log('- AI Chat');
+  console.log('----------------------------------------------------');
+  readiness.logTimings();
 })();
 
-// Graceful shutdown
-process.on('SIGINT', async () => {
-  console.log('Shutting down server gracefully...');
+// Graceful shutdown. Ctrl+C sends SIGINT; process managers and rolling
+// deploys send SIGTERM. Both persist buffered chat messages before exiting.
+let shuttingDown = false;
+const shutdown = async (signal) => {
+  if (shuttingDown) {
+    return;
+  }
+  shuttingDown = true;
+  console.log(`Shutting down server gracefully (${signal})...`);
   
   // Close any open database connections
   try {
+    // Persist any chat messages that are still buffered
+    await chatWriteBehind.flushAll();
+    
+    // Let crisis notifications in progress finish; anything else stays queued
+    await crisisOutbox.stop();
+    
+    // Stop the password hashing workers
+    await passwordHasher.close();
+    suicideDetector.close();
+    logger.flush();
+    
     if (mongoose.connection.readyState === 1) {
       console.log('Closing mongoose connections...');
       await mongoose.connection.close();
     }
     
+    // The native client closes last, once the chat buffer is flushed
+    await closeConnections();
+    
     // Close server
     server.close(() => {
       console.log('HTTP server closed');
@@ -817,4 +912,7 @@ process.on('SIGINT', async () => {
     console.error('Error during shutdown:', err);
     process.exit(1);
   }
-});
\ No newline at end of file
+};
+
+process.on('SIGINT', () => shutdown('SIGINT'));
+process.on('SIGTERM', () => shutdown('SIGTERM'));
\ No newline at end of file
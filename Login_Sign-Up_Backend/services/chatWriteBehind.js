@@ -0,0 +1,682 @@
+// services/chatWriteBehind.js - Ordered write-behind buffer for community chat messages
+const { ObjectId } = require('mongodb');
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_MAX_BATCH_SIZE = parseInt(process.env.CHAT_FLUSH_BATCH_SIZE, 10) || 100;
+const DEFAULT_FLUSH_INTERVAL_MS = parseInt(process.env.CHAT_FLUSH_INTERVAL_MS, 10) || 25;
+const DEFAULT_MAX_BUFFERED = parseInt(process.env.CHAT_MAX_BUFFERED_PER_GROUP, 10) || 1000;
+const MAX_RETRY_DELAY_MS = 5000;
+const DUPLICATE_KEY_ERROR = 11000;
+const SEQUENCER_SOURCE = 'mindbridge:sequencer';
+const SEQUENCER_TIMEOUT_MS = 5000;
+const PEER_SYNC_SOURCE = 'mindbridge:chat-peer-sync';
+const PEER_SYNC_TIMEOUT_MS = 2000;
+const DEFAULT_SEQ_BLOCK_SIZE = parseInt(process.env.CHAT_SEQ_BLOCK_SIZE, 10) || 100;
+const DEFAULT_MAX_WRITE_ATTEMPTS = parseInt(process.env.CHAT_MAX_WRITE_ATTEMPTS, 10) || 5;
+
+/**
+ * Highest seq already persisted for a group
+ * @param {Function} getCollection - Returns the chatMessages collection
+ * @param {string} groupId - Chat group ID
+ * @returns {Promise<number>} The highest seq, or 0
+ */
+async function loadPersistedSeq(getCollection, groupId) {
+  const latest = await (await getCollection()).findOne(
+    { groupId, seq: { $exists: true } },
+    { sort: { seq: -1 }, projection: { seq: 1 } }
+  );
+  return latest ? latest.seq : 0;
+}
+
+/**
+ * Hands out monotonic sequence ids per group from blocks reserved on a
+ * persisted counter ({ _id: groupId, seq } in chatSequences). Ids are never
+ * reused after a restart or crash; the unused rest of a block is skipped,
+ * which clients treat like any other gap.
+ * @param {Object} options
+ * @param {Function} options.getCollection - Returns the chatMessages collection (may be async)
+ * @param {Function} options.getCounters - Returns the chatSequences collection (may be async)
+ * @param {number} [options.blockSize] - Ids reserved per counter update
+ * @returns {Object} Sequencer with next(groupId) and current(groupId)
+ */
+function createSeqAllocator({ getCollection, getCounters, blockSize = DEFAULT_SEQ_BLOCK_SIZE }) {
+  const blocks = new Map();
+  const reserving = new Map();
+  const latest = new Map();
+  const seeded = new Set();
+
+  const reserve = async (groupId) => {
+    const counters = await getCounters();
+
+    // Groups with messages from before the counter existed continue after them
+    if (!seeded.has(groupId)) {
+      const floor = await loadPersistedSeq(getCollection, groupId);
+      try {
+        await counters.updateOne({ _id: groupId }, { $max: { seq: floor } }, { upsert: true });
+      } catch (error) {
+        // A duplicate key means another process created the counter first
+        if (error.code !== DUPLICATE_KEY_ERROR) {
+          throw error;
+        }
+      }
+      seeded.add(groupId);
+    }
+
+    const counter = await counters.findOneAndUpdate(
+      { _id: groupId },
+      { $inc: { seq: blockSize } },
+      { upsert: true, returnDocument: 'after' }
+    );
+    return { next: counter.seq - blockSize + 1, end: counter.seq };
+  };
+
+  return {
+    async next(groupId) {
+      let block = blocks.get(groupId);
+      while (!block || block.next > block.end) {
+        if (!reserving.has(groupId)) {
+          reserving.set(groupId, reserve(groupId)
+            .then((reserved) => { blocks.set(groupId, reserved); })
+            .finally(() => reserving.delete(groupId)));
+        }
+        await reserving.get(groupId);
+        block = blocks.get(groupId);
+      }
+
+      const seq = block.next++;
+      latest.set(groupId, seq);
+      return seq;
+    },
+
+    current(groupId) {
+      return latest.has(groupId) ? latest.get(groupId) : null;
+    }
+  };
+}
+
+/**
+ * Sequencer for cluster workers: sequence ids come from the primary process
+ * (see serveIpcSequencer) so every worker shares one counter per group.
+ * @param {Object} [processRef] - Process with an IPC channel, defaults to the current process
+ * @returns {Object} Sequencer with next(groupId) and current(groupId)
+ */
+function createIpcSequencer(processRef = process) {
+  const latest = new Map();
+  const pending = new Map();
+  let nextRequestId = 0;
+
+  processRef.on('message', (packet) => {
+    if (!packet || packet.source !== SEQUENCER_SOURCE || !pending.has(packet.requestId)) {
+      return;
+    }
+
+    const request = pending.get(packet.requestId);
+    pending.delete(packet.requestId);
+    clearTimeout(request.timer);
+
+    if (packet.error) {
+      request.reject(new Error(packet.error));
+      return;
+    }
+    latest.set(request.groupId, Math.max(latest.get(request.groupId) || 0, packet.seq));
+    request.resolve(packet.seq);
+  });
+
+  return {
+    next(groupId) {
+      return new Promise((resolve, reject) => {
+        const requestId = ++nextRequestId;
+        const timer = setTimeout(() => {
+          pending.delete(requestId);
+          reject(new Error(`Timed out waiting for a sequence id for group ${groupId}`));
+        }, SEQUENCER_TIMEOUT_MS);
+
+        pending.set(requestId, { groupId, resolve, reject, timer });
+        processRef.send({ source: SEQUENCER_SOURCE, requestId, groupId });
+      });
+    },
+
+    current(groupId) {
+      return latest.has(groupId) ? latest.get(groupId) : null;
+    }
+  };
+}
+
+/**
+ * Answer sequence id requests from cluster workers. Call once in the primary.
+ * @param {Object} sequencer - Sequencer backed by the persisted counter (createSeqAllocator)
+ * @param {Object} [clusterRef] - The cluster module
+ * @returns {Function} Stops serving requests
+ */
+function serveIpcSequencer(sequencer, clusterRef = require('cluster')) {
+  const onMessage = (worker, packet) => {
+    if (!packet || packet.source !== SEQUENCER_SOURCE) {
+      return;
+    }
+
+    sequencer.next(packet.groupId).then(
+      (seq) => ({ source: SEQUENCER_SOURCE, requestId: packet.requestId, seq }),
+      (error) => ({ source: SEQUENCER_SOURCE, requestId: packet.requestId, error: error.message })
+    ).then((reply) => {
+      if (worker.isConnected()) {
+        worker.send(reply);
+      }
+    });
+  };
+
+  clusterRef.on('message', onMessage);
+  return () => clusterRef.off('message', onMessage);
+}
+
+/**
+ * Lets a cluster worker have every worker persist what it has buffered for a
+ * group, through the primary (see servePeerSync). Reads that combine the
+ * database with the local buffer are only complete once the other workers'
+ * buffers are in the database too.
+ * @param {Object} [processRef] - Process with an IPC channel, defaults to the current process
+ * @returns {Object} { syncGroup(groupId), onFlushRequest(handler) }
+ */
+function createIpcPeerSync(processRef = process) {
+  const pending = new Map();
+  let flushHandler = null;
+  let nextRequestId = 0;
+
+  processRef.on('message', (packet) => {
+    if (!packet || packet.source !== PEER_SYNC_SOURCE) {
+      return;
+    }
+
+    if (packet.type === 'flush') {
+      // Let sequence ids that arrived in the same batch of IPC messages reach the buffer first
+      setImmediate(() => {
+        Promise.resolve(flushHandler && flushHandler(packet.groupId))
+          .catch(error => console.error(`Failed to flush chat group ${packet.groupId} for a peer:`, error.message))
+          .finally(() => processRef.send({ source: PEER_SYNC_SOURCE, type: 'flushed', flushId: packet.flushId }));
+      });
+    } else if (packet.type === 'synced' && pending.has(packet.requestId)) {
+      const request = pending.get(packet.requestId);
+      pending.delete(packet.requestId);
+      clearTimeout(request.timer);
+      request.resolve(packet.latestSeq != null ? packet.latestSeq : null);
+    }
+  });
+
+  return {
+    /**
+     * @param {string} groupId - Chat group ID
+     * @returns {Promise<number|null>} Latest seq handed out for the group, if known
+     */
+    syncGroup(groupId) {
+      return new Promise((resolve) => {
+        const requestId = ++nextRequestId;
+        // Best effort: a slow worker shouldn't hold up the read for long
+        const timer = setTimeout(() => {
+          pending.delete(requestId);
+          console.warn(`Timed out waiting for other workers to flush chat group ${groupId}`);
+          resolve(null);
+        }, PEER_SYNC_TIMEOUT_MS + 500);
+
+        pending.set(requestId, { resolve, timer });
+        processRef.send({ source: PEER_SYNC_SOURCE, type: 'sync', requestId, groupId });
+      });
+    },
+
+    onFlushRequest(handler) {
+      flushHandler = handler;
+    }
+  };
+}
+
+/**
+ * Coordinate peer syncs in the primary: ask every worker to flush the group
+ * and answer the requesting worker once they all have (or after a timeout)
+ * @param {Object} sequencer - The primary's sequencer, for the latest seq
+ * @param {Object} [clusterRef] - The cluster module
+ * @returns {Function} Stops serving requests
+ */
+function servePeerSync(sequencer, clusterRef = require('cluster')) {
+  const waiting = new Map();
+  let nextFlushId = 0;
+
+  const onMessage = (worker, packet) => {
+    if (!packet || packet.source !== PEER_SYNC_SOURCE) {
+      return;
+    }
+
+    if (packet.type === 'flushed') {
+      const entry = waiting.get(packet.flushId);
+      if (entry && --entry.remaining === 0) {
+        entry.done();
+      }
+      return;
+    }
+
+    if (packet.type !== 'sync') {
+      return;
+    }
+
+    const flushId = ++nextFlushId;
+    const workers = Object.values(clusterRef.workers || {}).filter(peer => peer && peer.isConnected());
+    const done = () => {
+      const entry = waiting.get(flushId);
+      if (!entry) {
+        return;
+      }
+      clearTimeout(entry.timer);
+      waiting.delete(flushId);
+      if (worker.isConnected()) {
+        worker.send({
+          source: PEER_SYNC_SOURCE,
+          type: 'synced',
+          requestId: packet.requestId,
+          latestSeq: sequencer.current(packet.groupId)
+        });
+      }
+    };
+
+    waiting.set(flushId, { remaining: workers.length, done, timer: setTimeout(done, PEER_SYNC_TIMEOUT_MS) });
+    if (workers.length === 0) {
+      done();
+      return;
+    }
+    for (const peer of workers) {
+      peer.send({ source: PEER_SYNC_SOURCE, type: 'flush', flushId, groupId: packet.groupId });
+    }
+  };
+
+  clusterRef.on('message', onMessage);
+  return () => clusterRef.off('message', onMessage);
+}
+
+/**
+ * Error raised when a group's buffer is full and the caller should retry later
+ */
+class ChatBufferFullError extends Error {
+  constructor(groupId) {
+    super(`Too many pending messages for group ${groupId}, please retry shortly`);
+    this.name = 'ChatBufferFullError';
+    this.code = 'CHAT_BUFFER_FULL';
+    this.retryable = true;
+  }
+}
+
+/**
+ * Assigns each chat message a per-group sequence id so it can be broadcast
+ * right away, then persists messages in the background with insertMany.
+ * Flushes happen per group, in sequence order, one batch at a time.
+ */
+class ChatWriteBehind {
+  /**
+   * @param {Object} options
+   * @param {Function} options.getCollection - Returns the chatMessages collection
+   * @param {Function} [options.getCounters] - Returns the chatSequences collection, for the default sequencer
+   * @param {Function} [options.getDeadLetters] - Returns the collection for messages that could not be stored
+   * @param {Object} [options.sequencer] - Sequencer with next(groupId) and current(groupId)
+   * @param {Object} [options.peerSync] - Cluster peer sync (createIpcPeerSync), so reads see other workers' buffers
+   * @param {number} [options.maxBatchSize] - Flush as soon as this many messages are pending
+   * @param {number} [options.flushIntervalMs] - Maximum time a message waits before a flush
+   * @param {number} [options.maxBufferedPerGroup] - Unpersisted messages allowed per group
+   * @param {number} [options.maxWriteAttempts] - Attempts before a rejected message is dead-lettered
+   */
+  constructor(options) {
+    this.getCollection = options.getCollection;
+    this.getDeadLetters = options.getDeadLetters || null;
+    this.sequencer = options.sequencer || createSeqAllocator({
+      getCollection: options.getCollection,
+      getCounters: options.getCounters
+    });
+    this.maxBatchSize = options.maxBatchSize || DEFAULT_MAX_BATCH_SIZE;
+    this.flushIntervalMs = options.flushIntervalMs != null ? options.flushIntervalMs : DEFAULT_FLUSH_INTERVAL_MS;
+    this.maxBufferedPerGroup = options.maxBufferedPerGroup || DEFAULT_MAX_BUFFERED;
+    this.maxWriteAttempts = options.maxWriteAttempts || DEFAULT_MAX_WRITE_ATTEMPTS;
+    this.peerSync = options.peerSync || null;
+    if (this.peerSync) {
+      this.peerSync.onFlushRequest(groupId => this.flushGroup(groupId));
+    }
+
+    this.groups = new Map();
+    this.writeAttempts = new WeakMap();
+    this.stats = {
+      appended: 0,
+      persisted: 0,
+      flushes: 0,
+      failedFlushes: 0,
+      rejected: 0,
+      deadLettered: 0,
+      maxFlushSize: 0,
+      lastFlushMs: 0
+    };
+  }
+
+  _getGroup(groupId) {
+    let group = this.groups.get(groupId);
+    if (!group) {
+      group = {
+        groupId,
+        pending: [],
+        inflight: [],
+        reserved: 0,
+        timer: null,
+        flushPromise: null,
+        retryDelayMs: 0
+      };
+      this.groups.set(groupId, group);
+    }
+    return group;
+  }
+
+  _bufferedCount(group) {
+    return group.pending.length + group.inflight.length + group.reserved;
+  }
+
+  // Forget groups with nothing buffered so the map doesn't grow with every group ever used
+  _pruneIfIdle(group) {
+    if (this._bufferedCount(group) === 0 && !group.flushPromise && !group.timer &&
+        this.groups.get(group.groupId) === group) {
+      this.groups.delete(group.groupId);
+    }
+  }
+
+  /**
+   * Admit a message, assign its sequence id and queue it for persistence
+   * @param {Object} fields - groupId, message, sender, isAnonymous
+   * @returns {Promise<Object>} The stored message, ready to broadcast
+   */
+  async append(fields) {
+    let group = this._getGroup(fields.groupId);
+
+    // Backpressure: give an in-progress flush one chance to drain before rejecting
+    if (this._bufferedCount(group) >= this.maxBufferedPerGroup && group.flushPromise) {
+      await group.flushPromise;
+      group = this._getGroup(fields.groupId); // It may have been pruned meanwhile
+    }
+    if (this._bufferedCount(group) >= this.maxBufferedPerGroup) {
+      this.stats.rejected++;
+      throw new ChatBufferFullError(fields.groupId);
+    }
+
+    // Only take a sequence id once the message is admitted; the reservation
+    // also keeps the group from being pruned while waiting for the id
+    group.reserved++;
+    let seq;
+    try {
+      seq = await this.sequencer.next(fields.groupId);
+    } finally {
+      group.reserved--;
+    }
+
+    const message = {
+      _id: new ObjectId(),
+      groupId: fields.groupId,
+      seq,
+      message: fields.message,
+      sender: fields.sender,
+      isAnonymous: fields.isAnonymous || false,
+      timestamp: new Date(),
+      isMe: false, // This will be set to true by the client for their own messages
+    };
+
+    // Keep pending sorted by seq even if sequencer replies arrive out of order
+    let index = group.pending.length;
+    while (index > 0 && group.pending[index - 1].seq > seq) {
+      index--;
+    }
+    group.pending.splice(index, 0, message);
+    this.stats.appended++;
+
+    this._scheduleFlush(group);
+    return message;
+  }
+
+  _scheduleFlush(group) {
+    if (group.flushPromise) {
+      return; // The running flush reschedules itself when it finishes
+    }
+
+    if (group.pending.length >= this.maxBatchSize && !group.retryDelayMs) {
+      this._flushGroup(group);
+    } else if (!group.timer && group.pending.length > 0) {
+      group.timer = setTimeout(() => this._flushGroup(group), group.retryDelayMs || this.flushIntervalMs);
+    }
+  }
+
+  _flushGroup(group) {
+    if (group.timer) {
+      clearTimeout(group.timer);
+      group.timer = null;
+    }
+    if (group.flushPromise || group.pending.length === 0) {
+      return group.flushPromise || Promise.resolve();
+    }
+
+    group.inflight = group.pending.splice(0, this.maxBatchSize);
+    group.flushPromise = this._writeBatch(group).finally(() => {
+      group.flushPromise = null;
+      this._scheduleFlush(group);
+      this._pruneIfIdle(group);
+    });
+
+    return group.flushPromise;
+  }
+
+  async _writeBatch(group) {
+    const batch = group.inflight;
+    const startedAt = Date.now();
+    let failed = [];
+    const deadLetters = [];
+
+    try {
+      // Unordered so one bad document doesn't hold back the rest; ids are
+      // assigned up front, so a retried batch only reports duplicate keys
+      await this.getCollection().insertMany(batch, { ordered: false });
+    } catch (error) {
+      const writeErrors = error.writeErrors
+        ? [].concat(error.writeErrors)
+        : null;
+
+      if (writeErrors) {
+        // Documents the database refused are retried a few times, then set aside
+        // so one bad message can't hold up its group forever
+        for (const writeError of writeErrors) {
+          if (writeError.code === DUPLICATE_KEY_ERROR) {
+            continue;
+          }
+          const message = batch[writeError.index];
+          const attempts = (this.writeAttempts.get(message) || 0) + 1;
+          if (attempts >= this.maxWriteAttempts) {
+            deadLetters.push({ message, error: writeError.errmsg || writeError.message || String(writeError.code) });
+          } else {
+            this.writeAttempts.set(message, attempts);
+            failed.push(message);
+          }
+        }
+      } else {
+        // The whole batch failed (e.g. the database is unreachable); retry all of it
+        failed = batch;
+      }
+
+      if (failed.length > 0) {
+        console.error(`Failed to persist ${failed.length} chat messages for group ${group.groupId}:`, error.message);
+      }
+    }
+
+    if (deadLetters.length > 0) {
+      await this._deadLetter(group, deadLetters);
+    }
+
+    group.inflight = [];
+    this.stats.flushes++;
+    this.stats.lastFlushMs = Date.now() - startedAt;
+    this.stats.maxFlushSize = Math.max(this.stats.maxFlushSize, batch.length);
+    this.stats.persisted += batch.length - failed.length - deadLetters.length;
+
+    if (failed.length > 0) {
+      // Put failed messages back at the front and retry with exponential backoff
+      this.stats.failedFlushes++;
+      group.pending.unshift(...failed);
+      group.retryDelayMs = Math.min(MAX_RETRY_DELAY_MS, (group.retryDelayMs || this.flushIntervalMs || 25) * 2);
+    } else {
+      group.retryDelayMs = 0;
+    }
+  }
+
+  /**
+   * Keep messages that were refused too many times in a separate collection
+   * for inspection; clients see their seqs as a gap
+   * @param {Object} group - Group state
+   * @param {Array<Object>} entries - { message, error } for each message
+   */
+  async _deadLetter(group, entries) {
+    this.stats.deadLettered += entries.length;
+    console.error(`Giving up on ${entries.length} chat messages for group ${group.groupId} after ${this.maxWriteAttempts} attempts:`, entries[0].error);
+
+    if (!this.getDeadLetters) {
+      return;
+    }
+    try {
+      const failedAt = new Date();
+      await this.getDeadLetters().insertMany(entries.map(({ message, error }) => ({ message, error, failedAt })), { ordered: false });
+    } catch (error) {
+      console.error(`Failed to store dead-lettered chat messages for group ${group.groupId}:`, error.message);
+    }
+  }
+
+  /**
+   * Persist everything this process has buffered for a group
+   * @param {string} groupId - Chat group ID
+   * @returns {Promise<void>}
+   */
+  async flushGroup(groupId) {
+    const group = this.groups.get(groupId);
+    if (!group) {
+      return;
+    }
+
+    while (group.pending.length > 0 || group.flushPromise) {
+      await (group.flushPromise || this._flushGroup(group));
+      if (group.retryDelayMs) {
+        return; // Writes are failing; the retry timer takes it from here
+      }
+    }
+  }
+
+  /**
+   * In cluster mode, have the other workers persist what they buffered for a
+   * group. Call before reading the database and this process's buffer.
+   * @param {string} groupId - Chat group ID
+   * @returns {Promise<number|null>} Latest seq handed out across the cluster, if known
+   */
+  async syncPeers(groupId) {
+    return this.peerSync ? this.peerSync.syncGroup(groupId) : this.sequencer.current(groupId);
+  }
+
+  /**
+   * Messages for a group that are not yet persisted
+   * @param {string} groupId - Chat group ID
+   * @param {number} sinceSeq - Only return messages with a higher seq
+   * @returns {Array<Object>} Buffered messages in seq order
+   */
+  getBuffered(groupId, sinceSeq = 0) {
+    const group = this.groups.get(groupId);
+    if (!group) {
+      return [];
+    }
+
+    return group.inflight.concat(group.pending).filter(message => message.seq > sinceSeq);
+  }
+
+  /**
+   * Everything a reconnecting client missed after sinceSeq, merging
+   * persisted and still-buffered messages in seq order
+   * @param {string} groupId - Chat group ID
+   * @param {number} sinceSeq - Last seq the client has seen
+   * @param {number} [limit] - Maximum number of messages to return
+   * @returns {Promise<Object>} { messages, hasMore, latestSeq }
+   */
+  async getMessagesSince(groupId, sinceSeq = 0, limit = 500) {
+    // Other workers' buffers go to the database first, then this process's
+    // buffer is snapshotted before querying: anything that leaves the buffer
+    // in between is already persisted, and anything newer is broadcast live
+    const latestSeq = await this.syncPeers(groupId);
+    const buffered = this.getBuffered(groupId, sinceSeq);
+
+    const persisted = await this.getCollection()
+      .find({ groupId, seq: { $gt: sinceSeq } })
+      .sort({ seq: 1 })
+      .limit(limit)
+      .toArray();
+
+    const hasMore = persisted.length === limit;
+    const bySeq = new Map(persisted.map(message => [message.seq, message]));
+
+    // When the persisted page is full, buffered messages past its end would leave a gap
+    const lastPersistedSeq = hasMore ? persisted[persisted.length - 1].seq : Infinity;
+    for (const message of buffered) {
+      if (message.seq <= lastPersistedSeq && !bySeq.has(message.seq)) {
+        bySeq.set(message.seq, message);
+      }
+    }
+
+    const messages = Array.from(bySeq.values())
+      .sort((a, b) => a.seq - b.seq)
+      .slice(0, limit);
+
+    return {
+      messages,
+      hasMore: hasMore || messages.length === limit,
+      latestSeq: latestSeq != null ? latestSeq : this.sequencer.current(groupId)
+    };
+  }
+
+  /**
+   * Persist everything that is buffered (used on shutdown)
+   * @returns {Promise<void>}
+   */
+  async flushAll() {
+    for (let attempt = 0; attempt < 5; attempt++) {
+      const pendingGroups = Array.from(this.groups.values())
+        .filter(group => group.pending.length > 0 || group.flushPromise);
+
+      if (pendingGroups.length === 0) {
+        return;
+      }
+
+      await Promise.all(pendingGroups.map(group =>
+        group.flushPromise
+          ? group.flushPromise.then(() => this._flushGroup(group))
+          : this._flushGroup(group)
+      ));
+    }
+  }
+
+  /**
+   * Buffer depth and flush statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    let buffered = 0;
+    for (const group of this.groups.values()) {
+      buffered += group.pending.length + group.inflight.length;
+    }
+
+    return {
+      groups: this.groups.size,
+      buffered,
+      maxBatchSize: this.maxBatchSize,
+      flushIntervalMs: this.flushIntervalMs,
+      maxBufferedPerGroup: this.maxBufferedPerGroup,
+      maxWriteAttempts: this.maxWriteAttempts,
+      ...this.stats
+    };
+  }
+}
+
+module.exports = {
+  ChatWriteBehind,
+  ChatBufferFullError,
+  createSeqAllocator,
+  createIpcSequencer,
+  serveIpcSequencer,
+  createIpcPeerSync,
+  servePeerSync
+};
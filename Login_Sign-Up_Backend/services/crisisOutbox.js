@@ -0,0 +1,283 @@
+// services/crisisOutbox.js - Durable outbox and worker for crisis notifications to emergency contacts
+const crypto = require('crypto');
+const { findUserById } = require('../models/user');
+const crisisEvents = require('../models/crisisEvent');
+const { createSimulatedSmsProvider } = require('./smsProvider');
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_MAX_ATTEMPTS = parseInt(process.env.CRISIS_MAX_ATTEMPTS, 10) || 5;
+const DEFAULT_BASE_BACKOFF_MS = parseInt(process.env.CRISIS_BASE_BACKOFF_MS, 10) || 2000;
+const DEFAULT_MAX_BACKOFF_MS = parseInt(process.env.CRISIS_MAX_BACKOFF_MS, 10) || 60000;
+const DEFAULT_LEASE_MS = parseInt(process.env.CRISIS_LEASE_MS, 10) || 30000;
+const DEFAULT_POLL_INTERVAL_MS = parseInt(process.env.CRISIS_POLL_INTERVAL_MS, 10) || 1000;
+const DEFAULT_CONCURRENCY = parseInt(process.env.CRISIS_CONCURRENCY, 10) || 4;
+
+/**
+ * Records crisis events and notifies emergency contacts in the background.
+ * The chat request only inserts the event; a worker in every process leases
+ * due events, looks the user up once, sends to all contacts in parallel and
+ * retries failed contacts with exponential backoff. Each contact has an
+ * idempotency key, so a retry never alerts someone who was already reached.
+ */
+class CrisisOutbox {
+  /**
+   * @param {Object} [options]
+   * @param {Object} [options.smsProvider] - Provider exposing send({ to, body, idempotencyKey })
+   * @param {Function} [options.findUser] - Loads a user by ID
+   * @param {Object} [options.store] - Crisis event persistence (defaults to models/crisisEvent)
+   * @param {number} [options.maxAttempts] - Attempts per event before giving up on failed contacts
+   * @param {number} [options.baseBackoffMs] - Delay before the first retry, doubled each time
+   * @param {number} [options.maxBackoffMs] - Upper bound for the retry delay
+   * @param {number} [options.leaseMs] - How long a worker owns an event before others may take it
+   * @param {number} [options.pollIntervalMs] - How often to look for due events
+   * @param {number} [options.concurrency] - Events processed at the same time
+   */
+  constructor(options = {}) {
+    this.smsProvider = options.smsProvider || createSimulatedSmsProvider();
+    this.findUser = options.findUser || findUserById;
+    this.store = options.store || crisisEvents;
+    this.maxAttempts = options.maxAttempts || DEFAULT_MAX_ATTEMPTS;
+    this.baseBackoffMs = options.baseBackoffMs || DEFAULT_BASE_BACKOFF_MS;
+    this.maxBackoffMs = options.maxBackoffMs || DEFAULT_MAX_BACKOFF_MS;
+    this.leaseMs = options.leaseMs || DEFAULT_LEASE_MS;
+    this.pollIntervalMs = options.pollIntervalMs || DEFAULT_POLL_INTERVAL_MS;
+    this.concurrency = options.concurrency || DEFAULT_CONCURRENCY;
+    this.workerId = `${process.pid}_${crypto.randomUUID()}`;
+
+    this.active = new Set();
+    this.pollTimer = null;
+    this.draining = false;
+    this.stopped = true;
+    this.stats = { enqueued: 0, processed: 0, sent: 0, failedSends: 0, retries: 0, exhausted: 0, lostLeases: 0 };
+  }
+
+  /**
+   * Record a crisis for a user and wake the worker
+   * @param {string} userId - User in crisis
+   * @param {Object} [options]
+   * @param {string} [options.idempotencyKey] - Repeating a key returns the existing event
+   * @returns {Promise<Object>} The crisis event
+   */
+  async enqueue(userId, options = {}) {
+    let event;
+    try {
+      event = await this.store.createCrisisEvent(userId, options);
+    } catch (error) {
+      // Contacts must still be alerted when the outbox can't be written
+      console.error("Error logging crisis event, notifying contacts without tracking:", error.message);
+      this.notifyUntracked(userId);
+      return null;
+    }
+
+    this.stats.enqueued++;
+    console.log(`Crisis event ${event._id} queued for user: ${userId}`);
+    this.kick();
+    return event;
+  }
+
+  /**
+   * Send one round of notifications in the background without an outbox
+   * record, so there are no retries or status
+   * @param {string} userId - User in crisis
+   */
+  notifyUntracked(userId) {
+    const event = { _id: crypto.randomUUID(), userId, attempts: this.maxAttempts };
+    this.resolveNotifications(event)
+      .then(({ userName, notifications }) => this.sendAll(event, userName, notifications))
+      .catch((error) => console.error(`Error notifying contacts for user ${userId}:`, error.message));
+  }
+
+  /**
+   * Start polling for due events
+   */
+  start() {
+    if (!this.stopped) {
+      return;
+    }
+    this.stopped = false;
+    this.pollTimer = setInterval(() => this.kick(), this.pollIntervalMs);
+    this.pollTimer.unref();
+    this.kick();
+  }
+
+  /**
+   * Stop polling and wait for events in progress to finish
+   * @returns {Promise<void>}
+   */
+  async stop() {
+    this.stopped = true;
+    clearInterval(this.pollTimer);
+    this.pollTimer = null;
+    await Promise.allSettled(Array.from(this.active));
+  }
+
+  /**
+   * Claim and process due events until none are left or every slot is busy
+   */
+  kick() {
+    if (this.stopped || this.draining) {
+      return;
+    }
+    this.draining = true;
+
+    const drain = async () => {
+      try {
+        while (!this.stopped && this.active.size < this.concurrency) {
+          const event = await this.store.claimDueEvent(this.workerId, this.leaseMs);
+          if (!event) {
+            break;
+          }
+
+          const task = this.process(event)
+            .catch((error) => console.error(`Error processing crisis event ${event._id}:`, error))
+            .finally(() => {
+              this.active.delete(task);
+              this.kick();
+            });
+          this.active.add(task);
+        }
+      } catch (error) {
+        console.error('Error claiming crisis events:', error.message);
+      } finally {
+        this.draining = false;
+      }
+    };
+
+    drain();
+  }
+
+  /**
+   * Delay before the next attempt, with jitter so retries don't line up
+   * @param {number} attempt - Attempts made so far
+   * @returns {number} Milliseconds
+   */
+  backoff(attempt) {
+    const delay = Math.min(this.maxBackoffMs, this.baseBackoffMs * 2 ** (attempt - 1));
+    return Math.round(delay / 2 + Math.random() * (delay / 2));
+  }
+
+  /**
+   * Contacts for an event, resolved with one user lookup on its first attempt
+   * @param {Object} event - Leased crisis event
+   * @returns {Promise<Object>} { userName, notifications }
+   */
+  async resolveNotifications(event) {
+    if (event.notifications) {
+      return { userName: event.userName, notifications: event.notifications };
+    }
+
+    let user = null;
+    try {
+      user = await this.findUser(event.userId);
+    } catch (userError) {
+      console.error("Error getting user details for notification:", userError.message);
+    }
+
+    const notifications = crisisEvents.contactsForUser(user).map((contact) => ({
+      contact: contact.name,
+      phone: contact.phone,
+      relationship: contact.relationship,
+      idempotencyKey: crisisEvents.notificationKey(event._id, contact.phone),
+      status: 'pending',
+      attempts: 0
+    }));
+
+    return { userName: (user && user.name) || "A user", notifications };
+  }
+
+  /**
+   * Send every outstanding notification in parallel
+   * @param {Object} event - Crisis event, for its attempt count
+   * @param {string} userName - Name used in the message
+   * @param {Array<Object>} notifications - Notifications of the event
+   * @returns {Promise<Array<Object>>} Notifications with their new status
+   */
+  async sendAll(event, userName, notifications) {
+    const body = `URGENT: ${userName} may need immediate help. This is an automated alert from MindBridge. Please check on them right away.`;
+
+    return Promise.all(notifications.map(async (notification) => {
+      if (notification.status === 'sent' || notification.status === 'failed') {
+        return notification;
+      }
+
+      try {
+        const receipt = await this.smsProvider.send({
+          to: notification.phone,
+          body,
+          idempotencyKey: notification.idempotencyKey
+        });
+        this.stats.sent++;
+        console.log(`Crisis notification sent to ${notification.contact} at ${notification.phone}`);
+        return {
+          ...notification,
+          status: 'sent',
+          attempts: notification.attempts + 1,
+          providerMessageId: receipt.messageId,
+          sentAt: new Date(),
+          lastError: null
+        };
+      } catch (smsError) {
+        this.stats.failedSends++;
+        console.error(`Failed to notify contact ${notification.contact}:`, smsError.message);
+        const giveUp = smsError.retryable === false || event.attempts >= this.maxAttempts;
+        return {
+          ...notification,
+          status: giveUp ? 'failed' : 'retrying',
+          attempts: notification.attempts + 1,
+          lastError: smsError.message
+        };
+      }
+    }));
+  }
+
+  /**
+   * Send every outstanding notification of a leased event and save the results
+   * @param {Object} event - Leased crisis event
+   * @returns {Promise<void>}
+   */
+  async process(event) {
+    const { userName, notifications } = await this.resolveNotifications(event);
+    const results = await this.sendAll(event, userName, notifications);
+
+    const outstanding = results.some(n => n.status === 'retrying');
+    const fields = { userName, notifications: results };
+
+    if (outstanding) {
+      fields.status = 'retrying';
+      fields.nextAttemptAt = new Date(Date.now() + this.backoff(event.attempts));
+      this.stats.retries++;
+    } else {
+      fields.status = results.some(n => n.status === 'sent') ? 'contact_reached' : 'notification_failed';
+      fields.completedAt = new Date();
+      if (results.some(n => n.status === 'failed')) {
+        this.stats.exhausted++;
+      }
+    }
+
+    if (await this.store.completeAttempt(event._id, this.workerId, fields)) {
+      this.stats.processed++;
+    } else {
+      // Another worker took over after the lease expired; its results win
+      this.stats.lostLeases++;
+      console.warn(`Lost the lease on crisis event ${event._id}`);
+    }
+  }
+
+  /**
+   * Worker statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    return {
+      workerId: this.workerId,
+      running: !this.stopped,
+      active: this.active.size,
+      concurrency: this.concurrency,
+      ...this.stats
+    };
+  }
+}
+
+module.exports = {
+  CrisisOutbox
+};
@@ -0,0 +1,68 @@
+// services/eventLoopLag.js - Event loop delay sampling for health endpoints and benchmarks
+const { monitorEventLoopDelay } = require('perf_hooks');
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_RESOLUTION_MS = parseInt(process.env.EVENT_LOOP_RESOLUTION_MS, 10) || 10;
+
+// One histogram per measuring window, so a consumer that resets its window
+// (a /metrics scrape, /health/auth?reset=true) doesn't clear another's
+const windows = new Map();
+let started = false;
+let resolution = DEFAULT_RESOLUTION_MS;
+
+function openWindow(name) {
+  const histogram = monitorEventLoopDelay({ resolution });
+  histogram.enable();
+  const window = { histogram, since: Date.now() };
+  windows.set(name, window);
+  return window;
+}
+
+/**
+ * Start sampling event loop delay; calling it again has no effect
+ * @param {number} [resolutionMs] - Sampling interval
+ */
+function startEventLoopMonitor(resolutionMs = DEFAULT_RESOLUTION_MS) {
+  if (started) {
+    return;
+  }
+  started = true;
+  resolution = resolutionMs;
+  openWindow('default');
+}
+
+/**
+ * Event loop delay since the window was opened or last reset
+ * @param {Object} [options]
+ * @param {boolean} [options.reset] - Start a new measuring window afterwards
+ * @param {string} [options.window] - Window name; a new name starts measuring on first read
+ * @returns {Object|null} Delay percentiles in milliseconds, or null when not started
+ */
+function eventLoopLag({ reset = false, window: name = 'default' } = {}) {
+  if (!started) {
+    return null;
+  }
+
+  const { histogram, since } = windows.get(name) || openWindow(name);
+
+  // The histogram records nanoseconds and includes the sampling interval itself
+  const ms = (ns) => Math.max(0, +(ns / 1e6 - resolution).toFixed(2));
+  const snapshot = {
+    windowMs: Date.now() - since,
+    mean: histogram.count > 0 ? ms(histogram.mean) : 0,
+    p50: ms(histogram.percentile(50)),
+    p99: ms(histogram.percentile(99)),
+    max: ms(histogram.max)
+  };
+
+  if (reset) {
+    histogram.reset();
+    windows.get(name).since = Date.now();
+  }
+  return snapshot;
+}
+
+module.exports = {
+  startEventLoopMonitor,
+  eventLoopLag
+};
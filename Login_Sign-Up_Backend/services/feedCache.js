@@ -0,0 +1,190 @@
+// services/feedCache.js - Serialized, pre-compressed pages of the meditation feed
+const crypto = require('crypto');
+const zlib = require('zlib');
+const { promisify } = require('util');
+
+const INVALIDATION_CHANNEL = 'feed#pages';
+
+const gzip = promisify(zlib.gzip);
+const brotliCompress = promisify(zlib.brotliCompress);
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_MAX_ENTRIES = parseInt(process.env.FEED_CACHE_MAX_ENTRIES, 10) || 200;
+const DEFAULT_TTL_MS = parseInt(process.env.FEED_CACHE_TTL_MS, 10) || 10 * 60 * 1000;
+const MIN_COMPRESS_BYTES = 1024;
+
+/**
+ * Keeps feed pages as ready-to-send JSON buffers with their ETag, plus gzip
+ * and brotli versions made on first request. The
+ * feed only changes through addFeed, which invalidates every page here and,
+ * through the broker, in the other processes. The TTL covers documents
+ * changed directly in the database.
+ */
+class FeedCache {
+  /**
+   * @param {Object} [options]
+   * @param {Object} [options.broker] - Broker used to pass invalidations to other processes
+   * @param {number} [options.maxEntries] - Least recently used pages are evicted past this size
+   * @param {number} [options.ttlMs] - How long a page is served before it is read again
+   */
+  constructor(options = {}) {
+    this.maxEntries = options.maxEntries || DEFAULT_MAX_ENTRIES;
+    this.ttlMs = options.ttlMs || DEFAULT_TTL_MS;
+    this.broker = options.broker || null;
+    this.cacheId = crypto.randomUUID();
+
+    this.version = 0;
+    this.entries = new Map();
+    this.pending = new Map();
+    this.stats = { hits: 0, misses: 0, coalesced: 0, invalidations: 0, evictions: 0, compressed: 0 };
+
+    if (this.broker) {
+      this.unsubscribe = this.broker.subscribe(INVALIDATION_CHANNEL, (message) => {
+        if (message.cacheId !== this.cacheId) {
+          this._clear();
+        }
+      });
+    }
+  }
+
+  /**
+   * Build a cache entry from a page of feed items
+   * @param {Array<Object>} items - Lean feed documents
+   * @param {Object} [meta] - Kept alongside, e.g. the next cursor
+   * @returns {Object} Entry with body and etag
+   */
+  static toEntry(items, meta = {}) {
+    const body = Buffer.from(JSON.stringify(items));
+
+    return {
+      body,
+      // Strong ETag from the content, so every process agrees on it. There is
+      // no Last-Modified: feed items carry no edit time, and the newest
+      // createdAt on a page doesn't change when an item is edited or deleted.
+      etag: `"${crypto.createHash('sha1').update(body).digest('base64url')}"`,
+      encodings: {},
+      ...meta
+    };
+  }
+
+  /**
+   * Get a page, loading it once for all concurrent requests on a miss
+   * @param {string} key - Identifies the page (filter, cursor and limit)
+   * @param {Function} load - Returns a promise for the entry (see toEntry)
+   * @returns {Promise<Object>} Entry
+   */
+  async get(key, load) {
+    const entry = this.entries.get(key);
+    if (entry && Date.now() < entry.expiresAt) {
+      this.stats.hits++;
+      // Re-inserting keeps the Map in least-recently-used order
+      this.entries.delete(key);
+      this.entries.set(key, entry);
+      return entry;
+    }
+
+    if (this.pending.has(key)) {
+      this.stats.coalesced++;
+      return this.pending.get(key);
+    }
+
+    this.stats.misses++;
+    const version = this.version;
+    const loading = Promise.resolve()
+      .then(load)
+      .then((loaded) => {
+        loaded.expiresAt = Date.now() + this.ttlMs;
+        // A page read before an invalidation may already be out of date
+        if (version === this.version) {
+          this.entries.set(key, loaded);
+          if (this.entries.size > this.maxEntries) {
+            this.entries.delete(this.entries.keys().next().value);
+            this.stats.evictions++;
+          }
+        }
+        return loaded;
+      })
+      .finally(() => {
+        if (this.pending.get(key) === loading) {
+          this.pending.delete(key);
+        }
+      });
+
+    this.pending.set(key, loading);
+    return loading;
+  }
+
+  /**
+   * Body of an entry in the best encoding the client accepts
+   * @param {Object} entry - Cache entry
+   * @param {string} acceptEncoding - Accept-Encoding request header
+   * @returns {Promise<Object>} { body, encoding } where encoding is null for identity
+   */
+  async encode(entry, acceptEncoding) {
+    if (entry.body.length < MIN_COMPRESS_BYTES || !acceptEncoding) {
+      return { body: entry.body, encoding: null };
+    }
+
+    const accepts = (name) => new RegExp(`(^|[\\s,])${name}(?!;q=0(\\.0+)?(\\s|,|$))`).test(acceptEncoding);
+    const encoding = accepts('br') ? 'br' : accepts('gzip') ? 'gzip' : null;
+    if (!encoding) {
+      return { body: entry.body, encoding: null };
+    }
+
+    if (!entry.encodings[encoding]) {
+      // Compressed once per page and shared by every later request
+      const compressing = encoding === 'br'
+        ? brotliCompress(entry.body, { params: { [zlib.constants.BROTLI_PARAM_QUALITY]: 9 } })
+        : gzip(entry.body, { level: 9 });
+      entry.encodings[encoding] = compressing;
+      this.stats.compressed++;
+
+      // Don't keep a failure around; the next request tries again
+      compressing.catch(() => {
+        if (entry.encodings[encoding] === compressing) {
+          delete entry.encodings[encoding];
+        }
+      });
+    }
+    return { body: await entry.encodings[encoding], encoding };
+  }
+
+  _clear() {
+    this.version++;
+    const removed = this.entries.size;
+    this.entries.clear();
+    this.pending.clear();
+    this.stats.invalidations++;
+    return removed;
+  }
+
+  /**
+   * Drop every cached page, here and in other processes
+   * @returns {number} Pages removed from this process
+   */
+  invalidate() {
+    if (this.broker) {
+      this.broker.publish(INVALIDATION_CHANNEL, { cacheId: this.cacheId });
+    }
+    return this._clear();
+  }
+
+  /**
+   * Cache size and hit statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    const lookups = this.stats.hits + this.stats.misses + this.stats.coalesced;
+    return {
+      entries: this.entries.size,
+      maxEntries: this.maxEntries,
+      version: this.version,
+      ...this.stats,
+      hitRate: lookups > 0 ? +((this.stats.hits + this.stats.coalesced) / lookups).toFixed(3) : 0
+    };
+  }
+}
+
+module.exports = {
+  FeedCache
+};
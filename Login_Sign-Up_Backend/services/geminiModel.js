@@ -0,0 +1,230 @@
+// services/geminiModel.js - Gemini chat model with streaming replies and a local fake for tests
+const { GoogleGenerativeAI } = require('@google/generative-ai');
+const { externalCallDuration } = require('./metrics');
+
+// Default settings - can be overridden through environment variables
+const MODEL_NAME = process.env.GEMINI_MODEL || 'gemini-2.0-flash';
+const USE_MOCK_GEMINI = process.env.USE_MOCK_GEMINI === 'true';
+const MOCK_FIRST_TOKEN_MS = parseInt(process.env.MOCK_GEMINI_FIRST_TOKEN_MS, 10) || 300;
+const MOCK_CHUNK_DELAY_MS = parseInt(process.env.MOCK_GEMINI_CHUNK_DELAY_MS, 10) || 40;
+const LATENCY_SAMPLES = 200;
+
+const FALLBACK_REPLY = "I'm sorry, I couldn't generate a response. How else can I help you?";
+
+const sleep = (ms) => new Promise((resolve) => setTimeout(resolve, ms));
+
+/**
+ * Response object shaped like the SDK's, so callers can't tell the fake apart
+ * @param {string} text - Response text
+ * @returns {Object} Response with candidates and text()
+ */
+function fakeResponse(text) {
+  return {
+    candidates: [{ content: { parts: [{ text }] } }],
+    text: () => text
+  };
+}
+
+/**
+ * A stand-in for the Gemini model that answers locally. Replies are split into
+ * word chunks and streamed with a delay before the first chunk and between
+ * chunks, so the streaming path can be tested and benchmarked offline.
+ * @param {Object} [options]
+ * @param {number} [options.firstTokenMs] - Delay before the first chunk
+ * @param {number} [options.chunkDelayMs] - Delay between chunks
+ * @param {number} [options.wordsPerChunk] - Words sent in each chunk
+ * @param {Function} [options.reply] - Builds the reply text from the prompt
+ * @returns {Object} Model exposing generateContent and generateContentStream
+ */
+function createFakeModel(options = {}) {
+  const firstTokenMs = options.firstTokenMs != null ? options.firstTokenMs : MOCK_FIRST_TOKEN_MS;
+  const chunkDelayMs = options.chunkDelayMs != null ? options.chunkDelayMs : MOCK_CHUNK_DELAY_MS;
+  const wordsPerChunk = options.wordsPerChunk || 3;
+  const reply = options.reply || ((prompt) =>
+    `Thank you for sharing that with me. It sounds like "${String(prompt).slice(0, 80)}" is on your mind. ` +
+    'Taking a few slow, deep breaths can help in the moment. Would you like to talk more about how you are feeling?');
+
+  function chunksOf(text) {
+    const words = text.split(/(?<=\s)/);
+    const chunks = [];
+    for (let i = 0; i < words.length; i += wordsPerChunk) {
+      chunks.push(words.slice(i, i + wordsPerChunk).join(''));
+    }
+    return chunks;
+  }
+
+  return {
+    async generateContent(prompt) {
+      const text = reply(prompt);
+      await sleep(firstTokenMs + chunkDelayMs * chunksOf(text).length);
+      return { response: Promise.resolve(fakeResponse(text)) };
+    },
+
+    async generateContentStream(prompt, requestOptions = {}) {
+      const text = reply(prompt);
+      const { signal } = requestOptions;
+
+      async function* stream() {
+        await sleep(firstTokenMs);
+        for (const [index, chunk] of chunksOf(text).entries()) {
+          if (signal && signal.aborted) {
+            return;
+          }
+          if (index > 0) {
+            await sleep(chunkDelayMs);
+          }
+          yield fakeResponse(chunk);
+        }
+      }
+
+      return { stream: stream(), response: Promise.resolve(fakeResponse(text)) };
+    }
+  };
+}
+
+/**
+ * The real Gemini model, or the fake when USE_MOCK_GEMINI=true
+ * @returns {Object} Model exposing generateContent and generateContentStream
+ */
+function createModel() {
+  if (USE_MOCK_GEMINI) {
+    console.log('Using the local mock Gemini model (USE_MOCK_GEMINI=true)');
+    return createFakeModel();
+  }
+
+  const genAI = new GoogleGenerativeAI(process.env.GOOGLE_API_KEY);
+  return genAI.getGenerativeModel({ model: MODEL_NAME });
+}
+
+const model = createModel();
+
+// Time to first token is what the user feels, so it's tracked separately from the full reply
+const stats = {
+  requests: 0,
+  streams: 0,
+  failures: 0,
+  firstTokenMs: [],
+  totalMs: []
+};
+
+function recordSample(samples, value) {
+  samples.push(value);
+  if (samples.length > LATENCY_SAMPLES) {
+    samples.shift();
+  }
+}
+
+function percentile(samples, p) {
+  if (samples.length === 0) {
+    return null;
+  }
+  const sorted = [...samples].sort((a, b) => a - b);
+  return sorted[Math.min(sorted.length - 1, Math.floor(p * sorted.length))];
+}
+
+/**
+ * Generate a complete reply in one call
+ * @param {string} prompt - The user's message
+ * @returns {Promise<string>} Reply text
+ */
+async function generateReply(prompt) {
+  const startedAt = Date.now();
+  stats.requests++;
+
+  try {
+    const result = await model.generateContent(prompt);
+    const response = await result.response;
+    recordSample(stats.totalMs, Date.now() - startedAt);
+    externalCallDuration.observe({ service: 'gemini', operation: 'generate', outcome: 'ok' }, (Date.now() - startedAt) / 1000);
+    return response.candidates[0]?.content?.parts[0]?.text || FALLBACK_REPLY;
+  } catch (error) {
+    stats.failures++;
+    externalCallDuration.observe({ service: 'gemini', operation: 'generate', outcome: 'error' }, (Date.now() - startedAt) / 1000);
+    throw error;
+  }
+}
+
+/**
+ * Stream a reply as text chunks as soon as the model produces them
+ * @param {string} prompt - The user's message
+ * @param {Object} [options]
+ * @param {AbortSignal} [options.signal] - Stops the stream when the client goes away
+ * @returns {AsyncGenerator<string>} Text chunks
+ */
+async function* streamReply(prompt, options = {}) {
+  const { signal } = options;
+  const startedAt = Date.now();
+  let firstToken = true;
+  stats.streams++;
+
+  try {
+    const result = await model.generateContentStream(prompt, signal ? { signal } : undefined);
+
+    for await (const chunk of result.stream) {
+      if (signal && signal.aborted) {
+        return;
+      }
+
+      let text = '';
+      try {
+        text = chunk.text();
+      } catch (blockedError) {
+        // text() throws for a chunk stopped by the safety filters; there's nothing to show
+        console.warn('Gemini chunk had no text:', blockedError.message);
+      }
+
+      if (text) {
+        if (firstToken) {
+          firstToken = false;
+          recordSample(stats.firstTokenMs, Date.now() - startedAt);
+          externalCallDuration.observe({ service: 'gemini', operation: 'stream_first_token', outcome: 'ok' }, (Date.now() - startedAt) / 1000);
+        }
+        yield text;
+      }
+    }
+
+    if (!(signal && signal.aborted)) {
+      recordSample(stats.totalMs, Date.now() - startedAt);
+      externalCallDuration.observe({ service: 'gemini', operation: 'stream', outcome: 'ok' }, (Date.now() - startedAt) / 1000);
+    }
+  } catch (error) {
+    if (signal && signal.aborted) {
+      return;
+    }
+    stats.failures++;
+    externalCallDuration.observe({ service: 'gemini', operation: 'stream', outcome: 'error' }, (Date.now() - startedAt) / 1000);
+    throw error;
+  }
+}
+
+/**
+ * Request counts and latency percentiles over the recent samples
+ * @returns {Object} Metrics snapshot
+ */
+function getMetrics() {
+  return {
+    model: USE_MOCK_GEMINI ? 'mock' : MODEL_NAME,
+    requests: stats.requests,
+    streams: stats.streams,
+    failures: stats.failures,
+    firstTokenMs: {
+      p50: percentile(stats.firstTokenMs, 0.5),
+      p95: percentile(stats.firstTokenMs, 0.95),
+      samples: stats.firstTokenMs.length
+    },
+    totalMs: {
+      p50: percentile(stats.totalMs, 0.5),
+      p95: percentile(stats.totalMs, 0.95),
+      samples: stats.totalMs.length
+    }
+  };
+}
+
+module.exports = {
+  FALLBACK_REPLY,
+  model,
+  createFakeModel,
+  generateReply,
+  streamReply,
+  getMetrics
+};
@@ -0,0 +1,145 @@
+// services/logger.js - Leveled, buffered and sampled logging for hot paths
+const util = require('util');
+
+// Default settings - can be overridden through environment variables
+const LEVELS = { error: 0, warn: 1, info: 2, debug: 3 };
+const DEFAULT_LEVEL = LEVELS[process.env.LOG_LEVEL] != null ? process.env.LOG_LEVEL : 'info';
+const DEFAULT_FLUSH_BYTES = parseInt(process.env.LOG_FLUSH_BYTES, 10) || 64 * 1024;
+const MAX_BUFFER_BYTES = 4 * 1024 * 1024;
+
+/**
+ * Logger for code that runs on every request, message or socket event.
+ *
+ * - Messages below the configured level (LOG_LEVEL) cost a comparison and
+ *   nothing else; the arguments aren't formatted.
+ * - Lines are collected and written with one stdout write per tick instead
+ *   of one synchronous console call each. Errors are written right away.
+ * - sampled(rate) returns a logger that keeps only that share of messages,
+ *   for events too frequent to log one by one.
+ *
+ * Use it like console: logger.info('Client joined chat group:', groupId).
+ */
+class Logger {
+  /**
+   * @param {Object} [options]
+   * @param {string} [options.level] - error, warn, info or debug
+   * @param {Object} [options.stream] - Where lines go (defaults to process.stdout)
+   * @param {number} [options.sampleRate] - Share of messages kept, 0 to 1
+   * @param {Object} [options.parent] - Logger whose buffer and level are shared
+   */
+  constructor(options = {}) {
+    this.parent = options.parent || null;
+    this.level = options.level || DEFAULT_LEVEL;
+    this.stream = options.stream || process.stdout;
+    this.sampleRate = options.sampleRate != null ? options.sampleRate : 1;
+
+    if (!this.parent) {
+      this.buffer = [];
+      this.bufferedBytes = 0;
+      this.scheduled = false;
+      this.stats = { written: 0, dropped: 0, sampledOut: 0 };
+      this.flushSync = () => this.flush();
+      process.on('exit', this.flushSync);
+    }
+  }
+
+  _root() {
+    return this.parent || this;
+  }
+
+  /**
+   * @param {string} level - error, warn, info or debug
+   * @returns {boolean} Whether messages at that level are written
+   */
+  enabled(level) {
+    return LEVELS[level] <= LEVELS[this._root().level];
+  }
+
+  setLevel(level) {
+    if (LEVELS[level] == null) {
+      throw new Error(`Unknown log level: ${level}`);
+    }
+    this._root().level = level;
+  }
+
+  /**
+   * A logger sharing this one's output that keeps only a share of messages
+   * @param {number} rate - Share kept, e.g. 0.01 for one in a hundred
+   * @returns {Logger} Sampled logger
+   */
+  sampled(rate) {
+    return new Logger({ parent: this._root(), sampleRate: rate });
+  }
+
+  _write(level, args) {
+    const root = this._root();
+    if (!this.enabled(level)) {
+      return;
+    }
+    if (this.sampleRate < 1 && Math.random() >= this.sampleRate) {
+      root.stats.sampledOut++;
+      return;
+    }
+
+    const line = `${new Date().toISOString()} ${level.toUpperCase()} ${util.format(...args)}\n`;
+
+    if (level === 'error') {
+      // Keep ordering with anything buffered, and don't lose errors to a crash
+      root.flush();
+      process.stderr.write(line);
+      root.stats.written++;
+      return;
+    }
+
+    if (root.bufferedBytes + line.length > MAX_BUFFER_BYTES) {
+      // The output can't keep up; drop rather than grow without bound
+      root.stats.dropped++;
+      return;
+    }
+
+    root.buffer.push(line);
+    root.bufferedBytes += line.length;
+
+    if (root.bufferedBytes >= DEFAULT_FLUSH_BYTES) {
+      root.flush();
+    } else if (!root.scheduled) {
+      root.scheduled = true;
+      setImmediate(() => root.flush());
+    }
+  }
+
+  /**
+   * Write everything buffered so far
+   */
+  flush() {
+    const root = this._root();
+    root.scheduled = false;
+    if (root.buffer.length === 0) {
+      return;
+    }
+    const chunk = root.buffer.join('');
+    root.stats.written += root.buffer.length;
+    root.buffer = [];
+    root.bufferedBytes = 0;
+    root.stream.write(chunk);
+  }
+
+  error(...args) { this._write('error', args); }
+  warn(...args) { this._write('warn', args); }
+  info(...args) { this._write('info', args); }
+  debug(...args) { this._write('debug', args); }
+
+  getMetrics() {
+    const root = this._root();
+    return { level: root.level, buffered: root.buffer.length, ...root.stats };
+  }
+}
+
+// Shared logger for the server
+const logger = new Logger();
+
+module.exports = {
+  Logger,
+  logger,
+  LEVELS
+};
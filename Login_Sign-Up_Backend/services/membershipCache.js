@@ -0,0 +1,153 @@
+// services/membershipCache.js - Write-through cache of chat group members for socket authorization
+const crypto = require('crypto');
+const { findGroup } = require('../models/chatGroup');
+
+const INVALIDATION_CHANNEL = 'chat#membership';
+const DEFAULT_MAX_GROUPS = parseInt(process.env.MEMBERSHIP_CACHE_MAX_GROUPS, 10) || 10000;
+
+/**
+ * Keeps each group's member list in memory so the socket layer can check
+ * membership without a MongoDB round trip. Routes write through with
+ * update(group) after every membership change, and other processes drop
+ * their copy when they hear about the change on the broker.
+ */
+class MembershipCache {
+  /**
+   * @param {Object} [options]
+   * @param {Object} [options.broker] - Broker used to invalidate other processes
+   * @param {Function} [options.loadGroup] - Loads { membersList } for a group ID
+   * @param {number} [options.maxGroups] - Least recently used groups are evicted past this size
+   */
+  constructor(options = {}) {
+    this.broker = options.broker || null;
+    this.loadGroup = options.loadGroup || ((groupId) => findGroup(groupId, { projection: { membersList: 1 } }));
+    this.maxGroups = options.maxGroups || DEFAULT_MAX_GROUPS;
+    this.cacheId = crypto.randomUUID();
+
+    this.groups = new Map();
+    this.loading = new Map();
+    this.stats = { hits: 0, misses: 0, loads: 0, writes: 0, invalidations: 0, evictions: 0 };
+
+    if (this.broker) {
+      this.unsubscribe = this.broker.subscribe(INVALIDATION_CHANNEL, (message) => {
+        if (message.cacheId !== this.cacheId) {
+          this.invalidate(message.groupId);
+        }
+      });
+    }
+  }
+
+  _store(key, members) {
+    // Re-inserting keeps the Map in least-recently-used order
+    this.groups.delete(key);
+    this.groups.set(key, members);
+
+    if (this.groups.size > this.maxGroups) {
+      this.groups.delete(this.groups.keys().next().value);
+      this.stats.evictions++;
+    }
+  }
+
+  /**
+   * Members of a group, loading them once on a miss
+   * @param {string} groupId - Chat group ID
+   * @returns {Promise<Set<string>>} Usernames (empty for an unknown group)
+   */
+  async getMembers(groupId) {
+    const key = String(groupId);
+    const cached = this.groups.get(key);
+
+    if (cached) {
+      this.stats.hits++;
+      this._store(key, cached);
+      return cached;
+    }
+
+    this.stats.misses++;
+    if (!this.loading.has(key)) {
+      const load = Promise.resolve(this.loadGroup(key)).then((group) => {
+        const members = new Set(group ? group.membersList || [] : []);
+        // A write or invalidation that happened during the load wins over the loaded copy
+        if (this.loading.get(key) === load) {
+          this.loading.delete(key);
+          this._store(key, members);
+        }
+        return members;
+      }, (error) => {
+        if (this.loading.get(key) === load) {
+          this.loading.delete(key);
+        }
+        throw error;
+      });
+
+      this.loading.set(key, load);
+      this.stats.loads++;
+    }
+
+    return this.loading.get(key);
+  }
+
+  /**
+   * @param {string} groupId - Chat group ID
+   * @param {string} username - Username to check
+   * @returns {Promise<boolean>} True when the user is a member of the group
+   */
+  async isMember(groupId, username) {
+    if (!username) {
+      return false;
+    }
+    const members = await this.getMembers(groupId);
+    return members.has(username);
+  }
+
+  /**
+   * Write through the result of a membership update
+   * @param {Object} group - Updated group document with _id and membersList
+   */
+  update(group) {
+    const key = String(group._id);
+    this.loading.delete(key);
+    this._store(key, new Set(group.membersList || []));
+    this.stats.writes++;
+
+    if (this.broker) {
+      this.broker.publish(INVALIDATION_CHANNEL, { cacheId: this.cacheId, groupId: key });
+    }
+  }
+
+  /**
+   * Forget a group so the next lookup reloads it
+   * @param {string} groupId - Chat group ID
+   */
+  invalidate(groupId) {
+    const key = String(groupId);
+    this.loading.delete(key);
+    if (this.groups.delete(key)) {
+      this.stats.invalidations++;
+    }
+  }
+
+  /**
+   * Cache size and hit statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    const lookups = this.stats.hits + this.stats.misses;
+    return {
+      groups: this.groups.size,
+      maxGroups: this.maxGroups,
+      ...this.stats,
+      hitRate: lookups > 0 ? +(this.stats.hits / lookups).toFixed(3) : 0
+    };
+  }
+
+  close() {
+    if (this.unsubscribe) {
+      this.unsubscribe();
+    }
+  }
+}
+
+module.exports = {
+  MembershipCache
+};
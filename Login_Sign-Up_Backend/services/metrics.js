@@ -0,0 +1,315 @@
+// services/metrics.js - In-process metrics registry with Prometheus text exposition
+const { eventLoopLag } = require('./eventLoopLag');
+
+// Default settings - can be overridden through environment variables
+const METRICS_PREFIX = process.env.METRICS_PREFIX || 'mindbridge_';
+
+// Seconds; covers cached reads (~1ms) up to slow model and Cal.com calls
+const DEFAULT_BUCKETS = [0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30];
+
+const escapeLabel = (value) => String(value).replace(/\\/g, '\\\\').replace(/\n/g, '\\n').replace(/"/g, '\\"');
+
+function formatLabels(labelNames, values, extra = '') {
+  const parts = labelNames.map((name, i) => `${name}="${escapeLabel(values[i])}"`);
+  if (extra) {
+    parts.push(extra);
+  }
+  return parts.length > 0 ? `{${parts.join(',')}}` : '';
+}
+
+/**
+ * Base for the metric types: values are kept per label combination
+ */
+class Metric {
+  constructor(type, name, help, labelNames = []) {
+    this.type = type;
+    this.name = name;
+    this.help = help;
+    this.labelNames = labelNames;
+    this.series = new Map();
+  }
+
+  _key(labels) {
+    return this.labelNames.map(name => (labels && labels[name] != null ? labels[name] : '')).join('\u0000');
+  }
+
+  _values(key) {
+    return key === '' && this.labelNames.length === 0 ? [] : key.split('\u0000');
+  }
+
+  _header() {
+    return `# HELP ${this.name} ${this.help}\n# TYPE ${this.name} ${this.type}\n`;
+  }
+}
+
+class Counter extends Metric {
+  constructor(name, help, labelNames) {
+    super('counter', name, help, labelNames);
+  }
+
+  inc(labels, amount = 1) {
+    const key = this._key(labels);
+    this.series.set(key, (this.series.get(key) || 0) + amount);
+  }
+
+  render() {
+    let text = this._header();
+    for (const [key, value] of this.series) {
+      text += `${this.name}${formatLabels(this.labelNames, this._values(key))} ${value}\n`;
+    }
+    return text;
+  }
+}
+
+class Gauge extends Metric {
+  /**
+   * @param {Function} [collect] - Called before each scrape to refresh the values
+   */
+  constructor(name, help, labelNames, collect) {
+    super('gauge', name, help, labelNames);
+    this.collect = collect || null;
+  }
+
+  set(labels, value) {
+    this.series.set(this._key(labels), value);
+  }
+
+  render() {
+    if (this.collect) {
+      this.collect(this);
+    }
+    let text = this._header();
+    for (const [key, value] of this.series) {
+      text += `${this.name}${formatLabels(this.labelNames, this._values(key))} ${value}\n`;
+    }
+    return text;
+  }
+}
+
+class Histogram extends Metric {
+  constructor(name, help, labelNames, buckets = DEFAULT_BUCKETS) {
+    super('histogram', name, help, labelNames);
+    this.buckets = [...buckets].sort((a, b) => a - b);
+  }
+
+  /**
+   * Record one observation
+   * @param {Object} labels - Label values
+   * @param {number} value - Observed value, in seconds for durations
+   */
+  observe(labels, value) {
+    const key = this._key(labels);
+    let series = this.series.get(key);
+    if (!series) {
+      series = { counts: new Array(this.buckets.length).fill(0), sum: 0, count: 0 };
+      this.series.set(key, series);
+    }
+
+    // Counts are per bucket here and made cumulative when rendered
+    let i = 0;
+    while (i < this.buckets.length && value > this.buckets[i]) {
+      i++;
+    }
+    if (i < this.buckets.length) {
+      series.counts[i]++;
+    }
+    series.sum += value;
+    series.count++;
+  }
+
+  /**
+   * Start a timer
+   * @param {Object} [labels] - Label values known up front
+   * @returns {Function} Call with any further labels to record the elapsed seconds
+   */
+  startTimer(labels = {}) {
+    const startedAt = process.hrtime.bigint();
+    return (moreLabels = {}) => {
+      const seconds = Number(process.hrtime.bigint() - startedAt) / 1e9;
+      this.observe({ ...labels, ...moreLabels }, seconds);
+      return seconds;
+    };
+  }
+
+  render() {
+    let text = this._header();
+    for (const [key, series] of this.series) {
+      const values = this._values(key);
+      let cumulative = 0;
+      this.buckets.forEach((bound, i) => {
+        cumulative += series.counts[i];
+        text += `${this.name}_bucket${formatLabels(this.labelNames, values, `le="${bound}"`)} ${cumulative}\n`;
+      });
+      text += `${this.name}_bucket${formatLabels(this.labelNames, values, 'le="+Inf"')} ${series.count}\n`;
+      text += `${this.name}_sum${formatLabels(this.labelNames, values)} ${series.sum}\n`;
+      text += `${this.name}_count${formatLabels(this.labelNames, values)} ${series.count}\n`;
+    }
+    return text;
+  }
+}
+
+/**
+ * Holds every metric of the process. Each cluster worker has its own; a
+ * scrape through the shared port sees whichever worker answers, so scrape
+ * workers individually (or run a single process) for complete numbers.
+ */
+class MetricsRegistry {
+  constructor(prefix = METRICS_PREFIX) {
+    this.prefix = prefix;
+    this.metrics = new Map();
+  }
+
+  _register(metric) {
+    if (this.metrics.has(metric.name)) {
+      return this.metrics.get(metric.name);
+    }
+    this.metrics.set(metric.name, metric);
+    return metric;
+  }
+
+  counter(name, help, labelNames) {
+    return this._register(new Counter(this.prefix + name, help, labelNames));
+  }
+
+  gauge(name, help, labelNames, collect) {
+    return this._register(new Gauge(this.prefix + name, help, labelNames, collect));
+  }
+
+  histogram(name, help, labelNames, buckets) {
+    return this._register(new Histogram(this.prefix + name, help, labelNames, buckets));
+  }
+
+  /**
+   * @returns {string} All metrics in Prometheus text format
+   */
+  render() {
+    return Array.from(this.metrics.values(), metric => metric.render()).join('');
+  }
+}
+
+const metrics = new MetricsRegistry();
+
+// Metrics shared across modules
+const httpRequestDuration = metrics.histogram('http_request_duration_seconds',
+  'HTTP request latency by route', ['method', 'route', 'status']);
+const socketEventDuration = metrics.histogram('socket_event_duration_seconds',
+  'Socket.io event handler latency', ['event', 'outcome']);
+const mongoCommandDuration = metrics.histogram('mongodb_command_duration_seconds',
+  'MongoDB command latency (native driver and Mongoose)', ['client', 'command', 'outcome']);
+const externalCallDuration = metrics.histogram('external_call_duration_seconds',
+  'Latency of calls to external services', ['service', 'operation', 'outcome']);
+
+metrics.gauge('process_heap_bytes', 'V8 heap and process memory', ['type'], (gauge) => {
+  const memory = process.memoryUsage();
+  gauge.set({ type: 'heap_used' }, memory.heapUsed);
+  gauge.set({ type: 'heap_total' }, memory.heapTotal);
+  gauge.set({ type: 'external' }, memory.external);
+  gauge.set({ type: 'rss' }, memory.rss);
+});
+
+metrics.gauge('event_loop_lag_seconds', 'Event loop delay since the previous scrape', ['quantile'], (gauge) => {
+  // Each scrape starts a new window, so the values describe the scrape interval.
+  // The window is separate from the one /health/auth reports and resets.
+  const lag = eventLoopLag({ window: 'metrics', reset: true });
+  if (lag) {
+    gauge.set({ quantile: '0.5' }, +(lag.p50 / 1000).toFixed(6));
+    gauge.set({ quantile: '0.99' }, +(lag.p99 / 1000).toFixed(6));
+    gauge.set({ quantile: '1' }, +(lag.max / 1000).toFixed(6));
+  }
+});
+
+/**
+ * Express middleware recording latency per route pattern (/api/moods/:id,
+ * not the concrete URL, so label values stay bounded)
+ * @returns {Function} Middleware
+ */
+function httpMetrics() {
+  return (req, res, next) => {
+    const done = httpRequestDuration.startTimer({ method: req.method });
+    res.on('finish', () => {
+      const route = req.route ? `${req.baseUrl}${req.route.path}` : 'unmatched';
+      done({ route, status: res.statusCode });
+    });
+    next();
+  };
+}
+
+/**
+ * Socket.io middleware timing every event handler registered on the socket,
+ * including async ones until their promise settles
+ * @returns {Function} Middleware for io.use
+ */
+function socketMetrics() {
+  return (socket, next) => {
+    const on = socket.on.bind(socket);
+    const removeListener = socket.removeListener.bind(socket);
+    // Lets off() and once() find the wrapper registered for a handler
+    const wrappers = new WeakMap();
+
+    socket.on = (event, handler) => {
+      if (event === 'disconnect' || event === 'disconnecting' || event === 'error') {
+        return on(event, handler);
+      }
+      const wrapper = (...args) => {
+        const done = socketEventDuration.startTimer({ event });
+        let result;
+        try {
+          result = handler(...args);
+        } catch (error) {
+          done({ outcome: 'error' });
+          throw error;
+        }
+        if (result && typeof result.then === 'function') {
+          result.then(() => done({ outcome: 'ok' }), () => done({ outcome: 'error' }));
+        } else {
+          done({ outcome: 'ok' });
+        }
+        return result;
+      };
+      wrappers.set(handler, wrapper);
+      return on(event, wrapper);
+    };
+    socket.addListener = socket.on;
+    socket.off = socket.removeListener = (event, handler) => removeListener(event, wrappers.get(handler) || handler);
+
+    next();
+  };
+}
+
+/**
+ * Record command latency for a MongoClient created with monitorCommands: true
+ * @param {Object} client - MongoClient
+ * @param {string} name - Label telling the clients apart, e.g. 'native' or 'mongoose'
+ */
+function monitorMongoClient(client, name) {
+  const started = new Map();
+
+  client.on('commandStarted', (event) => {
+    started.set(event.requestId, { command: event.commandName, startedAt: process.hrtime.bigint() });
+  });
+
+  const finish = (outcome) => (event) => {
+    const entry = started.get(event.requestId);
+    if (!entry) {
+      return;
+    }
+    started.delete(event.requestId);
+    const seconds = Number(process.hrtime.bigint() - entry.startedAt) / 1e9;
+    mongoCommandDuration.observe({ client: name, command: entry.command, outcome }, seconds);
+  };
+
+  client.on('commandSucceeded', finish('ok'));
+  client.on('commandFailed', finish('error'));
+}
+
+module.exports = {
+  metrics,
+  MetricsRegistry,
+  httpRequestDuration,
+  socketEventDuration,
+  mongoCommandDuration,
+  externalCallDuration,
+  httpMetrics,
+  socketMetrics,
+  monitorMongoClient
+};
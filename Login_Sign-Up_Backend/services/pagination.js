@@ -0,0 +1,219 @@
+// services/pagination.js - Keyset cursors and streamed JSON pages for list endpoints
+const { ObjectId } = require('mongodb');
+
+/**
+ * Error for a cursor that can't be decoded (respond with 400)
+ */
+class InvalidCursorError extends Error {
+  constructor(message = 'Invalid cursor') {
+    super(message);
+    this.name = 'InvalidCursorError';
+    this.code = 'INVALID_CURSOR';
+  }
+}
+
+/**
+ * Encode a document's position on (field, _id) as an opaque cursor
+ * @param {Object} doc - Document with the sort field and _id
+ * @param {string} field - Date field the list is sorted on
+ * @returns {string|null} URL-safe cursor, or null without a document
+ */
+function encodeCursor(doc, field) {
+  if (!doc) {
+    return null;
+  }
+
+  const value = doc[field] instanceof Date ? doc[field] : new Date(doc[field]);
+  return Buffer.from(JSON.stringify({ t: value.toISOString(), id: String(doc._id) })).toString('base64url');
+}
+
+/**
+ * Decode a cursor made by encodeCursor
+ * @param {string} cursor - Cursor from the query string
+ * @returns {Object|null} { value: Date, id: ObjectId|string }, or null when no cursor was given
+ */
+function decodeCursor(cursor) {
+  if (!cursor) {
+    return null;
+  }
+
+  let parsed;
+  try {
+    parsed = JSON.parse(Buffer.from(String(cursor), 'base64url').toString('utf8'));
+  } catch (error) {
+    throw new InvalidCursorError();
+  }
+
+  const value = new Date(parsed && parsed.t);
+  if (!parsed || typeof parsed.id !== 'string' || isNaN(value.getTime())) {
+    throw new InvalidCursorError();
+  }
+
+  return {
+    value,
+    id: ObjectId.isValid(parsed.id) && parsed.id.length === 24 ? new ObjectId(parsed.id) : parsed.id
+  };
+}
+
+/**
+ * Build the filter for documents strictly after (or before) a cursor on (field, _id)
+ * @param {Object|null} cursor - Decoded cursor
+ * @param {string} field - Date field the list is sorted on
+ * @param {number} direction - 1 for documents after the cursor, -1 for before
+ * @returns {Object} Filter to merge into the query ({} without a cursor)
+ */
+function keysetFilter(cursor, field, direction) {
+  if (!cursor) {
+    return {};
+  }
+
+  const op = direction === 1 ? '$gt' : '$lt';
+  return {
+    $or: [
+      { [field]: { [op]: cursor.value } },
+      { [field]: cursor.value, _id: { [op]: cursor.id } }
+    ]
+  };
+}
+
+/**
+ * Compare two documents on (field, _id)
+ * @returns {number} Negative, zero or positive like a sort comparator
+ */
+function compareKeys(a, b, field) {
+  const diff = new Date(a[field]) - new Date(b[field]);
+  if (diff !== 0) {
+    return diff;
+  }
+  return String(a._id).localeCompare(String(b._id));
+}
+
+/**
+ * Parse and clamp a ?limit= query value
+ * @param {string} value - Raw query value
+ * @param {number} defaultLimit - Used when no limit is given
+ * @param {number} maxLimit - Upper bound
+ * @returns {number} The page size
+ */
+function parseLimit(value, defaultLimit, maxLimit) {
+  const limit = parseInt(value, 10);
+  if (!limit || limit < 1) {
+    return defaultLimit;
+  }
+  return Math.min(limit, maxLimit);
+}
+
+// Wait until the response can take more data or the client has gone away
+function waitForDrain(res) {
+  return new Promise((resolve) => {
+    const done = () => {
+      res.off('drain', done);
+      res.off('close', done);
+      resolve();
+    };
+    res.on('drain', done);
+    res.on('close', done);
+  });
+}
+
+/**
+ * Stream a page of documents as JSON without building the whole body in memory.
+ * The body is { [key]: [...], ...fields(state) }, where state holds the first and
+ * last documents written and whether another document was left over.
+ * @param {Object} res - Express response object
+ * @param {AsyncIterable<Object>} source - Documents; read at most limit + 1 of them
+ * @param {Object} options
+ * @param {number} options.limit - Page size
+ * @param {string} [options.key] - Property that holds the array
+ * @param {Function} [options.fields] - Returns extra properties written after the array
+ * @returns {Promise<Object>} { count, first, last, hasMore }
+ */
+async function streamJsonPage(res, source, options) {
+  const key = options.key || 'items';
+  const state = { count: 0, first: null, last: null, hasMore: false };
+
+  res.status(200);
+  res.type('application/json');
+  res.write(`{${JSON.stringify(key)}:[`);
+
+  for await (const doc of source) {
+    if (state.count === options.limit) {
+      state.hasMore = true;
+      break;
+    }
+
+    if (!res.write((state.count > 0 ? ',' : '') + JSON.stringify(doc))) {
+      await waitForDrain(res);
+    }
+    if (res.destroyed) {
+      return state;
+    }
+
+    state.first = state.first || doc;
+    state.last = doc;
+    state.count++;
+  }
+
+  const extra = options.fields ? JSON.stringify(options.fields(state)).slice(1, -1) : '';
+  res.end(']' + (extra ? ',' + extra : '') + '}');
+  return state;
+}
+
+/**
+ * Stream documents as a bare JSON array (for endpoints whose clients expect a list)
+ * @param {Object} res - Express response object
+ * @param {AsyncIterable<Object>} source - Documents to write
+ * @returns {Promise<number>} Number of documents written
+ */
+async function streamJsonArray(res, source) {
+  let count = 0;
+
+  res.status(200);
+  res.type('application/json');
+  res.write('[');
+
+  for await (const doc of source) {
+    if (!res.write((count > 0 ? ',' : '') + JSON.stringify(doc))) {
+      await waitForDrain(res);
+    }
+    if (res.destroyed) {
+      return count;
+    }
+    count++;
+  }
+
+  res.end(']');
+  return count;
+}
+
+/**
+ * Report an error from a streaming handler: JSON when nothing was sent yet,
+ * otherwise cut the connection so the client sees a truncated response
+ * @param {Object} res - Express response object
+ * @param {Error} error - The error
+ * @param {string} message - Message for the JSON error body
+ */
+function sendStreamError(res, error, message) {
+  if (res.headersSent) {
+    res.destroy(error);
+    return;
+  }
+
+  if (error.code === 'INVALID_CURSOR') {
+    return res.status(400).json({ message: error.message });
+  }
+
+  res.status(500).json({ message, error: error.message });
+}
+
+module.exports = {
+  InvalidCursorError,
+  encodeCursor,
+  decodeCursor,
+  keysetFilter,
+  compareKeys,
+  parseLimit,
+  streamJsonPage,
+  streamJsonArray,
+  sendStreamError
+};
@@ -0,0 +1,250 @@
+// services/passwordHasher.js - Bounded worker_threads pool for bcrypt hashing and verification
+const os = require('os');
+const path = require('path');
+const { Worker } = require('worker_threads');
+const bcrypt = require('bcryptjs');
+
+/**
+ * Worker count from BCRYPT_POOL_SIZE. 0 is allowed (main thread); anything
+ * that isn't a whole number of workers falls back to a size based on the CPUs.
+ * @returns {number} Pool size
+ */
+function poolSizeFromEnv() {
+  const fallback = Math.max(1, Math.min(4, os.availableParallelism() - 1));
+  const value = process.env.BCRYPT_POOL_SIZE;
+  if (value == null || value.trim() === '') {
+    return fallback;
+  }
+
+  const size = Number(value);
+  if (!Number.isInteger(size) || size < 0) {
+    console.warn(`Ignoring invalid BCRYPT_POOL_SIZE "${value}", using ${fallback} workers`);
+    return fallback;
+  }
+  return size;
+}
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_POOL_SIZE = poolSizeFromEnv();
+const DEFAULT_MAX_QUEUE = parseInt(process.env.BCRYPT_MAX_QUEUE, 10) || 200;
+const DEFAULT_QUEUE_TIMEOUT_MS = parseInt(process.env.BCRYPT_QUEUE_TIMEOUT_MS, 10) || 5000;
+const DEFAULT_ROUNDS = parseInt(process.env.BCRYPT_ROUNDS, 10) || 10;
+
+const WORKER_FILE = path.join(__dirname, 'passwordHasherWorker.js');
+
+/**
+ * Raised when the pool has no room for more password work; callers should
+ * answer with a 503 and the suggested Retry-After
+ */
+class PasswordHasherBusyError extends Error {
+  constructor(message, retryAfterSeconds) {
+    super(message);
+    this.name = 'PasswordHasherBusyError';
+    this.code = 'PASSWORD_HASHER_BUSY';
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+}
+
+/**
+ * Runs bcrypt off the main thread so a burst of logins doesn't stall socket
+ * messages and chat requests. Jobs wait in a bounded queue; once it's full, or
+ * a job has waited longer than queueTimeoutMs, new work is turned away instead
+ * of piling up behind requests the clients have already given up on.
+ *
+ * A pool size of 0 runs bcrypt on the main thread, as before.
+ */
+class PasswordHasher {
+  /**
+   * @param {Object} [options]
+   * @param {number} [options.size] - Worker threads; 0 hashes on the main thread
+   * @param {number} [options.maxQueue] - Jobs allowed to wait for a worker
+   * @param {number} [options.queueTimeoutMs] - Longest a job may wait for a worker
+   * @param {number} [options.rounds] - bcrypt cost factor for new hashes
+   */
+  constructor(options = {}) {
+    this.size = options.size != null ? options.size : DEFAULT_POOL_SIZE;
+    this.maxQueue = options.maxQueue || DEFAULT_MAX_QUEUE;
+    this.queueTimeoutMs = options.queueTimeoutMs || DEFAULT_QUEUE_TIMEOUT_MS;
+    this.rounds = options.rounds || DEFAULT_ROUNDS;
+
+    this.workers = [];
+    this.idle = [];
+    this.queue = [];
+    this.nextId = 1;
+    this.closed = false;
+    this.stats = { hashes: 0, compares: 0, completed: 0, rejected: 0, timedOut: 0, workerErrors: 0, maxQueued: 0, totalWaitMs: 0, totalRunMs: 0 };
+  }
+
+  /**
+   * Hash a password with a new salt
+   * @param {string} password - Plain text password
+   * @returns {Promise<string>} bcrypt hash
+   */
+  hash(password) {
+    this.stats.hashes++;
+    return this._run({ op: 'hash', password: String(password), rounds: this.rounds });
+  }
+
+  /**
+   * Check a password against a stored hash
+   * @param {string} password - Plain text password
+   * @param {string} hash - Stored bcrypt hash
+   * @returns {Promise<boolean>} Whether they match
+   */
+  compare(password, hash) {
+    this.stats.compares++;
+    return this._run({ op: 'compare', password: String(password), hash: String(hash) });
+  }
+
+  _run(job) {
+    if (this.size === 0) {
+      return this._runInline(job);
+    }
+    if (this.closed) {
+      return Promise.reject(new Error('Password hasher is closed'));
+    }
+
+    this._spawnIfNeeded();
+
+    if (this.idle.length === 0 && this.queue.length >= this.maxQueue) {
+      this.stats.rejected++;
+      return Promise.reject(new PasswordHasherBusyError('Too many password requests in progress', this._retryAfter()));
+    }
+
+    return new Promise((resolve, reject) => {
+      this.queue.push({ ...job, id: this.nextId++, resolve, reject, queuedAt: Date.now() });
+      this.stats.maxQueued = Math.max(this.stats.maxQueued, this.queue.length);
+      this._dispatch();
+    });
+  }
+
+  async _runInline(job) {
+    const startedAt = Date.now();
+    try {
+      return job.op === 'hash'
+        ? await bcrypt.hash(job.password, job.rounds)
+        : await bcrypt.compare(job.password, job.hash);
+    } finally {
+      this.stats.completed++;
+      this.stats.totalRunMs += Date.now() - startedAt;
+    }
+  }
+
+  // Rough time until the queue drains, from the average job duration
+  _retryAfter() {
+    const done = this.stats.completed;
+    const averageMs = done > 0 ? this.stats.totalRunMs / done : 100;
+    return Math.max(1, Math.ceil((this.queue.length * averageMs) / Math.max(1, this.size) / 1000));
+  }
+
+  _spawnIfNeeded() {
+    if (this.workers.length >= this.size || this.idle.length > 0) {
+      return;
+    }
+
+    const worker = new Worker(WORKER_FILE);
+    // Only a worker with a job in hand keeps the process alive
+    worker.unref();
+    worker.job = null;
+
+    worker.on('message', ({ id, result, error }) => {
+      const job = worker.job;
+      if (!job || job.id !== id) {
+        return;
+      }
+      worker.job = null;
+      worker.unref();
+      this.stats.completed++;
+      this.stats.totalRunMs += Date.now() - job.startedAt;
+      if (error) {
+        job.reject(new Error(error));
+      } else {
+        job.resolve(result);
+      }
+      this.idle.push(worker);
+      this._dispatch();
+    });
+
+    worker.on('error', (error) => {
+      this.stats.workerErrors++;
+      console.error('Password hasher worker failed:', error.message);
+    });
+
+    worker.on('exit', () => {
+      // Fail the job it was running and let a new worker take over the queue
+      this.workers = this.workers.filter(w => w !== worker);
+      this.idle = this.idle.filter(w => w !== worker);
+      if (worker.job) {
+        worker.job.reject(new Error('Password hasher worker exited'));
+        worker.job = null;
+      }
+      if (!this.closed && this.queue.length > 0) {
+        this._spawnIfNeeded();
+        this._dispatch();
+      }
+    });
+
+    this.workers.push(worker);
+    this.idle.push(worker);
+  }
+
+  _dispatch() {
+    while (this.idle.length > 0 && this.queue.length > 0) {
+      const job = this.queue.shift();
+      const waitedMs = Date.now() - job.queuedAt;
+
+      if (waitedMs > this.queueTimeoutMs) {
+        this.stats.timedOut++;
+        job.reject(new PasswordHasherBusyError('Password request waited too long', this._retryAfter()));
+        continue;
+      }
+
+      const worker = this.idle.pop();
+      this.stats.totalWaitMs += waitedMs;
+      job.startedAt = Date.now();
+      worker.job = job;
+      worker.ref();
+      worker.postMessage({ id: job.id, op: job.op, password: job.password, hash: job.hash, rounds: job.rounds });
+    }
+  }
+
+  /**
+   * Pool size, queue depth and timing statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    const done = this.stats.completed;
+    return {
+      size: this.size,
+      workers: this.workers.length,
+      busy: this.workers.length - this.idle.length,
+      queued: this.queue.length,
+      maxQueue: this.maxQueue,
+      rounds: this.rounds,
+      ...this.stats,
+      avgWaitMs: done > 0 ? +(this.stats.totalWaitMs / done).toFixed(1) : 0,
+      avgRunMs: done > 0 ? +(this.stats.totalRunMs / done).toFixed(1) : 0
+    };
+  }
+
+  /**
+   * Reject queued jobs and stop the workers
+   * @returns {Promise<void>}
+   */
+  async close() {
+    this.closed = true;
+    for (const job of this.queue.splice(0)) {
+      job.reject(new Error('Password hasher is closed'));
+    }
+    await Promise.all(this.workers.map(worker => worker.terminate()));
+  }
+}
+
+// Shared pool used by models/user.js
+const passwordHasher = new PasswordHasher();
+
+module.exports = {
+  PasswordHasher,
+  PasswordHasherBusyError,
+  passwordHasher
+};
@@ -0,0 +1,14 @@
+// services/passwordHasherWorker.js - Worker thread that runs bcrypt for services/passwordHasher.js
+const { parentPort } = require('worker_threads');
+const bcrypt = require('bcryptjs');
+
+parentPort.on('message', async ({ id, op, password, hash, rounds }) => {
+  try {
+    const result = op === 'hash'
+      ? await bcrypt.hash(password, rounds)
+      : await bcrypt.compare(password, hash);
+    parentPort.postMessage({ id, result });
+  } catch (error) {
+    parentPort.postMessage({ id, error: error.message });
+  }
+});
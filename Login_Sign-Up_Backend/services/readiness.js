@@ -0,0 +1,125 @@
+// services/readiness.js - Startup step tracking for the liveness and readiness probes
+const { performance } = require('perf_hooks');
+
+/**
+ * Records every startup step (database connections, caches, models) with
+ * when it started, how long it took and whether it worked. The server listens
+ * before the steps finish; it counts as ready once every critical step is.
+ *
+ * Times are milliseconds since the process started, so they include the time
+ * spent loading modules before the first step.
+ */
+class Readiness {
+  constructor() {
+    this.steps = new Map();
+    this.listeningAtMs = null;
+  }
+
+  _step(name, critical) {
+    if (!this.steps.has(name)) {
+      this.steps.set(name, { status: 'pending', critical, startedAtMs: null, durationMs: null, error: null });
+    }
+    return this.steps.get(name);
+  }
+
+  /**
+   * Run a startup step and record its outcome
+   * @param {string} name - Subsystem name shown by /health/ready
+   * @param {Function} work - Async function doing the step
+   * @param {Object} [options]
+   * @param {boolean} [options.critical] - The server isn't ready until this step succeeds
+   * @returns {Promise<*>} Result of work; rejects when it fails
+   */
+  async track(name, work, options = {}) {
+    const step = this._step(name, Boolean(options.critical));
+    step.status = 'starting';
+    step.startedAtMs = Math.round(performance.now());
+
+    try {
+      const result = await work();
+      step.status = 'ready';
+      return result;
+    } catch (error) {
+      step.status = 'failed';
+      step.error = error.message;
+      throw error;
+    } finally {
+      step.durationMs = Math.round(performance.now()) - step.startedAtMs;
+    }
+  }
+
+  /**
+   * Mark a step as degraded: it finished, but some of its checks didn't pass
+   * @param {string} name - Subsystem name
+   * @param {string} reason - What didn't pass
+   */
+  degrade(name, reason) {
+    const step = this._step(name, false);
+    step.status = 'degraded';
+    step.error = reason;
+  }
+
+  markListening() {
+    this.listeningAtMs = Math.round(performance.now());
+  }
+
+  /**
+   * @returns {boolean} Whether every critical step has succeeded
+   */
+  isReady() {
+    for (const step of this.steps.values()) {
+      if (step.critical && step.status !== 'ready') {
+        return false;
+      }
+    }
+    return this.listeningAtMs !== null;
+  }
+
+  /**
+   * Status of every subsystem, for /health/ready
+   * @returns {Object} { ready, listeningAtMs, subsystems }
+   */
+  report() {
+    return {
+      ready: this.isReady(),
+      listeningAtMs: this.listeningAtMs,
+      subsystems: Object.fromEntries(this.steps)
+    };
+  }
+
+  /**
+   * Log when each step started and how long it took, in start order
+   */
+  logTimings() {
+    const steps = Array.from(this.steps, ([name, step]) => ({ name, ...step }))
+      .sort((a, b) => (a.startedAtMs || 0) - (b.startedAtMs || 0));
+
+    console.log('Startup timing (ms since process start):');
+    console.log(`  listening           at ${String(this.listeningAtMs).padStart(6)}`);
+    for (const step of steps) {
+      const took = step.durationMs == null ? 'running' : `${step.durationMs}ms`;
+      const detail = step.error ? ` (${step.error})` : '';
+      console.log(`  ${step.name.padEnd(19)} at ${String(step.startedAtMs).padStart(6)}, took ${took.padStart(8)} - ${step.status}${detail}`);
+    }
+  }
+
+  /**
+   * Express middleware answering 503 until the server is ready, so requests
+   * that arrive between listen and the database connecting get a clear
+   * retryable answer. Health checks and /metrics always pass through.
+   * @returns {Function} Middleware
+   */
+  gate() {
+    return (req, res, next) => {
+      if (this.isReady() || req.path.startsWith('/health') || req.path === '/metrics') {
+        return next();
+      }
+      res.set('Retry-After', '1');
+      res.status(503).json({ error: 'Server is starting, please try again shortly' });
+    };
+  }
+}
+
+module.exports = {
+  Readiness
+};
@@ -0,0 +1,238 @@
+// services/responseCache.js - Bounded LRU + TTL cache of chatbot replies keyed on the normalized prompt
+const crypto = require('crypto');
+
+const INVALIDATION_CHANNEL = 'chat#responseCache';
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_MAX_ENTRIES = parseInt(process.env.CHAT_CACHE_MAX_ENTRIES, 10) || 1000;
+const DEFAULT_TTL_MS = parseInt(process.env.CHAT_CACHE_TTL_MS, 10) || 6 * 60 * 60 * 1000;
+const DEFAULT_MAX_PROMPT_LENGTH = parseInt(process.env.CHAT_CACHE_MAX_PROMPT_LENGTH, 10) || 300;
+
+/**
+ * Reduce a prompt to the form used as its cache key, so "How do I deal with
+ * stress?" and "how do i deal with stress" share an entry
+ * @param {string} prompt - User message
+ * @returns {string} Lower-cased prompt without punctuation or extra whitespace
+ */
+function normalizePrompt(prompt) {
+  return String(prompt)
+    .normalize('NFKC')
+    .toLowerCase()
+    .replace(/['’]/g, '')
+    .replace(/[^\p{L}\p{N}]+/gu, ' ')
+    .trim();
+}
+
+/**
+ * Caches model replies for repeated prompts. The model only ever sees the
+ * message text, so a reply generated for one user is valid for another.
+ * Only consult it after the safety gates, so crisis and flagged messages are
+ * always handled by them.
+ */
+class ResponseCache {
+  /**
+   * @param {Object} [options]
+   * @param {Object} [options.broker] - Broker used to pass invalidations to other processes
+   * @param {number} [options.maxEntries] - Least recently used replies are evicted past this size
+   * @param {number} [options.ttlMs] - How long a reply is served before it is generated again
+   * @param {number} [options.maxPromptLength] - Longer prompts are rarely repeated and aren't cached
+   * @param {Function} [options.isCacheable] - Rejects replies that shouldn't be kept, such as fallbacks
+   */
+  constructor(options = {}) {
+    this.maxEntries = options.maxEntries || DEFAULT_MAX_ENTRIES;
+    this.ttlMs = options.ttlMs || DEFAULT_TTL_MS;
+    this.maxPromptLength = options.maxPromptLength || DEFAULT_MAX_PROMPT_LENGTH;
+    this.isCacheable = options.isCacheable || Boolean;
+    this.broker = options.broker || null;
+    this.cacheId = crypto.randomUUID();
+
+    this.entries = new Map();
+    this.pending = new Map();
+    this.stats = { hits: 0, misses: 0, coalesced: 0, writes: 0, evictions: 0, expirations: 0, invalidations: 0, skipped: 0 };
+
+    if (this.broker) {
+      this.unsubscribe = this.broker.subscribe(INVALIDATION_CHANNEL, (message) => {
+        if (message.cacheId === this.cacheId) {
+          return;
+        }
+        if (message.prompt == null) {
+          this._clear();
+        } else {
+          this._invalidate(message.prompt);
+        }
+      });
+    }
+  }
+
+  _invalidate(prompt) {
+    const key = normalizePrompt(prompt);
+    this.pending.delete(key);
+    const removed = this.entries.delete(key);
+    if (removed) {
+      this.stats.invalidations++;
+    }
+    return removed;
+  }
+
+  _clear() {
+    const removed = this.entries.size;
+    this.entries.clear();
+    this.pending.clear();
+    this.stats.invalidations += removed;
+    return removed;
+  }
+
+  /**
+   * Cache key for a prompt
+   * @param {string} prompt - User message
+   * @returns {string|null} Key, or null when the prompt isn't cacheable
+   */
+  keyFor(prompt) {
+    const key = normalizePrompt(prompt);
+    if (!key || key.length > this.maxPromptLength) {
+      return null;
+    }
+    return key;
+  }
+
+  /**
+   * Cached reply for a prompt
+   * @param {string} prompt - User message
+   * @returns {string|null} Reply, or null on a miss
+   */
+  get(prompt) {
+    const key = this.keyFor(prompt);
+    if (!key) {
+      this.stats.skipped++;
+      return null;
+    }
+
+    const entry = this.entries.get(key);
+    if (!entry) {
+      this.stats.misses++;
+      return null;
+    }
+
+    if (entry.expiresAt <= Date.now()) {
+      this.entries.delete(key);
+      this.stats.expirations++;
+      this.stats.misses++;
+      return null;
+    }
+
+    // Re-inserting keeps the Map in least-recently-used order
+    this.entries.delete(key);
+    this.entries.set(key, entry);
+    this.stats.hits++;
+    return entry.reply;
+  }
+
+  /**
+   * Store a generated reply
+   * @param {string} prompt - User message
+   * @param {string} reply - Model reply
+   */
+  set(prompt, reply) {
+    const key = this.keyFor(prompt);
+    if (!key || !reply || !this.isCacheable(reply)) {
+      return;
+    }
+
+    this.entries.delete(key);
+    this.entries.set(key, { reply, expiresAt: Date.now() + this.ttlMs });
+    this.stats.writes++;
+
+    while (this.entries.size > this.maxEntries) {
+      this.entries.delete(this.entries.keys().next().value);
+      this.stats.evictions++;
+    }
+  }
+
+  /**
+   * Serve a prompt from the cache, or generate it once. Concurrent misses for
+   * the same prompt share a single generate call.
+   * @param {string} prompt - User message
+   * @param {Function} generate - Returns a promise for the reply
+   * @returns {Promise<Object>} { reply, cached }
+   */
+  async getOrGenerate(prompt, generate) {
+    const cached = this.get(prompt);
+    if (cached) {
+      return { reply: cached, cached: true };
+    }
+
+    const key = this.keyFor(prompt);
+    if (!key) {
+      return { reply: await generate(), cached: false };
+    }
+
+    if (this.pending.has(key)) {
+      this.stats.coalesced++;
+      return { reply: await this.pending.get(key), cached: true };
+    }
+
+    const pending = Promise.resolve().then(generate);
+    this.pending.set(key, pending);
+    try {
+      const reply = await pending;
+      // An invalidation during generation wins over the generated reply
+      if (this.pending.get(key) === pending) {
+        this.set(prompt, reply);
+      }
+      return { reply, cached: false };
+    } finally {
+      if (this.pending.get(key) === pending) {
+        this.pending.delete(key);
+      }
+    }
+  }
+
+  /**
+   * Drop the cached reply for one prompt, here and in other processes
+   * @param {string} prompt - User message, in any form that normalizes to the key
+   * @returns {boolean} True when an entry was removed from this process
+   */
+  invalidate(prompt) {
+    if (this.broker) {
+      this.broker.publish(INVALIDATION_CHANNEL, { cacheId: this.cacheId, prompt: String(prompt) });
+    }
+    return this._invalidate(prompt);
+  }
+
+  /**
+   * Drop every cached reply, e.g. after changing the model or its instructions
+   * @returns {number} Number of entries removed from this process
+   */
+  clear() {
+    if (this.broker) {
+      this.broker.publish(INVALIDATION_CHANNEL, { cacheId: this.cacheId, prompt: null });
+    }
+    return this._clear();
+  }
+
+  /**
+   * Cache size and hit statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    const lookups = this.stats.hits + this.stats.misses;
+    return {
+      entries: this.entries.size,
+      maxEntries: this.maxEntries,
+      ttlMs: this.ttlMs,
+      ...this.stats,
+      hitRate: lookups > 0 ? +(this.stats.hits / lookups).toFixed(3) : 0
+    };
+  }
+
+  close() {
+    if (this.unsubscribe) {
+      this.unsubscribe();
+    }
+  }
+}
+
+module.exports = {
+  ResponseCache,
+  normalizePrompt
+};
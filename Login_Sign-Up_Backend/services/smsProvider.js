@@ -0,0 +1,77 @@
+// services/smsProvider.js - SMS sending, with a simulated provider until a real one is integrated
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_LATENCY_MS = parseInt(process.env.SMS_SIM_LATENCY_MS, 10) || 150;
+const DEFAULT_FAILURE_RATE = parseFloat(process.env.SMS_SIM_FAILURE_RATE) || 0;
+const MAX_REMEMBERED_KEYS = 10000;
+
+class SmsProviderError extends Error {
+  /**
+   * @param {string} message - Error message
+   * @param {boolean} [retryable] - Whether sending again may succeed
+   */
+  constructor(message, retryable = true) {
+    super(message);
+    this.name = 'SmsProviderError';
+    this.retryable = retryable;
+  }
+}
+
+/**
+ * Stand-in for an SMS provider. It waits for a randomized latency and fails a
+ * share of sends, so retry handling can be exercised locally. Sends are
+ * deduplicated by idempotency key like a real provider would.
+ * @param {Object} [options]
+ * @param {number} [options.latencyMs] - Average send latency
+ * @param {number} [options.failureRate] - Share of sends that fail, 0 to 1
+ * @param {Function} [options.random] - Random source, for repeatable tests
+ * @returns {Object} Provider exposing send({ to, body, idempotencyKey }) and sent
+ */
+function createSimulatedSmsProvider(options = {}) {
+  const latencyMs = options.latencyMs != null ? options.latencyMs : DEFAULT_LATENCY_MS;
+  const failureRate = options.failureRate != null ? options.failureRate : DEFAULT_FAILURE_RATE;
+  const random = options.random || Math.random;
+  const delivered = new Map();
+
+  return {
+    sent: delivered,
+
+    async send({ to, body, idempotencyKey }) {
+      if (!to) {
+        throw new SmsProviderError('Missing phone number', false);
+      }
+
+      if (idempotencyKey && delivered.has(idempotencyKey)) {
+        return { ...delivered.get(idempotencyKey), duplicate: true };
+      }
+
+      // Latency between half and one and a half times the average
+      await new Promise((resolve) => setTimeout(resolve, latencyMs * (0.5 + random())));
+
+      if (random() < failureRate) {
+        throw new SmsProviderError('Simulated provider failure');
+      }
+
+      console.log(`[SMS WOULD BE SENT] To: ${to}, Message: ${body}`);
+
+      const receipt = {
+        messageId: `msg_${Date.now()}_${Math.random().toString(36).substring(2, 9)}`,
+        timestamp: new Date()
+      };
+
+      if (idempotencyKey) {
+        delivered.set(idempotencyKey, receipt);
+        if (delivered.size > MAX_REMEMBERED_KEYS) {
+          delivered.delete(delivered.keys().next().value);
+        }
+      }
+
+      return receipt;
+    }
+  };
+}
+
+module.exports = {
+  SmsProviderError,
+  createSimulatedSmsProvider
+};
@@ -0,0 +1,176 @@
+// services/socketBroker.js - Pub/sub brokers and a Socket.io adapter that fans room broadcasts out across processes
+const { EventEmitter } = require('events');
+const crypto = require('crypto');
+const { Adapter } = require('socket.io-adapter');
+
+// Tag on IPC messages so broker traffic can share the channel with other messages
+const IPC_SOURCE = 'mindbridge:broker';
+const DEFAULT_BROADCAST_CHANNEL = 'socket.io#broadcast';
+
+/*
+ * A broker is anything with:
+ *   publish(channel, message)   - deliver message to every subscriber of channel,
+ *                                 including subscribers in the publishing process
+ *   subscribe(channel, handler) - returns a function that removes the subscription
+ *   close()
+ * Messages must be JSON-serializable. A Redis or NATS backed broker with the same
+ * shape can be passed to createBrokerAdapter to fan out across machines.
+ */
+
+/**
+ * Broker that only delivers within the current process. Used when running a
+ * single server, and by tests that start several Socket.io servers in one process.
+ */
+class InProcessBroker {
+  constructor() {
+    this.emitter = new EventEmitter();
+    this.emitter.setMaxListeners(0);
+  }
+
+  /**
+   * @param {string} channel - Channel name
+   * @param {Object} message - Message to deliver
+   */
+  publish(channel, message) {
+    // Deliver asynchronously, the same way a networked broker would
+    setImmediate(() => this.emitter.emit(channel, message));
+  }
+
+  /**
+   * @param {string} channel - Channel name
+   * @param {Function} handler - Called with each message
+   * @returns {Function} Unsubscribe function
+   */
+  subscribe(channel, handler) {
+    this.emitter.on(channel, handler);
+    return () => this.emitter.off(channel, handler);
+  }
+
+  close() {
+    this.emitter.removeAllListeners();
+  }
+}
+
+/**
+ * Broker for cluster workers (or any forked child). Messages go to the parent
+ * over the IPC channel and the parent relays them to its other children
+ * with relayBrokerMessages.
+ */
+class IpcBroker extends InProcessBroker {
+  /**
+   * @param {Object} [processRef] - Process with an IPC channel, defaults to the current process
+   */
+  constructor(processRef = process) {
+    super();
+
+    if (typeof processRef.send !== 'function') {
+      throw new Error('IpcBroker requires a process with an IPC channel (cluster worker or forked child)');
+    }
+
+    this.process = processRef;
+    this.onMessage = (packet) => {
+      if (packet && packet.source === IPC_SOURCE) {
+        this.emitter.emit(packet.channel, packet.message);
+      }
+    };
+    this.process.on('message', this.onMessage);
+  }
+
+  publish(channel, message) {
+    if (this.process.connected) {
+      this.process.send({ source: IPC_SOURCE, channel, message });
+    }
+    super.publish(channel, message);
+  }
+
+  close() {
+    this.process.off('message', this.onMessage);
+    super.close();
+  }
+}
+
+/**
+ * Relay broker messages between cluster workers. Call once in the primary.
+ * @param {Object} [clusterRef] - The cluster module
+ * @returns {Function} Stops relaying
+ */
+function relayBrokerMessages(clusterRef = require('cluster')) {
+  const onMessage = (sender, packet) => {
+    if (!packet || packet.source !== IPC_SOURCE) {
+      return;
+    }
+
+    for (const worker of Object.values(clusterRef.workers)) {
+      if (worker && worker !== sender && worker.isConnected()) {
+        worker.send(packet);
+      }
+    }
+  };
+
+  clusterRef.on('message', onMessage);
+  return () => clusterRef.off('message', onMessage);
+}
+
+/**
+ * Build a Socket.io adapter class that publishes every room broadcast on the
+ * broker and replays broadcasts from other processes to local sockets.
+ * Room membership stays local; each process only writes to its own sockets.
+ * @param {Object} broker - Broker with publish/subscribe
+ * @param {Object} [options]
+ * @param {string} [options.channel] - Broker channel used for broadcasts
+ * @returns {Function} Adapter class for io.adapter()
+ */
+function createBrokerAdapter(broker, options = {}) {
+  const channel = options.channel || DEFAULT_BROADCAST_CHANNEL;
+  // Identifies this server so it can skip its own broadcasts coming back
+  const serverId = crypto.randomUUID();
+
+  return class BrokerAdapter extends Adapter {
+    constructor(nsp) {
+      super(nsp);
+      this.serverId = serverId;
+      this.stats = { published: 0, received: 0 };
+
+      this.unsubscribe = broker.subscribe(channel, (message) => {
+        if (message.serverId === serverId || message.nsp !== nsp.name) {
+          return;
+        }
+
+        this.stats.received++;
+        super.broadcast(message.packet, {
+          rooms: new Set(message.rooms),
+          except: new Set(message.except),
+          flags: message.flags || {}
+        });
+      });
+    }
+
+    broadcast(packet, opts) {
+      // io.local.emit() is meant for this process only
+      if (!(opts.flags && opts.flags.local)) {
+        this.stats.published++;
+        broker.publish(channel, {
+          serverId,
+          nsp: this.nsp.name,
+          packet,
+          rooms: Array.from(opts.rooms || []),
+          except: Array.from(opts.except || []),
+          flags: opts.flags || {}
+        });
+      }
+
+      super.broadcast(packet, opts);
+    }
+
+    close() {
+      this.unsubscribe();
+    }
+  };
+}
+
+module.exports = {
+  InProcessBroker,
+  IpcBroker,
+  relayBrokerMessages,
+  createBrokerAdapter
+};
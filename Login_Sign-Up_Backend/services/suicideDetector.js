@@ -0,0 +1,322 @@
+// services/suicideDetector.js - Compiled suicide-ideation patterns built from the dataset, with a binary snapshot
+const crypto = require('crypto');
+const fs = require('fs');
+const path = require('path');
+const v8 = require('v8');
+const { pipeline } = require('stream/promises');
+const { Writable } = require('stream');
+const csv = require('csv-parser');
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_DATASET_PATH = process.env.SUICIDE_DATASET_PATH ||
+  path.join(__dirname, '..', 'datasets', 'Suicide_Ideation_Dataset(Twitter-based).csv');
+const DEFAULT_SNAPSHOT_PATH = process.env.SUICIDE_SNAPSHOT_PATH ||
+  path.join(__dirname, '..', 'datasets', 'suicidePatterns.snapshot');
+const DEFAULT_WATCH_INTERVAL_MS = parseInt(process.env.SUICIDE_DATASET_WATCH_MS, 10) || 30000;
+
+// Bump when the snapshot layout or the way patterns are built changes
+const SNAPSHOT_VERSION = 1;
+
+// Phrases that are always checked, with or without the dataset
+const BASE_SUICIDE_INDICATORS = [
+  "kill myself", "suicide", "end my life", "want to die",
+  "tired of living", "don't want to be here", "end it all",
+  "put myself to rest", "roll over and die", "hate my life",
+  "life is miserable", "hope i die"
+];
+
+// Phrasings the fixed list misses
+const SUICIDE_REGEX_SOURCES = [
+  "i (?:want|need|wish) to d[ie]{2}",
+  "(?:kill(?:ing)? myself|end(?:ing)? (?:my life|it all))",
+  "(?:don'?t|do not) want to (?:live|be here|exist)",
+  "(?:hate|tired of) (?:my )?life",
+  "(?:put (?:myself|me) to rest)",
+  "(?:no reason to (?:live|be here|continue))"
+];
+
+// Snapshots hold these lists, so one built from an older version of them is not reused
+const PATTERNS_HASH = crypto.createHash('sha256')
+  .update(JSON.stringify([BASE_SUICIDE_INDICATORS, SUICIDE_REGEX_SOURCES]))
+  .digest('hex')
+  .substring(0, 16);
+
+const escapeRegex = (text) => text.replace(/[.*+?^${}()|[\]\\]/g, '\\$&');
+
+/**
+ * Turn a pattern set into one case-insensitive regex, so a message is
+ * scanned once instead of once per phrase and once per pattern
+ * @param {Object} patternSet - { phrases, regexSources }
+ * @returns {Object} { regex, phrases: Set, regexes }
+ */
+function compilePatternSet(patternSet) {
+  // Longer phrases first, so the reported match is the most specific one
+  const phrases = [...patternSet.phrases].sort((a, b) => b.length - a.length);
+  const alternatives = [...phrases.map(escapeRegex), ...patternSet.regexSources.map(source => `(?:${source})`)];
+
+  return {
+    regex: new RegExp(alternatives.join('|'), 'i'),
+    phrases: new Set(phrases),
+    regexes: patternSet.regexSources.map(source => new RegExp(source, 'i'))
+  };
+}
+
+/**
+ * Stream the dataset and collect the indicators that occur in tweets labelled
+ * as suicidal. Rows are inspected one at a time and not kept.
+ * @param {string} datasetPath - CSV with Tweet and Suicide columns
+ * @returns {Promise<Object>} Pattern set: { phrases, regexSources, stats }
+ */
+async function buildPatternSet(datasetPath) {
+  const indicatorRegex = new RegExp(BASE_SUICIDE_INDICATORS.map(escapeRegex).join('|'), 'gi');
+  const counts = Object.fromEntries(BASE_SUICIDE_INDICATORS.map(indicator => [indicator, 0]));
+  const stats = { rows: 0, labelledRows: 0 };
+
+  // Headers are matched case-insensitively, like the old loader did
+  const parser = csv({ mapHeaders: ({ header }) => header.trim().toLowerCase() });
+  let checkedHeaders = false;
+
+  const collect = new Writable({
+    objectMode: true,
+    write(row, encoding, callback) {
+      if (!checkedHeaders) {
+        checkedHeaders = true;
+        if (!('tweet' in row) || !('suicide' in row)) {
+          return callback(new Error('Dataset does not contain required columns (Tweet, Suicide)'));
+        }
+      }
+
+      stats.rows++;
+      const label = String(row.suicide).toLowerCase();
+      if (label.includes('suicide') || label.includes('potential')) {
+        stats.labelledRows++;
+        for (const match of String(row.tweet).matchAll(indicatorRegex)) {
+          counts[match[0].toLowerCase()]++;
+        }
+      }
+      callback();
+    }
+  });
+
+  await pipeline(fs.createReadStream(datasetPath), parser, collect);
+
+  return {
+    phrases: [...BASE_SUICIDE_INDICATORS],
+    regexSources: [...SUICIDE_REGEX_SOURCES],
+    stats: { ...stats, indicatorCounts: counts }
+  };
+}
+
+/**
+ * Detects suicidal content with a pattern set compiled from the dataset.
+ *
+ * Startup loads a v8-serialized snapshot of the pattern set when it was built
+ * from the dataset as it is now; otherwise the CSV is streamed and a new
+ * snapshot is written. Until either finishes, the built-in patterns are used,
+ * so detection never waits on the dataset. Changes to the CSV are picked up in
+ * the background.
+ */
+class SuicideDetector {
+  /**
+   * @param {Object} [options]
+   * @param {string} [options.datasetPath] - Suicide ideation CSV
+   * @param {string} [options.snapshotPath] - Where the compiled pattern set is cached
+   * @param {number} [options.watchIntervalMs] - How often the CSV is checked for changes
+   */
+  constructor(options = {}) {
+    this.datasetPath = options.datasetPath || DEFAULT_DATASET_PATH;
+    this.snapshotPath = options.snapshotPath || DEFAULT_SNAPSHOT_PATH;
+    this.watchIntervalMs = options.watchIntervalMs || DEFAULT_WATCH_INTERVAL_MS;
+
+    this.patternSet = { phrases: [...BASE_SUICIDE_INDICATORS], regexSources: [...SUICIDE_REGEX_SOURCES], stats: null };
+    this.compiled = compilePatternSet(this.patternSet);
+    this.source = 'builtin';
+    this.rebuilding = null;
+    this.watching = false;
+    this.stats = { checks: 0, detections: 0, snapshotLoads: 0, rebuilds: 0, rebuildErrors: 0, lastLoadMs: null };
+  }
+
+  /**
+   * Check a message for suicidal content
+   * @param {string} text - User message
+   * @returns {Object} { isSuicidal, matchedPhrase } or { isSuicidal, matchedPattern }
+   */
+  detect(text) {
+    if (!text) return { isSuicidal: false };
+
+    this.stats.checks++;
+    const { regex, phrases, regexes } = this.compiled;
+    const match = regex.exec(text);
+    if (!match) {
+      return { isSuicidal: false };
+    }
+
+    this.stats.detections++;
+    const matched = match[0].toLowerCase();
+    if (phrases.has(matched)) {
+      return { isSuicidal: true, matchedPhrase: matched };
+    }
+
+    // Only a positive match pays for finding out which pattern it was
+    const pattern = regexes.find(candidate => candidate.test(text));
+    return { isSuicidal: true, matchedPattern: pattern ? pattern.toString() : regex.toString() };
+  }
+
+  _use(patternSet, source) {
+    this.compiled = compilePatternSet(patternSet);
+    this.patternSet = patternSet;
+    this.source = source;
+  }
+
+  async _datasetFingerprint() {
+    const stat = await fs.promises.stat(this.datasetPath);
+    return { size: stat.size, mtimeMs: stat.mtimeMs, patternsHash: PATTERNS_HASH };
+  }
+
+  async _readSnapshot() {
+    try {
+      const snapshot = v8.deserialize(await fs.promises.readFile(this.snapshotPath));
+      return snapshot && snapshot.version === SNAPSHOT_VERSION ? snapshot : null;
+    } catch (error) {
+      if (error.code !== 'ENOENT') {
+        console.warn('Ignoring unreadable suicide pattern snapshot:', error.message);
+      }
+      return null;
+    }
+  }
+
+  async _writeSnapshot(patternSet, fingerprint) {
+    const snapshot = v8.serialize({ version: SNAPSHOT_VERSION, fingerprint, patternSet, builtAt: new Date() });
+    // Write next to it and rename, so other processes never read half a file
+    const tempPath = `${this.snapshotPath}.${process.pid}.tmp`;
+    await fs.promises.writeFile(tempPath, snapshot);
+    await fs.promises.rename(tempPath, this.snapshotPath);
+  }
+
+  /**
+   * Load the pattern set from the snapshot, or build it from the dataset when
+   * the snapshot is missing or was built from another version of it or of the
+   * built-in lists. A snapshot of an older dataset is used while the new one builds.
+   * @returns {Promise<boolean>} Whether dataset patterns are in use
+   */
+  async load() {
+    const startedAt = Date.now();
+    let fingerprint;
+    try {
+      fingerprint = await this._datasetFingerprint();
+    } catch (error) {
+      console.warn("Dataset file not found at:", this.datasetPath);
+      console.warn("Continuing with the built-in suicide patterns...");
+      return false;
+    }
+
+    let snapshot = await this._readSnapshot();
+    if (snapshot && snapshot.fingerprint.patternsHash !== fingerprint.patternsHash) {
+      // Built-in lists changed: keep them in use until the rebuild finishes
+      console.log('Built-in suicide patterns changed, rebuilding the snapshot');
+      snapshot = null;
+    }
+
+    if (snapshot) {
+      this._use(snapshot.patternSet, 'snapshot');
+      this.stats.snapshotLoads++;
+      this.stats.lastLoadMs = Date.now() - startedAt;
+
+      const current = snapshot.fingerprint.size === fingerprint.size && snapshot.fingerprint.mtimeMs === fingerprint.mtimeMs;
+      console.log(`Loaded suicide pattern snapshot in ${this.stats.lastLoadMs}ms${current ? '' : ' (dataset changed, rebuilding)'}`);
+      if (current) {
+        return true;
+      }
+      this.rebuild().catch(() => {});
+      return true;
+    }
+
+    return this.rebuild();
+  }
+
+  /**
+   * Stream the dataset, swap in the new pattern set and write a snapshot.
+   * Concurrent calls share one rebuild.
+   * @returns {Promise<boolean>} Whether the rebuild succeeded
+   */
+  rebuild() {
+    if (this.rebuilding) {
+      return this.rebuilding;
+    }
+
+    const startedAt = Date.now();
+    this.rebuilding = (async () => {
+      try {
+        const fingerprint = await this._datasetFingerprint();
+        const patternSet = await buildPatternSet(this.datasetPath);
+        this._use(patternSet, 'dataset');
+        this.stats.rebuilds++;
+        this.stats.lastLoadMs = Date.now() - startedAt;
+        console.log(`Built suicide patterns from ${patternSet.stats.rows} dataset rows in ${this.stats.lastLoadMs}ms`);
+
+        try {
+          await this._writeSnapshot(patternSet, fingerprint);
+        } catch (snapshotError) {
+          console.warn('Could not write suicide pattern snapshot:', snapshotError.message);
+        }
+        return true;
+      } catch (error) {
+        this.stats.rebuildErrors++;
+        console.error("Error loading suicide dataset:", error.message);
+        console.warn("Continuing with the current suicide patterns...");
+        return false;
+      } finally {
+        this.rebuilding = null;
+      }
+    })();
+
+    return this.rebuilding;
+  }
+
+  /**
+   * Rebuild in the background whenever the dataset file changes
+   */
+  watch() {
+    if (this.watching) {
+      return;
+    }
+    this.watching = true;
+
+    fs.watchFile(this.datasetPath, { interval: this.watchIntervalMs, persistent: false }, (current, previous) => {
+      if (current.mtimeMs !== previous.mtimeMs || current.size !== previous.size) {
+        console.log('Suicide dataset changed, rebuilding patterns in the background');
+        this.rebuild();
+      }
+    });
+  }
+
+  close() {
+    if (this.watching) {
+      fs.unwatchFile(this.datasetPath);
+      this.watching = false;
+    }
+  }
+
+  /**
+   * Pattern source and detection statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    return {
+      source: this.source,
+      phrases: this.patternSet.phrases.length,
+      regexes: this.patternSet.regexSources.length,
+      dataset: this.patternSet.stats,
+      rebuilding: Boolean(this.rebuilding),
+      ...this.stats
+    };
+  }
+}
+
+module.exports = {
+  SuicideDetector,
+  buildPatternSet,
+  compilePatternSet,
+  BASE_SUICIDE_INDICATORS,
+  SUICIDE_REGEX_SOURCES
+};
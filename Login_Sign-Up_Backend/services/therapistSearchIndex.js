@@ -0,0 +1,486 @@
+// services/therapistSearchIndex.js - In-memory ranked search over therapist names and specialties
+const { ObjectId } = require('mongodb');
+
+const INDEX_CHANNEL = 'therapists#index';
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_RELOAD_MS = parseInt(process.env.THERAPIST_INDEX_RELOAD_MS, 10) || 5 * 60 * 1000;
+
+// How much a match in each field counts
+const FIELD_WEIGHTS = { name: 2, specialty: 1.5 };
+
+// How much each kind of term match counts
+const MATCH_SCORES = { exact: 1, prefix: 0.8, infix: 0.5, fuzzy: 0.45 };
+
+/**
+ * Split text into lower-case terms without diacritics
+ * @param {string} text - Text to split
+ * @returns {Array<string>} Terms
+ */
+function tokenize(text) {
+  return String(text || '')
+    .normalize('NFKD')
+    .replace(/[\u0300-\u036f]/g, '')
+    .toLowerCase()
+    .split(/[^\p{L}\p{N}]+/u)
+    .filter(Boolean);
+}
+
+// Trigrams of a term, padded so short terms and word starts have some
+function trigrams(term) {
+  const padded = `  ${term} `;
+  const grams = new Set();
+  for (let i = 0; i + 3 <= padded.length; i++) {
+    grams.add(padded.substring(i, i + 3));
+  }
+  return grams;
+}
+
+/**
+ * Damerau-Levenshtein distance that gives up once it exceeds a bound
+ * @param {string} a - First string
+ * @param {string} b - Second string
+ * @param {number} max - Largest distance of interest
+ * @returns {number} Distance, or max + 1 when it is larger than max
+ */
+function boundedEditDistance(a, b, max) {
+  if (Math.abs(a.length - b.length) > max) {
+    return max + 1;
+  }
+
+  let previousPrevious = null;
+  let previous = Array.from({ length: b.length + 1 }, (_, j) => j);
+
+  for (let i = 1; i <= a.length; i++) {
+    const current = [i];
+    let rowMin = i;
+    for (let j = 1; j <= b.length; j++) {
+      const cost = a[i - 1] === b[j - 1] ? 0 : 1;
+      let value = Math.min(previous[j] + 1, current[j - 1] + 1, previous[j - 1] + cost);
+      if (previousPrevious && i > 1 && j > 1 && a[i - 1] === b[j - 2] && a[i - 2] === b[j - 1]) {
+        value = Math.min(value, previousPrevious[j - 2] + 1);
+      }
+      current.push(value);
+      rowMin = Math.min(rowMin, value);
+    }
+    if (rowMin > max) {
+      return max + 1;
+    }
+    previousPrevious = previous;
+    previous = current;
+  }
+
+  return previous[b.length];
+}
+
+/**
+ * Keeps every therapist in memory with a prefix trie and a trigram index over
+ * the terms of their name and specialty. Lookups touch only the terms that
+ * can match the query, so latency depends on the query rather than on the
+ * size of the directory.
+ */
+class TherapistSearchIndex {
+  /**
+   * @param {Object} [options]
+   * @param {Function} [options.getCollection] - Returns the therapists collection
+   * @param {Object} [options.broker] - Broker used to tell other processes about changes
+   * @param {number} [options.reloadMs] - Full reload interval when change streams aren't available
+   */
+  constructor(options = {}) {
+    this.getCollection = options.getCollection || null;
+    this.broker = options.broker || null;
+    this.reloadMs = options.reloadMs || DEFAULT_RELOAD_MS;
+
+    this._reset();
+    this.ready = false;
+    this.changeStream = null;
+    this.reloadTimer = null;
+    this.stats = { loads: 0, upserts: 0, removals: 0, queries: 0, lastLoadMs: null, source: null };
+
+    if (this.broker) {
+      this.unsubscribe = this.broker.subscribe(INDEX_CHANNEL, (message) => {
+        if (message.pid !== process.pid) {
+          this.refreshOne(message.id).catch((error) => {
+            console.error(`Failed to refresh therapist ${message.id} in the search index:`, error.message);
+          });
+        }
+      });
+    }
+  }
+
+  _reset() {
+    this.docs = new Map();          // id -> therapist document
+    this.docTerms = new Map();      // id -> [term]
+    this.postings = new Map();      // term -> Map(id -> best field weight)
+    this.grams = new Map();         // trigram -> Set(term)
+    this.trie = { children: new Map(), term: null };
+  }
+
+  _addTerm(term, id, weight) {
+    let posting = this.postings.get(term);
+    if (!posting) {
+      posting = new Map();
+      this.postings.set(term, posting);
+
+      let node = this.trie;
+      for (const char of term) {
+        if (!node.children.has(char)) {
+          node.children.set(char, { children: new Map(), term: null });
+        }
+        node = node.children.get(char);
+      }
+      node.term = term;
+
+      for (const gram of trigrams(term)) {
+        if (!this.grams.has(gram)) {
+          this.grams.set(gram, new Set());
+        }
+        this.grams.get(gram).add(term);
+      }
+    }
+    posting.set(id, Math.max(posting.get(id) || 0, weight));
+  }
+
+  _removeTerm(term, id) {
+    const posting = this.postings.get(term);
+    if (!posting) {
+      return;
+    }
+    posting.delete(id);
+    if (posting.size > 0) {
+      return;
+    }
+
+    // Last document using the term: drop it from the trie and trigram index
+    this.postings.delete(term);
+    let node = this.trie;
+    for (const char of term) {
+      node = node && node.children.get(char);
+    }
+    if (node) {
+      node.term = null;
+    }
+    for (const gram of trigrams(term)) {
+      const terms = this.grams.get(gram);
+      if (terms) {
+        terms.delete(term);
+        if (terms.size === 0) {
+          this.grams.delete(gram);
+        }
+      }
+    }
+  }
+
+  /**
+   * Add or replace a therapist
+   * @param {Object} therapist - Therapist document
+   */
+  upsert(therapist) {
+    const id = String(therapist._id);
+    this.remove(id, { count: false });
+
+    const terms = [];
+    for (const [field, weight] of Object.entries(FIELD_WEIGHTS)) {
+      for (const term of tokenize(therapist[field])) {
+        terms.push(term);
+        this._addTerm(term, id, weight);
+      }
+    }
+
+    this.docs.set(id, therapist);
+    this.docTerms.set(id, terms);
+    this.stats.upserts++;
+  }
+
+  /**
+   * Remove a therapist
+   * @param {string} id - Therapist ID
+   */
+  remove(id, { count = true } = {}) {
+    const key = String(id);
+    for (const term of this.docTerms.get(key) || []) {
+      this._removeTerm(term, key);
+    }
+    this.docTerms.delete(key);
+    if (this.docs.delete(key) && count) {
+      this.stats.removals++;
+    }
+  }
+
+  // Terms under a trie node
+  _collect(node, out) {
+    if (node.term) {
+      out.push(node.term);
+    }
+    for (const child of node.children.values()) {
+      this._collect(child, out);
+    }
+    return out;
+  }
+
+  /**
+   * Index terms a query term can match, with how well they match
+   * @param {string} token - Query term
+   * @returns {Map<string, number>} term -> match score
+   */
+  _matchTerm(token) {
+    const matches = new Map();
+    const keep = (term, score) => {
+      if (score > (matches.get(term) || 0)) {
+        matches.set(term, score);
+      }
+    };
+
+    // Exact and prefix matches from the trie
+    let node = this.trie;
+    for (const char of token) {
+      node = node.children.get(char);
+      if (!node) {
+        break;
+      }
+    }
+    if (node) {
+      for (const term of this._collect(node, [])) {
+        keep(term, term === token ? MATCH_SCORES.exact : MATCH_SCORES.prefix);
+      }
+    }
+
+    if (token.length < 3) {
+      return matches;
+    }
+
+    // Candidates sharing trigrams with the query: infix matches and typos
+    const queryGrams = trigrams(token);
+    const shared = new Map();
+    for (const gram of queryGrams) {
+      for (const term of this.grams.get(gram) || []) {
+        shared.set(term, (shared.get(term) || 0) + 1);
+      }
+    }
+
+    // Typos are only considered from four characters, where they're less ambiguous
+    const maxDistance = token.length < 4 ? 0 : token.length <= 5 ? 1 : 2;
+    const minShared = Math.max(1, queryGrams.size - 3 * Math.max(1, maxDistance));
+
+    for (const [term, count] of shared) {
+      if (matches.has(term) || count < minShared) {
+        continue;
+      }
+      if (term.includes(token)) {
+        keep(term, MATCH_SCORES.infix);
+        continue;
+      }
+      if (maxDistance === 0) {
+        continue;
+      }
+      // Compare with the whole term, and with its start for a half-typed word
+      const distance = Math.min(
+        boundedEditDistance(token, term, maxDistance),
+        boundedEditDistance(token, term.substring(0, token.length), maxDistance)
+      );
+      if (distance <= maxDistance) {
+        keep(term, MATCH_SCORES.fuzzy - 0.1 * (distance - 1));
+      }
+    }
+
+    return matches;
+  }
+
+  /**
+   * Ranked search. Every query term has to match the therapist's name or
+   * specialty, exactly, as a prefix, inside a word or with a typo.
+   * @param {string} query - Search text
+   * @param {Object} [options]
+   * @param {number} [options.limit] - Page size
+   * @param {number} [options.offset] - Results to skip
+   * @returns {Object} { results, total }
+   */
+  search(query, { limit = 50, offset = 0 } = {}) {
+    this.stats.queries++;
+    const tokens = Array.from(new Set(tokenize(query)));
+    if (tokens.length === 0) {
+      return { results: [], total: 0 };
+    }
+
+    let scores = null;
+    for (const token of tokens) {
+      const tokenScores = new Map();
+      for (const [term, matchScore] of this._matchTerm(token)) {
+        for (const [id, weight] of this.postings.get(term) || []) {
+          if (scores && !scores.has(id)) {
+            continue;
+          }
+          tokenScores.set(id, Math.max(tokenScores.get(id) || 0, matchScore * weight));
+        }
+      }
+
+      if (scores) {
+        for (const [id, score] of tokenScores) {
+          tokenScores.set(id, score + scores.get(id));
+        }
+      }
+      scores = tokenScores;
+      if (scores.size === 0) {
+        break;
+      }
+    }
+
+    const compare = (a, b) =>
+      b.score - a.score ||
+      Number(Boolean(b.doc.isPopular)) - Number(Boolean(a.doc.isPopular)) ||
+      (b.doc.rating || 0) - (a.doc.rating || 0) ||
+      String(a.doc.name).localeCompare(String(b.doc.name));
+
+    // Only the requested page is ordered: keep the best offset + limit matches
+    const wanted = offset + limit;
+    const top = [];
+    for (const [id, score] of scores) {
+      const entry = { doc: this.docs.get(id), score };
+      if (top.length === wanted && compare(entry, top[top.length - 1]) >= 0) {
+        continue;
+      }
+      let low = 0;
+      let high = top.length;
+      while (low < high) {
+        const mid = (low + high) >> 1;
+        if (compare(entry, top[mid]) < 0) {
+          high = mid;
+        } else {
+          low = mid + 1;
+        }
+      }
+      top.splice(low, 0, entry);
+      if (top.length > wanted) {
+        top.pop();
+      }
+    }
+
+    return {
+      results: top.slice(offset).map(entry => entry.doc),
+      total: scores.size
+    };
+  }
+
+  /**
+   * Rebuild the index from the collection
+   * @returns {Promise<number>} Therapists indexed
+   */
+  async load() {
+    const startedAt = Date.now();
+    const therapists = await this.getCollection().find({}).toArray();
+
+    this._reset();
+    for (const therapist of therapists) {
+      this.upsert(therapist);
+    }
+
+    this.ready = true;
+    this.stats.loads++;
+    this.stats.lastLoadMs = Date.now() - startedAt;
+    return therapists.length;
+  }
+
+  /**
+   * Reload one therapist from the collection
+   * @param {string} id - Therapist ID
+   * @returns {Promise<void>}
+   */
+  async refreshOne(id) {
+    const _id = ObjectId.isValid(id) ? new ObjectId(String(id)) : id;
+    const therapist = await this.getCollection().findOne({ _id });
+    if (therapist) {
+      this.upsert(therapist);
+    } else {
+      this.remove(id);
+    }
+  }
+
+  /**
+   * Index a therapist written by this process and tell the other processes
+   * @param {Object} therapist - Therapist document with _id
+   */
+  indexWrite(therapist) {
+    this.upsert(therapist);
+    if (this.broker) {
+      this.broker.publish(INDEX_CHANNEL, { pid: process.pid, id: String(therapist._id) });
+    }
+  }
+
+  /**
+   * Load the index and keep it current: from a change stream when MongoDB
+   * supports one (replica sets), otherwise by reloading on an interval
+   * @returns {Promise<number>} Therapists indexed
+   */
+  async start() {
+    const count = await this.load();
+
+    try {
+      this.changeStream = this.getCollection().watch([], { fullDocument: 'updateLookup' });
+      this.changeStream.on('change', (change) => {
+        if (change.operationType === 'delete') {
+          this.remove(change.documentKey._id);
+        } else if (change.fullDocument) {
+          this.upsert(change.fullDocument);
+        }
+      });
+      this.changeStream.on('error', (error) => {
+        console.warn('Therapist change stream stopped, reloading the search index periodically:', error.message);
+        this._closeChangeStream();
+        this._startReloading();
+      });
+      this.stats.source = 'changeStream';
+    } catch (error) {
+      this._startReloading();
+    }
+
+    return count;
+  }
+
+  _startReloading() {
+    if (this.reloadTimer) {
+      return;
+    }
+    this.stats.source = 'reload';
+    this.reloadTimer = setInterval(() => {
+      this.load().catch((error) => console.error('Failed to reload the therapist search index:', error.message));
+    }, this.reloadMs);
+    this.reloadTimer.unref();
+  }
+
+  _closeChangeStream() {
+    if (this.changeStream) {
+      this.changeStream.removeAllListeners();
+      this.changeStream.close().catch(() => {});
+      this.changeStream = null;
+    }
+  }
+
+  close() {
+    this._closeChangeStream();
+    clearInterval(this.reloadTimer);
+    this.reloadTimer = null;
+    if (this.unsubscribe) {
+      this.unsubscribe();
+    }
+  }
+
+  /**
+   * Index size and usage statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    return {
+      ready: this.ready,
+      therapists: this.docs.size,
+      terms: this.postings.size,
+      trigrams: this.grams.size,
+      ...this.stats
+    };
+  }
+}
+
+module.exports = {
+  TherapistSearchIndex,
+  tokenize,
+  boundedEditDistance
+};
@@ -0,0 +1,198 @@
+// services/toxicityClassifier.js - Long-lived, micro-batching toxicity classifier
+const toxicity = require('@tensorflow-models/toxicity');
+
+// Default settings - can be overridden through environment variables
+const DEFAULT_THRESHOLD = parseFloat(process.env.TOXICITY_THRESHOLD) || 0.8;
+const DEFAULT_BATCH_WINDOW_MS = parseInt(process.env.TOXICITY_BATCH_WINDOW_MS, 10) || 10;
+const DEFAULT_MAX_BATCH_SIZE = parseInt(process.env.TOXICITY_MAX_BATCH_SIZE, 10) || 32;
+const USE_MOCK_TOXICITY = process.env.USE_MOCK_TOXICITY === 'true';
+const MOCK_TOXICITY_LATENCY_MS = parseInt(process.env.MOCK_TOXICITY_LATENCY_MS, 10) || 20;
+
+/**
+ * A stand-in for the toxicity model that flags nothing after a fixed delay per
+ * batch, so chat can be benchmarked offline without downloading the model
+ * @param {Object} [options]
+ * @param {number} [options.latencyMs] - Time each classify call takes
+ * @returns {Object} Model exposing classify(texts)
+ */
+function createFakeModel(options = {}) {
+  const latencyMs = options.latencyMs != null ? options.latencyMs : MOCK_TOXICITY_LATENCY_MS;
+  return {
+    async classify(texts) {
+      await new Promise((resolve) => setTimeout(resolve, latencyMs));
+      return [{
+        label: 'toxicity',
+        results: texts.map(() => ({ probabilities: [1, 0], match: false }))
+      }];
+    }
+  };
+}
+
+/**
+ * Wraps the TensorFlow.js toxicity model so it is loaded once per process and
+ * concurrent requests are classified together in a single classify([...]) call.
+ */
+class ToxicityClassifier {
+  /**
+   * @param {Object} [options]
+   * @param {number} [options.threshold] - Minimum prediction confidence for a match
+   * @param {number} [options.batchWindowMs] - How long to collect requests before classifying
+   * @param {number} [options.maxBatchSize] - Flush immediately once this many texts are queued
+   * @param {Function} [options.loader] - Returns a promise for a model exposing classify(texts)
+   */
+  constructor(options = {}) {
+    this.threshold = options.threshold || DEFAULT_THRESHOLD;
+    this.batchWindowMs = options.batchWindowMs != null ? options.batchWindowMs : DEFAULT_BATCH_WINDOW_MS;
+    this.maxBatchSize = options.maxBatchSize || DEFAULT_MAX_BATCH_SIZE;
+    this.loader = options.loader || ((threshold) => toxicity.load(threshold));
+
+    this.model = null;
+    this.loadPromise = null;
+    this.queue = [];
+    this.flushTimer = null;
+
+    this.stats = {
+      loadTimeMs: null,
+      loadError: null,
+      batches: 0,
+      classified: 0,
+      failedBatches: 0,
+      maxBatchSize: 0,
+      maxQueueDepth: 0,
+      lastBatchSize: 0,
+      lastBatchMs: 0,
+      totalBatchMs: 0
+    };
+  }
+
+  /**
+   * Load the model once. Concurrent callers share the same promise, and a
+   * failed load is retried on the next call.
+   * @returns {Promise<Object>} The loaded model
+   */
+  load() {
+    if (this.model) {
+      return Promise.resolve(this.model);
+    }
+
+    if (!this.loadPromise) {
+      const startedAt = Date.now();
+      console.log(`Loading toxicity model (threshold ${this.threshold})...`);
+
+      this.loadPromise = Promise.resolve()
+        .then(() => this.loader(this.threshold))
+        .then((model) => {
+          this.model = model;
+          this.stats.loadTimeMs = Date.now() - startedAt;
+          this.stats.loadError = null;
+          console.log(`Toxicity model loaded in ${this.stats.loadTimeMs}ms`);
+          return model;
+        })
+        .catch((error) => {
+          this.loadPromise = null;
+          this.stats.loadError = error.message;
+          throw error;
+        });
+    }
+
+    return this.loadPromise;
+  }
+
+  /**
+   * Queue a single text for classification
+   * @param {string} text - The text to classify
+   * @returns {Promise<Object>} { harmful, category } for the given text
+   */
+  classify(text) {
+    return new Promise((resolve, reject) => {
+      this.queue.push({ text, resolve, reject });
+      this.stats.maxQueueDepth = Math.max(this.stats.maxQueueDepth, this.queue.length);
+
+      if (this.queue.length >= this.maxBatchSize) {
+        this._flush();
+      } else if (!this.flushTimer) {
+        this.flushTimer = setTimeout(() => this._flush(), this.batchWindowMs);
+      }
+    });
+  }
+
+  /**
+   * Run everything queued so far through the model as one batch
+   */
+  async _flush() {
+    if (this.flushTimer) {
+      clearTimeout(this.flushTimer);
+      this.flushTimer = null;
+    }
+
+    const batch = this.queue.splice(0, this.maxBatchSize);
+    if (batch.length === 0) {
+      return;
+    }
+
+    // Anything left over (a burst larger than one batch) gets its own flush
+    if (this.queue.length > 0) {
+      setImmediate(() => this._flush());
+    }
+
+    const startedAt = Date.now();
+
+    try {
+      const model = await this.load();
+      const predictions = await model.classify(batch.map(item => item.text));
+
+      batch.forEach((item, index) => {
+        const matched = predictions.find(prediction =>
+          prediction.results[index] && prediction.results[index].match
+        );
+
+        item.resolve(matched
+          ? { harmful: true, category: matched.label }
+          : { harmful: false });
+      });
+
+      const elapsed = Date.now() - startedAt;
+      this.stats.batches++;
+      this.stats.classified += batch.length;
+      this.stats.lastBatchSize = batch.length;
+      this.stats.lastBatchMs = elapsed;
+      this.stats.totalBatchMs += elapsed;
+      this.stats.maxBatchSize = Math.max(this.stats.maxBatchSize, batch.length);
+    } catch (error) {
+      this.stats.failedBatches++;
+      batch.forEach(item => item.reject(error));
+    }
+  }
+
+  /**
+   * Current queue depth and batch statistics
+   * @returns {Object} Metrics snapshot
+   */
+  getMetrics() {
+    const { batches, classified, totalBatchMs } = this.stats;
+
+    return {
+      modelLoaded: !!this.model,
+      queueDepth: this.queue.length,
+      batchWindowMs: this.batchWindowMs,
+      maxBatchSizeLimit: this.maxBatchSize,
+      ...this.stats,
+      avgBatchSize: batches > 0 ? +(classified / batches).toFixed(2) : 0,
+      avgBatchMs: batches > 0 ? +(totalBatchMs / batches).toFixed(2) : 0
+    };
+  }
+}
+
+// Shared instance used by the chat routes; USE_MOCK_TOXICITY=true swaps in the fake
+const toxicityClassifier = new ToxicityClassifier(USE_MOCK_TOXICITY ? {
+  loader: async () => {
+    console.log('Using the local mock toxicity model (USE_MOCK_TOXICITY=true)');
+    return createFakeModel();
+  }
+} : {});
+
+module.exports = {
+  ToxicityClassifier,
+  toxicityClassifier,
+  createFakeModel
+};
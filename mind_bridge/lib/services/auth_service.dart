@@ -185,6 +185,13 @@ class AuthService {
     return await UserPrefs.getToken();
   }
 
+  // Get the signed-in user's name - the server takes chat identity from the
+  // token, which resolves to this same name
+  static Future<String?> getCurrentUsername() async {
+    final userData = await UserPrefs.getUserData();
+    return userData?['name'] as String?;
+  }
+
   // Fetch Profile
   static Future<http.Response> fetchProfile() async {
     try {
@@ -1,6 +1,7 @@
 // lib/services/chat_api_service.dart
 import 'dart:convert';
 import 'package:http/http.dart' as http;
+import 'package:mind_bridge/services/auth_service.dart';
 import 'package:mind_bridge/views/models/chat_group.dart';
 import 'package:mind_bridge/views/models/chat_message.dart';
 import 'package:mind_bridge/views/utils/constants.dart';
@@ -14,6 +15,13 @@ class ChatApiService {
   static ChatApiService? _instance;
   static ChatApiService get instance => _instance ??= ChatApiService(currentUsername: 'DefaultUser');
 
+  // Page size the server uses for the group list
+  static const int groupPageSize = 100;
+
+  // Per-group cursors: where to load older history from, and where new messages start
+  final Map<String, String?> _olderCursors = {};
+  final Map<String, String?> _syncCursors = {};
+
   ChatApiService({required this.currentUsername});
 
   // Get all chat groups
@@ -22,23 +30,33 @@ class ChatApiService {
       // Clear any cached data first to ensure fresh state
       await _clearCachedData();
 
-      final response = await http.get(
-        Uri.parse('$baseUrl/api/chat/groups'),
-      );
+      // The server returns groups in pages; a short page is the last one
+      final List<dynamic> data = [];
+      String? after;
+      while (true) {
+        final query = after == null ? '' : '&after=$after';
+        final response = await http.get(
+          Uri.parse('$baseUrl/api/chat/groups?limit=$groupPageSize$query'),
+        );
 
-      if (response.statusCode == 200) {
-        final List<dynamic> data = json.decode(response.body);
-        final groups = data.map((item) => ChatGroup.fromJson(item)).toList();
-
-        // Mark groups that the user has joined - specific to current user
-        for (var group in groups) {
-          group.isJoined = group.membersList.contains(currentUsername);
+        if (response.statusCode != 200) {
+          throw Exception('Failed to load chat groups: ${response.statusCode}');
         }
 
-        return groups;
-      } else {
-        throw Exception('Failed to load chat groups: ${response.statusCode}');
+        final List<dynamic> page = json.decode(response.body);
+        data.addAll(page);
+        if (page.length < groupPageSize) break;
+        after = page.last['_id'];
       }
+
+      final groups = data.map((item) => ChatGroup.fromJson(item)).toList();
+
+      // Mark groups that the user has joined - specific to current user
+      for (var group in groups) {
+        group.isJoined = group.membersList.contains(currentUsername);
+      }
+
+      return groups;
     } catch (e) {
       throw Exception('Error getting chat groups: $e');
     }
@@ -66,10 +84,15 @@ class ChatApiService {
   // Join a chat group
   Future<bool> joinChatGroup(String groupId) async {
     try {
+      // The server takes the member from the login token
+      final token = await AuthService.getToken();
+      if (token == null) {
+        throw Exception('Please log in again');
+      }
+
       final response = await http.post(
         Uri.parse('$baseUrl/api/chat/groups/$groupId/join'),
-        headers: {'Content-Type': 'application/json'},
-        body: json.encode({'username': currentUsername}),
+        headers: {'Authorization': 'Bearer $token'},
       );
 
       if (response.statusCode == 200) {
@@ -86,10 +109,15 @@ class ChatApiService {
   // Leave a chat group
   Future<bool> leaveChatGroup(String groupId) async {
     try {
+      // The server takes the member from the login token
+      final token = await AuthService.getToken();
+      if (token == null) {
+        throw Exception('Please log in again');
+      }
+
       final response = await http.post(
         Uri.parse('$baseUrl/api/chat/groups/$groupId/leave'),
-        headers: {'Content-Type': 'application/json'},
-        body: json.encode({'username': currentUsername}),
+        headers: {'Authorization': 'Bearer $token'},
       );
 
       if (response.statusCode == 200) {
@@ -103,16 +131,33 @@ class ChatApiService {
     }
   }
 
-  // Get messages for a group
-  Future<List<ChatMessage>> getGroupMessages(String groupId) async {
+  // Headers for member-only requests; the server checks membership against the login token
+  Future<Map<String, String>> _authHeaders() async {
+    final token = await AuthService.getToken();
+    if (token == null) {
+      throw Exception('Please log in again');
+    }
+    return {'Authorization': 'Bearer $token'};
+  }
+
+  // Get the most recent page of messages for a group, oldest first
+  Future<List<ChatMessage>> getGroupMessages(String groupId, {int limit = 50}) async {
     try {
       final response = await http.get(
-        Uri.parse('$baseUrl/api/chat/messages/group/$groupId'),
+        Uri.parse('$baseUrl/api/chat/messages/group/$groupId?limit=$limit'),
+        headers: await _authHeaders(),
       );
 
       if (response.statusCode == 200) {
-        final List<dynamic> data = json.decode(response.body);
-        return data.map((item) => ChatMessage.fromJson(item, currentUsername)).toList();
+        final data = json.decode(response.body);
+        _olderCursors[groupId] = data['nextCursor'];
+        _syncCursors[groupId] = data['syncCursor'];
+
+        // The server sends newest first
+        final List<dynamic> messages = data['messages'];
+        return messages.reversed
+            .map((item) => ChatMessage.fromJson(item, currentUsername))
+            .toList();
       } else {
         throw Exception('Failed to load messages: ${response.statusCode}');
       }
@@ -121,6 +166,68 @@ class ChatApiService {
     }
   }
 
+  // Whether there is older history to load with getOlderMessages
+  bool hasOlderMessages(String groupId) => _olderCursors[groupId] != null;
+
+  // Load the page of messages before the oldest one loaded so far, oldest first
+  Future<List<ChatMessage>> getOlderMessages(String groupId, {int limit = 50}) async {
+    final cursor = _olderCursors[groupId];
+    if (cursor == null) return [];
+
+    try {
+      final response = await http.get(
+        Uri.parse('$baseUrl/api/chat/messages/group/$groupId?limit=$limit&before=$cursor'),
+        headers: await _authHeaders(),
+      );
+
+      if (response.statusCode == 200) {
+        final data = json.decode(response.body);
+        _olderCursors[groupId] = data['nextCursor'];
+
+        final List<dynamic> messages = data['messages'];
+        return messages.reversed
+            .map((item) => ChatMessage.fromJson(item, currentUsername))
+            .toList();
+      } else {
+        throw Exception('Failed to load older messages: ${response.statusCode}');
+      }
+    } catch (e) {
+      throw Exception('Error getting older messages: $e');
+    }
+  }
+
+  // Fetch only the messages sent since the last load or sync, oldest first
+  Future<List<ChatMessage>> getNewMessages(String groupId) async {
+    try {
+      final List<ChatMessage> newMessages = [];
+      bool hasMore = true;
+
+      while (hasMore) {
+        final cursor = _syncCursors[groupId];
+        final query = cursor == null ? '' : '?cursor=$cursor';
+        final response = await http.get(
+          Uri.parse('$baseUrl/api/chat/messages/group/$groupId/since$query'),
+          headers: await _authHeaders(),
+        );
+
+        if (response.statusCode != 200) {
+          throw Exception('Failed to sync messages: ${response.statusCode}');
+        }
+
+        final data = json.decode(response.body);
+        final List<dynamic> messages = data['messages'];
+        newMessages.addAll(
+            messages.map((item) => ChatMessage.fromJson(item, currentUsername)));
+        _syncCursors[groupId] = data['cursor'];
+        hasMore = data['hasMore'] == true;
+      }
+
+      return newMessages;
+    } catch (e) {
+      throw Exception('Error syncing messages: $e');
+    }
+  }
+
   // Send a message to a group
   Future<ChatMessage> sendMessage(String groupId, String message, bool isAnonymous) async {
     try {
@@ -136,13 +243,20 @@ class ChatApiService {
         throw Exception('Your message contains inappropriate language: ${toxicData['toxicWord']}');
       }
 
-      // Send the message
+      // Send the message; the server takes the sender from the login token
+      final token = await AuthService.getToken();
+      if (token == null) {
+        throw Exception('Please log in again');
+      }
+
       final response = await http.post(
         Uri.parse('$baseUrl/api/chat/messages/group/$groupId'),
-        headers: {'Content-Type': 'application/json'},
+        headers: {
+          'Content-Type': 'application/json',
+          'Authorization': 'Bearer $token',
+        },
         body: json.encode({
           'message': message,
-          'sender': currentUsername,
           'isAnonymous': isAnonymous,
         }),
       );
@@ -1,6 +1,8 @@
 // lib/services/chat_socket_service.dart
+import 'dart:async';
 import 'package:flutter/foundation.dart';
 import 'package:socket_io_client/socket_io_client.dart' as IO;
+import 'auth_service.dart';
 import '../views/models/chat_message.dart';
 import '../views/utils/constants.dart';
 
@@ -15,6 +17,21 @@ class ChatSocketService {
   final Function(Map<String, dynamic>) onMessageError;
   final Function(Map<String, dynamic>) onUserTyping;
 
+  // Groups this socket has joined, re-joined automatically after a reconnect
+  final Set<String> _joinedGroups = {};
+
+  // Last message sequence number seen per group, used to detect gaps and resume
+  final Map<String, int> _lastSeq = {};
+  final Set<String> _resumeInFlight = {};
+  bool _hasConnected = false;
+
+  // Live messages that arrived after a gap, shown once the resume answers
+  final Map<String, Map<int, dynamic>> _held = {};
+  final Map<String, Timer> _resumeTimers = {};
+
+  // How long to wait for a resume before showing held messages anyway
+  static const Duration _resumeTimeout = Duration(seconds: 5);
+
   ChatSocketService({
     required this.currentUsername,
     required this.onNewMessage,
@@ -37,16 +54,59 @@ class ChatSocketService {
             .build(),
       );
 
-      socket.connect();
+      // The server identifies the user from the login token in the handshake
+      // and checks group membership for them. Emits made before the token is
+      // loaded are buffered until the socket connects.
+      AuthService.getToken().then((token) {
+        socket.auth = {'token': token};
+        socket.connect();
+      }).catchError((e) {
+        debugPrint('Error loading token for socket: $e');
+      });
 
       socket.onConnect((_) {
         debugPrint('Socket connected');
+        _resumeInFlight.clear();
+        _cancelResumeTimers();
+
+        // After a reconnect, rejoin rooms and fetch anything missed while offline
+        if (_hasConnected) {
+          for (final groupId in _joinedGroups) {
+            socket.emit('joinGroup', groupId);
+            _requestResume(groupId);
+          }
+        }
+        _hasConnected = true;
       });
 
       // Setup event listeners
       socket.on('receiveMessage', (data) {
-        // Pass data directly to the callback
-        onNewMessage(data);
+        if (_shouldDeliver(data)) {
+          onNewMessage(data);
+        }
+      });
+
+      socket.on('resumeMessages', (data) {
+        if (data is! Map || data['groupId'] is! String) return;
+        final String groupId = data['groupId'];
+        _endResume(groupId);
+
+        // The server sends everything it has after sinceSeq, in order. A seq it
+        // skips was never stored (lost in a crash, or an unused block of ids),
+        // so it is stepped over instead of being asked for again.
+        final messages = data['messages'];
+        if (messages is List) {
+          for (final message in messages) {
+            _deliverInOrder(groupId, message);
+          }
+        }
+
+        // Keep paging until we've caught up, then show what was held back
+        if (data['hasMore'] == true) {
+          _requestResume(groupId);
+        } else {
+          _releaseHeld(groupId);
+        }
       });
 
       socket.on('memberJoined', (data) {
@@ -89,13 +149,108 @@ class ChatSocketService {
   }
 
   void joinGroup(String groupId) {
+    _joinedGroups.add(groupId);
     socket.emit('joinGroup', groupId);
   }
 
   void leaveGroup(String groupId) {
+    _joinedGroups.remove(groupId);
+    _lastSeq.remove(groupId);
+    _held.remove(groupId);
+    _endResume(groupId);
     socket.emit('leaveGroup', groupId);
   }
 
+  /// Record the newest sequence number already shown for a group (e.g. after
+  /// loading history), so only newer messages are delivered from then on
+  void setLastSeq(String groupId, int seq) {
+    final current = _lastSeq[groupId];
+    if (current == null || seq > current) {
+      _lastSeq[groupId] = seq;
+    }
+  }
+
+  /// Drop duplicates and ask the server for missed messages when a gap shows up
+  bool _shouldDeliver(dynamic data) {
+    if (data is! Map) return true;
+
+    final groupId = data['groupId'];
+    final seq = data['seq'];
+    if (groupId is! String || seq is! num) {
+      return true; // Messages without a sequence number are always shown
+    }
+
+    final last = _lastSeq[groupId];
+    if (last != null && seq <= last) {
+      return false;
+    }
+
+    if (last != null && seq > last + 1) {
+      // Hold this one back until the missing messages are fetched
+      (_held[groupId] ??= {})[seq.toInt()] = data;
+      _requestResume(groupId);
+      return false;
+    }
+
+    _lastSeq[groupId] = seq.toInt();
+    return true;
+  }
+
+  /// Show a message from a resume page unless it was already shown
+  void _deliverInOrder(String groupId, dynamic message) {
+    final seq = message is Map ? message['seq'] : null;
+    if (seq is! num) {
+      onNewMessage(message);
+      return;
+    }
+
+    final last = _lastSeq[groupId];
+    if (last != null && seq <= last) return;
+    _lastSeq[groupId] = seq.toInt();
+    onNewMessage(message);
+  }
+
+  /// Show held live messages in order, skipping any seq that never arrived
+  void _releaseHeld(String groupId) {
+    final held = _held.remove(groupId);
+    if (held == null) return;
+
+    final seqs = held.keys.toList()..sort();
+    for (final seq in seqs) {
+      _deliverInOrder(groupId, held[seq]);
+    }
+  }
+
+  void _requestResume(String groupId) {
+    final last = _lastSeq[groupId];
+    if (last == null || _resumeInFlight.contains(groupId)) return;
+
+    _resumeInFlight.add(groupId);
+    socket.emit('resumeGroup', {
+      'groupId': groupId,
+      'sinceSeq': last,
+    });
+
+    // If the server doesn't answer, stop waiting for the gap to fill
+    _resumeTimers[groupId] = Timer(_resumeTimeout, () {
+      debugPrint('Resume timed out for group $groupId, skipping the gap');
+      _endResume(groupId);
+      _releaseHeld(groupId);
+    });
+  }
+
+  void _endResume(String groupId) {
+    _resumeInFlight.remove(groupId);
+    _resumeTimers.remove(groupId)?.cancel();
+  }
+
+  void _cancelResumeTimers() {
+    for (final timer in _resumeTimers.values) {
+      timer.cancel();
+    }
+    _resumeTimers.clear();
+  }
+
   void sendMessage(String groupId, String message, bool isAnonymous) {
     socket.emit('newMessage', {
       'groupId': groupId,
@@ -115,6 +270,7 @@ class ChatSocketService {
 
   void disconnect() {
     try {
+      _cancelResumeTimers();
       socket.disconnect();
       debugPrint('Socket disconnected successfully');
     } catch (e) {
@@ -0,0 +1,105 @@
+// lib/services/feed_service.dart
+import 'dart:convert';
+import 'package:flutter/foundation.dart';
+import 'package:http/http.dart' as http;
+import 'package:mind_bridge/views/utils/constants.dart';
+import 'package:shared_preferences/shared_preferences.dart';
+
+// One page of the meditation feed
+class FeedPage {
+  final List<dynamic> items;
+  final String? nextCursor;
+  final bool fromCache;
+
+  FeedPage({required this.items, this.nextCursor, this.fromCache = false});
+}
+
+// Loads the feed a page at a time. The first page of each category is kept
+// on the device with its ETag, so it can be shown straight away and then
+// revalidated: the server answers 304 with no body when nothing changed.
+class FeedService {
+  static const String baseUrl = ApiConstants.baseUrl;
+  static const String _cachePrefix = 'feed_page:';
+
+  // Page size requested from the server (it allows up to 100)
+  static const int pageSize = 20;
+
+  static FeedService? _instance;
+  static FeedService get instance => _instance ??= FeedService();
+
+  // Later pages are only kept for as long as the app runs
+  final Map<String, Map<String, dynamic>> _memoryCache = {};
+
+  String _pageUrl(String category, String? cursor) {
+    final params = <String, String>{'limit': '$pageSize'};
+    if (category != 'All') params['category'] = category;
+    if (cursor != null) params['cursor'] = cursor;
+    return Uri.parse('$baseUrl/api/feed').replace(queryParameters: params).toString();
+  }
+
+  Future<Map<String, dynamic>?> _readCached(String url, bool persisted) async {
+    if (!persisted) return _memoryCache[url];
+    try {
+      final prefs = await SharedPreferences.getInstance();
+      final stored = prefs.getString('$_cachePrefix$url');
+      return stored == null ? null : json.decode(stored) as Map<String, dynamic>;
+    } catch (e) {
+      debugPrint('Error reading cached feed page: $e');
+      return null;
+    }
+  }
+
+  Future<void> _writeCached(String url, bool persisted, Map<String, dynamic> entry) async {
+    _memoryCache[url] = entry;
+    if (!persisted) return;
+    try {
+      final prefs = await SharedPreferences.getInstance();
+      await prefs.setString('$_cachePrefix$url', json.encode(entry));
+    } catch (e) {
+      debugPrint('Error caching feed page: $e');
+    }
+  }
+
+  FeedPage _toPage(Map<String, dynamic> entry, {required bool fromCache}) {
+    return FeedPage(
+      items: json.decode(entry['body']) as List<dynamic>,
+      nextCursor: entry['nextCursor'],
+      fromCache: fromCache,
+    );
+  }
+
+  // The stored copy of the first page, without going to the network
+  Future<FeedPage?> getCachedPage({String category = 'All'}) async {
+    final entry = await _readCached(_pageUrl(category, null), true);
+    return entry == null ? null : _toPage(entry, fromCache: true);
+  }
+
+  // Fetch a page, sending the validators of any stored copy
+  Future<FeedPage> getPage({String category = 'All', String? cursor}) async {
+    final url = _pageUrl(category, cursor);
+    final persisted = cursor == null;
+    final cached = await _readCached(url, persisted);
+
+    final headers = <String, String>{};
+    if (cached != null && cached['etag'] != null) {
+      headers['If-None-Match'] = cached['etag'];
+    }
+
+    final response = await http.get(Uri.parse(url), headers: headers);
+
+    if (response.statusCode == 304 && cached != null) {
+      return _toPage(cached, fromCache: true);
+    }
+    if (response.statusCode != 200) {
+      throw Exception('Failed to load meditations: ${response.statusCode}');
+    }
+
+    final entry = <String, dynamic>{
+      'body': response.body,
+      'etag': response.headers['etag'],
+      'nextCursor': response.headers['x-next-cursor'],
+    };
+    await _writeCached(url, persisted, entry);
+    return _toPage(entry, fromCache: false);
+  }
+}
@@ -1,10 +1,12 @@
 // lib/services/mood_service.dart
+import 'dart:async';
 import 'dart:convert';
 import 'package:flutter/foundation.dart';
 import 'package:http/http.dart' as http;
 import 'dart:io' show Platform;
 import 'user_prefs.dart'; // Import user preferences
 import 'auth_service.dart'; // Import auth service for token
+import 'mood_store.dart'; // Moods kept on the device between syncs
 
 class MoodService {
   final String baseUrl;
@@ -16,6 +18,18 @@ class MoodService {
     "Mon": 0, "Tue": 0, "Wed": 0, "Thu": 0, "Fri": 0, "Sat": 0, "Sun": 0
   };
 
+  // Moods stored on the device; writes go here first and are synced in batches
+  MoodStore? _store;
+  Future<bool>? _syncInFlight;
+  Timer? _syncTimer;
+
+  // Changes made close together go out in one request
+  static const Duration _syncDelay = Duration(seconds: 2);
+  static const Duration _initialRetryDelay = Duration(seconds: 5);
+  static const Duration _maxRetryDelay = Duration(minutes: 5);
+  static const int _maxSyncBatch = 100; // Server's limit per sync request
+  Duration _retryDelay = _initialRetryDelay;
+
   MoodService({required this.baseUrl});
 
   // Initialize service - IMPORTANT: Call this before using any methods
@@ -42,126 +56,97 @@ class MoodService {
     }
   }
 
-  // Get weekly moods from API
-  Future<Map<String, int>> getWeeklyMoods({bool forceRefresh = false}) async {
+  // Load the local mood store for the current user
+  Future<MoodStore?> _getStore() async {
     // If we have no userId, try to get it again (might have logged in since initialize)
     if (_userId == null) {
       _userId = await AuthService.getCurrentUserId();
-
-      // If still null, return empty data
       if (_userId == null) {
-        debugPrint('Cannot fetch moods: No user ID available');
-        return _cachedWeeklyMoods;
+        debugPrint('Cannot use mood store: No user ID available');
+        return null;
       }
     }
 
-    // If not forcing refresh and we have cached data, return it
-    if (!forceRefresh && _cachedWeeklyMoods.values.any((value) => value > 0)) {
-      return _cachedWeeklyMoods;
+    if (_store == null || _store!.userId != _userId) {
+      _store = await MoodStore.load(_userId!);
     }
+    return _store;
+  }
 
-    try {
-      // Add authentication token if available
-      final headers = <String, String>{
-        'Content-Type': 'application/json',
-      };
+  // Weekly moods from the device only, for drawing the chart straight away
+  Future<Map<String, int>> getCachedWeeklyMoods() async {
+    final store = await _getStore();
+    if (store == null) return _cachedWeeklyMoods;
 
-      if (_token != null) {
-        headers['Authorization'] = 'Bearer $_token';
-      }
+    _cachedWeeklyMoods = store.weeklyMoods();
+    return _cachedWeeklyMoods;
+  }
 
-      // Make the API request
-      debugPrint('Fetching weekly moods from: $_apiUrl/weekly?userId=$_userId');
-      final response = await http.get(
-        Uri.parse('$_apiUrl/weekly?userId=$_userId'),
-        headers: headers,
-      );
+  // Get weekly moods; with forceRefresh, sync with the server first
+  Future<Map<String, int>> getWeeklyMoods({bool forceRefresh = false}) async {
+    final store = await _getStore();
+    if (store == null) return _cachedWeeklyMoods;
 
-      if (response.statusCode == 200) {
-        final data = jsonDecode(response.body);
-        debugPrint('Received mood data: $data');
-
-        // Update cached data with the response
-        final Map<String, int> weeklyMoods = {
-          "Mon": data['Mon'] ?? 0,
-          "Tue": data['Tue'] ?? 0,
-          "Wed": data['Wed'] ?? 0,
-          "Thu": data['Thu'] ?? 0,
-          "Fri": data['Fri'] ?? 0,
-          "Sat": data['Sat'] ?? 0,
-          "Sun": data['Sun'] ?? 0,
-        };
-
-        _cachedWeeklyMoods = weeklyMoods;
-        return weeklyMoods;
-      } else {
-        debugPrint('Failed to load moods. Status: ${response.statusCode}, Body: ${response.body}');
-        return _cachedWeeklyMoods;
-      }
-    } catch (e) {
-      debugPrint('Error fetching weekly moods: $e');
-      return _cachedWeeklyMoods;
+    if (forceRefresh || !store.hasData) {
+      await sync();
     }
+
+    _cachedWeeklyMoods = store.weeklyMoods();
+    return _cachedWeeklyMoods;
   }
 
   // Check if user has a mood for today
   Future<bool> hasTodayMood() async {
-    // If we have no userId, try to get it again
-    if (_userId == null) {
-      _userId = await AuthService.getCurrentUserId();
+    final store = await _getStore();
+    if (store == null) return false;
 
-      // If still null, return false
-      if (_userId == null) {
-        debugPrint('Cannot check today mood: No user ID available');
-        return false;
-      }
+    // Only ask the server when this device has never synced
+    if (store.entryFor(DateTime.now()) == null && store.syncedAt == null) {
+      await sync();
     }
+    return store.entryFor(DateTime.now()) != null;
+  }
 
-    try {
-      // Add authentication token if available
-      final headers = <String, String>{
-        'Content-Type': 'application/json',
-      };
+  // Save today's mood. It is stored on the device right away and sent to the
+  // server with the next sync; the latest change of the day wins.
+  Future<bool> saveMood(String mood, {String notes = ""}) async {
+    final store = await _getStore();
+    if (store == null) {
+      debugPrint('Cannot save mood: No user ID available');
+      return false;
+    }
 
-      if (_token != null) {
-        headers['Authorization'] = 'Bearer $_token';
-      }
+    debugPrint('Saving mood: $mood for user: $_userId');
+    await store.put(mood, notes: notes);
+    _cachedWeeklyMoods = store.weeklyMoods();
+    _scheduleSync(_syncDelay);
+    return true;
+  }
 
-      // Make the API request
-      final response = await http.get(
-        Uri.parse('$_apiUrl/today?userId=$_userId'),
-        headers: headers,
-      );
+  // Update today's mood (same as saving: the newer change replaces the older)
+  Future<bool> updateTodayMood(String mood, {String notes = ""}) {
+    return saveMood(mood, notes: notes);
+  }
 
-      if (response.statusCode == 200) {
-        final data = jsonDecode(response.body);
-        return data['hasMood'] ?? false;
-      } else {
-        debugPrint('Failed to check today mood. Status: ${response.statusCode}');
-        return false;
-      }
-    } catch (e) {
-      debugPrint('Error checking today mood: $e');
-      return false;
-    }
+  // Send every pending change in one request and take in the server's state.
+  // Calls made while a sync is running share it.
+  Future<bool> sync() {
+    _syncTimer?.cancel();
+    return _syncInFlight ??= _runSync().whenComplete(() => _syncInFlight = null);
   }
 
-  // Save mood
-  Future<bool> saveMood(String mood, {String notes = ""}) async {
-    // If we have no userId, try to get it again
-    if (_userId == null) {
-      _userId = await AuthService.getCurrentUserId();
+  void _scheduleSync(Duration delay) {
+    _syncTimer?.cancel();
+    _syncTimer = Timer(delay, sync);
+  }
 
-      // If still null, cannot save
-      if (_userId == null) {
-        debugPrint('Cannot save mood: No user ID available');
-        return false;
-      }
-    }
+  Future<bool> _runSync() async {
+    final store = await _getStore();
+    if (store == null) return false;
 
-    try {
-      debugPrint('Saving mood: $mood for user: $_userId');
+    final entries = store.pendingEntries(limit: _maxSyncBatch);
 
+    try {
       // Add authentication token if available
       final headers = <String, String>{
         'Content-Type': 'application/json',
@@ -171,88 +156,62 @@ class MoodService {
         headers['Authorization'] = 'Bearer $_token';
       }
 
-      // Make the API request
+      debugPrint('Syncing ${entries.length} mood changes to: $_apiUrl/sync');
       final response = await http.post(
-        Uri.parse(_apiUrl),
+        Uri.parse('$_apiUrl/sync'),
         headers: headers,
         body: jsonEncode({
           'userId': _userId,
-          'mood': mood,
-          'notes': notes,
+          'entries': entries,
+          // Minutes east of UTC, for moods the server has without a day key
+          'tzOffset': DateTime.now().timeZoneOffset.inMinutes,
         }),
       );
 
-      // Log response for debugging
-      debugPrint('Save mood response: ${response.statusCode} - ${response.body}');
-
-      if (response.statusCode == 200 || response.statusCode == 201) {
-        final data = jsonDecode(response.body);
-
-        // If the server says the mood already exists, that's still a success
-        if (data['exists'] == true) {
-          debugPrint('Mood already exists for today');
-        }
+      if (response.statusCode != 200) {
+        debugPrint('Failed to sync moods. Status: ${response.statusCode}, Body: ${response.body}');
+        _retryLater(store);
+        return false;
+      }
 
-        // Update the local weekly moods cache with the new mood
-        await getWeeklyMoods(forceRefresh: true);
+      final data = jsonDecode(response.body) as Map<String, dynamic>;
+      store.applySyncResult(entries, data);
+      await store.save();
+      _cachedWeeklyMoods = store.weeklyMoods();
+      _retryDelay = _initialRetryDelay;
 
-        return true;
-      } else {
-        debugPrint('Failed to save mood. Status: ${response.statusCode}, Body: ${response.body}');
-        return false;
+      // Changes made during the request, or more than one batch, go next
+      if (store.hasPending) {
+        _scheduleSync(_syncDelay);
       }
+      return true;
     } catch (e) {
-      debugPrint('Error saving mood: $e');
+      debugPrint('Error syncing moods: $e');
+      _retryLater(store);
       return false;
     }
   }
 
-  // Update today's mood
-  Future<bool> updateTodayMood(String mood, {String notes = ""}) async {
-    // If we have no userId, try to get it again
-    if (_userId == null) {
-      _userId = await AuthService.getCurrentUserId();
-
-      // If still null, cannot update
-      if (_userId == null) {
-        debugPrint('Cannot update mood: No user ID available');
-        return false;
-      }
-    }
-
-    try {
-      // Add authentication token if available
-      final headers = <String, String>{
-        'Content-Type': 'application/json',
-      };
+  // Offline or failing: try again with a growing delay while changes are waiting
+  void _retryLater(MoodStore store) {
+    if (!store.hasPending) return;
+    _scheduleSync(_retryDelay);
+    final doubled = _retryDelay * 2;
+    _retryDelay = doubled > _maxRetryDelay ? _maxRetryDelay : doubled;
+  }
 
-      if (_token != null) {
-        headers['Authorization'] = 'Bearer $_token';
-      }
+  // Get the dashboard summary: weekly view, recent days, weekly averages and totals.
+  // The server builds it from a single rollup document per user and returns it
+  // with every sync; the weekly view includes changes not synced yet.
+  Future<Map<String, dynamic>?> getMoodSummary() async {
+    final store = await _getStore();
+    if (store == null) return null;
 
-      // Make the API request
-      final response = await http.put(
-        Uri.parse('$_apiUrl/today'),
-        headers: headers,
-        body: jsonEncode({
-          'userId': _userId,
-          'mood': mood,
-          'notes': notes,
-        }),
-      );
+    await sync();
 
-      if (response.statusCode == 200) {
-        // Update the local weekly moods cache with the updated mood
-        await getWeeklyMoods(forceRefresh: true);
-        return true;
-      } else {
-        debugPrint('Failed to update mood. Status: ${response.statusCode}');
-        return false;
-      }
-    } catch (e) {
-      debugPrint('Error updating mood: $e');
-      return false;
-    }
+    final summary = store.summary;
+    if (summary == null) return null;
+    return {...summary, 'weekly': store.weeklyMoods()};
   }
 
   // Get mood history
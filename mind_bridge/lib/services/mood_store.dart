@@ -0,0 +1,187 @@
+// lib/services/mood_store.dart
+import 'dart:convert';
+import 'package:flutter/foundation.dart';
+import 'package:shared_preferences/shared_preferences.dart';
+
+// Mood values, matching the server's mood config
+const Map<String, int> moodValues = {
+  "Happy": 3,
+  "Sad": 1,
+  "Calm": 2,
+  "Angry": 4,
+  "Relaxed": 5,
+};
+
+// The user's moods kept on the device, one per day, so charts can be drawn
+// without waiting for the network. Changes made here are marked pending
+// until the server has accepted them in a sync.
+class MoodStore {
+  static const String _keyPrefix = 'mood_store:';
+  static const List<String> _weekdays = ["Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"];
+
+  final String userId;
+
+  // Keyed by local date, 'YYYY-MM-DD'
+  final Map<String, Map<String, dynamic>> _days;
+  Map<String, dynamic>? summary;
+  DateTime? syncedAt;
+
+  MoodStore._(this.userId, this._days, this.summary, this.syncedAt);
+
+  static String dayKey(DateTime date) {
+    final local = date.toLocal();
+    final month = local.month.toString().padLeft(2, '0');
+    final day = local.day.toString().padLeft(2, '0');
+    return '${local.year}-$month-$day';
+  }
+
+  // Load the stored moods for a user (empty if there are none yet)
+  static Future<MoodStore> load(String userId) async {
+    try {
+      final prefs = await SharedPreferences.getInstance();
+      final stored = prefs.getString('$_keyPrefix$userId');
+      if (stored != null) {
+        final data = jsonDecode(stored) as Map<String, dynamic>;
+        final days = (data['days'] as Map<String, dynamic>? ?? {}).map(
+            (day, entry) => MapEntry(day, Map<String, dynamic>.from(entry)));
+        return MoodStore._(
+          userId,
+          days,
+          data['summary'],
+          data['syncedAt'] == null ? null : DateTime.parse(data['syncedAt']),
+        );
+      }
+    } catch (e) {
+      debugPrint('Error loading stored moods: $e');
+    }
+    return MoodStore._(userId, {}, null, null);
+  }
+
+  Future<void> save() async {
+    try {
+      final prefs = await SharedPreferences.getInstance();
+      await prefs.setString('$_keyPrefix$userId', jsonEncode({
+        'days': _days,
+        'summary': summary,
+        'syncedAt': syncedAt?.toIso8601String(),
+      }));
+    } catch (e) {
+      debugPrint('Error saving stored moods: $e');
+    }
+  }
+
+  bool get hasData => syncedAt != null || _days.isNotEmpty;
+
+  bool get hasPending => _days.values.any((entry) => entry['pending'] == true);
+
+  Map<String, dynamic>? entryFor(DateTime date) => _days[dayKey(date)];
+
+  // Record the mood for a day; it stays pending until synced
+  Future<void> put(String mood, {String? notes, DateTime? date}) async {
+    final now = DateTime.now();
+    final day = date ?? now;
+    final existing = _days[dayKey(day)];
+    _days[dayKey(day)] = {
+      'mood': mood,
+      'moodValue': moodValues[mood] ?? 0,
+      'notes': notes ?? existing?['notes'] ?? '',
+      'date': day.toUtc().toIso8601String(),
+      'updatedAt': now.toUtc().toIso8601String(),
+      'pending': true,
+    };
+    await save();
+  }
+
+  // Pending changes in the form the sync endpoint takes, oldest day first.
+  // Each carries its day key, so the server files it under the same day.
+  List<Map<String, dynamic>> pendingEntries({int limit = 100}) {
+    final days = _days.keys.where((day) => _days[day]!['pending'] == true).toList()..sort();
+    return days.take(limit).map((day) {
+      final entry = _days[day]!;
+      return {
+        'day': day,
+        'mood': entry['mood'],
+        'notes': entry['notes'],
+        'date': entry['date'],
+        'updatedAt': entry['updatedAt'],
+      };
+    }).toList();
+  }
+
+  // Fold the server's answer to a sync into the store
+  void applySyncResult(List<Map<String, dynamic>> sent, Map<String, dynamic> result) {
+    final rejected = {
+      for (final item in (result['rejected'] as List? ?? [])) item['index'] as int
+    };
+
+    // Sent entries are settled, unless they were changed again since
+    for (var i = 0; i < sent.length; i++) {
+      final day = sent[i]['day'] as String;
+      final entry = _days[day];
+      if (entry == null || entry['updatedAt'] != sent[i]['updatedAt']) continue;
+      if (rejected.contains(i)) {
+        debugPrint('Server rejected mood for $day, dropping it');
+        _days.remove(day);
+      } else {
+        entry['pending'] = false;
+      }
+    }
+
+    // The server had a newer change for these days; it wins
+    for (final mood in (result['conflicts'] as List? ?? [])) {
+      final day = mood['day'] as String? ?? dayKey(DateTime.parse(mood['date']));
+      final entry = _days[day];
+      if (entry != null && entry['pending'] == true) continue;
+      _days[day] = {
+        'mood': mood['mood'],
+        'moodValue': mood['moodValue'],
+        'notes': mood['notes'] ?? '',
+        'date': mood['date'],
+        'updatedAt': mood['updatedAt'],
+        'pending': false,
+      };
+    }
+
+    // Everything not pending is replaced by the server's recent days, which
+    // also brings in moods saved on other devices. The server keys them by the
+    // day each device sent, so they line up with the keys here.
+    final summary = result['summary'] as Map<String, dynamic>?;
+    if (summary != null) {
+      final pending = Map.fromEntries(
+          _days.entries.where((entry) => entry.value['pending'] == true));
+      final settled = Map.fromEntries(
+          _days.entries.where((entry) => entry.value['pending'] != true));
+      _days
+        ..clear()
+        ..addAll(pending);
+      for (final day in (summary['daily'] as List? ?? [])) {
+        final key = day['date'] as String;
+        if (pending.containsKey(key)) continue;
+        final previous = settled[key];
+        _days[key] = {
+          'mood': day['mood'],
+          'moodValue': day['moodValue'],
+          'notes': previous?['notes'] ?? '',
+          'date': previous?['date'] ?? DateTime.parse(key).toUtc().toIso8601String(),
+          'updatedAt': previous?['updatedAt'],
+          'pending': false,
+        };
+      }
+      this.summary = summary;
+    }
+
+    syncedAt = DateTime.now();
+  }
+
+  // Mood value for each of the last seven days, keyed by weekday
+  Map<String, int> weeklyMoods() {
+    final weekly = {for (final day in _weekdays) day: 0};
+    final now = DateTime.now();
+    for (var i = 0; i < 7; i++) {
+      final date = DateTime(now.year, now.month, now.day - i);
+      final entry = _days[dayKey(date)];
+      weekly[_weekdays[date.weekday - 1]] = entry == null ? 0 : (entry['moodValue'] as num).toInt();
+    }
+    return weekly;
+  }
+}
@@ -29,6 +29,7 @@ class _ChatbotPageState extends State<ChatbotPage> with TickerProviderStateMixin
   bool _isLoading = false;
   bool _isBackendAvailable = true; // Set to true to connect to the backend
   String _backendUrl = 'http://192.168.1.2:5001/chat'; // Update with your backend URL
+  bool _useStreaming = true; // Render replies as they are generated (falls back to /chat)
 
   // Animation controllers
   late AnimationController _sendButtonController;
@@ -86,6 +87,16 @@ class _ChatbotPageState extends State<ChatbotPage> with TickerProviderStateMixin
     // Scroll to bottom after adding message
     WidgetsBinding.instance.addPostFrameCallback((_) => _scrollToBottom());
 
+    if (_isBackendAvailable && _useStreaming) {
+      try {
+        if (await _streamReply(message)) {
+          return;
+        }
+      } catch (e) {
+        print('Streaming failed, falling back to $_backendUrl: $e'); // Debug log
+      }
+    }
+
     if (_isBackendAvailable) {
       try {
         print('Sending request to: $_backendUrl'); // Debug log
@@ -154,6 +165,98 @@ class _ChatbotPageState extends State<ChatbotPage> with TickerProviderStateMixin
     }
   }
 
+  // Stream the reply from /chat/stream (Server-Sent Events) and grow the bot
+  // message as chunks arrive. Returns false when nothing was shown, so the
+  // caller can fall back to the regular /chat request.
+  Future<bool> _streamReply(String message) async {
+    final client = http.Client();
+    final stopwatch = Stopwatch()..start();
+    int? botIndex;
+    String reply = '';
+
+    // Replace the streamed bot message with the text received so far
+    void showReply(String content) {
+      if (!mounted) return;
+      setState(() {
+        final updated = Message(role: 'bot', content: content, timestamp: DateTime.now());
+        if (botIndex == null) {
+          _messages.add(updated);
+          botIndex = _messages.length - 1;
+        } else {
+          _messages[botIndex!] = updated;
+        }
+        _isLoading = false;
+      });
+      WidgetsBinding.instance.addPostFrameCallback((_) => _scrollToBottom());
+    }
+
+    try {
+      final request = http.Request('POST', Uri.parse('$_backendUrl/stream'))
+        ..headers['Content-Type'] = 'application/json'
+        ..headers['Accept'] = 'text/event-stream'
+        ..body = jsonEncode({
+          'message': message,
+          'userId': '12345', // You can remove this if not needed
+        });
+
+      final response = await client.send(request).timeout(Duration(seconds: 15));
+      if (response.statusCode != 200) {
+        print('Stream request returned ${response.statusCode}'); // Debug log
+        return false;
+      }
+
+      String event = 'message';
+      final lines = response.stream.transform(utf8.decoder).transform(const LineSplitter());
+
+      await for (final line in lines) {
+        if (line.startsWith('event:')) {
+          event = line.substring(6).trim();
+          continue;
+        }
+        if (!line.startsWith('data:')) {
+          continue;
+        }
+
+        final data = jsonDecode(line.substring(5).trim());
+
+        if (event == 'chunk') {
+          if (reply.isEmpty) {
+            print('Time to first token: ${stopwatch.elapsedMilliseconds}ms'); // Debug log
+          }
+          reply += data['text'] ?? '';
+          showReply(reply);
+        } else if (event == 'done') {
+          showReply(data['reply'] ?? reply);
+          if (data['status'] == 'crisis') {
+            _showSuicidalThoughtWarning();
+          }
+          return true;
+        } else if (event == 'error') {
+          if (botIndex == null) {
+            return false;
+          }
+          showReply('$reply\n\n${data['error']}');
+          return true;
+        }
+      }
+
+      // The connection closed before the done event
+      if (botIndex == null) {
+        return false;
+      }
+      return true;
+    } catch (e) {
+      // Keep the partial reply instead of asking again
+      if (botIndex != null) {
+        print('Stream interrupted: $e'); // Debug log
+        return true;
+      }
+      rethrow;
+    } finally {
+      client.close();
+    }
+  }
+
   void _showSuicidalThoughtWarning() {
     showDialog(
       context: context,
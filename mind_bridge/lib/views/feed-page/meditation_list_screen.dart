@@ -1,13 +1,11 @@
 import 'package:flutter/material.dart';
-import 'package:http/http.dart' as http;
-import 'dart:convert';
 import 'package:url_launcher/url_launcher.dart';
 import '../widgets/bottom_navbar.dart';
 import '../therapist_dashboard/appointment_screen.dart';
 import '../profile_setup_page/profile_setup_screen.dart';
 import '../feed-page/meditation_detail_screen.dart';
 import '../home/home_page.dart';
-import 'dart:math' as Math;
+import '../../services/feed_service.dart';
 
 class MeditationListScreen extends StatefulWidget {
   const MeditationListScreen({super.key});
@@ -23,43 +21,90 @@ class _MeditationListScreenState extends State<MeditationListScreen> {
   String errorMessage = "";
   String selectedFilter = "All"; // Added filter state
 
-  // ✅ Backend API URL (Updated to match backend endpoint)
-  final String apiUrl = "http://localhost:5001/api/feed";
+  // ✅ Feed pages come from the backend, with the first page cached on the device
+  final FeedService _feedService = FeedService.instance;
+  final ScrollController _scrollController = ScrollController();
+  String? nextCursor;
+  bool isLoadingMore = false;
 
   @override
   void initState() {
     super.initState();
+    _scrollController.addListener(_onScroll);
     fetchMeditations();
   }
 
-  // ✅ Function to Fetch Meditations from Backend - Simplified without auth
-  Future<void> fetchMeditations() async {
-    try {
-      print("Fetching meditations from: $apiUrl");
-      final response = await http.get(Uri.parse(apiUrl));
+  @override
+  void dispose() {
+    _scrollController.dispose();
+    super.dispose();
+  }
 
-      print("Response status: ${response.statusCode}");
-      print("Response body: ${response.body.substring(0, Math.min(100, response.body.length))}...");
+  // ✅ Function to Fetch Meditations from Backend - shows the cached page first, then revalidates
+  Future<void> fetchMeditations() async {
+    final filter = selectedFilter;
+    final cached = await _feedService.getCachedPage(category: filter);
+    if (cached != null && mounted && filter == selectedFilter) {
+      setState(() {
+        meditations = cached.items;
+        nextCursor = cached.nextCursor;
+        isLoading = false;
+      });
+    }
 
-      if (response.statusCode == 200) {
-        setState(() {
-          meditations = json.decode(response.body);
-          isLoading = false;
-        });
-      } else {
-        throw Exception("Failed to load meditations: ${response.statusCode}");
-      }
+    try {
+      final page = await _feedService.getPage(category: filter);
+      if (!mounted || filter != selectedFilter) return;
+      setState(() {
+        meditations = page.items;
+        nextCursor = page.nextCursor;
+        isLoading = false;
+      });
     } catch (e) {
       print("Error fetching meditations: $e");
+      if (!mounted || cached != null) return;
       setState(() {
         isLoading = false;
         errorMessage = "Could not load data. Using offline data.";
         meditations = backupMeditations;
+        nextCursor = null;
       });
     }
   }
 
-  // ✅ Filtered Meditations Getter
+  // ✅ Load the next page when the list is scrolled near its end
+  void _onScroll() {
+    if (_scrollController.position.extentAfter < 300) {
+      loadMoreMeditations();
+    }
+  }
+
+  Future<void> loadMoreMeditations() async {
+    if (isLoadingMore || nextCursor == null) return;
+    final filter = selectedFilter;
+    setState(() {
+      isLoadingMore = true;
+    });
+
+    try {
+      final page = await _feedService.getPage(category: filter, cursor: nextCursor);
+      if (!mounted || filter != selectedFilter) return;
+      setState(() {
+        meditations = [...meditations, ...page.items];
+        nextCursor = page.nextCursor;
+      });
+    } catch (e) {
+      print("Error loading more meditations: $e");
+    } finally {
+      if (mounted) {
+        setState(() {
+          isLoadingMore = false;
+        });
+      }
+    }
+  }
+
+  // ✅ Filtered Meditations Getter (the server filters too; this covers the offline data)
   List<dynamic> get filteredMeditations {
     if (selectedFilter == "All") {
       return meditations;
@@ -245,9 +290,14 @@ class _MeditationListScreenState extends State<MeditationListScreen> {
                   selectedColor: const Color(0xFF1EBBD7),
                   backgroundColor: Colors.grey[800],
                   onSelected: (bool selected) {
+                    if (selectedFilter == filter) return;
                     setState(() {
                       selectedFilter = filter;
+                      nextCursor = null;
                     });
+                    if (errorMessage.isEmpty) {
+                      fetchMeditations();
+                    }
                   },
                 );
               }).toList(),
@@ -257,8 +307,15 @@ class _MeditationListScreenState extends State<MeditationListScreen> {
           // Meditation List - UPDATED TO USE FILTERED RESULTS
           Expanded(
             child: ListView.builder(
-              itemCount: filteredMeditations.length,
+              controller: _scrollController,
+              itemCount: filteredMeditations.length + (isLoadingMore ? 1 : 0),
               itemBuilder: (context, index) {
+                if (index >= filteredMeditations.length) {
+                  return const Padding(
+                    padding: EdgeInsets.all(16),
+                    child: Center(child: CircularProgressIndicator()),
+                  );
+                }
                 final meditation = filteredMeditations[index];
                 return Padding(
                   padding: const EdgeInsets.symmetric(
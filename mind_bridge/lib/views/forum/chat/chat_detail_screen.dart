@@ -32,6 +32,7 @@ class _ChatDetailScreenState extends State<ChatDetailScreen> with TickerProvider
   final FocusNode _messageFocusNode = FocusNode();
 
   List<ChatMessage> _messages = [];
+  bool _isLoadingOlder = false;
   bool _isLoading = true;
   bool _isSending = false;
   bool _isAnonymous = false;
@@ -83,6 +84,9 @@ class _ChatDetailScreenState extends State<ChatDetailScreen> with TickerProvider
 
     // Setup typing detection
     _messageController.addListener(_onTyping);
+
+    // Load older history when the user scrolls to the top
+    _scrollController.addListener(_onScroll);
   }
 
   @override
@@ -250,7 +254,19 @@ class _ChatDetailScreenState extends State<ChatDetailScreen> with TickerProvider
     });
 
     try {
-      final messages = await _chatApiService.getGroupMessages(widget.group.id);
+      // After the first load only fetch what is new since then
+      final messages = _messages.isEmpty
+          ? await _chatApiService.getGroupMessages(widget.group.id)
+          : _mergeMessages(
+              _messages, await _chatApiService.getNewMessages(widget.group.id));
+
+      // Let the socket resume from the newest message we already have
+      final seqs = messages.where((m) => m.seq != null).map((m) => m.seq!);
+      if (seqs.isNotEmpty) {
+        _chatSocketService.setLastSeq(
+            widget.group.id, seqs.reduce((a, b) => a > b ? a : b));
+      }
+
       if (mounted) {
         setState(() {
           _messages = messages;
@@ -269,6 +285,54 @@ class _ChatDetailScreenState extends State<ChatDetailScreen> with TickerProvider
     }
   }
 
+  // Append messages that are not already in the list
+  List<ChatMessage> _mergeMessages(
+      List<ChatMessage> current, List<ChatMessage> incoming) {
+    final ids = current.map((m) => m.id).toSet();
+    return [...current, ...incoming.where((m) => !ids.contains(m.id))];
+  }
+
+  void _onScroll() {
+    if (_scrollController.position.pixels <=
+            _scrollController.position.minScrollExtent + 50 &&
+        !_isLoadingOlder &&
+        _chatApiService.hasOlderMessages(widget.group.id)) {
+      _loadOlderMessages();
+    }
+  }
+
+  Future<void> _loadOlderMessages() async {
+    setState(() {
+      _isLoadingOlder = true;
+    });
+
+    try {
+      final older = await _chatApiService.getOlderMessages(widget.group.id);
+      if (!mounted) return;
+
+      // Keep the current messages in place while the list grows above them
+      final previousExtent = _scrollController.position.maxScrollExtent;
+      setState(() {
+        _messages = [...older, ..._messages];
+        _isLoadingOlder = false;
+      });
+      WidgetsBinding.instance.addPostFrameCallback((_) {
+        if (_scrollController.hasClients) {
+          _scrollController.jumpTo(_scrollController.position.pixels +
+              _scrollController.position.maxScrollExtent -
+              previousExtent);
+        }
+      });
+    } catch (e) {
+      debugPrint('Error loading older messages: $e');
+      if (mounted) {
+        setState(() {
+          _isLoadingOlder = false;
+        });
+      }
+    }
+  }
+
   Future<void> _sendMessage() async {
     final message = _messageController.text.trim();
     if (message.isEmpty) return;
@@ -2,6 +2,7 @@
 import 'package:flutter/material.dart';
 import '../../models/chat_group.dart';
 import 'package:mind_bridge/services/chat_api_service.dart';
+import 'package:mind_bridge/services/auth_service.dart';
 import '../../widgets/animated_gradient_background.dart';
 import 'package:mind_bridge/views/forum/chat/chat_detail_screen.dart';
 
@@ -16,6 +17,7 @@ class ChatGroupsScreen extends StatefulWidget {
 
 class _ChatGroupsScreenState extends State<ChatGroupsScreen> with SingleTickerProviderStateMixin {
   late ChatApiService _chatApiService;
+  late String _username;
   List<ChatGroup> _chatGroups = [];
   bool _isLoading = true;
   late AnimationController _animationController;
@@ -25,7 +27,8 @@ class _ChatGroupsScreenState extends State<ChatGroupsScreen> with SingleTickerPr
   @override
   void initState() {
     super.initState();
-    _chatApiService = ChatApiService(currentUsername: widget.username);
+    _username = widget.username;
+    _chatApiService = ChatApiService(currentUsername: _username);
 
     // Setup animations
     _animationController = AnimationController(
@@ -40,7 +43,18 @@ class _ChatGroupsScreenState extends State<ChatGroupsScreen> with SingleTickerPr
       ),
     );
 
-    _loadChatGroups();
+    _loadCurrentUser();
+  }
+
+  // Use the signed-in user's name, so joined groups and own messages match
+  // the name the server records from the login token
+  Future<void> _loadCurrentUser() async {
+    final name = await AuthService.getCurrentUsername();
+    if (name != null && name.isNotEmpty) {
+      _username = name;
+      _chatApiService.updateCurrentUser(name);
+    }
+    await _loadChatGroups();
   }
 
   @override
@@ -100,7 +114,7 @@ class _ChatGroupsScreenState extends State<ChatGroupsScreen> with SingleTickerPr
                 name: group.name,
                 description: group.description,
                 members: '${current + 1}/${parts[1]}',
-                membersList: [...group.membersList, widget.username],
+                membersList: [...group.membersList, _username],
                 createdAt: group.createdAt,
                 isJoined: true,
               );
@@ -141,7 +155,7 @@ class _ChatGroupsScreenState extends State<ChatGroupsScreen> with SingleTickerPr
                 name: group.name,
                 description: group.description,
                 members: '${current - 1}/${parts[1]}',
-                membersList: group.membersList.where((member) => member != widget.username).toList(),
+                membersList: group.membersList.where((member) => member != _username).toList(),
                 createdAt: group.createdAt,
                 isJoined: false,
               );
@@ -166,7 +180,7 @@ class _ChatGroupsScreenState extends State<ChatGroupsScreen> with SingleTickerPr
       MaterialPageRoute(
         builder: (context) => ChatDetailScreen(
           group: group,
-          username: widget.username,
+          username: _username,
           onLeaveGroup: () => _leaveGroup(group),
         ),
       ),
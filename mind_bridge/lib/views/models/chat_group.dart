@@ -18,11 +18,16 @@ class ChatGroup {
   });
 
   factory ChatGroup.fromJson(Map<String, dynamic> json) {
+    // Prefer the numeric counters; older servers only send the "3/10" label
+    final members = json['memberCount'] is num && json['maxMembers'] is num
+        ? '${json['memberCount']}/${json['maxMembers']}'
+        : json['members'] ?? '0/10';
+
     return ChatGroup(
       id: json['_id'] ?? '',
       name: json['name'] ?? '',
       description: json['description'] ?? '',
-      members: json['members'] ?? '0/10',
+      members: members,
       membersList: List<String>.from(json['membersList'] ?? []),
       createdAt: json['createdAt'] != null
           ? DateTime.parse(json['createdAt'])
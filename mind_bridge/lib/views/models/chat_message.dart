@@ -7,6 +7,7 @@ class ChatMessage {
   final bool isAnonymous;
   final DateTime timestamp;
   final bool isMe;
+  final int? seq; // Per-group sequence number assigned by the server
 
   ChatMessage({
     required this.id,
@@ -16,6 +17,7 @@ class ChatMessage {
     required this.isAnonymous,
     required this.timestamp,
     required this.isMe,
+    this.seq,
   });
 
   factory ChatMessage.fromJson(Map<String, dynamic> json, String currentUsername) {
@@ -29,6 +31,7 @@ class ChatMessage {
           ? DateTime.parse(json['timestamp'])
           : DateTime.now(),
       isMe: json['sender'] == currentUsername,
+      seq: json['seq'] is num ? (json['seq'] as num).toInt() : null,
     );
   }
 
@@ -59,6 +62,7 @@ class ChatMessage {
     bool? isAnonymous,
     DateTime? timestamp,
     bool? isMe,
+    int? seq,
   }) {
     return ChatMessage(
       id: id ?? this.id,
@@ -68,6 +72,7 @@ class ChatMessage {
       isAnonymous: isAnonymous ?? this.isAnonymous,
       timestamp: timestamp ?? this.timestamp,
       isMe: isMe ?? this.isMe,
+      seq: seq ?? this.seq,
     );
   }
 }
\ No newline at end of file
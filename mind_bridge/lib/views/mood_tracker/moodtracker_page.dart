@@ -41,6 +41,9 @@ class _MoodTrackerPageState extends State<MoodTrackerPage>
     "Sun": 0
   };
 
+  // Dashboard summary from the mood rollup, shown in the chart view
+  Map<String, dynamic>? _summary;
+
   @override
   void initState() {
     super.initState();
@@ -70,8 +73,10 @@ class _MoodTrackerPageState extends State<MoodTrackerPage>
       // Initialize the service
       await _moodService.initialize();
 
-      // Then load the data
+      // Draw what is stored on the device first, then refresh from the server
+      final storedMoods = await _moodService.getCachedWeeklyMoods();
       if (mounted) {
+        _applyWeeklyMoods(storedMoods);
         await _loadMoodData();
       }
     } catch (e) {
@@ -84,7 +89,34 @@ class _MoodTrackerPageState extends State<MoodTrackerPage>
     }
   }
 
-  // Load mood data from backend
+  // Show weekly moods, selecting today's mood if there is one
+  void _applyWeeklyMoods(Map<String, int> loadedMoods) {
+    setState(() {
+      weeklyMoods = loadedMoods;
+
+      // Set selectedMood based on today's mood if available
+      final today = DateTime.now().weekday - 1; // 0 = Monday
+      final days = ["Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"];
+      final todayMood = weeklyMoods[days[today]];
+
+      if (todayMood != null && todayMood > 0) {
+        // Convert mood value to mood string
+        if (todayMood == 1)
+          selectedMood = "Sad";
+        else if (todayMood == 2)
+          selectedMood = "Calm";
+        else if (todayMood == 3)
+          selectedMood = "Happy";
+        else if (todayMood == 4)
+          selectedMood = "Angry";
+        else if (todayMood == 5) selectedMood = "Relaxed";
+      }
+
+      _isLoading = false;
+    });
+  }
+
+  // Load mood data, syncing any stored changes with the backend
   Future<void> _loadMoodData() async {
     if (!mounted) return;
 
@@ -93,29 +125,7 @@ class _MoodTrackerPageState extends State<MoodTrackerPage>
 
       if (!mounted) return;
 
-      setState(() {
-        weeklyMoods = loadedMoods;
-
-        // Set selectedMood based on today's mood if available
-        final today = DateTime.now().weekday - 1; // 0 = Monday
-        final days = ["Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"];
-        final todayMood = weeklyMoods[days[today]];
-
-        if (todayMood != null && todayMood > 0) {
-          // Convert mood value to mood string
-          if (todayMood == 1)
-            selectedMood = "Sad";
-          else if (todayMood == 2)
-            selectedMood = "Calm";
-          else if (todayMood == 3)
-            selectedMood = "Happy";
-          else if (todayMood == 4)
-            selectedMood = "Angry";
-          else if (todayMood == 5) selectedMood = "Relaxed";
-        }
-
-        _isLoading = false;
-      });
+      _applyWeeklyMoods(loadedMoods);
     } catch (e) {
       debugPrint('Error loading mood data: $e');
       if (mounted) {
@@ -126,14 +136,31 @@ class _MoodTrackerPageState extends State<MoodTrackerPage>
     }
   }
 
-  // Save mood to backend
-  Future<void> _saveMood(String mood) async {
+  // Load the dashboard summary for the chart view, syncing stored changes first
+  Future<void> _loadSummary() async {
     try {
-      // Show loading indicator
+      final summary = await _moodService.getMoodSummary();
+
+      if (!mounted) return;
+
+      // No summary yet (e.g. offline): still show what is stored on the device
+      if (summary == null) {
+        _applyWeeklyMoods(await _moodService.getCachedWeeklyMoods());
+        return;
+      }
+
       setState(() {
-        _isLoading = true;
+        _summary = summary;
       });
+      _applyWeeklyMoods(Map<String, int>.from(summary['weekly']));
+    } catch (e) {
+      debugPrint('Error loading mood summary: $e');
+    }
+  }
 
+  // Save mood on the device; it is synced to the backend in the background
+  Future<void> _saveMood(String mood) async {
+    try {
       // First update locally for immediate feedback
       setState(() {
         selectedMood = mood;
@@ -152,23 +179,19 @@ class _MoodTrackerPageState extends State<MoodTrackerPage>
         weeklyMoods[days[today]] = moodValue;
       });
 
-      // Then save to backend
+      // Then store it; the service sends it with the next sync
       final success = await _moodService.saveMood(mood, notes: _textController.text);
 
       if (!mounted) return;
 
       if (!success) {
-        // If backend save failed, still keep the local update but show warning
         ScaffoldMessenger.of(context).showSnackBar(
           const SnackBar(
-            content: Text('Failed to save mood to server, but stored locally.'),
+            content: Text('Could not save mood. Please log in again.'),
             backgroundColor: Colors.orange,
             behavior: SnackBarBehavior.floating,
           ),
         );
-      } else {
-        // On success, refresh the data from the server to ensure sync
-        await _loadMoodData();
       }
     } catch (e) {
       debugPrint('Error saving mood: $e');
@@ -181,13 +204,6 @@ class _MoodTrackerPageState extends State<MoodTrackerPage>
           ),
         );
       }
-    } finally {
-      // Hide loading indicator
-      if (mounted) {
-        setState(() {
-          _isLoading = false;
-        });
-      }
     }
   }
 
@@ -213,6 +229,7 @@ class _MoodTrackerPageState extends State<MoodTrackerPage>
           animation: _animation,
           weeklyMoods: weeklyMoods,
           moodData: moodData,
+          summary: _summary,
         )
             : MoodDisplayView(
           animation: _animation,
@@ -279,8 +296,8 @@ class _MoodTrackerPageState extends State<MoodTrackerPage>
               if (_showChart) {
                 _animationController.reset();
                 _animationController.forward();
-                // Refresh data when switching to chart view
-                _loadMoodData();
+                // Refresh data and totals when switching to chart view
+                _loadSummary();
               } else {
                 _animationController.reset();
                 _animationController.forward();
@@ -6,14 +6,33 @@ class MoodChartView extends StatelessWidget {
   final Animation<double> animation;
   final Map<String, int> weeklyMoods;
   final Map<String, Map<String, dynamic>> moodData;
+  final Map<String, dynamic>? summary;
 
   const MoodChartView({
     Key? key,
     required this.animation,
     required this.weeklyMoods,
     required this.moodData,
+    this.summary,
   }) : super(key: key);
 
+  // Totals from the mood summary, or the tracking tip until it has loaded
+  String _insightText() {
+    final totals = summary?['totals'];
+    if (totals is! Map || (totals['daysTracked'] ?? 0) == 0) {
+      return "Track your mood daily to build more comprehensive insights";
+    }
+
+    final int days = totals['daysTracked'];
+    final tracked = "$days day${days == 1 ? '' : 's'} tracked";
+
+    // Most often recorded mood over all time
+    final byMood = totals['byMood'];
+    if (byMood is! Map || byMood.isEmpty) return tracked;
+    final top = byMood.entries.reduce((a, b) => (b.value as num) > (a.value as num) ? b : a);
+    return "$tracked, most often ${top.key}";
+  }
+
   @override
   Widget build(BuildContext context) {
     return Stack(
@@ -132,7 +151,7 @@ class MoodChartView extends StatelessWidget {
                                 const SizedBox(width: 12),
                                 Expanded(
                                   child: Text(
-                                    "Track your mood daily to build more comprehensive insights",
+                                    _insightText(),
                                     style: GoogleFonts.montserrat(
                                       textStyle: TextStyle(
                                         color: Colors.white.withOpacity(0.9),